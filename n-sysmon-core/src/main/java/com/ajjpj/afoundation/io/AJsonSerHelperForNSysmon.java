@@ -1,10 +1,7 @@
 package com.ajjpj.afoundation.io;
 
-import com.ajjpj.afoundation.collection.mutable.ArrayStack;
-
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.text.DecimalFormat;
@@ -18,6 +15,11 @@ import java.util.Locale;
  *
  * This class is a collection of helper methods for manually writing JSON to an OutputStream. <p>
  *
+ * CHANGE: This implementation is optimized for throughput. It encodes UTF-8 directly into a byte buffer that is
+ *  reused per thread, escapes strings through a lookup table, formats numbers without creating intermediate objects
+ *  and keeps its state in a primitive stack. The buffer is written to the underlying stream when it is full and when
+ *  the top level JSON value is finished, and on {@link #flush()}.<p>
+ *
  * For details on the JSON spec, see http://json.org
  *
  * @author arno
@@ -25,54 +27,108 @@ import java.util.Locale;
 public class AJsonSerHelperForNSysmon {
     static final Charset UTF_8 = Charset.forName("UTF-8");
 
-    private static final int[] TEN_POW = new int[] {1, 10, 100, 1000, 10*1000, 100*1000, 1000*1000, 10*1000*1000, 100*1000*1000, 1000*1000*1000};
+    static final int BUFFER_SIZE = 8192;
+
+    /**
+     * This is the maximum number of bytes a single char can take up in the buffer, i.e. a unicode escape sequence
+     */
+    private static final int MAX_BYTES_PER_CHAR = 6;
+
+    private static final long[] TEN_POW = new long[] {1, 10, 100, 1000, 10*1000, 100*1000, 1000*1000, 10*1000*1000, 100*1000*1000, 1000*1000*1000};
     private static final String[] PATTERNS = new String[] {"0", "0.0", "0.00", "0.000", "0.0000", "0.00000", "0.000000", "0.0000000", "0.00000000", "0.000000000"};
     private static final DecimalFormatSymbols DECIMAL_FORMAT_SYMBOLS = new DecimalFormatSymbols(Locale.US);
 
-    private final Writer out;
-    private final ArrayStack<JsonSerState> state = new ArrayStack<>();
+    /**
+     * doubles that exceed this limit when scaled by their fractional digits are formatted by DecimalFormat because
+     *  they do not fit into a long
+     */
+    private static final double MAX_FAST_SCALED_DOUBLE = 1e18;
+
+    private static final byte[] TRUE = "true".getBytes(UTF_8);
+    private static final byte[] FALSE = "false".getBytes(UTF_8);
+    private static final byte[] NULL = "null".getBytes(UTF_8);
+
+    /**
+     * escape sequences for ASCII characters, <code>null</code> for characters that are written verbatim
+     */
+    private static final byte[][] ESCAPES = new byte[128][];
+    static {
+        for(int ch=0; ch<32; ch++) {
+            ESCAPES[ch] = String.format("\\u%04x", ch).getBytes(UTF_8);
+        }
+        ESCAPES['"'] = "\\\"".getBytes(UTF_8);
+        ESCAPES['\\'] = "\\\\".getBytes(UTF_8);
+    }
+
+    /**
+     * Buffers are reused per thread. A helper takes its thread's buffer, and it returns it after the top level JSON
+     *  value is written. A helper that is created while its thread's buffer is taken - or that is abandoned without
+     *  finishing its JSON value - simply uses a new buffer.
+     */
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<>();
+
+    private static final byte INITIAL = 0;
+    private static final byte FINISHED = 1;
+    private static final byte START_OF_OBJECT = 2;
+    private static final byte IN_OBJECT = 3;
+    private static final byte AFTER_KEY = 4;
+    private static final byte START_OF_ARRAY = 5;
+    private static final byte IN_ARRAY = 6;
+
+    private static final String[] STATE_NAMES = new String[] {"initial", "finished", "startOfObject", "inObject", "afterKey", "startOfArray", "inArray"};
+
+    private final OutputStream out;
+
+    private byte[] buf;
+    private int pos;
+
+    private byte[] state = new byte[16];
+    private int stateDepth;
+
+    private Writer writer;
 
     public AJsonSerHelperForNSysmon(OutputStream out) {
-        this.out = new OutputStreamWriter(out, UTF_8);
-        state.push(JsonSerState.initial);
+        this.out = out;
+        pushState(INITIAL);
     }
 
     public void startObject() throws IOException {
         checkAcceptsValueAndPrefixComma();
-        state.push(JsonSerState.startOfObject);
-        out.write("{");
+        pushState(START_OF_OBJECT);
+        writeByte('{');
     }
 
     public void endObject() throws IOException {
         checkInObject();
-        state.pop();
-        out.write("}");
-        out.write('\n'); //CHANGE
+        stateDepth -= 1;
+        ensureCapacity(2);
+        buf[pos++] = '}';
+        buf[pos++] = '\n'; //CHANGE
         afterValueWritten();
     }
 
     public void writeKey(String key) throws IOException {
-        if(!state().acceptsKey) {
-            throw new IllegalStateException("state " + state() + " does not accept a key");
+        if(!acceptsKey(state())) {
+            throw new IllegalStateException("state " + STATE_NAMES[state()] + " does not accept a key");
         }
-        if(state() == JsonSerState.inObject) {
-            out.write(",");
+        if(state() == IN_OBJECT) {
+            writeByte(',');
         }
         _writeStringLiteral(key);
-        out.write(":");
-        state.push(JsonSerState.afterKey);
+        writeByte(':');
+        pushState(AFTER_KEY);
     }
 
     public void startArray() throws IOException {
         checkAcceptsValueAndPrefixComma();
-        state.push(JsonSerState.startOfArray);
-        out.write("[");
+        pushState(START_OF_ARRAY);
+        writeByte('[');
     }
 
     public void endArray() throws IOException {
         checkInArray();
-        state.pop();
-        out.write("]");
+        stateDepth -= 1;
+        writeByte(']');
         afterValueWritten();
     }
 
@@ -88,121 +144,325 @@ public class AJsonSerHelperForNSysmon {
     }
 
     private void _writeStringLiteral(String s) throws IOException {
-        out.write('"');
-        for(int i=0; i<s.length(); i++) {
+        writeByte('"');
+
+        final int len = s.length();
+        for(int i=0; i<len; i++) {
+            ensureCapacity(MAX_BYTES_PER_CHAR);
             final char ch = s.charAt(i);
 
-            if(ch == '"') {
-                out.write("\\\"");
-            }
-            else if (ch == '\\') {
-                out.write ("\\\\");
-            }
-            else if(ch < 16) {
-                out.write("\\u000" + Integer.toHexString(ch));
+            if(ch < 128) {
+                final byte[] escape = ESCAPES[ch];
+                if(escape == null) {
+                    buf[pos++] = (byte) ch;
+                }
+                else {
+                    System.arraycopy(escape, 0, buf, pos, escape.length);
+                    pos += escape.length;
+                }
             }
-            else if(ch < 32) {
-                out.write("\\u00" + Integer.toHexString(ch));
+            else if(Character.isHighSurrogate(ch) && i+1 < len && Character.isLowSurrogate(s.charAt(i+1))) {
+                writeCodePoint(Character.toCodePoint(ch, s.charAt(i+1)));
+                i += 1;
             }
             else {
-                out.write(ch);
+                writeCodePoint(ch);
             }
         }
 
-        out.write('"');
+        writeByte('"');
+    }
+
+    /**
+     * writes a code point as UTF-8 without escaping, relying on the caller to ensure room for four bytes
+     */
+    private void writeCodePoint(int codePoint) {
+        if(codePoint < 0x80) {
+            buf[pos++] = (byte) codePoint;
+        }
+        else if(codePoint < 0x800) {
+            buf[pos++] = (byte) (0xC0 | (codePoint >> 6));
+            buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        else if(codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+            // an unpaired surrogate can not be encoded, so it is replaced like OutputStreamWriter does it
+            buf[pos++] = '?';
+        }
+        else if(codePoint < 0x10000) {
+            buf[pos++] = (byte) (0xE0 | (codePoint >> 12));
+            buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        else {
+            buf[pos++] = (byte) (0xF0 | (codePoint >> 18));
+            buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
     }
 
     public void writeNumberLiteral(long value, int numFracDigits) throws IOException {
         checkAcceptsValueAndPrefixComma();
+        _writeFixedPoint(value, numFracDigits);
+        afterValueWritten();
+    }
+
+    public void writeNumberLiteral(double value, int numFracDigits) throws IOException {
+        checkAcceptsValueAndPrefixComma();
+
+        final double scaledDouble = value * TEN_POW[numFracDigits];
+        if(scaledDouble > -MAX_FAST_SCALED_DOUBLE && scaledDouble < MAX_FAST_SCALED_DOUBLE) {
+            // Math.rint rounds half-even like DecimalFormat does
+            final long scaled = (long) Math.rint(scaledDouble);
+            if(scaled == 0 && value < 0) {
+                // DecimalFormat keeps the sign of negative values that are rounded to zero
+                writeByte('-');
+            }
+            _writeFixedPoint(scaled, numFracDigits);
+        }
+        else {
+            // NaN, infinity or very large numbers - this is rare enough to not be optimized
+            writeAscii(new DecimalFormat(PATTERNS[numFracDigits], DECIMAL_FORMAT_SYMBOLS).format(value));
+        }
+
+        afterValueWritten();
+    }
+
+    /**
+     * writes <code>value / 10^numFracDigits</code> with exactly <code>numFracDigits</code> fractional digits
+     */
+    private void _writeFixedPoint(long value, int numFracDigits) throws IOException {
+        // 19 digits, sign and decimal point
+        ensureCapacity(21);
 
-        if (value < 0) {
-            out.write ('-');
+        // calculations are done with negative numbers to cover Long.MIN_VALUE
+        if(value < 0) {
+            buf[pos++] = '-';
+        }
+        else {
             value = -value;
         }
 
         if(numFracDigits == 0) {
-            out.write(String.valueOf(value));
+            writeNegatedDigits(value, 1);
         }
         else {
-            final long intPart = value / TEN_POW[numFracDigits];
-            final String fracPart = String.valueOf(1_000_000_000 + value%TEN_POW[numFracDigits]).substring (10 - numFracDigits, 10);
-
-            out.write(String.valueOf(intPart));
-            out.write(".");
-            out.write(fracPart);
+            writeNegatedDigits(value / TEN_POW[numFracDigits], 1);
+            buf[pos++] = '.';
+            writeNegatedDigits(value % TEN_POW[numFracDigits], numFracDigits);
         }
-
-        afterValueWritten();
     }
 
-    public void writeNumberLiteral(double value, int numFracDigits) throws IOException {
-        checkAcceptsValueAndPrefixComma();
-        out.write(new DecimalFormat(PATTERNS[numFracDigits], DECIMAL_FORMAT_SYMBOLS).format(value));
-        afterValueWritten();
+    /**
+     * writes the digits of <code>-value</code>, padded with leading zeros to <code>minNumDigits</code>
+     */
+    private void writeNegatedDigits(long value, int minNumDigits) {
+        int numDigits = 1;
+        for(long v = value / 10; v != 0; v /= 10) {
+            numDigits += 1;
+        }
+        numDigits = Math.max(numDigits, minNumDigits);
+
+        int i = pos + numDigits;
+        pos = i;
+        while(i > pos - numDigits) {
+            buf[--i] = (byte) ('0' - value % 10);
+            value /= 10;
+        }
     }
 
     public void writeBooleanLiteral(boolean value) throws IOException {
         checkAcceptsValueAndPrefixComma();
-        out.write(String.valueOf(value));
+        writeBytes(value ? TRUE : FALSE);
         afterValueWritten();
     }
 
     public void writeNullLiteral() throws IOException {
         checkAcceptsValueAndPrefixComma();
-        out.write("null");
+        writeBytes(NULL);
         afterValueWritten();
     }
 
+    /**
+     * CHANGE: writes all buffered data to the underlying stream and flushes it. This happens automatically when the
+     *  top level JSON value is finished.
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
     //----------------------------------------- helper methods
 
+    private void writeByte(char ch) throws IOException {
+        ensureCapacity(1);
+        buf[pos++] = (byte) ch;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    private void writeAscii(String s) throws IOException {
+        for(int i=0; i<s.length(); i++) {
+            ensureCapacity(MAX_BYTES_PER_CHAR);
+            writeCodePoint(s.charAt(i));
+        }
+    }
+
+    private void ensureCapacity(int numBytes) throws IOException {
+        if(buf == null) {
+            acquireBuffer();
+        }
+        if(pos + numBytes > buf.length) {
+            flushBuffer();
+        }
+    }
+
+    private void acquireBuffer() {
+        buf = BUFFERS.get();
+        if(buf == null) {
+            buf = new byte[BUFFER_SIZE];
+        }
+        else {
+            BUFFERS.set(null);
+        }
+        pos = 0;
+    }
+
+    private void releaseBuffer() {
+        if(buf != null) {
+            BUFFERS.set(buf);
+            buf = null;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if(pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+
     private void checkAcceptsValueAndPrefixComma() throws IOException {
-        if(!state().acceptsValue) {
-            throw new IllegalStateException("state " + state() + " does not accept a value");
+        if(!acceptsValue(state())) {
+            throw new IllegalStateException("state " + STATE_NAMES[state()] + " does not accept a value");
         }
-        if(state() == JsonSerState.inArray) {
-            out.write(",");
+        if(state() == IN_ARRAY) {
+            writeByte(',');
         }
     }
 
     private void afterValueWritten() throws IOException {
-        if(state() == JsonSerState.afterKey) {
-            state.pop();
+        if(state() == AFTER_KEY) {
+            stateDepth -= 1;
         }
         switch(state()) {
-            case startOfArray:  replaceState(JsonSerState.inArray); break;
-            case startOfObject: replaceState(JsonSerState.inObject); break;
-            case initial:
-                replaceState(JsonSerState.finished);
-                out.flush();
+            case START_OF_ARRAY:  replaceState(IN_ARRAY); break;
+            case START_OF_OBJECT: replaceState(IN_OBJECT); break;
+            case INITIAL:
+                replaceState(FINISHED);
+                flush();
+                releaseBuffer();
                 break;
             default:
         }
     }
 
+    private static boolean acceptsKey(byte state) {
+        return state == START_OF_OBJECT || state == IN_OBJECT;
+    }
+
+    private static boolean acceptsValue(byte state) {
+        return state == INITIAL || state == AFTER_KEY || state == START_OF_ARRAY || state == IN_ARRAY;
+    }
+
     private void checkInObject() {
-        if(state() != JsonSerState.inObject && state() != JsonSerState.startOfObject) {
+        if(state() != IN_OBJECT && state() != START_OF_OBJECT) {
             throw new IllegalStateException("not in an object");
         }
     }
 
     private void checkInArray() {
-        if(state() != JsonSerState.inArray && state() != JsonSerState.startOfArray) {
+        if(state() != IN_ARRAY && state() != START_OF_ARRAY) {
             throw new IllegalStateException("not in an array");
         }
     }
 
-    private void replaceState(JsonSerState newState) {
-        state.pop();
-        state.push(newState);
+    private void pushState(byte newState) {
+        if(stateDepth == state.length) {
+            final byte[] newStates = new byte[2*state.length];
+            System.arraycopy(state, 0, newStates, 0, stateDepth);
+            state = newStates;
+        }
+        state[stateDepth++] = newState;
+    }
+
+    private void replaceState(byte newState) {
+        state[stateDepth-1] = newState;
     }
 
-    private JsonSerState state() {
-        return state.peek();
+    private byte state() {
+        return state[stateDepth-1];
     }
 
     //CHANGE
+    /**
+     * @return a Writer for writing raw (i.e. unescaped) data to the stream. It shares this helper's buffer.
+     */
     public Writer getOut() {
-        return out;
+        if(writer == null) {
+            writer = new BufferWriter();
+        }
+        return writer;
     }
-}
 
+    private class BufferWriter extends Writer {
+        private char pendingHighSurrogate;
+
+        @Override public void write(char[] cbuf, int off, int len) throws IOException {
+            for(int i=off; i<off+len; i++) {
+                write(cbuf[i]);
+            }
+        }
+
+        @Override public void write(String str, int off, int len) throws IOException {
+            for(int i=off; i<off+len; i++) {
+                write(str.charAt(i));
+            }
+        }
+
+        @Override public void write(int c) throws IOException {
+            final char ch = (char) c;
+            ensureCapacity(MAX_BYTES_PER_CHAR);
+
+            if(pendingHighSurrogate != 0) {
+                final char high = pendingHighSurrogate;
+                pendingHighSurrogate = 0;
+                if(Character.isLowSurrogate(ch)) {
+                    writeCodePoint(Character.toCodePoint(high, ch));
+                    return;
+                }
+                writeCodePoint(high);
+            }
+
+            if(Character.isHighSurrogate(ch)) {
+                pendingHighSurrogate = ch;
+            }
+            else {
+                writeCodePoint(ch);
+            }
+        }
+
+        @Override public void flush() throws IOException {
+            AJsonSerHelperForNSysmon.this.flush();
+        }
+
+        @Override public void close() throws IOException {
+            flush();
+            out.close();
+        }
+    }
+}
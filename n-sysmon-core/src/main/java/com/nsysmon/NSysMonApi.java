@@ -1,11 +1,11 @@
 package com.nsysmon;
 
 import com.ajjpj.afoundation.collection.immutable.AList;
-import com.ajjpj.afoundation.collection.mutable.ARingBuffer;
 import com.nsysmon.config.NSysMonConfig;
 import com.nsysmon.data.ACorrelationId;
 import com.nsysmon.data.AHierarchicalDataRoot;
 import com.nsysmon.data.AScalarDataPoint;
+import com.nsysmon.data.ATimedScalarSeries;
 import com.nsysmon.impl.RobustScalarMeasurerWrapper;
 import com.nsysmon.measure.ACollectingMeasurement;
 import com.nsysmon.measure.AMeasureCallback;
@@ -55,15 +55,23 @@ public interface NSysMonApi {
     ACollectingMeasurement startCollectingMeasurement(String identifier);
     ACollectingMeasurement startCollectingMeasurement(String identifier, boolean serial);
 
+    /**
+     * @return the latest snapshot of all scalar measurements. It is shared between callers and refreshed in the
+     *  background, so this method usually returns immediately.
+     */
     Map<String, AScalarDataPoint> getScalarMeasurements();
 
+    /**
+     * This method performs a separate measurement, blocking the caller for the averaging delay, unless the delay is
+     *  the configured default.
+     */
     Map<String, AScalarDataPoint> getScalarMeasurements(int averagingDelayForScalarsMillis);
 
     List<AEnvironmentData> getEnvironmentMeasurements() throws Exception;
 
     AList<RobustScalarMeasurerWrapper> getTimedScalarForDirectAccess();
-    Map<String,ARingBuffer<AScalarDataPoint>> getTimedScalarMeasurements();
-    Map<String,ARingBuffer<AScalarDataPoint>> getTimedScalarMeasurementsForMonitoring();
+    Map<String,ATimedScalarSeries> getTimedScalarMeasurements();
+    Map<String,ATimedScalarSeries> getTimedScalarMeasurementsForMonitoring();
 
     void addTimedScalarMeasurement(AScalarDataPoint... dataPoint);
 }
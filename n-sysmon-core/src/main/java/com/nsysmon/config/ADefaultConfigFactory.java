@@ -47,23 +47,37 @@ public class ADefaultConfigFactory implements AConfigFactory {
     public static final String KEY_PRESENTATION_MENUS = "presentation-menus";
 
     public static final String KEY_AVERAGING_DELAY_FOR_SCALARS_MILLIS = "averaging-delay-for-scalars-millis";
+    public static final String KEY_MAX_AGE_OF_SCALARS_MILLIS = "max-age-of-scalars-millis";
+    public static final String KEY_NUM_SCALAR_MEASUREMENT_THREADS = "num-scalar-measurement-threads";
+    public static final String KEY_SCALAR_MEASUREMENT_BUDGET_MILLIS = "scalar-measurement-budget-millis";
+    public static final String KEY_DISK_USAGE_TTL_MILLIS = "disk-usage-ttl-millis";
+    public static final String KEY_DISK_USAGE_TIMEOUT_MILLIS = "disk-usage-timeout-millis";
 
     public static final String KEY_MEASUREMENT_TIMEOUT_NANOS = "measurement-timeout-nanos";
     public static final String KEY_MAX_NUM_MEASUREMENT_TIMEOUTS = "max-num-measurement-timeouts";
 
     public static final String KEY_MAX_NESTED_MEASUREMENTS = "max-nested-measurements";
     public static final String KEY_MAX_NUM_MEASUREMENTS_PER_HIERARCHY = "max-measurements-per-hierarchy";
+    public static final String KEY_RECORD_MEASUREMENTS_IN_EVENT_BUFFER = "record-measurements-in-event-buffer";
 
     public static final String KEY_MAX_NUM_MEASUREMENTS_RELEVANT_FOR_MONITORING = "max-measurements-relevant-for-monitoring";
     public static final String KEY_MAX_NUM_MEASUREMENTS_PER_TIMED_SCALAR = "max-measurements-per-timed-scalar";
     public static final String KEY_DURATION_OF_ONE_TIMED_SCALAR = "duration-of-one-timed-scalar";
+    public static final String KEY_SUFFIX_TIMED_SCALAR_INTERVAL = "interval-seconds";
 
     public static final String KEY_COLLECT_SQL_PARAMETERS = "collect-sql-parameters";
     public static final String KEY_COLLECT_TOOLTIPS = "collect-tooltips";
+    public static final String KEY_FINGERPRINT_SQL = "fingerprint-sql";
+    public static final String KEY_SQL_BACKSLASH_ESCAPES = "sql-backslash-escapes";
 
     public static final String KEY_DATA_SINK_TIMEOUT_NANOS = "data-sink-timeout-nanos";
     public static final String KEY_MAX_NUM_DATA_SINK_TIMEOUTS = "max-num-data-sink-timeouts";
 
+    public static final String KEY_ASYNC_DATA_SINK_DISPATCH = "async-data-sink-dispatch";
+    public static final String KEY_DATA_SINK_DISPATCH_QUEUE_SIZE = "data-sink-dispatch-queue-size";
+    public static final String KEY_NUM_DATA_SINK_DISPATCH_THREADS = "num-data-sink-dispatch-threads";
+    public static final String KEY_DATA_SINK_DISPATCH_OVERFLOW_POLICY = "data-sink-dispatch-overflow-policy";
+
     public static final String KEY_TOMCAT_GLOBAL_REQUEST_PROCESSOR = "tomcat-global-request-processor";
     public static final String KEY_DATAFILE_PATH = "datafile-path";
 
@@ -160,6 +174,11 @@ public class ADefaultConfigFactory implements AConfigFactory {
         builder.setDefaultPage(props.get(KEY_DEFAULT_PAGE, String.class));
 
         builder.setAveragingDelayForScalarsMillis(props.get(KEY_AVERAGING_DELAY_FOR_SCALARS_MILLIS, Integer.TYPE));
+        builder.setMaxAgeOfScalarsMillis(props.get(KEY_MAX_AGE_OF_SCALARS_MILLIS, Integer.TYPE));
+        builder.setNumScalarMeasurementThreads(props.get(KEY_NUM_SCALAR_MEASUREMENT_THREADS, Integer.TYPE));
+        builder.setScalarMeasurementBudgetMillis(props.get(KEY_SCALAR_MEASUREMENT_BUDGET_MILLIS, Integer.TYPE));
+        builder.setDiskUsageTtlMillis(props.get(KEY_DISK_USAGE_TTL_MILLIS, Integer.TYPE));
+        builder.setDiskUsageTimeoutMillis(props.get(KEY_DISK_USAGE_TIMEOUT_MILLIS, Integer.TYPE));
 
         builder.setMeasurementTimeoutNanos(props.get(KEY_MEASUREMENT_TIMEOUT_NANOS, Long.TYPE));
         builder.setMaxNumMeasurementTimeouts(props.get(KEY_MAX_NUM_MEASUREMENT_TIMEOUTS, Integer.TYPE));
@@ -168,14 +187,22 @@ public class ADefaultConfigFactory implements AConfigFactory {
 
         builder.setCollectSqlParameters(props.get(KEY_COLLECT_SQL_PARAMETERS, Boolean.TYPE));
         builder.setCollectTooltips(props.get(KEY_COLLECT_TOOLTIPS, Boolean.TYPE));
+        builder.setFingerprintSql(props.get(KEY_FINGERPRINT_SQL, Boolean.TYPE));
+        builder.setSqlBackslashEscapes(props.get(KEY_SQL_BACKSLASH_ESCAPES, Boolean.TYPE));
 
         builder.setMaxNestedMeasurements(props.get(KEY_MAX_NESTED_MEASUREMENTS, Integer.TYPE));
         builder.setMaxNumMeasurementsPerHierarchy(props.get(KEY_MAX_NUM_MEASUREMENTS_PER_HIERARCHY, Integer.TYPE));
+        builder.setRecordMeasurementsInEventBuffer(props.get(KEY_RECORD_MEASUREMENTS_IN_EVENT_BUFFER, Boolean.TYPE));
         builder.setMaxNumMeasurementsPerTimedScalar(props.get(KEY_MAX_NUM_MEASUREMENTS_PER_TIMED_SCALAR, Integer.TYPE));
         builder.setMaxNumMeasurementsForCockpit(props.get(KEY_MAX_NUM_MEASUREMENTS_RELEVANT_FOR_MONITORING, Integer.TYPE));
 
         builder.setDataSinkTimeoutNanos (props.get (KEY_DATA_SINK_TIMEOUT_NANOS, Long.TYPE));
         builder.setMaxNumDataSinkTimeouts(props.get(KEY_MAX_NUM_DATA_SINK_TIMEOUTS, Integer.TYPE));
+
+        builder.setAsyncDataSinkDispatch(props.get(KEY_ASYNC_DATA_SINK_DISPATCH, Boolean.TYPE));
+        builder.setDataSinkDispatchQueueSize(props.get(KEY_DATA_SINK_DISPATCH_QUEUE_SIZE, Integer.TYPE));
+        builder.setNumDataSinkDispatchThreads(props.get(KEY_NUM_DATA_SINK_DISPATCH_THREADS, Integer.TYPE));
+        builder.setDataSinkDispatchOverflowPolicy(props.get(KEY_DATA_SINK_DISPATCH_OVERFLOW_POLICY, ADispatchOverflowPolicy.class));
         builder.setPathDatafiles(props.get(KEY_DATAFILE_PATH, String.class));
 
         //TODO this need to be refactored, so measurements can be configured
@@ -200,6 +227,12 @@ public class ADefaultConfigFactory implements AConfigFactory {
         }
 
         for (AScalarMeasurer timedScalarClass : props.getList(KEY_TIMED_SCALAR_MEASURERS, AScalarMeasurer.class)) {
+            final String measurerName = timedScalarClass.getClass().getSimpleName();
+            final int interval = props.get("timedscalar." + measurerName + "." + KEY_SUFFIX_TIMED_SCALAR_INTERVAL, AOption.some(0), Integer.TYPE);
+            if (interval > 0) {
+                builder.setTimedScalarSamplingInterval(measurerName, interval);
+            }
+
             List<String> configurationParameters = timedScalarClass.getConfigurationParameters();
             for (String parameterValue : configurationParameters) {
                 readTimedScalarMonitoringThreshold(props, builder, "timedscalar." + timedScalarClass.getClass().getSimpleName() + "." + parameterValue + ".medium");
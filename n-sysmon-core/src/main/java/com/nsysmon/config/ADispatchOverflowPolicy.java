@@ -0,0 +1,24 @@
+package com.nsysmon.config;
+
+
+/**
+ * This determines what happens to a finished measurement if asynchronous data sink dispatch is enabled and the
+ *  dispatch queue is full.
+ *
+ * @author arno
+ */
+public enum ADispatchOverflowPolicy {
+    /**
+     * discard the measurement that was just finished
+     */
+    DROP_NEWEST,
+    /**
+     * discard the oldest queued measurement to make room for the new one
+     */
+    DROP_OLDEST,
+    /**
+     * make the measuring thread wait until there is room in the queue. This trades application latency for
+     *  completeness of data.
+     */
+    BLOCK
+}
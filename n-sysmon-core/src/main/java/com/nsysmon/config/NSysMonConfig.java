@@ -21,12 +21,23 @@ public class NSysMonConfig {
     public final AApplicationInfoProvider appInfo;
 
     public final int averagingDelayForScalarsMillis;
+    public final int maxAgeOfScalarsMillis;
+    public final int numScalarMeasurementThreads;
+    public final int scalarMeasurementBudgetMillis;
+    public final int diskUsageTtlMillis;
+    public final int diskUsageTimeoutMillis;
 
     public final int maxNestedMeasurements;
     public final int maxNumMeasurementsPerHierarchy;
+    public final boolean recordMeasurementsInEventBuffer;
     public final int maxNumMeasurementsPerTimedScalar;
     public final int maxNumMeasurementsForMonitoring;
     public final int durationOfOneTimedScalar;
+    /**
+     * sampling intervals in seconds for individual timed scalar measurers, keyed by the measurer's simple class name.
+     *  Measurers that are not in this map use their own interval, or <code>durationOfOneTimedScalar</code>.
+     */
+    public final Map<String, Integer> timedScalarSamplingIntervals;
 
     public final long measurementTimeoutNanos;
     public final int maxNumMeasurementTimeouts;
@@ -34,6 +45,11 @@ public class NSysMonConfig {
     public final long dataSinkTimeoutNanos;
     public final int maxNumDataSinkTimeouts;
 
+    public final boolean asyncDataSinkDispatch;
+    public final int dataSinkDispatchQueueSize;
+    public final int numDataSinkDispatchThreads;
+    public final ADispatchOverflowPolicy dataSinkDispatchOverflowPolicy;
+
     public final ATimer timer;
     public final AHttpRequestAnalyzer httpRequestAnalyzer;
 
@@ -46,6 +62,9 @@ public class NSysMonConfig {
     public final List<APresentationMenuEntry> presentationMenuEntries;
     public final Map<String, String> additionalConfigurationParameters;
 
+    public final boolean fingerprintSql;
+    public final boolean sqlBackslashEscapes;
+
     private final Boolean collectSqlParameters;
     private final Boolean collectTooltips;
 
@@ -56,23 +75,36 @@ public class NSysMonConfig {
 
     public final String pathDatafiles;
 
-    public NSysMonConfig(AApplicationInfoProvider appInfo, int averagingDelayForScalarsMillis, int durationOfOneTimedScalar, int maxNestedMeasurements, int maxNumMeasurementsPerHierarchy, int maxNumMeasurementsPerTimedScalar,
-                         int maxNumMeasurementsForMonitoring, long measurementTimeoutNanos, int maxNumMeasurementTimeouts, long dataSinkTimeoutNanos, int maxNumDataSinkTimeouts, ATimer timer, AHttpRequestAnalyzer httpRequestAnalyzer,
+    public NSysMonConfig(AApplicationInfoProvider appInfo, int averagingDelayForScalarsMillis, int maxAgeOfScalarsMillis, int numScalarMeasurementThreads, int scalarMeasurementBudgetMillis, int diskUsageTtlMillis, int diskUsageTimeoutMillis, int durationOfOneTimedScalar, int maxNestedMeasurements, int maxNumMeasurementsPerHierarchy, boolean recordMeasurementsInEventBuffer, int maxNumMeasurementsPerTimedScalar,
+                         int maxNumMeasurementsForMonitoring, long measurementTimeoutNanos, int maxNumMeasurementTimeouts, long dataSinkTimeoutNanos, int maxNumDataSinkTimeouts,
+                         boolean asyncDataSinkDispatch, int dataSinkDispatchQueueSize, int numDataSinkDispatchThreads, ADispatchOverflowPolicy dataSinkDispatchOverflowPolicy,
+                         ATimer timer, AHttpRequestAnalyzer httpRequestAnalyzer,
                          List<AEnvironmentMeasurer> environmentMeasurers, List<AScalarMeasurer> initialScalarMeasurers, List<AScalarMeasurer> initialTimedScalarMeasurers, List<ADataSink> initialDataSinks,
                          String defaultPage,
                          List<APresentationMenuEntry> presentationMenuEntries, Map<String, String> additionalConfigurationParameters, Boolean collectSqlParameters, boolean collectTooltips,
-                         String pathDatafiles, Map<String, Object> timedScalarMonitoringParameters) {
+                         boolean fingerprintSql, boolean sqlBackslashEscapes,
+                         String pathDatafiles, Map<String, Object> timedScalarMonitoringParameters, Map<String, Integer> timedScalarSamplingIntervals) {
         this.appInfo = appInfo;
         this.averagingDelayForScalarsMillis = averagingDelayForScalarsMillis;
+        this.maxAgeOfScalarsMillis = maxAgeOfScalarsMillis;
+        this.numScalarMeasurementThreads = numScalarMeasurementThreads;
+        this.scalarMeasurementBudgetMillis = scalarMeasurementBudgetMillis;
+        this.diskUsageTtlMillis = diskUsageTtlMillis;
+        this.diskUsageTimeoutMillis = diskUsageTimeoutMillis;
         this.durationOfOneTimedScalar = durationOfOneTimedScalar;
         this.maxNestedMeasurements = maxNestedMeasurements;
         this.maxNumMeasurementsPerHierarchy = maxNumMeasurementsPerHierarchy;
+        this.recordMeasurementsInEventBuffer = recordMeasurementsInEventBuffer;
         this.maxNumMeasurementsPerTimedScalar = maxNumMeasurementsPerTimedScalar;
         this.maxNumMeasurementsForMonitoring = maxNumMeasurementsForMonitoring;
         this.measurementTimeoutNanos = measurementTimeoutNanos;
         this.maxNumMeasurementTimeouts = maxNumMeasurementTimeouts;
         this.dataSinkTimeoutNanos = dataSinkTimeoutNanos;
         this.maxNumDataSinkTimeouts = maxNumDataSinkTimeouts;
+        this.asyncDataSinkDispatch = asyncDataSinkDispatch;
+        this.dataSinkDispatchQueueSize = dataSinkDispatchQueueSize;
+        this.numDataSinkDispatchThreads = numDataSinkDispatchThreads;
+        this.dataSinkDispatchOverflowPolicy = dataSinkDispatchOverflowPolicy;
         this.timer = timer;
         this.httpRequestAnalyzer = httpRequestAnalyzer;
         this.initialEnvironmentMeasurers = Collections.unmodifiableList(environmentMeasurers);
@@ -84,8 +116,11 @@ public class NSysMonConfig {
         this.additionalConfigurationParameters = additionalConfigurationParameters;
         this.collectSqlParameters = collectSqlParameters;
         this.collectTooltips = collectTooltips;
+        this.fingerprintSql = fingerprintSql;
+        this.sqlBackslashEscapes = sqlBackslashEscapes;
         this.pathDatafiles = pathDatafiles;
         this.timedScalarMonitoringParameters = timedScalarMonitoringParameters;
+        this.timedScalarSamplingIntervals = Collections.unmodifiableMap(timedScalarSamplingIntervals);
 
     }
 
@@ -24,9 +24,15 @@ public class NSysMonConfigBuilder {
     private AApplicationInfoProvider appInfo;
 
     private int averagingDelayForScalarsMillis = 1_000;
+    private int maxAgeOfScalarsMillis = 2_000;
+    private int numScalarMeasurementThreads = 4;
+    private int scalarMeasurementBudgetMillis = 500;
+    private int diskUsageTtlMillis = 10_000;
+    private int diskUsageTimeoutMillis = 1_000;
 
     private int maxNestedMeasurements = 100;
     private int maxNumMeasurementsPerHierarchy = 100_000;
+    private boolean recordMeasurementsInEventBuffer = false;
     private int maxNumMeasurementsPerTimedScalar = 500;
     private int maxNumMeasurementsForCockpit = 50;
 
@@ -37,8 +43,15 @@ public class NSysMonConfigBuilder {
     private long dataSinkTimeoutNanos = 100_000;
     private int maxNumDataSinkTimeouts = 3;
 
+    private boolean asyncDataSinkDispatch = false;
+    private int dataSinkDispatchQueueSize = 10_000;
+    private int numDataSinkDispatchThreads = 1;
+    private ADispatchOverflowPolicy dataSinkDispatchOverflowPolicy = ADispatchOverflowPolicy.DROP_NEWEST;
+
     private boolean collectSqlParameters = false;
     private boolean collectTooltips = false;
+    private boolean fingerprintSql = true;
+    private boolean sqlBackslashEscapes = false;
 
     private String pathDatafiles = "/tmp";
 
@@ -54,6 +67,7 @@ public class NSysMonConfigBuilder {
     private String defaultPage;
     private Map<String, String> additionalConfigurationParameters;
     private Map<String, Object> timedScalarMonitoringParameters = new HashMap<>();
+    private final Map<String, Integer> timedScalarSamplingIntervals = new HashMap<>();
 
     public NSysMonConfigBuilder(AApplicationInfoProvider appInfo) {
         this.appInfo = appInfo;
@@ -75,6 +89,31 @@ public class NSysMonConfigBuilder {
         return this;
     }
 
+    public NSysMonConfigBuilder setMaxAgeOfScalarsMillis(int maxAgeOfScalarsMillis) {
+        this.maxAgeOfScalarsMillis = maxAgeOfScalarsMillis;
+        return this;
+    }
+
+    public NSysMonConfigBuilder setNumScalarMeasurementThreads(int numScalarMeasurementThreads) {
+        this.numScalarMeasurementThreads = numScalarMeasurementThreads;
+        return this;
+    }
+
+    public NSysMonConfigBuilder setScalarMeasurementBudgetMillis(int scalarMeasurementBudgetMillis) {
+        this.scalarMeasurementBudgetMillis = scalarMeasurementBudgetMillis;
+        return this;
+    }
+
+    public NSysMonConfigBuilder setDiskUsageTtlMillis(int diskUsageTtlMillis) {
+        this.diskUsageTtlMillis = diskUsageTtlMillis;
+        return this;
+    }
+
+    public NSysMonConfigBuilder setDiskUsageTimeoutMillis(int diskUsageTimeoutMillis) {
+        this.diskUsageTimeoutMillis = diskUsageTimeoutMillis;
+        return this;
+    }
+
     public NSysMonConfigBuilder setMaxNestedMeasurements (int maxNestedMeasurements) {
         this.maxNestedMeasurements = maxNestedMeasurements;
         return this;
@@ -85,6 +124,11 @@ public class NSysMonConfigBuilder {
         return this;
     }
 
+    public NSysMonConfigBuilder setRecordMeasurementsInEventBuffer(boolean recordMeasurementsInEventBuffer) {
+        this.recordMeasurementsInEventBuffer = recordMeasurementsInEventBuffer;
+        return this;
+    }
+
     public NSysMonConfigBuilder setMaxNumMeasurementsPerTimedScalar(int maxNum) {
         this.maxNumMeasurementsPerTimedScalar = maxNum;
         return this;
@@ -120,6 +164,16 @@ public class NSysMonConfigBuilder {
         return collectSqlParameters;
     }
 
+    public NSysMonConfigBuilder setFingerprintSql(boolean fingerprintSql) {
+        this.fingerprintSql = fingerprintSql;
+        return this;
+    }
+
+    public NSysMonConfigBuilder setSqlBackslashEscapes(boolean sqlBackslashEscapes) {
+        this.sqlBackslashEscapes = sqlBackslashEscapes;
+        return this;
+    }
+
     public NSysMonConfigBuilder setHttpRequestAnalyzer(AHttpRequestAnalyzer httpRequestAnalyzer) {
         this.httpRequestAnalyzer = httpRequestAnalyzer;
         return this;
@@ -140,6 +194,26 @@ public class NSysMonConfigBuilder {
         return this;
     }
 
+    public NSysMonConfigBuilder setAsyncDataSinkDispatch(boolean asyncDataSinkDispatch) {
+        this.asyncDataSinkDispatch = asyncDataSinkDispatch;
+        return this;
+    }
+
+    public NSysMonConfigBuilder setDataSinkDispatchQueueSize(int dataSinkDispatchQueueSize) {
+        this.dataSinkDispatchQueueSize = dataSinkDispatchQueueSize;
+        return this;
+    }
+
+    public NSysMonConfigBuilder setNumDataSinkDispatchThreads(int numDataSinkDispatchThreads) {
+        this.numDataSinkDispatchThreads = numDataSinkDispatchThreads;
+        return this;
+    }
+
+    public NSysMonConfigBuilder setDataSinkDispatchOverflowPolicy(ADispatchOverflowPolicy dataSinkDispatchOverflowPolicy) {
+        this.dataSinkDispatchOverflowPolicy = dataSinkDispatchOverflowPolicy;
+        return this;
+    }
+
     public NSysMonConfigBuilder addEnvironmentMeasurer(AEnvironmentMeasurer environmentMeasurer) {
         this.environmentMeasurers.add(environmentMeasurer);
         return this;
@@ -186,17 +260,26 @@ public class NSysMonConfigBuilder {
     public NSysMonConfig build() {
         return new NSysMonConfig(
                 appInfo,
-                averagingDelayForScalarsMillis, durationOfOneTimedScalar,
-                maxNestedMeasurements, maxNumMeasurementsPerHierarchy, maxNumMeasurementsPerTimedScalar,
+                averagingDelayForScalarsMillis, maxAgeOfScalarsMillis, numScalarMeasurementThreads, scalarMeasurementBudgetMillis, diskUsageTtlMillis, diskUsageTimeoutMillis, durationOfOneTimedScalar,
+                maxNestedMeasurements, maxNumMeasurementsPerHierarchy, recordMeasurementsInEventBuffer, maxNumMeasurementsPerTimedScalar,
                 maxNumMeasurementsForCockpit, measurementTimeoutNanos, maxNumMeasurementTimeouts,
                 dataSinkTimeoutNanos, maxNumDataSinkTimeouts,
+                asyncDataSinkDispatch, dataSinkDispatchQueueSize, numDataSinkDispatchThreads, dataSinkDispatchOverflowPolicy,
                 timer, httpRequestAnalyzer,
                 environmentMeasurers, scalarMeasurers, scalarTimedMeasurers, dataSinks,
                 defaultPage, presentationMenuEntries, additionalConfigurationParameters,
-                collectSqlParameters, collectTooltips, pathDatafiles, timedScalarMonitoringParameters
+                collectSqlParameters, collectTooltips, fingerprintSql, sqlBackslashEscapes, pathDatafiles, timedScalarMonitoringParameters, timedScalarSamplingIntervals
                 );
     }
 
+    /**
+     * @param measurerName the simple class name of the timed scalar measurer
+     */
+    public NSysMonConfigBuilder setTimedScalarSamplingInterval(String measurerName, int seconds) {
+        this.timedScalarSamplingIntervals.put(measurerName, seconds);
+        return this;
+    }
+
     public void addTimedScalarMonitoringParameter(String key, Long value) {
         this.timedScalarMonitoringParameters.put(key, value);
     }
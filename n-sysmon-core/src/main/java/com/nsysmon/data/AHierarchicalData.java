@@ -13,6 +13,7 @@ public class AHierarchicalData {
     private final long startTimeMillis;
     private final long durationNanos;
     private final String identifier;
+    private final int identifierId;
     private final boolean wasKilled;
 
     private final Map<String, String> parameters;
@@ -26,13 +27,16 @@ public class AHierarchicalData {
      *                     additional data but not being an additive part of the parent's duration. This could e.g. be the delay between
      *                     sending an asynchronous request and receiving the response.
      * @param identifier is used for aggregated rendering of results - measurements with equal identifiers are treated
-     *                   as 'equivalent'.
+     *                   as 'equivalent'. Identifiers are canonicalized through {@link ASymbolTable#IDENTIFIERS}.
      */
     public AHierarchicalData(boolean isSerial, long startTimeMillis, long durationNanos, String identifier, Map<String, String> parameters, List<AHierarchicalData> children, final boolean wasKilled) {
         this.isSerial = isSerial;
         this.startTimeMillis = startTimeMillis;
         this.durationNanos = durationNanos;
-        this.identifier = identifier.intern();
+
+        final ASymbolTable.Entry symbol = ASymbolTable.IDENTIFIERS.entryFor(identifier);
+        this.identifier = symbol.id == ASymbolTable.OTHER ? identifier : symbol.symbol;
+        this.identifierId = symbol.id;
 
         //use empty 0-size map or null for better memory management
         if (parameters.size() == 0){
@@ -75,6 +79,15 @@ public class AHierarchicalData {
         return identifier;
     }
 
+    /**
+     * @return the identifier's id in {@link ASymbolTable#IDENTIFIERS}. Measurements with the same identifier id have
+     *          equal identifiers, but identifiers that did not fit into the symbol table all share
+     *          {@link ASymbolTable#OTHER the overflow id}.
+     */
+    public int getIdentifierId() {
+        return identifierId;
+    }
+
     public Map<String, String> getParameters() {
         return parameters == null ? Collections.EMPTY_MAP : Collections.unmodifiableMap(parameters);
     }
@@ -4,29 +4,58 @@ import com.ajjpj.afoundation.util.AUUID;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.function.Supplier;
 
 
 /**
  * @author arno
  */
 public class AHierarchicalDataRoot {
-    private final AUUID uuid = AUUID.createRandom();
+    private final AUUID uuid;
     private final Collection<ACorrelationId> startedFlows;
     private final Collection<ACorrelationId> joinedFlows;
-    private final AHierarchicalData root;
     private final boolean wasKilled;
 
+    private volatile AHierarchicalData root;
+
+    /**
+     * This is null once the root node was created, or if it was passed in directly
+     */
+    private Supplier<AHierarchicalData> rootFactory;
+
+    private volatile long rootCreationNanos = 0;
+
     public AHierarchicalDataRoot(AHierarchicalData root, Collection<ACorrelationId> startedFlows, Collection<ACorrelationId> joinedFlows) {
         this(root, startedFlows, joinedFlows, false);
     }
 
     public AHierarchicalDataRoot(AHierarchicalData root, Collection<ACorrelationId> startedFlows, Collection<ACorrelationId> joinedFlows, boolean wasKilled) {
+        this(AUUID.createRandom(), root, startedFlows, joinedFlows, wasKilled);
+    }
+
+    /**
+     * This constructor restores previously created data, e.g. after it was stored temporarily.
+     */
+    public AHierarchicalDataRoot(AUUID uuid, AHierarchicalData root, Collection<ACorrelationId> startedFlows, Collection<ACorrelationId> joinedFlows, boolean wasKilled) {
+        this.uuid = uuid;
         this.startedFlows = new ArrayList<>(startedFlows);
         this.joinedFlows = new ArrayList<>(joinedFlows);
         this.root = root;
         this.wasKilled = wasKilled;
     }
 
+    /**
+     * This constructor creates the tree of measurements lazily, i.e. only when a data sink actually asks for it. The
+     *  factory is called at most once.
+     */
+    public AHierarchicalDataRoot(Supplier<AHierarchicalData> rootFactory, Collection<ACorrelationId> startedFlows, Collection<ACorrelationId> joinedFlows, boolean wasKilled) {
+        this.uuid = AUUID.createRandom();
+        this.startedFlows = new ArrayList<>(startedFlows);
+        this.joinedFlows = new ArrayList<>(joinedFlows);
+        this.rootFactory = rootFactory;
+        this.wasKilled = wasKilled;
+    }
+
     public AUUID getUuid() {
         return uuid;
     }
@@ -40,7 +69,29 @@ public class AHierarchicalDataRoot {
     }
 
     public AHierarchicalData getRootNode() {
-        return root;
+        final AHierarchicalData result = root;
+        if(result != null) {
+            return result;
+        }
+
+        synchronized (this) {
+            if(root == null && rootFactory != null) {
+                final long start = System.nanoTime();
+                final AHierarchicalData created = rootFactory.get();
+                rootCreationNanos = System.nanoTime() - start;
+                rootFactory = null;
+                root = created;
+            }
+            return root;
+        }
+    }
+
+    /**
+     * @return the time it took to create the tree of measurements lazily, or 0 if it was not created yet or passed in
+     *          directly.
+     */
+    public long getRootCreationNanos() {
+        return rootCreationNanos;
     }
 
     public boolean isKilled() {
@@ -52,7 +103,7 @@ public class AHierarchicalDataRoot {
         return "AHierarchicalDataRoot{" +
                 "startedFlows=" + startedFlows +
                 ", joinedFlows=" + joinedFlows +
-                ", root=" + root +
+                ", root=" + getRootNode() +
                 ", wasKilled=" + wasKilled +
                 '}';
     }
@@ -17,13 +17,21 @@ public class AScalarDataPoint {
             "#,##0.0000000", "#,##0.00000000", "#,##0.000000000",
             "#,##0.0000000000"};
 
-    private final AUUID uuid = AUUID.createRandom();
+    private final AUUID uuid;
     private final long timestamp;
     private final String name;
     private final long value;
     private final int numFracDigits;
 
     public AScalarDataPoint(long timestamp, String name, long value, int numFracDigits) {
+        this(AUUID.createRandom(), timestamp, name, value, numFracDigits);
+    }
+
+    /**
+     * This constructor restores a previously created data point, e.g. after it was stored temporarily.
+     */
+    public AScalarDataPoint(AUUID uuid, long timestamp, String name, long value, int numFracDigits) {
+        this.uuid = uuid;
         this.timestamp = timestamp;
         this.name = name;
         this.value = value;
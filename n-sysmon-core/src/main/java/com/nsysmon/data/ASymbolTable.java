@@ -0,0 +1,238 @@
+package com.nsysmon.data;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * This is a bounded table of canonical identifier strings, replacing <code>String.intern()</code>: The JVM's string
+ *  table is shared by the whole application, it never shrinks, and interning becomes contended with high identifier
+ *  cardinality (e.g. SQL strings with literals in them).<p>
+ *
+ * Every symbol in the table has a compact int id. The lower bits of an id are the symbol's slot in the table, and the
+ *  upper bits are the slot's generation, which is incremented when the slot's symbol is evicted. So an id is reused
+ *  for a different symbol only after its slot was evicted 2048 times, and code aggregating by id can rely on id
+ *  equality meaning symbol equality.<p>
+ *
+ * When the table is full, a new symbol replaces the least recently used symbol (approximated by a 'clock' with a
+ *  'referenced' bit per slot). Looking for a victim is limited to a few slots though: If all of them were used
+ *  recently, the new symbol is mapped to the {@link #OTHER overflow bucket} rather than evicting frequently used
+ *  symbols, which protects the table from being flushed by bursts of one-off identifiers. Symbols that overflowed are
+ *  remembered in a small direct-mapped cache, so that looking them up again is as cheap as looking up a symbol in the
+ *  table. They are retried after a number of lookups though, so that a symbol that turns out to be used frequently
+ *  eventually gets a slot of its own.<p>
+ *
+ * Looking up a symbol that is already in the table does not lock and usually does not write shared memory. Adding a
+ *  symbol does not take a global lock either: Slots are claimed by compare-and-set, and threads adding the same symbol
+ *  concurrently agree on a single entry through <code>ConcurrentHashMap.computeIfAbsent()</code>, which only locks the
+ *  symbol's hash bin.
+ *
+ * @author arno
+ */
+public class ASymbolTable {
+    public static final String PROPNAME_MAX_NUM_IDENTIFIERS = "com.nsysmon.maxnumidentifiers";
+    public static final int DEFAULT_MAX_NUM_IDENTIFIERS = 100_000;
+
+    private static final int SLOT_BITS = 20;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final int GENERATION_MASK = (1 << (31 - SLOT_BITS)) - 1;
+
+    /**
+     * the maximum number of slots that are inspected to find a victim for eviction
+     */
+    private static final int MAX_EVICTION_SCAN = 16;
+
+    /**
+     * the number of entries in the cache of overflowed symbols, a power of two
+     */
+    private static final int OVERFLOW_CACHE_SIZE = 1024;
+
+    /**
+     * an overflowed symbol is mapped to {@link #OTHER} without trying to add it to the table this many times
+     */
+    static final int OVERFLOW_RETRY_INTERVAL = 64;
+
+    public static final String OTHER_SYMBOL = "<other>";
+
+    /**
+     * This is the overflow bucket, i.e. the id for symbols that did not fit into the table.
+     */
+    public static final int OTHER = 0;
+
+    /**
+     * This is the table used for the identifiers of all measurements.
+     */
+    public static final ASymbolTable IDENTIFIERS = new ASymbolTable(Integer.getInteger(PROPNAME_MAX_NUM_IDENTIFIERS, DEFAULT_MAX_NUM_IDENTIFIERS));
+
+    private final ConcurrentHashMap<String, Entry> bySymbol = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicReferenceArray<OverflowEntry> overflowCache = new AtomicReferenceArray<>(OVERFLOW_CACHE_SIZE);
+
+    private final AtomicInteger numUsedSlots = new AtomicInteger(1);
+    private final AtomicInteger clockHand = new AtomicInteger(1);
+
+    public ASymbolTable(int capacity) {
+        if(capacity < 2 || capacity > SLOT_MASK) {
+            throw new IllegalArgumentException("capacity must be between 2 and " + SLOT_MASK + ": " + capacity);
+        }
+
+        slots = new AtomicReferenceArray<>(capacity);
+        slots.set(OTHER, new Entry(OTHER, OTHER_SYMBOL));
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    /**
+     * @return the number of symbols in the table, including the overflow bucket
+     */
+    public int size() {
+        return numUsedSlots.get();
+    }
+
+    /**
+     * @return the symbol's id, or {@link #OTHER} if the symbol does not fit into the table
+     */
+    public int idOf(String symbol) {
+        return entryFor(symbol).id;
+    }
+
+    /**
+     * @return the table's instance of the symbol, or the symbol itself if it does not fit into the table
+     */
+    public String canonical(String symbol) {
+        final Entry entry = entryFor(symbol);
+        return entry.id == OTHER ? symbol : entry.symbol;
+    }
+
+    /**
+     * @return the table's instance of the symbol if it is in the table, or the symbol itself otherwise. In contrast to
+     *          {@link #canonical(String)}, this method never adds the symbol to the table.
+     */
+    public String canonicalIfPresent(String symbol) {
+        final Entry entry = bySymbol.get(symbol);
+        return entry == null ? symbol : entry.symbol;
+    }
+
+    /**
+     * @return the symbol for a given id, or <code>null</code> if the id is outdated, i.e. its symbol was evicted
+     */
+    public String symbolOf(int id) {
+        final Entry entry = slots.get(id & SLOT_MASK);
+        return entry != null && entry.id == id ? entry.symbol : null;
+    }
+
+    Entry entryFor(String symbol) {
+        final Entry existing = bySymbol.get(symbol);
+        if(existing != null) {
+            if(! existing.isReferenced) {
+                existing.isReferenced = true;
+            }
+            return existing;
+        }
+
+        final int overflowIdx = overflowCacheIndex(symbol);
+        final OverflowEntry overflowed = overflowCache.get(overflowIdx);
+        if(overflowed != null && overflowed.symbol.equals(symbol) && ++overflowed.numHits < OVERFLOW_RETRY_INTERVAL) {
+            return slots.get(OTHER);
+        }
+
+        // the evicted entry is removed from the map only after computeIfAbsent returns - its mapping function must
+        //  not modify other mappings
+        final Entry[] evicted = new Entry[1];
+        final Entry result = bySymbol.computeIfAbsent(symbol, s -> claimSlot(s, evicted));
+        if(evicted[0] != null) {
+            bySymbol.remove(evicted[0].symbol, evicted[0]);
+        }
+        if(result != null) {
+            return result;
+        }
+        overflowCache.set(overflowIdx, new OverflowEntry(symbol));
+        return slots.get(OTHER);
+    }
+
+    private static int overflowCacheIndex(String symbol) {
+        final int h = symbol.hashCode();
+        return (h ^ (h >>> 16)) & (OVERFLOW_CACHE_SIZE - 1);
+    }
+
+    /**
+     * @return a new entry for the symbol, or <code>null</code> if there is no slot for it
+     */
+    private Entry claimSlot(String symbol, Entry[] evicted) {
+        int numUsed;
+        while((numUsed = numUsedSlots.get()) < slots.length()) {
+            if(numUsedSlots.compareAndSet(numUsed, numUsed+1)) {
+                final Entry result = new Entry(numUsed, symbol);
+                slots.set(numUsed, result);
+                return result;
+            }
+        }
+
+        // never look at a slot twice in a single scan
+        final int maxScan = Math.min(MAX_EVICTION_SCAN, slots.length() - 1);
+        for(int i=0; i<maxScan; i++) {
+            final int slot = advanceClockHand();
+
+            final Entry candidate = slots.get(slot);
+            if(candidate == null) {
+                // claimed concurrently, but not filled yet
+                continue;
+            }
+            if(candidate.isReferenced) {
+                candidate.isReferenced = false;
+                continue;
+            }
+
+            final Entry result = new Entry(((((candidate.id >>> SLOT_BITS) + 1) & GENERATION_MASK) << SLOT_BITS) | slot, symbol);
+            if(slots.compareAndSet(slot, candidate, result)) {
+                evicted[0] = candidate;
+                return result;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the slot the clock hand pointed to before it was advanced
+     */
+    private int advanceClockHand() {
+        while(true) {
+            final int result = clockHand.get();
+            if(clockHand.compareAndSet(result, result + 1 < slots.length() ? result + 1 : 1)) {
+                return result;
+            }
+        }
+    }
+
+    private static class OverflowEntry {
+        final String symbol;
+
+        /**
+         * This is read and written without synchronization - lost updates only delay retrying the symbol.
+         */
+        int numHits = 0;
+
+        OverflowEntry(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+
+    static class Entry {
+        final int id;
+        final String symbol;
+
+        /**
+         * This is read and written without synchronization - it is only a hint for eviction.
+         */
+        boolean isReferenced = true;
+
+        Entry(int id, String symbol) {
+            this.id = id;
+            this.symbol = symbol;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.nsysmon.data;
+
+import java.util.Arrays;
+
+
+/**
+ * This is the history of a single timed scalar, stored in columns: a <code>long[]</code> of timestamps and a
+ *  <code>long[]</code> of raw values that share the scalar's name and precision. That avoids an object (with its own
+ *  UUID and references) per measurement, which adds up to millions of long-lived objects for long histories.<p>
+ *
+ * The buffer is a ring that overwrites its oldest entries once <code>capacity</code> is reached. Its arrays grow on
+ *  demand up to that capacity, so scalars with a short history do not pay for the maximum size.<p>
+ *
+ * Data is read through {@link #view(int) views} of the newest entries. Several views can share the same storage,
+ *  e.g. the full history and the shorter window used for monitoring.<p>
+ *
+ * A buffer can have {@link ATimedScalarRollup rollup} tiers that keep an aggregated history of the scalar at coarser
+ *  resolutions, reaching much further back than the raw samples. They are updated with every sample.
+ *
+ * @author arno
+ */
+public class ATimedScalarBuffer {
+    private static final int INITIAL_SIZE = 64;
+
+    private static final long[] pow = new long[] {1L, 10L, 100L, 1000L, 10*1000L, 100*1000L, 1000*1000L, 10*1000*1000L, 100*1000*1000L, 1000*1000*1000L};
+
+    private final String name;
+    private final int numFracDigits;
+    private final int capacity;
+    /**
+     * ordered from finest to coarsest resolution
+     */
+    private final ATimedScalarRollup[] rollups;
+
+    private long[] timestamps;
+    private long[] values;
+
+    /**
+     * the total number of entries that were ever put into the buffer; the next entry goes to <code>numPut % capacity</code>
+     */
+    private long numPut = 0;
+
+    public ATimedScalarBuffer(String name, int numFracDigits, int capacity, ATimedScalarRollup... rollups) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.name = name;
+        this.numFracDigits = numFracDigits;
+        this.capacity = capacity;
+        this.rollups = rollups.clone();
+        Arrays.sort(this.rollups, (r1, r2) -> Long.compare(r1.getBucketMillis(), r2.getBucketMillis()));
+
+        final int initialSize = Math.min(capacity, INITIAL_SIZE);
+        this.timestamps = new long[initialSize];
+        this.values = new long[initialSize];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getNumFracDigits() {
+        return numFracDigits;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * adds a data point. Its value is converted to this buffer's precision if the data point has a different number of
+     *  fraction digits.
+     */
+    public void put(AScalarDataPoint dataPoint) {
+        put(dataPoint.getTimestamp(), rescale(dataPoint.getValueRaw(), dataPoint.getNumFracDigits()));
+    }
+
+    /**
+     * @param valueRaw the value with this buffer's number of fraction digits
+     */
+    public synchronized void put(long timestamp, long valueRaw) {
+        final int idx = (int) (numPut % capacity);
+        if(idx >= timestamps.length) {
+            final int newSize = (int) Math.min(capacity, 2L * timestamps.length);
+            timestamps = Arrays.copyOf(timestamps, newSize);
+            values = Arrays.copyOf(values, newSize);
+        }
+
+        timestamps[idx] = timestamp;
+        values[idx] = valueRaw;
+        numPut += 1;
+
+        for(ATimedScalarRollup rollup: rollups) {
+            rollup.add(timestamp, valueRaw);
+        }
+    }
+
+    private long rescale(long valueRaw, int valueFracDigits) {
+        if(valueFracDigits == numFracDigits) {
+            return valueRaw;
+        }
+        if(valueFracDigits < numFracDigits) {
+            return valueRaw * pow[numFracDigits - valueFracDigits];
+        }
+        return Math.round((double) valueRaw / pow[valueFracDigits - numFracDigits]);
+    }
+
+    public synchronized int size() {
+        return (int) Math.min(numPut, capacity);
+    }
+
+    public synchronized void clear() {
+        numPut = 0;
+        for(ATimedScalarRollup rollup: rollups) {
+            rollup.clear();
+        }
+    }
+
+    /**
+     * @return a view of the (up to) <code>maxEntries</code> newest entries. The view reflects later changes of the buffer.
+     */
+    public ATimedScalarSeries view(int maxEntries) {
+        return new ATimedScalarSeries(this, Math.min(maxEntries, capacity));
+    }
+
+    /**
+     * @return a view of all entries in the buffer
+     */
+    public ATimedScalarSeries view() {
+        return view(capacity);
+    }
+
+    /**
+     * copies the (up to) <code>maxEntries</code> newest entries, oldest first
+     */
+    synchronized ATimedScalarSeries.Samples copyNewest(int maxEntries) {
+        final int num = (int) Math.min(maxEntries, Math.min(numPut, capacity));
+        final long[] resultTimestamps = new long[num];
+        final long[] resultValues = new long[num];
+
+        final int start = (int) ((numPut - num) % capacity);
+        final int numFirst = Math.min(num, capacity - start);
+        System.arraycopy(timestamps, start, resultTimestamps, 0, numFirst);
+        System.arraycopy(values, start, resultValues, 0, numFirst);
+        System.arraycopy(timestamps, 0, resultTimestamps, numFirst, num - numFirst);
+        System.arraycopy(values, 0, resultValues, numFirst, num - numFirst);
+
+        return new ATimedScalarSeries.Samples(name, numFracDigits, resultTimestamps, resultValues);
+    }
+
+    /**
+     * @see ATimedScalarSeries#samplesSince(long, int)
+     */
+    synchronized ATimedScalarSeries.Samples copySince(int maxEntries, long fromMillis, int maxNumEntries) {
+        final int numVisible = (int) Math.min(maxEntries, Math.min(numPut, capacity));
+        final long oldestVisible = numVisible == 0 ? Long.MAX_VALUE : timestamps[(int) ((numPut - numVisible) % capacity)];
+
+        if(fromMillis == Long.MIN_VALUE) {
+            // all available history, i.e. everything the tier reaching furthest back has
+            fromMillis = oldestVisible;
+            for(ATimedScalarRollup rollup: rollups) {
+                fromMillis = Math.min(fromMillis, rollup.getOldestTimestamp());
+            }
+        }
+
+        final boolean isRawComplete = numPut <= maxEntries;
+        if(isRawComplete || oldestVisible <= fromMillis || rollups.length == 0) {
+            final int numRaw = numRawSince(numVisible, fromMillis);
+            if(numRaw <= maxNumEntries || rollups.length == 0) {
+                return copyNewest(numRaw);
+            }
+        }
+
+        for(ATimedScalarRollup rollup: rollups) {
+            if((rollup.isComplete() || rollup.getOldestTimestamp() <= fromMillis) && rollup.numBucketsSince(fromMillis) <= maxNumEntries) {
+                return rollup.copySince(name, numFracDigits, fromMillis);
+            }
+        }
+        return rollups[rollups.length-1].copySince(name, numFracDigits, fromMillis);
+    }
+
+    private int numRawSince(int numVisible, long fromMillis) {
+        int result = 0;
+        while(result < numVisible && timestamps[(int) ((numPut - result - 1) % capacity)] >= fromMillis) {
+            result += 1;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,149 @@
+package com.nsysmon.data;
+
+import java.util.Arrays;
+
+
+/**
+ * This is a coarser-grained tier of a timed scalar's history. It aggregates samples into buckets of a fixed duration,
+ *  keeping min, max, sum and count per bucket, and it is updated incrementally as samples arrive. Like the raw
+ *  history, it is a ring of primitive columns that overwrites its oldest buckets, and its arrays grow on demand.<p>
+ *
+ * Instances are not thread safe, they are guarded by the {@link ATimedScalarBuffer} they belong to.
+ *
+ * @author arno
+ */
+public class ATimedScalarRollup {
+    private static final int INITIAL_SIZE = 16;
+
+    private final long bucketMillis;
+    private final int capacity;
+
+    private long[] starts;
+    private long[] mins;
+    private long[] maxs;
+    private long[] sums;
+    private int[] counts;
+
+    private long numBuckets = 0;
+
+    public ATimedScalarRollup(long bucketMillis, int capacity) {
+        if(bucketMillis <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("bucket duration and capacity must be positive");
+        }
+        this.bucketMillis = bucketMillis;
+        this.capacity = capacity;
+
+        final int initialSize = Math.min(capacity, INITIAL_SIZE);
+        starts = new long[initialSize];
+        mins = new long[initialSize];
+        maxs = new long[initialSize];
+        sums = new long[initialSize];
+        counts = new int[initialSize];
+    }
+
+    /**
+     * @return the default tiers: one minute for a day, 15 minutes for a week and one hour for a month
+     */
+    public static ATimedScalarRollup[] createDefaultTiers() {
+        return new ATimedScalarRollup[] {
+                new ATimedScalarRollup(60_000L, 24*60),
+                new ATimedScalarRollup(15*60_000L, 7*24*4),
+                new ATimedScalarRollup(60*60_000L, 31*24)
+        };
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    void add(long timestamp, long valueRaw) {
+        final long start = timestamp - Math.floorMod(timestamp, bucketMillis);
+
+        // samples usually arrive in order, so they belong to the newest bucket or start a new one
+        for(long i = numBuckets-1; i >= Math.max(0, numBuckets - capacity); i--) {
+            final int idx = (int) (i % capacity);
+            if(starts[idx] == start) {
+                mins[idx] = Math.min(mins[idx], valueRaw);
+                maxs[idx] = Math.max(maxs[idx], valueRaw);
+                sums[idx] += valueRaw;
+                counts[idx] += 1;
+                return;
+            }
+            if(starts[idx] < start) {
+                break;
+            }
+        }
+
+        if(numBuckets > 0 && starts[(int) ((numBuckets-1) % capacity)] > start) {
+            // a late sample for a bucket that was overwritten already
+            return;
+        }
+
+        final int idx = (int) (numBuckets % capacity);
+        if(idx >= starts.length) {
+            final int newSize = (int) Math.min(capacity, 2L * starts.length);
+            starts = Arrays.copyOf(starts, newSize);
+            mins = Arrays.copyOf(mins, newSize);
+            maxs = Arrays.copyOf(maxs, newSize);
+            sums = Arrays.copyOf(sums, newSize);
+            counts = Arrays.copyOf(counts, newSize);
+        }
+        starts[idx] = start;
+        mins[idx] = valueRaw;
+        maxs[idx] = valueRaw;
+        sums[idx] = valueRaw;
+        counts[idx] = 1;
+        numBuckets += 1;
+    }
+
+    /**
+     * @return true if no bucket was overwritten yet, i.e. this tier holds all data since it was created
+     */
+    boolean isComplete() {
+        return numBuckets <= capacity;
+    }
+
+    /**
+     * @return the start of the oldest bucket, or <code>Long.MAX_VALUE</code> if there is no data
+     */
+    long getOldestTimestamp() {
+        return numBuckets == 0 ? Long.MAX_VALUE : starts[(int) (Math.max(0, numBuckets - capacity) % capacity)];
+    }
+
+    /**
+     * @return the number of buckets that contain data from <code>fromMillis</code> onwards
+     */
+    int numBucketsSince(long fromMillis) {
+        int result = 0;
+        for(long i = numBuckets-1; i >= Math.max(0, numBuckets - capacity); i--) {
+            if(starts[(int) (i % capacity)] + bucketMillis <= fromMillis) {
+                break;
+            }
+            result += 1;
+        }
+        return result;
+    }
+
+    void clear() {
+        numBuckets = 0;
+    }
+
+    ATimedScalarSeries.Samples copySince(String name, int numFracDigits, long fromMillis) {
+        final int num = numBucketsSince(fromMillis);
+        final long[] resultStarts = new long[num];
+        final long[] resultMins = new long[num];
+        final long[] resultMaxs = new long[num];
+        final long[] resultSums = new long[num];
+        final int[] resultCounts = new int[num];
+
+        for(int i=0; i<num; i++) {
+            final int idx = (int) ((numBuckets - num + i) % capacity);
+            resultStarts[i] = starts[idx];
+            resultMins[i] = mins[idx];
+            resultMaxs[i] = maxs[idx];
+            resultSums[i] = sums[idx];
+            resultCounts[i] = counts[idx];
+        }
+        return new ATimedScalarSeries.Samples(name, numFracDigits, bucketMillis, resultStarts, resultSums, resultMins, resultMaxs, resultCounts);
+    }
+}
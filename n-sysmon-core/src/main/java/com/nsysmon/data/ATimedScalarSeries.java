@@ -0,0 +1,160 @@
+package com.nsysmon.data;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * This is a lightweight, read-only view of the newest entries of an {@link ATimedScalarBuffer}. It does not copy any
+ *  data until it is read, and it always reflects the buffer's current content.<p>
+ *
+ * Reading is done via {@link #samples()} or {@link #samplesSince(long, int)}, which copy the entries' primitive columns in a single step, so readers do
+ *  not block the measuring thread while they process the data. Iterating over the view creates
+ *  {@link AScalarDataPoint} instances on the fly for code that needs them; they have no UUID.
+ *
+ * @author arno
+ */
+public class ATimedScalarSeries implements Iterable<AScalarDataPoint> {
+    private final ATimedScalarBuffer buffer;
+    private final int maxEntries;
+
+    ATimedScalarSeries(ATimedScalarBuffer buffer, int maxEntries) {
+        this.buffer = buffer;
+        this.maxEntries = maxEntries;
+    }
+
+    public String getName() {
+        return buffer.getName();
+    }
+
+    public int getNumFracDigits() {
+        return buffer.getNumFracDigits();
+    }
+
+    public int size() {
+        return Math.min(maxEntries, buffer.size());
+    }
+
+    /**
+     * @return a copy of the entries currently visible through this view, oldest first
+     */
+    public Samples samples() {
+        return buffer.copyNewest(maxEntries);
+    }
+
+    /**
+     * This method picks the finest-grained tier of the scalar's history - the raw samples or one of the rollups -
+     *  that covers the requested range with no more than <code>maxNumEntries</code> entries. If no tier is that
+     *  compact, the coarsest tier is used.
+     *
+     * @param fromMillis the start of the requested range, or <code>Long.MIN_VALUE</code> for all available history
+     * @return a copy of the entries from <code>fromMillis</code> onwards, oldest first
+     */
+    public Samples samplesSince(long fromMillis, int maxNumEntries) {
+        return buffer.copySince(maxEntries, fromMillis, maxNumEntries);
+    }
+
+    @Override public Iterator<AScalarDataPoint> iterator() {
+        final Samples samples = samples();
+
+        return new Iterator<AScalarDataPoint>() {
+            int idx = 0;
+
+            @Override public boolean hasNext() {
+                return idx < samples.size();
+            }
+
+            @Override public AScalarDataPoint next() {
+                if(! hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final AScalarDataPoint result = samples.getDataPoint(idx);
+                idx += 1;
+                return result;
+            }
+        };
+    }
+
+    /**
+     * This is a snapshot of a series' entries in primitive columns. The entries are either raw samples or, if
+     *  {@link #getResolutionMillis()} is positive, buckets of a rollup tier that aggregate several samples. The
+     *  timestamp of a bucket is its start, and its value is the average of its samples.
+     */
+    public static class Samples {
+        private final String name;
+        private final int numFracDigits;
+        private final long resolutionMillis;
+        private final long[] timestamps;
+        /**
+         * raw values, or the sums of the buckets' values for rollups
+         */
+        private final long[] values;
+        private final long[] mins;
+        private final long[] maxs;
+        private final int[] counts;
+        private final double divisor;
+
+        Samples(String name, int numFracDigits, long[] timestamps, long[] values) {
+            this(name, numFracDigits, 0, timestamps, values, values, values, null);
+        }
+
+        Samples(String name, int numFracDigits, long resolutionMillis, long[] timestamps, long[] values, long[] mins, long[] maxs, int[] counts) {
+            this.name = name;
+            this.numFracDigits = numFracDigits;
+            this.resolutionMillis = resolutionMillis;
+            this.timestamps = timestamps;
+            this.values = values;
+            this.mins = mins;
+            this.maxs = maxs;
+            this.counts = counts;
+            this.divisor = Math.pow(10, numFracDigits);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getNumFracDigits() {
+            return numFracDigits;
+        }
+
+        /**
+         * @return the duration of a rollup bucket, or 0 for raw samples
+         */
+        public long getResolutionMillis() {
+            return resolutionMillis;
+        }
+
+        public int size() {
+            return timestamps.length;
+        }
+
+        public long getTimestamp(int idx) {
+            return timestamps[idx];
+        }
+
+        public int getCount(int idx) {
+            return counts == null ? 1 : counts[idx];
+        }
+
+        public long getValueRaw(int idx) {
+            return counts == null ? values[idx] : Math.round((double) values[idx] / counts[idx]);
+        }
+
+        public double getValue(int idx) {
+            return values[idx] / divisor / getCount(idx);
+        }
+
+        public double getMin(int idx) {
+            return mins[idx] / divisor;
+        }
+
+        public double getMax(int idx) {
+            return maxs[idx] / divisor;
+        }
+
+        public AScalarDataPoint getDataPoint(int idx) {
+            return new AScalarDataPoint(null, timestamps[idx], name, getValueRaw(idx), numFracDigits);
+        }
+    }
+}
@@ -9,4 +9,14 @@ import com.nsysmon.util.AShutdownable;
 public interface ADataSink extends AShutdownable {
     void onStartedHierarchicalMeasurement(String identifier);
     void onFinishedHierarchicalMeasurement(AHierarchicalDataRoot data);
+
+    /**
+     * If N-SysMon is configured for asynchronous dispatch, finished measurements are passed to data sinks on dedicated
+     *  dispatcher threads rather than on the thread that did the measuring. Data sinks that rely on being called on
+     *  the measuring thread (e.g. because they use <code>Thread.currentThread()</code>) or that are so cheap that
+     *  queueing would cost more than calling them directly, can opt out of that by returning <code>true</code> here.
+     */
+    default boolean requiresSynchronousDispatch() {
+        return false;
+    }
 }
@@ -0,0 +1,106 @@
+package com.nsysmon.datasink.offloadhttpjson;
+
+import com.nsysmon.data.AHierarchicalDataRoot;
+import com.nsysmon.data.AScalarDataPoint;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static com.nsysmon.datasink.offloadhttpjson.AOffloadingBinaryFormat.*;
+
+
+/**
+ * This entity sends the same data as {@link AJsonOffloadingEntity}, but in the compact format defined by
+ *  {@link AOffloadingBinaryFormat}.
+ *
+ * @author arno
+ */
+class ABinaryOffloadingEntity extends AbstractHttpEntity {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String sender;
+    private final String senderInstance;
+    private final boolean compress;
+
+    private final List<AHierarchicalDataRoot> traces = new ArrayList<>();
+    private final List<AScalarDataPoint> scalarData = new ArrayList<>();
+
+    ABinaryOffloadingEntity(List<AHierarchicalDataRoot> traces, Collection<AScalarDataPoint> scalarData, String sender, String senderInstance, boolean compress) {
+        setChunked(true);
+        setContentType(CONTENT_TYPE);
+
+        this.sender = sender;
+        this.senderInstance = senderInstance;
+        this.compress = compress;
+
+        this.traces.addAll(traces);
+        this.scalarData.addAll(scalarData);
+    }
+
+    @Override public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override public long getContentLength() {
+        return -1; // streaming sending means chunked HTTP
+    }
+
+    @Override public InputStream getContent() throws IOException, IllegalStateException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public void writeTo(OutputStream outstream) throws IOException {
+        final OutputStream buffered = new BufferedOutputStream(outstream, BUFFER_SIZE);
+        writeHeader(buffered, compress ? FLAG_DEFLATE : 0);
+
+        if(compress) {
+            // favor CPU over the last few percent of compression ratio, the data is in the monitored application's JVM
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                final DeflaterOutputStream deflated = new DeflaterOutputStream(buffered, deflater, BUFFER_SIZE);
+                writeRoot(deflated);
+                deflated.finish();
+            }
+            finally {
+                deflater.end();
+            }
+        }
+        else {
+            writeRoot(buffered);
+        }
+        buffered.flush();
+    }
+
+    @Override public boolean isStreaming() {
+        return true;
+    }
+
+    private void writeRoot(OutputStream out) throws IOException {
+        final ABinaryOffloadingWriter writer = new ABinaryOffloadingWriter(out);
+        final long senderTimestamp = System.currentTimeMillis();
+
+        writer.writeString(sender);
+        writer.writeString(senderInstance);
+        writeVarLong(out, senderTimestamp);
+
+        writeVarLong(out, traces.size());
+        for(AHierarchicalDataRoot trace: traces) {
+            writer.writeTraceRoot(trace, senderTimestamp);
+        }
+
+        writeVarLong(out, scalarData.size());
+        for(AScalarDataPoint scalar: scalarData) {
+            writer.writeScalar(scalar, senderTimestamp);
+        }
+
+        writeVarLong(out, 0); // environment data is not sent yet
+    }
+}
@@ -0,0 +1,88 @@
+package com.nsysmon.datasink.offloadhttpjson;
+
+import com.ajjpj.afoundation.util.AUUID;
+import com.nsysmon.data.ACorrelationId;
+import com.nsysmon.data.AHierarchicalData;
+import com.nsysmon.data.AHierarchicalDataRoot;
+import com.nsysmon.data.AScalarDataPoint;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.nsysmon.datasink.offloadhttpjson.AOffloadingBinaryFormat.*;
+
+
+/**
+ * This class reads data written by {@link ABinaryOffloadingWriter} back into n-sysmon's data classes, preserving
+ *  UUIDs. An instance holds the string dictionary of a single request (or spool record), so it must not be reused.
+ *
+ * @author arno
+ */
+class ABinaryOffloadingReader {
+    private final InputStream in;
+    private final List<String> dictionary = new ArrayList<>();
+
+    private long prevDurationNanos;
+
+    ABinaryOffloadingReader(InputStream in) {
+        this.in = in;
+    }
+
+    String readString() throws IOException {
+        return AOffloadingBinaryFormat.readString(in, dictionary);
+    }
+
+    AHierarchicalDataRoot readTraceRoot(long baseTimestamp) throws IOException {
+        final AUUID uuid = AUUID.fromBytes(readBytes(in));
+        final List<ACorrelationId> startedFlows = readCorrelationIds();
+        final List<ACorrelationId> joinedFlows = readCorrelationIds();
+
+        prevDurationNanos = 0;
+        return new AHierarchicalDataRoot(uuid, readTraceRec(baseTimestamp), startedFlows, joinedFlows, false);
+    }
+
+    private List<ACorrelationId> readCorrelationIds() throws IOException {
+        final int num = readLength(in, MAX_LIST_SIZE);
+        final List<ACorrelationId> result = new ArrayList<>(num);
+        for(int i=0; i<num; i++) {
+            final String qualifier = readString();
+            result.add(new ACorrelationId(qualifier, readString(), null));
+        }
+        return result;
+    }
+
+    private AHierarchicalData readTraceRec(long parentStartTimeMillis) throws IOException {
+        final String identifier = readString();
+        final long header = readVarLong(in);
+        final long startTimeMillis = parentStartTimeMillis + readSignedVarLong(in);
+        prevDurationNanos += readSignedVarLong(in);
+        final long durationNanos = prevDurationNanos;
+
+        final int numParams = readLength(in, MAX_LIST_SIZE);
+        final Map<String, String> parameters = numParams == 0 ? Collections.emptyMap() : new HashMap<>();
+        for(int i=0; i<numParams; i++) {
+            final String key = readString();
+            parameters.put(key, readString());
+        }
+
+        final long numChildren = header >>> 1;
+        final List<AHierarchicalData> children = new ArrayList<>();
+        for(long i=0; i<numChildren; i++) {
+            children.add(readTraceRec(startTimeMillis));
+        }
+        return new AHierarchicalData((header & 1) != 0, startTimeMillis, durationNanos, identifier, parameters, children, false);
+    }
+
+    AScalarDataPoint readScalar(long baseTimestamp) throws IOException {
+        final AUUID uuid = AUUID.fromBytes(readBytes(in));
+        final String name = readString();
+        final long timestamp = baseTimestamp + readSignedVarLong(in);
+        final long valueRaw = readSignedVarLong(in);
+        return new AScalarDataPoint(uuid, timestamp, name, valueRaw, readVarInt(in));
+    }
+}
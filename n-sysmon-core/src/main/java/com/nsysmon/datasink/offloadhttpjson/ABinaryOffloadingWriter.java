@@ -0,0 +1,85 @@
+package com.nsysmon.datasink.offloadhttpjson;
+
+import com.nsysmon.data.ACorrelationId;
+import com.nsysmon.data.AHierarchicalData;
+import com.nsysmon.data.AHierarchicalDataRoot;
+import com.nsysmon.data.AScalarDataPoint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.nsysmon.datasink.offloadhttpjson.AOffloadingBinaryFormat.*;
+
+
+/**
+ * This class writes traces and scalar data points in the encoding defined by {@link AOffloadingBinaryFormat}. An
+ *  instance holds the string dictionary of a single request (or spool record), so it must not be reused.
+ *
+ * @author arno
+ */
+class ABinaryOffloadingWriter {
+    private final OutputStream out;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+
+    private long prevDurationNanos;
+
+    ABinaryOffloadingWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    void writeString(String s) throws IOException {
+        AOffloadingBinaryFormat.writeString(out, s, dictionary);
+    }
+
+    /**
+     * @param baseTimestamp the timestamp the root node's start time is stored relative to
+     */
+    void writeTraceRoot(AHierarchicalDataRoot trace, long baseTimestamp) throws IOException {
+        writeBytes(out, trace.getUuid().getData());
+        writeCorrelationIds(trace.getStartedFlows());
+        writeCorrelationIds(trace.getJoinedFlows());
+
+        prevDurationNanos = 0;
+        writeTraceRec(trace.getRootNode(), baseTimestamp);
+    }
+
+    private void writeCorrelationIds(Collection<ACorrelationId> flows) throws IOException {
+        writeVarLong(out, flows.size());
+        for(ACorrelationId flow: flows) {
+            writeString(flow.getQualifier());
+            writeString(flow.getId());
+        }
+    }
+
+    private void writeTraceRec(AHierarchicalData trace, long parentStartTimeMillis) throws IOException {
+        writeString(trace.getIdentifier());
+        writeVarLong(out, ((long) trace.getChildren().size() << 1) | (trace.isSerial() ? 1 : 0));
+        writeSignedVarLong(out, trace.getStartTimeMillis() - parentStartTimeMillis);
+        writeSignedVarLong(out, trace.getDurationNanos() - prevDurationNanos);
+        prevDurationNanos = trace.getDurationNanos();
+
+        writeVarLong(out, trace.getParameters().size());
+        for(Map.Entry<String, String> param: trace.getParameters().entrySet()) {
+            writeString(param.getKey());
+            writeString(param.getValue());
+        }
+
+        for(AHierarchicalData child: trace.getChildren()) {
+            writeTraceRec(child, trace.getStartTimeMillis());
+        }
+    }
+
+    /**
+     * @param baseTimestamp the timestamp the data point's timestamp is stored relative to
+     */
+    void writeScalar(AScalarDataPoint scalar, long baseTimestamp) throws IOException {
+        writeBytes(out, scalar.getUuid().getData());
+        writeString(scalar.getName());
+        writeSignedVarLong(out, scalar.getTimestamp() - baseTimestamp);
+        writeSignedVarLong(out, scalar.getValueRaw());
+        writeVarLong(out, scalar.getNumFracDigits());
+    }
+}
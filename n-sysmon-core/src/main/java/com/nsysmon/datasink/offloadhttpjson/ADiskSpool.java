@@ -0,0 +1,335 @@
+package com.nsysmon.datasink.offloadhttpjson;
+
+import com.nsysmon.config.log.NSysMonLogger;
+import com.nsysmon.data.AHierarchicalDataRoot;
+import com.nsysmon.data.AScalarDataPoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+
+/**
+ * This is a local, durable buffer for data that can not be sent to the server, e.g. during a server outage. It stores
+ *  traces and scalar data points in append-only segment files of a fixed size that are memory mapped, and it
+ *  returns them in the order they were appended. Segments are deleted once they were read completely.<p>
+ *
+ * Every record consists of its length, the CRC32 of its payload, and the payload itself - a trace or scalar data
+ *  point in the encoding of {@link AOffloadingBinaryFormat}. Replay stops at the first record in a segment whose CRC
+ *  does not match, so a crash while writing can at worst lose the records at the end of a segment.<p>
+ *
+ * Segments that exist on startup are replayed before newly appended data. The position inside a segment is not
+ *  stored, so a restart can cause data to be sent twice. That is harmless because data is identified by its UUID.<p>
+ *
+ * The total size of all segments is limited by a quota. When it is reached, new data is discarded.
+ *
+ * @author arno
+ */
+public class ADiskSpool {
+    private static final NSysMonLogger log = NSysMonLogger.get(ADiskSpool.class);
+
+    public static final String SEGMENT_FILE_PREFIX = "nsysmon-spool-";
+    public static final String SEGMENT_FILE_SUFFIX = ".seg";
+
+    public static final int DEFAULT_SEGMENT_SIZE = 16*1024*1024;
+
+    static final int RECORD_HEADER_SIZE = 8;
+
+    private static final int KIND_TRACE = 1;
+    private static final int KIND_SCALAR = 2;
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxNumSegments;
+
+    /**
+     * all segments on disk, oldest first. The first segment is the one being read, the last one is being written.
+     */
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private int readPos = 0;
+
+    private volatile boolean isEmpty;
+    private boolean isQuotaExceeded = false;
+    private long numDiscarded = 0;
+
+    /**
+     * @param maxDiskBytes the quota for all segment files together, it must be big enough for at least two segments
+     */
+    public ADiskSpool(File directory, int segmentSize, long maxDiskBytes) throws IOException {
+        if(maxDiskBytes < 2L * segmentSize) {
+            throw new IllegalArgumentException("quota must be at least two segments");
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxNumSegments = (int) Math.min(Integer.MAX_VALUE, maxDiskBytes / segmentSize);
+
+        if(! directory.isDirectory() && ! directory.mkdirs()) {
+            throw new IOException("could not create spool directory " + directory);
+        }
+
+        final List<Long> existing = new ArrayList<>();
+        final File[] files = directory.listFiles();
+        if(files != null) {
+            for(File f: files) {
+                final long seqNo = parseSeqNo(f.getName());
+                if(seqNo >= 0) {
+                    existing.add(seqNo);
+                }
+            }
+        }
+        Collections.sort(existing);
+        for(long seqNo: existing) {
+            segments.add(new Segment(seqNo, file(seqNo)));
+        }
+        if(! existing.isEmpty()) {
+            log.info("replaying " + existing.size() + " existing spool segments in " + directory);
+        }
+
+        // data is never appended to segments from a previous run because their end can not be determined reliably
+        segments.add(createSegment(existing.isEmpty() ? 0 : existing.get(existing.size() - 1) + 1));
+        isEmpty = segments.size() == 1;
+    }
+
+    private File file(long seqNo) {
+        return new File(directory, String.format("%s%020d%s", SEGMENT_FILE_PREFIX, seqNo, SEGMENT_FILE_SUFFIX));
+    }
+
+    private static long parseSeqNo(String fileName) {
+        if(! fileName.startsWith(SEGMENT_FILE_PREFIX) || ! fileName.endsWith(SEGMENT_FILE_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(SEGMENT_FILE_PREFIX.length(), fileName.length() - SEGMENT_FILE_SUFFIX.length()));
+        }
+        catch (NumberFormatException exc) {
+            return -1;
+        }
+    }
+
+    private Segment createSegment(long seqNo) throws IOException {
+        final Segment result = new Segment(seqNo, file(seqNo));
+        try (RandomAccessFile raf = new RandomAccessFile(result.file, "rw")) {
+            raf.setLength(segmentSize);
+            // the mapping remains valid after the file is closed
+            result.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        return result;
+    }
+
+    /**
+     * This method is cheap and does not block, so it can be called before every append.
+     */
+    public boolean isEmpty() {
+        return isEmpty;
+    }
+
+    public synchronized long getNumDiscarded() {
+        return numDiscarded;
+    }
+
+    public boolean append(AHierarchicalDataRoot trace) {
+        try {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            baos.write(KIND_TRACE);
+            new ABinaryOffloadingWriter(baos).writeTraceRoot(trace, 0);
+            return append(baos.toByteArray());
+        }
+        catch (IOException exc) {
+            log.error(exc);
+            return false;
+        }
+    }
+
+    public boolean append(AScalarDataPoint scalar) {
+        try {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            baos.write(KIND_SCALAR);
+            new ABinaryOffloadingWriter(baos).writeScalar(scalar, 0);
+            return append(baos.toByteArray());
+        }
+        catch (IOException exc) {
+            log.error(exc);
+            return false;
+        }
+    }
+
+    synchronized boolean append(byte[] payload) throws IOException {
+        if(payload.length + RECORD_HEADER_SIZE > segmentSize) {
+            log.warn("discarding a record of " + payload.length + " bytes because it is larger than a spool segment");
+            numDiscarded += 1;
+            return false;
+        }
+
+        Segment segment = segments.getLast();
+        if(segment.writePos + RECORD_HEADER_SIZE + payload.length > segmentSize) {
+            if(segments.size() >= maxNumSegments) {
+                if(! isQuotaExceeded) {
+                    log.warn("spool quota exceeded - discarding data until the spool in " + directory + " is replayed");
+                    isQuotaExceeded = true;
+                }
+                numDiscarded += 1;
+                return false;
+            }
+
+            segment.buffer.force();
+            segment = createSegment(segment.seqNo + 1);
+            segments.addLast(segment);
+        }
+
+        final int pos = segment.writePos;
+        segment.buffer.position(pos + RECORD_HEADER_SIZE);
+        segment.buffer.put(payload);
+        segment.buffer.putInt(pos + 4, crc(payload));
+        segment.writePos = pos + RECORD_HEADER_SIZE + payload.length;
+
+        // A record with length 0 marks the end of a segment's data. It is written explicitly because a segment is
+        //  reused after it was replayed completely, and stale data after the end must never be replayed.
+        if(segment.writePos + 4 <= segmentSize) {
+            segment.buffer.putInt(segment.writePos, 0);
+        }
+        // the length is written last so that the record becomes valid only when it is complete
+        segment.buffer.putInt(pos, payload.length);
+
+        isEmpty = false;
+        return true;
+    }
+
+    private static int crc(byte[] payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * moves up to <code>maxNumItems</code> spooled items into the collections, in the order they were appended
+     *
+     * @return the number of items that were moved
+     */
+    public int replayInto(Collection<AHierarchicalDataRoot> traces, Collection<AScalarDataPoint> scalars, int maxNumItems) {
+        int result = 0;
+        while(result < maxNumItems) {
+            final byte[] payload;
+            try {
+                payload = nextRecord();
+            }
+            catch (IOException exc) {
+                log.error(exc);
+                break;
+            }
+            if(payload == null) {
+                break;
+            }
+
+            try {
+                final ByteArrayInputStream in = new ByteArrayInputStream(payload);
+                final int kind = in.read();
+                switch(kind) {
+                    case KIND_TRACE:  traces.add(new ABinaryOffloadingReader(in).readTraceRoot(0)); break;
+                    case KIND_SCALAR: scalars.add(new ABinaryOffloadingReader(in).readScalar(0)); break;
+                    default: throw new IOException("unknown record kind " + kind);
+                }
+                result += 1;
+            }
+            catch (IOException exc) {
+                log.warn("skipping unreadable spool record: " + exc);
+            }
+        }
+        return result;
+    }
+
+    synchronized byte[] nextRecord() throws IOException {
+        while(true) {
+            final Segment segment = segments.getFirst();
+            final boolean isWriteSegment = segments.size() == 1;
+
+            if(isWriteSegment && readPos >= segment.writePos) {
+                // everything was replayed --> start over at the beginning of the segment
+                segment.writePos = 0;
+                readPos = 0;
+                isEmpty = true;
+                isQuotaExceeded = false;
+                return null;
+            }
+
+            if(segment.buffer == null) {
+                segment.map();
+            }
+
+            final byte[] result = readRecord(segment.buffer, readPos);
+            if(result != null) {
+                readPos += RECORD_HEADER_SIZE + result.length;
+                return result;
+            }
+            if(isWriteSegment) {
+                throw new IOException("corrupt record in the current spool segment " + segment.file);
+            }
+
+            // the end of a segment that is complete --> it is not needed any more
+            segments.removeFirst();
+            readPos = 0;
+            segment.buffer = null;
+            isQuotaExceeded = false;
+            if(! segment.file.delete()) {
+                log.warn("could not delete spool segment " + segment.file);
+            }
+        }
+    }
+
+    /**
+     * @return the payload of the record at a given position, or <code>null</code> if there is no valid record there
+     */
+    private byte[] readRecord(MappedByteBuffer buffer, int pos) {
+        if(pos + RECORD_HEADER_SIZE > buffer.capacity()) {
+            return null;
+        }
+        final int length = buffer.getInt(pos);
+        if(length <= 0 || pos + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+            return null;
+        }
+
+        final byte[] result = new byte[length];
+        buffer.position(pos + RECORD_HEADER_SIZE);
+        buffer.get(result);
+        if(crc(result) != buffer.getInt(pos + 4)) {
+            log.warn("CRC mismatch in spool segment at offset " + pos + " - skipping the rest of the segment");
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * writes all data to disk
+     */
+    public synchronized void flush() {
+        segments.getLast().buffer.force();
+    }
+
+    private static class Segment {
+        final long seqNo;
+        final File file;
+        MappedByteBuffer buffer;
+        int writePos = 0;
+
+        Segment(long seqNo, File file) {
+            this.seqNo = seqNo;
+            this.file = file;
+        }
+
+        void map() throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            }
+        }
+    }
+}
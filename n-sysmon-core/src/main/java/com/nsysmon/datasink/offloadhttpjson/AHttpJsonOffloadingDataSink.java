@@ -4,59 +4,176 @@ import com.ajjpj.afoundation.collection.mutable.ASoftlyLimitedQueue;
 import com.nsysmon.NSysMonApi;
 import com.nsysmon.config.NSysMonConfig;
 import com.nsysmon.config.log.NSysMonLogger;
+import com.nsysmon.data.AHierarchicalData;
 import com.nsysmon.data.AHierarchicalDataRoot;
 import com.nsysmon.data.AScalarDataPoint;
 import com.nsysmon.datasink.ADataSink;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
+ * This data sink sends traces and scalar measurements to an n-sysmon server via HTTP. Data is buffered in queues and
+ *  sent by a number of offloading threads, each of which has at most one request in flight at any given time.<p>
+ *
+ * Every request contains at most <code>maxBatchItems</code> traces and scalars, and adding items to a request stops
+ *  once their estimated size reaches <code>maxBatchBytes</code>. If sending fails, the data is put back at the head of
+ *  the queues, and all offloading threads pause for an exponentially growing delay before they send again. Resending is idempotent on the server side because every
+ *  trace and scalar data point carries a unique {@link com.ajjpj.afoundation.util.AUUID}.
+ *
  * @author arno
  */
 public class AHttpJsonOffloadingDataSink implements ADataSink {
-    public static final int NO_DATA_SLEEP_MILLIS = 10;
+    public static final int DEFAULT_MAX_BATCH_ITEMS = 1000;
+    public static final int DEFAULT_MAX_BATCH_BYTES = 1024*1024;
+
+    /**
+     * Offloading threads are woken up when new data arrives, this is the interval in which they check for shutdown
+     *  when there is no new data.
+     */
+    public static final int IDLE_WAIT_MILLIS = 1000;
+
+    public static final long MIN_BACKOFF_MILLIS = 100;
+    public static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    /**
+     * After the server rejected the binary format, JSON is sent for this long even if the server announces binary
+     *  support, unless the connection to the server is lost before.
+     */
+    public static final long BINARY_REJECTION_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * rough size of a trace node or scalar data point in a request, excluding its strings
+     */
+    private static final int ESTIMATED_ITEM_OVERHEAD_BYTES = 64;
 
     private static final NSysMonLogger log = NSysMonLogger.get(AHttpJsonOffloadingDataSink.class);
 
     private final NSysMonConfig config;
 
-    //TODO how many concurrent HTTP connections does this provide? --> configure!
-    private final CloseableHttpClient httpClient = HttpClients.createDefault(); //TODO make this configurable
+    private final CloseableHttpClient httpClient;
     private final URI uri;
 
     private final String sender;
     private final String senderInstance;
 
+    /**
+     * the queues' backing deques, allowing data to be put back at their heads when sending fails
+     */
+    private final ConcurrentLinkedDeque<AHierarchicalDataRoot> traceDeque = new ConcurrentLinkedDeque<>();
+    private final ConcurrentLinkedDeque<AScalarDataPoint> scalarDeque = new ConcurrentLinkedDeque<>();
+
     private final ASoftlyLimitedQueue<AHierarchicalDataRoot> traceQueue;
     private final ASoftlyLimitedQueue<AScalarDataPoint> scalarQueue;
+    private final int traceQueueSize;
+    private final int scalarQueueSize;
 
+    /**
+     * data overflows to this spool (if there is one) instead of being discarded when the queues are full
+     */
+    private final ADiskSpool spool;
+
+    /**
+     * This semaphore's permits signal that there is new data in the queues. Producers release it without ever
+     *  blocking, offloading threads wait on it instead of polling the queues.
+     */
+    private final Semaphore dataAvailable = new Semaphore(0);
+
+    private final int numOffloadingThreads;
     private final ExecutorService offloadingThreadPool;
     private final ScheduledExecutorService scalarMeasurementPool;
 
+    private final int maxBatchItems;
+    private final int maxBatchBytes;
+
+    private final boolean preferBinaryFormat;
+    private final boolean compressBinaryFormat;
+
+    /**
+     * JSON is sent until the server announces support for the binary format in a response
+     */
+    private volatile boolean serverAcceptsBinaryFormat = false;
+
+    /**
+     * The server's announcement of binary support can not be trusted after it rejected a binary request - it is
+     *  typically announced in the very response that rejects it. This timestamp suppresses the binary format regardless
+     *  of announcements, and it is reset only when it expires or when a request fails, e.g. because the server is
+     *  restarted with a different version.
+     */
+    private volatile long binaryRejectedUntilMillis = 0;
+
+    private final AtomicInteger numConsecutiveFailures = new AtomicInteger();
+
+    /**
+     * After a failed request, no offloading thread sends data before this point in time
+     */
+    private volatile long nextAttemptAllowedAtMillis = 0;
+
     private volatile boolean isShutDown = false;
 
     public AHttpJsonOffloadingDataSink(final NSysMonApi sysMon, String uri, String sender, String senderInstance, int traceQueueSize, int scalarQueueSize, int numOffloadingThreads, int scalarMeasurementFrequencyMillis) {
+        this(sysMon, uri, sender, senderInstance, traceQueueSize, scalarQueueSize, numOffloadingThreads, scalarMeasurementFrequencyMillis,
+                DEFAULT_MAX_BATCH_ITEMS, DEFAULT_MAX_BATCH_BYTES, true, true, null);
+    }
+
+    /**
+     * @param numOffloadingThreads the maximum number of concurrent requests to the server
+     * @param maxBatchItems the maximum number of traces and scalar data points per request
+     * @param maxBatchBytes the (estimated) size of a request's data after which no more items are added to it
+     * @param preferBinaryFormat send data in the compact format defined in {@link AOffloadingBinaryFormat} if the
+     *                           server supports it, and JSON otherwise
+     * @param compressBinaryFormat Deflate compress data sent in the binary format
+     * @param spool stores data on disk while the queues are full, e.g. during a server outage. This is optional, i.e.
+     *              <code>null</code> means that data is discarded when the queues are full.
+     */
+    public AHttpJsonOffloadingDataSink(final NSysMonApi sysMon, String uri, String sender, String senderInstance, int traceQueueSize, int scalarQueueSize, int numOffloadingThreads, int scalarMeasurementFrequencyMillis,
+                                       int maxBatchItems, int maxBatchBytes, boolean preferBinaryFormat, boolean compressBinaryFormat, ADiskSpool spool) {
         this.config = sysMon.getConfig();
+        this.maxBatchItems = maxBatchItems;
+        this.maxBatchBytes = maxBatchBytes;
+        this.preferBinaryFormat = preferBinaryFormat;
+        this.compressBinaryFormat = compressBinaryFormat;
 
         this.uri = URI.create(uri);
         this.sender = sender;
         this.senderInstance = senderInstance;
 
-        this.traceQueue = new ASoftlyLimitedQueue<>(traceQueueSize, new DiscardedLogger("trace queue overflow - discarding oldest trace"));
-        this.scalarQueue = new ASoftlyLimitedQueue<>(scalarQueueSize, new DiscardedLogger("environment queue overflow - discarding oldest data"));
+        // one pooled connection per offloading thread so that requests are not serialized on connections
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(numOffloadingThreads);
+        connectionManager.setDefaultMaxPerRoute(numOffloadingThreads);
+        this.httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
 
+        this.traceQueue = new ASoftlyLimitedQueue<>(traceQueueSize, traceDeque, new DiscardedLogger("trace queue overflow - discarding oldest trace"));
+        this.scalarQueue = new ASoftlyLimitedQueue<>(scalarQueueSize, scalarDeque, new DiscardedLogger("environment queue overflow - discarding oldest data"));
+        this.traceQueueSize = traceQueueSize;
+        this.scalarQueueSize = scalarQueueSize;
+        this.spool = spool;
+
+        this.numOffloadingThreads = numOffloadingThreads;
         offloadingThreadPool = Executors.newFixedThreadPool(numOffloadingThreads);
         for(int i=0; i<numOffloadingThreads; i++) {
             offloadingThreadPool.submit(new OffloadingRunnable());
@@ -66,8 +183,9 @@ public class AHttpJsonOffloadingDataSink implements ADataSink {
         scalarMeasurementPool.scheduleAtFixedRate((Runnable) () -> {
             //TODO introduce 'AScalarProvider' interface for callbacks like this
             for(AScalarDataPoint scalar: sysMon.getScalarMeasurements().values()) { //TODO ensure that this NSysMon call will never throw exceptions
-                scalarQueue.add(scalar);
+                enqueue(scalar);
             }
+            dataAvailable.release();
         }, 0, scalarMeasurementFrequencyMillis, TimeUnit.MILLISECONDS);
     }
 
@@ -75,62 +193,205 @@ public class AHttpJsonOffloadingDataSink implements ADataSink {
     @Override public void onStartedHierarchicalMeasurement(String identifier) { }
 
     @Override public void onFinishedHierarchicalMeasurement(AHierarchicalDataRoot data) {
+        enqueue(data);
+        dataAvailable.release();
+    }
 
-        //TODO make resending of arbitrary data idempotent --> send a unique identifier with every *atom* (trace, environment measurement, ...)
-        //TODO re-enter the data into the queues when the server returns a non-OK http response code
+    /**
+     * Once there is data in the spool, all new data goes there as well so that data is sent in the order it was
+     *  created.
+     */
+    private void enqueue(AHierarchicalDataRoot trace) {
+        if(spool != null && (! spool.isEmpty() || traceQueue.size() >= traceQueueSize)) {
+            spool.append(trace);
+        }
+        else {
+            traceQueue.add(trace);
+        }
+    }
+
+    private void enqueue(AScalarDataPoint scalar) {
+        if(spool != null && (! spool.isEmpty() || scalarQueue.size() >= scalarQueueSize)) {
+            spool.append(scalar);
+        }
+        else {
+            scalarQueue.add(scalar);
+        }
+    }
 
-        traceQueue.add(data);
+    /**
+     * moves spooled data back into the queues as far as they have room for it
+     */
+    private void replaySpool() {
+        if(spool == null || spool.isEmpty()) {
+            return;
+        }
+        final int maxNumItems = Math.min(traceQueueSize - traceQueue.size(), scalarQueueSize - scalarQueue.size());
+        if(maxNumItems > 0) {
+            spool.replayInto(traceQueue, scalarQueue, maxNumItems);
+        }
     }
 
     private void doOffload() throws Exception {
-        final List<AHierarchicalDataRoot> traces = new ArrayList<>();
-        AHierarchicalDataRoot candidate;
-        while ((candidate = traceQueue.poll()) != null) { //TODO limit number per HTTP request?!
-            traces.add(candidate);
+        dataAvailable.tryAcquire(IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+
+        final long millisUntilNextAttempt = nextAttemptAllowedAtMillis - System.currentTimeMillis();
+        if(millisUntilNextAttempt > 0) {
+            // Backing off applies to all offloading threads, not only to the one whose request failed. The permit is
+            //  kept for after the backoff.
+            dataAvailable.release();
+            Thread.sleep(Math.min(millisUntilNextAttempt, IDLE_WAIT_MILLIS));
+            return;
         }
 
+        // Permits are consumed *before* the queues are drained: data added after this point releases a new permit,
+        //  so no signal can get lost.
+        dataAvailable.drainPermits();
+        replaySpool();
+
+        // scalars go first because they are small and must not be starved by a steady stream of traces
         final List<AScalarDataPoint> scalars = new ArrayList<>();
+        long numBytes = 0;
         AScalarDataPoint scalar;
-        while ((scalar = scalarQueue.poll()) != null) { //TODO limit number per HTTP request?
+        while (scalars.size() < maxBatchItems && numBytes < maxBatchBytes && (scalar = scalarQueue.poll()) != null) {
             scalars.add(scalar);
+            numBytes += ESTIMATED_ITEM_OVERHEAD_BYTES + scalar.getName().length();
+        }
+
+        final List<AHierarchicalDataRoot> traces = new ArrayList<>();
+        AHierarchicalDataRoot trace;
+        while (scalars.size() + traces.size() < maxBatchItems && numBytes < maxBatchBytes && (trace = traceQueue.poll()) != null) {
+            traces.add(trace);
+            numBytes += estimateSize(trace.getRootNode());
         }
 
         if(traces.isEmpty() && scalars.isEmpty()) {
-            Thread.sleep(NO_DATA_SLEEP_MILLIS);
+            return;
         }
-        else {
-            try {
-            final HttpPost httpPost = new HttpPost(uri);
 
-                final AJsonOffloadingEntity entity = new AJsonOffloadingEntity(traces, scalars, sender, senderInstance);
-                httpPost.setEntity(entity);
+        if(! traceQueue.isEmpty() || ! scalarQueue.isEmpty() || (spool != null && ! spool.isEmpty())) {
+            // more data than fits into a single request --> let another offloading thread send it concurrently
+            dataAvailable.release();
+        }
 
-                final CloseableHttpResponse response = httpClient.execute(httpPost);
-                try {
-                    //TODO response with commands for monitoring this app?!
-                } finally {
-                    response.close();
+        try {
+            send(traces, scalars, shouldSendBinary());
+            numConsecutiveFailures.set(0);
+        }
+        catch(Exception exc) {
+            log.error(exc);
+            binaryRejectedUntilMillis = 0;
+
+            requeue(traces, scalars);
+
+            // wait a grace period for the situation to improve
+            nextAttemptAllowedAtMillis = System.currentTimeMillis() + backoffMillis(numConsecutiveFailures.incrementAndGet());
+            dataAvailable.release();
+        }
+    }
+
+    /**
+     * puts data back at the head of the queues for later retry, preserving the order in which it is sent. This
+     *  bypasses the queues' size limit and the spool because the spool contains only data that is newer.
+     */
+    private void requeue(List<AHierarchicalDataRoot> traces, List<AScalarDataPoint> scalars) {
+        for(int i=traces.size()-1; i>=0; i--) {
+            traceDeque.addFirst(traces.get(i));
+        }
+        for(int i=scalars.size()-1; i>=0; i--) {
+            scalarDeque.addFirst(scalars.get(i));
+        }
+    }
+
+    private boolean shouldSendBinary() {
+        return preferBinaryFormat && serverAcceptsBinaryFormat && System.currentTimeMillis() >= binaryRejectedUntilMillis;
+    }
+
+    private void send(List<AHierarchicalDataRoot> traces, List<AScalarDataPoint> scalars, boolean sendBinary) throws IOException {
+        final AbstractHttpEntity entity = sendBinary ?
+                new ABinaryOffloadingEntity(traces, scalars, sender, senderInstance, compressBinaryFormat) :
+                new AJsonOffloadingEntity(traces, scalars, sender, senderInstance);
+
+        final HttpPost httpPost = new HttpPost(uri);
+        httpPost.setEntity(entity);
+
+        final int statusCode;
+        final CloseableHttpResponse response = httpClient.execute(httpPost);
+        try {
+            //TODO response with commands for monitoring this app?!
+            statusCode = response.getStatusLine().getStatusCode();
+            serverAcceptsBinaryFormat = acceptsBinaryFormat(response);
+
+            // reading the entire response allows the connection to be reused
+            EntityUtils.consume(response.getEntity());
+        } finally {
+            response.close();
+        }
+
+        if(sendBinary && statusCode == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE) {
+            // the server was replaced by a version without binary support, or it does not support this client's
+            //  variant of the format --> resend as JSON, and stick to JSON regardless of what the server announces
+            log.warn("server rejected the binary offloading format, falling back to JSON");
+            binaryRejectedUntilMillis = System.currentTimeMillis() + BINARY_REJECTION_MILLIS;
+            send(traces, scalars, false);
+            return;
+        }
+
+        if(statusCode >= 300) {
+            throw new IOException("server responded with HTTP status " + statusCode);
+        }
+    }
+
+    private static boolean acceptsBinaryFormat(HttpResponse response) {
+        for(Header header: response.getHeaders(AOffloadingBinaryFormat.HEADER_ACCEPT_POST)) {
+            for(HeaderElement element: header.getElements()) {
+                if(AOffloadingBinaryFormat.CONTENT_TYPE.equalsIgnoreCase(element.getName())) {
+                    return true;
                 }
             }
-            catch(Exception exc) {
-                log.error(exc);
-
-                // add the data to the queue again for later retry
-                scalarQueue.addAll(scalars);
+        }
+        return false;
+    }
 
-                System.out.println(" == " + scalarQueue);
+    /**
+     * This is the delay before the next attempt after a number of failed requests. It grows exponentially up to
+     *  {@link #MAX_BACKOFF_MILLIS}, and a random part of up to half of it ('jitter') keeps many monitored
+     *  applications from hitting a recovering server at the same time.
+     */
+    static long backoffMillis(int numConsecutiveFailures) {
+        final long nominal = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(numConsecutiveFailures - 1, 20));
+        return nominal - ThreadLocalRandom.current().nextLong(nominal / 2 + 1);
+    }
 
-                // wait a grace period for the situation to improve
-                Thread.sleep(5000); //TODO make this configurable
+    /**
+     * estimates the number of bytes a trace takes up in an (uncompressed) request
+     */
+    static long estimateSize(AHierarchicalData node) {
+        long result = ESTIMATED_ITEM_OVERHEAD_BYTES + node.getIdentifier().length();
+        for(Map.Entry<String, String> param: node.getParameters().entrySet()) {
+            result += param.getKey().length();
+            if(param.getValue() != null) {
+                result += param.getValue().length();
             }
         }
+        for(AHierarchicalData child: node.getChildren()) {
+            result += estimateSize(child);
+        }
+        return result;
     }
 
     @Override public void shutdown() throws IOException {
         isShutDown = true;
-        httpClient.close();
         scalarMeasurementPool.shutdown();
         offloadingThreadPool.shutdown();
+
+        // wake up idle offloading threads
+        dataAvailable.release(numOffloadingThreads);
+        httpClient.close();
+
+        if(spool != null) {
+            spool.flush();
+        }
     }
 
     private static class DiscardedLogger implements Runnable {
@@ -150,8 +411,10 @@ public class AHttpJsonOffloadingDataSink implements ADataSink {
             while(! isShutDown) {
                 try {
                     doOffload();
+                } catch (InterruptedException e) {
+                    break;
                 } catch (Exception e) {
-                    e.printStackTrace(); //TODO exception handling
+                    log.error(e);
                 }
             }
         }
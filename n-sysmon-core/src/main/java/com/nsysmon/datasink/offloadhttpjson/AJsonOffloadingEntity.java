@@ -1,6 +1,7 @@
 package com.nsysmon.datasink.offloadhttpjson;
 
 import com.ajjpj.afoundation.io.AJsonSerHelperForNSysmon;
+import com.ajjpj.afoundation.util.AUUID;
 import com.nsysmon.data.ACorrelationId;
 import com.nsysmon.data.AHierarchicalData;
 import com.nsysmon.data.AHierarchicalDataRoot;
@@ -11,6 +12,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.List;
 
@@ -27,7 +29,7 @@ class AJsonOffloadingEntity extends AbstractHttpEntity {
 
     AJsonOffloadingEntity(List<AHierarchicalDataRoot> traces, Collection<AScalarDataPoint> scalarData, String sender, String senderInstance) {
         setChunked(true);
-        //TODO content type, encoding
+        setContentType(AOffloadingBinaryFormat.CONTENT_TYPE_JSON + "; charset=UTF-8");
 
         this.sender = sender;
         this.senderInstance = senderInstance;
@@ -83,7 +85,7 @@ class AJsonOffloadingEntity extends AbstractHttpEntity {
         ser.startObject(); // start 'TraceRootNode'
 
         ser.writeKey("uuid");
-        ser.writeStringLiteral(trace.getUuid().toString());
+        ser.writeStringLiteral(toString(trace.getUuid()));
 
         ser.writeKey("startedFlows");
         ser.startArray();
@@ -154,7 +156,7 @@ class AJsonOffloadingEntity extends AbstractHttpEntity {
         ser.startObject(); // start 'ScalarNode'
 
         ser.writeKey("uuid");
-        ser.writeStringLiteral(scalar.getUuid().toString());
+        ser.writeStringLiteral(toString(scalar.getUuid()));
 
         ser.writeKey("senderTimestamp");
         ser.writeNumberLiteral(scalar.getTimestamp(), 0);
@@ -168,6 +170,14 @@ class AJsonOffloadingEntity extends AbstractHttpEntity {
         ser.endObject();
     }
 
+    /**
+     * This is the same Base64 representation as AUUID.toString(), which however depends on javax.xml.bind and
+     *  therefore fails on Java 11 and later.
+     */
+    private static String toString(AUUID uuid) {
+        return Base64.getEncoder().encodeToString(uuid.getData());
+    }
+
     @Override public boolean isStreaming() {
         return true;
     }
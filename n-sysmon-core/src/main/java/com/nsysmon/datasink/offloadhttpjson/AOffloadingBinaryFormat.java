@@ -0,0 +1,218 @@
+package com.nsysmon.datasink.offloadhttpjson;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * This class defines the compact binary alternative to the JSON offloading format, and it contains the primitives for
+ *  reading and writing it. It is shared by the client and the server.<p>
+ *
+ * A request starts with a header that is never compressed: the four bytes {@link #MAGIC}, a version byte and a flags
+ *  byte. If {@link #FLAG_DEFLATE} is set, the rest of the request is Deflate compressed. The body has the same
+ *  structure as the JSON format, encoded as follows:
+ *
+ * <ul>
+ *     <li>Integers are stored as unsigned LEB128 varints, signed values are zig-zag encoded first.</li>
+ *     <li>Strings are stored as references into a dictionary that is built while reading / writing a request:
+ *         {@link #STRING_REF_NULL} is <code>null</code>, {@link #STRING_REF_NEW} is followed by the UTF-8 encoded
+ *         string's length and bytes and adds it to the dictionary, and every larger value <code>n</code> refers to
+ *         dictionary entry <code>n - {@link #STRING_REF_OFFSET}</code>.</li>
+ *     <li>Timestamps are stored as difference to the parent node's timestamp (or the request's timestamp for root
+ *         nodes and scalars), durations as difference to the previous trace node's duration.</li>
+ * </ul>
+ *
+ * Clients send JSON unless the server announces that it accepts the binary format by sending {@link #CONTENT_TYPE}
+ *  in an <code>Accept-Post</code> response header. A server rejects requests with a version or flags it does not know
+ *  with HTTP status 415, and the client falls back to JSON.<p>
+ *
+ * Lengths and counts are read from untrusted data, so readers reject them if they exceed {@link #MAX_BYTES_LENGTH} or
+ *  {@link #MAX_LIST_SIZE} respectively, before allocating anything.
+ *
+ * @author arno
+ */
+public class AOffloadingBinaryFormat {
+    public static final String CONTENT_TYPE = "application/x-nsysmon-binary";
+    public static final String CONTENT_TYPE_JSON = "application/json";
+
+    public static final String HEADER_ACCEPT_POST = "Accept-Post";
+
+    public static final byte[] MAGIC = {'N', 'S', 'M', 'B'};
+    public static final int VERSION = 1;
+
+    public static final int FLAG_DEFLATE = 1;
+
+    /**
+     * all flags defined by this version of the format - a reader rejects requests with other flags
+     */
+    public static final int KNOWN_FLAGS = FLAG_DEFLATE;
+
+    /**
+     * the maximum length of a single string or byte array
+     */
+    public static final int MAX_BYTES_LENGTH = 1024*1024;
+
+    /**
+     * the maximum number of flows or parameters of a single trace node
+     */
+    public static final int MAX_LIST_SIZE = 64*1024;
+
+    public static final int STRING_REF_NULL = 0;
+    public static final int STRING_REF_NEW = 1;
+    public static final int STRING_REF_OFFSET = 2;
+
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static void writeVarLong(OutputStream out, long value) throws IOException {
+        while((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    public static void writeSignedVarLong(OutputStream out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readVarLong(InputStream in) throws IOException {
+        long result = 0;
+        for(int shift=0; shift<64; shift+=7) {
+            final int b = in.read();
+            if(b == -1) {
+                throw new EOFException();
+            }
+            result |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    public static long readSignedVarLong(InputStream in) throws IOException {
+        final long raw = readVarLong(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    public static int readVarInt(InputStream in) throws IOException {
+        final long result = readVarLong(in);
+        if(result < 0 || result > Integer.MAX_VALUE) {
+            throw new IOException("varint out of range: " + result);
+        }
+        return (int) result;
+    }
+
+    /**
+     * reads a length or count, rejecting values exceeding a given maximum
+     */
+    public static int readLength(InputStream in, int maxLength) throws IOException {
+        final int result = readVarInt(in);
+        if(result > maxLength) {
+            throw new IOException("length " + result + " exceeds the maximum of " + maxLength);
+        }
+        return result;
+    }
+
+    public static void writeBytes(OutputStream out, byte[] bytes) throws IOException {
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    public static byte[] readBytes(InputStream in) throws IOException {
+        final byte[] result = new byte[readLength(in, MAX_BYTES_LENGTH)];
+        int offs = 0;
+        while(offs < result.length) {
+            final int n = in.read(result, offs, result.length - offs);
+            if(n == -1) {
+                throw new EOFException();
+            }
+            offs += n;
+        }
+        return result;
+    }
+
+    /**
+     * @param dictionary maps the strings written so far in this request to their dictionary index
+     */
+    public static void writeString(OutputStream out, String s, Map<String, Integer> dictionary) throws IOException {
+        if(s == null) {
+            writeVarLong(out, STRING_REF_NULL);
+            return;
+        }
+
+        final Integer idx = dictionary.get(s);
+        if(idx != null) {
+            writeVarLong(out, idx + STRING_REF_OFFSET);
+        }
+        else {
+            dictionary.put(s, dictionary.size());
+            writeVarLong(out, STRING_REF_NEW);
+
+            final byte[] bytes = s.getBytes(UTF_8);
+            // readers reject longer strings, so a huge parameter value must not make the entire request unreadable
+            writeBytes(out, bytes.length > MAX_BYTES_LENGTH ? Arrays.copyOf(bytes, MAX_BYTES_LENGTH) : bytes);
+        }
+    }
+
+    /**
+     * @param dictionary the strings read so far in this request, in the order they were read
+     */
+    public static String readString(InputStream in, List<String> dictionary) throws IOException {
+        final int ref = readVarInt(in);
+        switch(ref) {
+            case STRING_REF_NULL: return null;
+            case STRING_REF_NEW:
+                final String result = new String(readBytes(in), UTF_8);
+                dictionary.add(result);
+                return result;
+            default:
+                if(ref - STRING_REF_OFFSET >= dictionary.size()) {
+                    throw new IOException("invalid string reference " + ref);
+                }
+                return dictionary.get(ref - STRING_REF_OFFSET);
+        }
+    }
+
+    /**
+     * reads and verifies the header
+     *
+     * @return the header's flags
+     * @throws AUnsupportedBinaryFormatException if the header is well-formed, but has a version or flags this
+     *                                           version of the format does not know
+     */
+    public static int readHeader(InputStream in) throws IOException {
+        for(byte b: MAGIC) {
+            if(in.read() != b) {
+                throw new IOException("not an n-sysmon binary request");
+            }
+        }
+        final int version = in.read();
+        if(version == -1) {
+            throw new EOFException();
+        }
+        if(version != VERSION) {
+            throw new AUnsupportedBinaryFormatException("unsupported binary format version " + version);
+        }
+        final int flags = in.read();
+        if(flags == -1) {
+            throw new EOFException();
+        }
+        if((flags & ~KNOWN_FLAGS) != 0) {
+            throw new AUnsupportedBinaryFormatException("unsupported flags in binary request: " + Integer.toBinaryString(flags));
+        }
+        return flags;
+    }
+
+    public static void writeHeader(OutputStream out, int flags) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(flags);
+    }
+}
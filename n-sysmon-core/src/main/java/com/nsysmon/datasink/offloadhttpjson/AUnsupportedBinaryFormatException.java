@@ -0,0 +1,16 @@
+package com.nsysmon.datasink.offloadhttpjson;
+
+import java.io.IOException;
+
+
+/**
+ * signals a binary request that is well-formed but uses a version or features of the binary format the reader does
+ *  not support. The client can resend the data as JSON in that case.
+ *
+ * @author arno
+ */
+public class AUnsupportedBinaryFormatException extends IOException {
+    public AUnsupportedBinaryFormatException(String msg) {
+        super(msg);
+    }
+}
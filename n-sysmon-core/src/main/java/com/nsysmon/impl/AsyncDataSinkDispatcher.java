@@ -0,0 +1,254 @@
+package com.nsysmon.impl;
+
+import com.ajjpj.afoundation.collection.immutable.AOption;
+import com.nsysmon.config.ADispatchOverflowPolicy;
+import com.nsysmon.config.log.NSysMonLogger;
+import com.nsysmon.data.AHierarchicalDataRoot;
+import com.nsysmon.data.AScalarDataPoint;
+import com.nsysmon.measure.scalar.AScalarMeasurer;
+import com.nsysmon.util.ABoundedConcurrentQueue;
+import com.nsysmon.util.DaemonThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+
+/**
+ * This class decouples data sinks from the threads doing the measurements. Finished measurements are put into bounded
+ *  queues, and dedicated consumer threads pass them on to the data sinks.<p>
+ *
+ * There is one queue per consumer thread, and every measuring thread always uses the same queue. So data from a given
+ *  thread is passed to the data sinks in the order in which it was measured.<p>
+ *
+ * Data sinks that {@link com.nsysmon.datasink.ADataSink#requiresSynchronousDispatch() require synchronous dispatch}
+ *  are skipped here - NSysMonImpl calls them directly.<p>
+ *
+ * This class also contributes its counters as scalar measurements.
+ *
+ * @author arno
+ */
+class AsyncDataSinkDispatcher implements AScalarMeasurer {
+    private static final NSysMonLogger log = NSysMonLogger.get(AsyncDataSinkDispatcher.class);
+
+    static final String KEY_QUEUE_SIZE = "nsysmon:sink-queue-size";
+    static final String KEY_NUM_QUEUED = "nsysmon:sink-queued";
+    static final String KEY_NUM_DROPPED = "nsysmon:sink-dropped";
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 2_000;
+
+    private final Supplier<Iterable<RobustDataSinkWrapper>> handlers;
+    private final ADispatchOverflowPolicy overflowPolicy;
+
+    private final List<ABoundedConcurrentQueue<AHierarchicalDataRoot>> queues;
+    private final Thread[] consumers;
+    private final AtomicIntegerArray consumerIdle;
+
+    private final LongAdder numQueued = new LongAdder();
+    private final LongAdder numDropped = new LongAdder();
+
+    private volatile boolean isShutdown = false;
+
+    AsyncDataSinkDispatcher(Supplier<Iterable<RobustDataSinkWrapper>> handlers, int queueSize, int numThreads, ADispatchOverflowPolicy overflowPolicy) {
+        this.handlers = handlers;
+        this.overflowPolicy = overflowPolicy;
+
+        final int queueSizePerThread = Math.max(1, queueSize / numThreads);
+
+        queues = new ArrayList<>(numThreads);
+        consumers = new Thread[numThreads];
+        consumerIdle = new AtomicIntegerArray(numThreads);
+
+        final DaemonThreadFactory threadFactory = new DaemonThreadFactory();
+        for(int i=0; i<numThreads; i++) {
+            final int idx = i;
+            queues.add(new ABoundedConcurrentQueue<>(queueSizePerThread));
+            consumers[i] = threadFactory.newThread(() -> consume(idx));
+            consumers[i].setName("N-SysMon data sink dispatcher " + i);
+        }
+        for(Thread consumer: consumers) {
+            consumer.start();
+        }
+    }
+
+    void dispatch(AHierarchicalDataRoot data) {
+        if(isShutdown) {
+            // the consumer threads may be gone already, so queued data would never be passed on
+            numDropped.increment();
+            return;
+        }
+
+        final int idx = (int) (Thread.currentThread().getId() % queues.size());
+        final ABoundedConcurrentQueue<AHierarchicalDataRoot> queue = queues.get(idx);
+
+        if(! queue.offer(data)) {
+            switch(overflowPolicy) {
+                case DROP_NEWEST:
+                    numDropped.increment();
+                    return;
+                case DROP_OLDEST:
+                    do {
+                        if(queue.poll() != null) {
+                            numDropped.increment();
+                        }
+                    }
+                    while(! queue.offer(data));
+                    break;
+                case BLOCK:
+                    do {
+                        if(isShutdown) {
+                            numDropped.increment();
+                            return;
+                        }
+                        wakeUp(idx);
+                        LockSupport.parkNanos(BLOCKED_PARK_NANOS);
+                    }
+                    while(! queue.offer(data));
+                    break;
+            }
+        }
+
+        numQueued.increment();
+        wakeUp(idx);
+
+        if(isShutdown && ! consumers[idx].isAlive()) {
+            // shutdown() started after the check above and may have drained this queue before the data was added
+            dropQueued(queue);
+        }
+    }
+
+    private void dropQueued(ABoundedConcurrentQueue<AHierarchicalDataRoot> queue) {
+        while(queue.poll() != null) {
+            numDropped.increment();
+        }
+    }
+
+    private void wakeUp(int idx) {
+        if(consumerIdle.get(idx) != 0) {
+            LockSupport.unpark(consumers[idx]);
+        }
+    }
+
+    private void consume(int idx) {
+        final ABoundedConcurrentQueue<AHierarchicalDataRoot> queue = queues.get(idx);
+
+        while(true) {
+            final AHierarchicalDataRoot data = queue.poll();
+            if(data == null) {
+                if(isShutdown) {
+                    return;
+                }
+
+                consumerIdle.set(idx, 1);
+                if(queue.isEmpty()) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                consumerIdle.set(idx, 0);
+                continue;
+            }
+
+            passOn(data);
+        }
+    }
+
+    private void passOn(AHierarchicalDataRoot data) {
+        for(RobustDataSinkWrapper handler: handlers.get()) {
+            if(! handler.requiresSynchronousDispatch()) {
+                handler.onFinishedHierarchicalMeasurement(data);
+            }
+        }
+    }
+
+    int getQueueSize() {
+        int result = 0;
+        for(ABoundedConcurrentQueue<AHierarchicalDataRoot> queue: queues) {
+            result += queue.size();
+        }
+        return result;
+    }
+
+    long getNumQueued() {
+        return numQueued.sum();
+    }
+
+    long getNumDropped() {
+        return numDropped.sum();
+    }
+
+    @Override public void prepareMeasurements(Map<String, Object> mementos) {
+    }
+
+    @Override public void contributeMeasurements(Map<String, AScalarDataPoint> data, long timestamp, Map<String, Object> mementos) {
+        data.put(KEY_QUEUE_SIZE, new AScalarDataPoint(timestamp, KEY_QUEUE_SIZE, getQueueSize(), 0));
+        data.put(KEY_NUM_QUEUED, new AScalarDataPoint(timestamp, KEY_NUM_QUEUED, getNumQueued(), 0));
+        data.put(KEY_NUM_DROPPED, new AScalarDataPoint(timestamp, KEY_NUM_DROPPED, getNumDropped(), 0));
+    }
+
+    @Override public AOption<Long> getTimeoutInMilliSeconds() {
+        return AOption.none();
+    }
+
+    @Override public String getGroupnameOfMeasurement(String measurement) {
+        if(getConfigurationParameters().contains(measurement)) {
+            return "N-SysMon";
+        }
+        return null;
+    }
+
+    @Override public String getDescriptionOfMeasurement(String measurement) {
+        switch(measurement) {
+            case KEY_QUEUE_SIZE:  return "Finished measurements currently waiting to be passed to data sinks.";
+            case KEY_NUM_QUEUED:  return "Total number of finished measurements queued for asynchronous dispatch.";
+            case KEY_NUM_DROPPED: return "Total number of finished measurements discarded because the dispatch queue was full or N-SysMon was shut down.";
+            default:              return null;
+        }
+    }
+
+    @Override public List<String> getConfigurationParameters() {
+        return Arrays.asList(KEY_QUEUE_SIZE, KEY_NUM_QUEUED, KEY_NUM_DROPPED);
+    }
+
+    /**
+     * Stops accepting new data, and waits for the consumer threads to pass on all queued data. Data that was queued
+     *  concurrently after a consumer thread terminated is passed on by the calling thread. Data that is queued after
+     *  that is dropped by the thread that queued it, so every measurement is either passed on or counted as dropped.
+     */
+    @Override public void shutdown() {
+        isShutdown = true;
+        for(Thread consumer: consumers) {
+            LockSupport.unpark(consumer);
+        }
+
+        final long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MILLIS;
+        for(Thread consumer: consumers) {
+            try {
+                consumer.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if(consumer.isAlive()) {
+                log.warn("data sink dispatcher thread " + consumer.getName() + " did not terminate in time - " + getQueueSize() + " measurements were not passed on");
+            }
+        }
+
+        for(int i=0; i<consumers.length; i++) {
+            if(consumers[i].isAlive()) {
+                continue;
+            }
+            AHierarchicalDataRoot data;
+            while((data = queues.get(i).poll()) != null) {
+                passOn(data);
+            }
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.nsysmon.impl;
 
 import com.ajjpj.afoundation.collection.immutable.AList;
-import com.ajjpj.afoundation.collection.mutable.ARingBuffer;
 import com.nsysmon.NSysMonApi;
 import com.nsysmon.config.NSysMonAware;
 import com.nsysmon.config.NSysMonConfig;
@@ -11,8 +10,10 @@ import com.nsysmon.config.presentation.APresentationPageDefinition;
 import com.nsysmon.data.ACorrelationId;
 import com.nsysmon.data.AHierarchicalDataRoot;
 import com.nsysmon.data.AScalarDataPoint;
+import com.nsysmon.data.ATimedScalarSeries;
 import com.nsysmon.datasink.ADataSink;
 import com.nsysmon.measure.ACollectingMeasurement;
+import com.nsysmon.measure.AEventBufferMeasurementHierarchy;
 import com.nsysmon.measure.AMeasureCallback;
 import com.nsysmon.measure.AMeasureCallbackVoid;
 import com.nsysmon.measure.AMeasurementHierarchy;
@@ -22,15 +23,13 @@ import com.nsysmon.measure.environment.AEnvironmentData;
 import com.nsysmon.measure.environment.AEnvironmentMeasurer;
 import com.nsysmon.measure.scalar.AScalarMeasurer;
 import com.nsysmon.util.AShutdownable;
-import com.nsysmon.util.DaemonThreadFactory;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -54,19 +53,35 @@ public class NSysMonImpl implements AShutdownable, NSysMonApi {
     private volatile AList<RobustScalarMeasurerWrapper> scalarMeasurers = AList.nil();
     private volatile AList<RobustScalarMeasurerWrapper> timedScalarMeasurers = AList.nil();
     private volatile AList<RobustEnvironmentMeasurerWrapper> environmentMeasurers = AList.nil();
-    private volatile TimedScalarDataWrapper timedScalarMeasureRunnable;
+    private volatile TimedScalarDataWrapper timedScalarData;
+    private final ParallelScalarMeasurerExecutor scalarExecutor;
+    private final ScalarSampler scalarSampler;
+
+    /**
+     * This is null unless asynchronous data sink dispatch is configured.
+     */
+    private final AsyncDataSinkDispatcher asyncDispatcher;
 
     private final ThreadLocal<AMeasurementHierarchy> hierarchyPerThread = new ThreadLocal<>();
 
+    private final ADataSink compositeDataSink = createCompositeDataSink();
+
     public NSysMonImpl(NSysMonConfig config) {
         this.config = config;
+        this.scalarExecutor = new ParallelScalarMeasurerExecutor(config.numScalarMeasurementThreads, config.scalarMeasurementBudgetMillis);
+        this.scalarSampler = new ScalarSampler(() -> scalarMeasurers, scalarExecutor, config.averagingDelayForScalarsMillis, config.maxAgeOfScalarsMillis);
 
         config.initialScalarMeasurers.forEach(this::addScalarMeasurer);
 
-        ScheduledExecutorService scheduledPool = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
+        if(config.asyncDataSinkDispatch) {
+            asyncDispatcher = new AsyncDataSinkDispatcher(() -> handlers, config.dataSinkDispatchQueueSize, config.numDataSinkDispatchThreads, config.dataSinkDispatchOverflowPolicy);
+            addScalarMeasurer(asyncDispatcher);
+        }
+        else {
+            asyncDispatcher = null;
+        }
 
-        timedScalarMeasureRunnable = new TimedScalarDataWrapper(config.maxNumMeasurementsPerTimedScalar, config.maxNumMeasurementsForMonitoring);
-        scheduledPool.scheduleAtFixedRate(timedScalarMeasureRunnable, 0, config.durationOfOneTimedScalar, TimeUnit.SECONDS);
+        timedScalarData = new TimedScalarDataWrapper(config);
         config.initialTimedScalarMeasurers.forEach(this::addTimedScalarMeasurer);
 
         config.initialDataSinks.forEach(this::addDataSink);
@@ -98,7 +113,7 @@ public class NSysMonImpl implements AShutdownable, NSysMonApi {
     void addTimedScalarMeasurer(AScalarMeasurer m) {
         injectSysMon(m);
         timedScalarMeasurers = timedScalarMeasurers.cons(new RobustScalarMeasurerWrapper(m, config.measurementTimeoutNanos, config.maxNumMeasurementTimeouts));
-        timedScalarMeasureRunnable.refreshMeasurers(timedScalarMeasurers);
+        timedScalarData.refreshMeasurers(timedScalarMeasurers);
     }
 
     void addEnvironmentMeasurer(AEnvironmentMeasurer m) {
@@ -111,7 +126,7 @@ public class NSysMonImpl implements AShutdownable, NSysMonApi {
         handlers = handlers.cons(new RobustDataSinkWrapper(handler, config.dataSinkTimeoutNanos, config.maxNumDataSinkTimeouts));
     }
 
-    private ADataSink getCompositeDataSink() {
+    private ADataSink createCompositeDataSink() {
         return new ADataSink() {
             @Override public void onStartedHierarchicalMeasurement(String identifier) {
                 for(RobustDataSinkWrapper handler: handlers) {
@@ -122,9 +137,19 @@ public class NSysMonImpl implements AShutdownable, NSysMonApi {
             @Override public void onFinishedHierarchicalMeasurement(AHierarchicalDataRoot data) {
                 hierarchyPerThread.remove();
 
+                if(asyncDispatcher == null) {
+                    for(RobustDataSinkWrapper handler: handlers) {
+                        handler.onFinishedHierarchicalMeasurement(data);
+                    }
+                    return;
+                }
+
                 for(RobustDataSinkWrapper handler: handlers) {
-                    handler.onFinishedHierarchicalMeasurement(data);
+                    if(handler.requiresSynchronousDispatch()) {
+                        handler.onFinishedHierarchicalMeasurement(data);
+                    }
                 }
+                asyncDispatcher.dispatch(data);
             }
 
             @Override public void shutdown() {
@@ -138,7 +163,9 @@ public class NSysMonImpl implements AShutdownable, NSysMonApi {
             return candidate;
         }
 
-        final AMeasurementHierarchy result = new AMeasurementHierarchyImpl(config, getCompositeDataSink());
+        final AMeasurementHierarchy result = config.recordMeasurementsInEventBuffer
+                ? new AEventBufferMeasurementHierarchy(config, compositeDataSink)
+                : new AMeasurementHierarchyImpl(config, compositeDataSink);
         hierarchyPerThread.set(result);
         return result;
     }
@@ -197,8 +224,8 @@ public class NSysMonImpl implements AShutdownable, NSysMonApi {
      *  into N-SysMon. If you do not understand this, this method is probably not for you.
      */
     @Override public void injectSyntheticMeasurement(AHierarchicalDataRoot d) {
-        getCompositeDataSink().onStartedHierarchicalMeasurement(d.getRootNode().getIdentifier());
-        getCompositeDataSink().onFinishedHierarchicalMeasurement(d);
+        compositeDataSink.onStartedHierarchicalMeasurement(d.getRootNode().getIdentifier());
+        compositeDataSink.onFinishedHierarchicalMeasurement(d);
     }
 
     @Override public ACollectingMeasurement startCollectingMeasurement(String identifier) {
@@ -209,67 +236,75 @@ public class NSysMonImpl implements AShutdownable, NSysMonApi {
     }
 
     @Override public Map<String, AScalarDataPoint> getScalarMeasurements() {
-        return getScalarMeasurements(config.averagingDelayForScalarsMillis);
+        if(NSysMonConfig.isGloballyDisabled()) {
+            return new TreeMap<>();
+        }
+        return scalarSampler.get();
     }
 
     @Override public Map<String, AScalarDataPoint> getScalarMeasurements(int averagingDelayForScalarsMillis) {
+        if(averagingDelayForScalarsMillis == config.averagingDelayForScalarsMillis) {
+            return getScalarMeasurements();
+        }
+
         final Map<String, AScalarDataPoint> result = new TreeMap<>();
         if(NSysMonConfig.isGloballyDisabled()) {
             return result;
         }
 
-        final Map<String, Object> mementos = new TreeMap<>();
-        for(RobustScalarMeasurerWrapper measurer: scalarMeasurers) {
-            measurer.prepareMeasurements(mementos);
-        }
+        final AList<RobustScalarMeasurerWrapper> measurers = scalarMeasurers;
+        final Map<String, Object> mementos = new ConcurrentHashMap<>();
+        final Set<RobustScalarMeasurerWrapper> prepared = scalarExecutor.prepare(measurers, mementos);
 
         try {
             Thread.sleep(averagingDelayForScalarsMillis);
         } catch (InterruptedException e) {
         }
 
-        final long now = System.currentTimeMillis();
-        for(RobustScalarMeasurerWrapper measurer: scalarMeasurers) {
-            measurer.contributeMeasurements(result, now, mementos);
+        final List<RobustScalarMeasurerWrapper> toContribute = new ArrayList<>();
+        for(RobustScalarMeasurerWrapper measurer: measurers) {
+            if(prepared.contains(measurer)) {
+                toContribute.add(measurer);
+            }
         }
+        result.putAll(scalarExecutor.contribute(toContribute, System.currentTimeMillis(), mementos));
         return result;
     }
 
     @Override
     public AList<RobustScalarMeasurerWrapper> getTimedScalarForDirectAccess() {
-        AList<RobustScalarMeasurerWrapper> timedScalarMeasurers = timedScalarMeasureRunnable.getTimedScalarMeasurers();
+        AList<RobustScalarMeasurerWrapper> timedScalarMeasurers = timedScalarData.getTimedScalarMeasurers();
         return timedScalarMeasurers;
     }
 
-    @Override public Map<String, ARingBuffer<AScalarDataPoint>> getTimedScalarMeasurements() {
-        Map<String, ARingBuffer<AScalarDataPoint>> result = new TreeMap<>();
+    @Override public Map<String, ATimedScalarSeries> getTimedScalarMeasurements() {
+        Map<String, ATimedScalarSeries> result = new TreeMap<>();
         if(NSysMonConfig.isGloballyDisabled()) {
             return result;
         }
 
-        result = timedScalarMeasureRunnable.getMeasurements();
+        result = timedScalarData.getMeasurements();
 
         return result;
     }
 
-    @Override public Map<String, ARingBuffer<AScalarDataPoint>> getTimedScalarMeasurementsForMonitoring() {
+    @Override public Map<String, ATimedScalarSeries> getTimedScalarMeasurementsForMonitoring() {
         /*
-            Note: The measurements for monitoring could also be extracted from the total data.
-            It was done by using a second list, so the processing-time overall is less.
-            If you use the filtering, every monitor-call must parse every datapoint of every timedscalar.
+            Note: The measurements for monitoring are views of the newest entries of the total data, so
+            every monitor-call only reads the monitoring window rather than filtering every datapoint.
          */
-        Map<String, ARingBuffer<AScalarDataPoint>> result = new TreeMap<>();
+        Map<String, ATimedScalarSeries> result = new TreeMap<>();
         if(NSysMonConfig.isGloballyDisabled()) {
             return result;
         }
 
-        result = timedScalarMeasureRunnable.getMeasurementsForMonitoring();
+        result = timedScalarData.getMeasurementsForMonitoring();
 
         return result;
     }
 
     @Override public void addTimedScalarMeasurement(AScalarDataPoint... dataPoint) {
-        timedScalarMeasureRunnable.addMeasurement(dataPoint);
+        timedScalarData.addMeasurement(dataPoint);
     }
 
     @Override public List<AEnvironmentData> getEnvironmentMeasurements() {
@@ -287,6 +322,11 @@ public class NSysMonImpl implements AShutdownable, NSysMonApi {
     @Override public void shutdown() {
         log.info("shutting down N-SysMon");
 
+        if(asyncDispatcher != null) {
+            // pass on all queued data before shutting down the data sinks
+            asyncDispatcher.shutdown();
+        }
+
         for(RobustDataSinkWrapper handler: handlers) {
             handler.shutdown();
         }
@@ -295,6 +335,9 @@ public class NSysMonImpl implements AShutdownable, NSysMonApi {
             m.shutdown();
         }
 
+        scalarSampler.shutdown();
+        scalarExecutor.shutdown();
+        timedScalarData.shutdown();
         for (RobustScalarMeasurerWrapper m: timedScalarMeasurers) {
             m.shutdown();
         }
@@ -0,0 +1,127 @@
+package com.nsysmon.impl;
+
+import com.nsysmon.config.log.NSysMonLogger;
+import com.nsysmon.data.AScalarDataPoint;
+import com.nsysmon.util.DaemonThreadFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+
+/**
+ * This class runs scalar measurers in parallel on a pool of threads, and it enforces a deadline for all of them
+ *  together: A call returns after <code>budgetMillis</code> at the latest, no matter how individual measurers
+ *  behave. The data of a measurer that does not finish in time is dropped, and its status is
+ *  {@link com.nsysmon.measure.scalar.ScalarMeasurerStatus.Status#TIMED_OUT TIMED_OUT} until it finishes in time again.<p>
+ *
+ * A measurer that is still running from a previous call (e.g. because it hangs on a stale NFS mount) is skipped, so
+ *  a hanging measurer blocks at most one of the pool's threads, and there is at most one task per measurer in the
+ *  pool's queue.<p>
+ *
+ * Mementos are shared between measurers that run concurrently, so callers must pass in a thread safe map.
+ *
+ * @author arno
+ */
+class ParallelScalarMeasurerExecutor {
+    private static final NSysMonLogger log = NSysMonLogger.get(ParallelScalarMeasurerExecutor.class);
+
+    private final ThreadPoolExecutor pool;
+    private final long budgetNanos;
+
+    ParallelScalarMeasurerExecutor(int numThreads, long budgetMillis) {
+        this.pool = new ThreadPoolExecutor(numThreads, numThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory());
+        this.pool.allowCoreThreadTimeOut(true);
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    /**
+     * @return the measurers that were prepared in time
+     */
+    Set<RobustScalarMeasurerWrapper> prepare(Iterable<RobustScalarMeasurerWrapper> measurers, Map<String, Object> mementos) {
+        return execute(measurers, (measurer, data) -> measurer.prepareMeasurements(mementos)).keySet();
+    }
+
+    Map<String, AScalarDataPoint> contribute(Iterable<RobustScalarMeasurerWrapper> measurers, long timestamp, Map<String, Object> mementos) {
+        final Map<String, AScalarDataPoint> result = new HashMap<>();
+        for (Map<String, AScalarDataPoint> data : execute(measurers, (measurer, data) -> measurer.contributeMeasurements(data, timestamp, mementos)).values()) {
+            result.putAll(data);
+        }
+        return result;
+    }
+
+    /**
+     * @return the data contributed by every measurer that finished in time
+     */
+    private Map<RobustScalarMeasurerWrapper, Map<String, AScalarDataPoint>> execute(Iterable<RobustScalarMeasurerWrapper> measurers, BiConsumer<RobustScalarMeasurerWrapper, Map<String, AScalarDataPoint>> action) {
+        final long deadline = System.nanoTime() + budgetNanos;
+
+        final Map<RobustScalarMeasurerWrapper, Future<Map<String, AScalarDataPoint>>> futures = new LinkedHashMap<>();
+        for (RobustScalarMeasurerWrapper measurer : measurers) {
+            if (! measurer.tryStartExecution()) {
+                continue;
+            }
+
+            try {
+                futures.put(measurer, pool.submit(() -> {
+                    try {
+                        final Map<String, AScalarDataPoint> data = new HashMap<>();
+                        action.accept(measurer, data);
+                        return data;
+                    }
+                    finally {
+                        measurer.finishExecution();
+                    }
+                }));
+            }
+            catch (RejectedExecutionException exc) {
+                // shut down concurrently
+                measurer.finishExecution();
+            }
+        }
+
+        final Map<RobustScalarMeasurerWrapper, Map<String, AScalarDataPoint>> result = new HashMap<>();
+        final Set<RobustScalarMeasurerWrapper> timedOut = new HashSet<>();
+        for (Map.Entry<RobustScalarMeasurerWrapper, Future<Map<String, AScalarDataPoint>>> entry : futures.entrySet()) {
+            final RobustScalarMeasurerWrapper measurer = entry.getKey();
+            try {
+                result.put(measurer, entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                if (measurer.setDeadlineExceeded(false)) {
+                    log.info("scalar measurer " + measurer.getMeasurerName() + " finished in time again");
+                }
+            }
+            catch (TimeoutException exc) {
+                timedOut.add(measurer);
+            }
+            catch (ExecutionException exc) {
+                // the wrapper handles the measurer's exceptions, so this is an error in N-SysMon itself
+                log.error("error running scalar measurer " + measurer.getMeasurerName(), exc);
+            }
+            catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        for (RobustScalarMeasurerWrapper measurer : timedOut) {
+            if (measurer.setDeadlineExceeded(true)) {
+                log.warn("scalar measurer " + measurer.getMeasurerName() + " did not finish within " + TimeUnit.NANOSECONDS.toMillis(budgetNanos) + "ms - dropping its data");
+            }
+        }
+        return result;
+    }
+
+    void shutdown() {
+        pool.shutdownNow();
+    }
+}
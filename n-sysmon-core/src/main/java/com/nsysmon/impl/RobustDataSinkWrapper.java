@@ -42,8 +42,10 @@ class RobustDataSinkWrapper { //TO_CONSIDER provide a means for a data sink to s
         @Override public void onFinishedHierarchicalMeasurement(AHierarchicalDataRoot data) {
             try {
                 final long start = System.nanoTime();
+                final long rootCreationNanos = data.getRootCreationNanos();
                 inner.onFinishedHierarchicalMeasurement(data);
-                handleDuration(System.nanoTime() - start);
+                // lazily creating the tree of measurements does not count against the data sink
+                handleDuration(System.nanoTime() - start - (data.getRootCreationNanos() - rootCreationNanos));
             } catch (Exception e) {
                 log.warn("Disabling data sink " + inner.getClass().getName() + " because an exception occurred", e);
                 strategy = DISABLED;
@@ -74,8 +76,10 @@ class RobustDataSinkWrapper { //TO_CONSIDER provide a means for a data sink to s
         @Override public void onFinishedHierarchicalMeasurement(AHierarchicalDataRoot data) {
             try {
                 final long start = System.nanoTime();
+                final long rootCreationNanos = data.getRootCreationNanos();
                 inner.onFinishedHierarchicalMeasurement(data);
-                handleDuration(System.nanoTime() - start);
+                // lazily creating the tree of measurements does not count against the data sink
+                handleDuration(System.nanoTime() - start - (data.getRootCreationNanos() - rootCreationNanos));
             } catch (Exception e) {
                 log.warn("Disabling data sink " + inner.getClass().getName() + " because an exception occurred", e);
                 strategy = DISABLED;
@@ -119,6 +123,10 @@ class RobustDataSinkWrapper { //TO_CONSIDER provide a means for a data sink to s
         strategy.onFinishedHierarchicalMeasurement(data);
     }
 
+    public boolean requiresSynchronousDispatch() {
+        return inner.requiresSynchronousDispatch();
+    }
+
     public void shutdown() {
         try {
             inner.shutdown();
@@ -7,6 +7,7 @@ import com.nsysmon.measure.scalar.AScalarMeasurer;
 import com.nsysmon.measure.scalar.ScalarMeasurerStatus;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -25,6 +26,12 @@ public class RobustScalarMeasurerWrapper {
 
     private final AtomicInteger numTimeouts = new AtomicInteger(0);
 
+    /**
+     * These fields are maintained by {@link ParallelScalarMeasurerExecutor}, which enforces deadlines.
+     */
+    private final AtomicBoolean isExecuting = new AtomicBoolean(false);
+    private volatile boolean isDeadlineExceeded = false;
+
     public ScalarMeasurerStatus getStatus(String key) {
         if (!inner.isResponsibleForMeasurement(key)){
             return new ScalarMeasurerStatus(ScalarMeasurerStatus.Status.UNKNOWN);
@@ -32,9 +39,32 @@ public class RobustScalarMeasurerWrapper {
         if (strategy == DISABLED){
             return new ScalarMeasurerStatus(ScalarMeasurerStatus.Status.STOPPED);
         }
+        if (isDeadlineExceeded || strategy == TIMED_OUT){
+            return new ScalarMeasurerStatus(ScalarMeasurerStatus.Status.TIMED_OUT);
+        }
         return new ScalarMeasurerStatus(ScalarMeasurerStatus.Status.RUNNING);
     }
 
+    /**
+     * @return false if a previous call of this measurer is still running, e.g. because it hangs
+     */
+    boolean tryStartExecution() {
+        return isExecuting.compareAndSet(false, true);
+    }
+
+    void finishExecution() {
+        isExecuting.set(false);
+    }
+
+    /**
+     * @return true if the status changed
+     */
+    boolean setDeadlineExceeded(boolean isDeadlineExceeded) {
+        final boolean result = this.isDeadlineExceeded != isDeadlineExceeded;
+        this.isDeadlineExceeded = isDeadlineExceeded;
+        return result;
+    }
+
     public boolean restartIfResponsible(String key) {
         if (!inner.isResponsibleForMeasurement(key)){
             return false;
@@ -45,6 +75,7 @@ public class RobustScalarMeasurerWrapper {
 
     private void restart() {
         log.warn("Restarting scalar measurer " + inner.getClass().getName() + " due user request.");
+        isDeadlineExceeded = false;
         strategy = ENABLED;
     }
 
@@ -149,6 +180,14 @@ public class RobustScalarMeasurerWrapper {
         strategy.contributeMeasurements(data, timestamp, mementos);
     }
 
+    public AOption<Long> getSamplingIntervalInMilliSeconds() {
+        return inner.getSamplingIntervalInMilliSeconds();
+    }
+
+    public String getMeasurerName() {
+        return inner.getClass().getSimpleName();
+    }
+
     public void shutdown() {
         try {
             inner.shutdown();
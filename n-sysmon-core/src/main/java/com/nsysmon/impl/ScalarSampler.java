@@ -0,0 +1,174 @@
+package com.nsysmon.impl;
+
+import com.ajjpj.afoundation.collection.immutable.AList;
+import com.nsysmon.config.log.NSysMonLogger;
+import com.nsysmon.data.AScalarDataPoint;
+import com.nsysmon.util.DaemonThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+
+/**
+ * This class takes scalar measurements in the background and serves the latest snapshot to all callers, so that
+ *  concurrent callers share a single measurement and none of them waits for the averaging delay.<p>
+ *
+ * The sampler measures every <code>averagingDelayMillis</code>, and every snapshot contains the values averaged over
+ *  the time since the previous one. It is started by the first request, and it stops when there were no requests
+ *  for a while, so it causes no overhead if scalars are not used. Callers wait only if there is no snapshot that is
+ *  younger than <code>maxAgeMillis</code>, typically after the sampler was stopped.<p>
+ *
+ * Measurers run on a {@link ParallelScalarMeasurerExecutor}, so a slow or hanging measurer delays neither the others
+ *  nor the snapshot.
+ *
+ * @author arno
+ */
+class ScalarSampler {
+    private static final NSysMonLogger log = NSysMonLogger.get(ScalarSampler.class);
+
+    static final long MIN_IDLE_TIMEOUT_MILLIS = 60_000;
+
+    private final Supplier<AList<RobustScalarMeasurerWrapper>> measurers;
+    private final ParallelScalarMeasurerExecutor executor;
+    private final long averagingDelayMillis;
+    private final long maxAgeMillis;
+    private final long idleTimeoutMillis;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
+
+    private volatile Snapshot latest;
+    private volatile long lastRequestMillis;
+
+    /**
+     * guarded by 'this'
+     */
+    private boolean isRunning = false;
+
+    /**
+     * These fields are accessed only by the sampler thread.
+     */
+    private Map<String, Object> mementos = new ConcurrentHashMap<>();
+    private Set<RobustScalarMeasurerWrapper> prepared = Collections.emptySet();
+
+    ScalarSampler(Supplier<AList<RobustScalarMeasurerWrapper>> measurers, ParallelScalarMeasurerExecutor executor, long averagingDelayMillis, long maxAgeMillis) {
+        this.measurers = measurers;
+        this.executor = executor;
+        this.averagingDelayMillis = averagingDelayMillis;
+        this.maxAgeMillis = maxAgeMillis;
+        this.idleTimeoutMillis = Math.max(MIN_IDLE_TIMEOUT_MILLIS, 10 * Math.max(averagingDelayMillis, maxAgeMillis));
+    }
+
+    /**
+     * @return the latest snapshot of scalar measurements. This is an empty map if the sampler could not provide a
+     *  snapshot in time.
+     */
+    Map<String, AScalarDataPoint> get() {
+        final long requestMillis = System.currentTimeMillis();
+        lastRequestMillis = requestMillis;
+
+        final Snapshot snapshot = latest;
+        if (snapshot != null && requestMillis - snapshot.timestamp <= maxAgeMillis) {
+            return snapshot.data;
+        }
+
+        synchronized (this) {
+            if (! isRunning) {
+                isRunning = true;
+                schedule(0);
+            }
+
+            // a snapshot is available after at most two cycles, even if the sampler was just started
+            final long deadline = requestMillis + 2 * averagingDelayMillis + maxAgeMillis;
+            long remaining;
+            while (! isFresh(latest, requestMillis) && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    wait(remaining);
+                }
+                catch (InterruptedException exc) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        final Snapshot result = latest;
+        return result != null ? result.data : Collections.emptyMap();
+    }
+
+    private boolean isFresh(Snapshot snapshot, long requestMillis) {
+        return snapshot != null && snapshot.timestamp >= requestMillis - maxAgeMillis;
+    }
+
+    private void schedule(long delayMillis) {
+        try {
+            scheduler.schedule(this::sample, delayMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException exc) {
+            // shut down concurrently
+            isRunning = false;
+        }
+    }
+
+    private void sample() {
+        try {
+            final long now = System.currentTimeMillis();
+            final AList<RobustScalarMeasurerWrapper> current = measurers.get();
+
+            // measurers that were added since the previous cycle are only prepared in this cycle
+            final List<RobustScalarMeasurerWrapper> toContribute = new ArrayList<>();
+            for (RobustScalarMeasurerWrapper measurer : current) {
+                if (prepared.contains(measurer)) {
+                    toContribute.add(measurer);
+                }
+            }
+            final Map<String, AScalarDataPoint> data = new TreeMap<>(executor.contribute(toContribute, now, mementos));
+
+            final boolean hasSnapshot = ! prepared.isEmpty();
+
+            mementos = new ConcurrentHashMap<>();
+            prepared = executor.prepare(current, mementos);
+
+            synchronized (this) {
+                if (hasSnapshot) {
+                    latest = new Snapshot(now, Collections.unmodifiableMap(data));
+                    notifyAll();
+                }
+
+                if (System.currentTimeMillis() - lastRequestMillis > idleTimeoutMillis) {
+                    isRunning = false;
+                    prepared = Collections.emptySet();
+                    return;
+                }
+            }
+        }
+        catch (Exception exc) {
+            log.error(exc);
+        }
+
+        schedule(averagingDelayMillis);
+    }
+
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private static class Snapshot {
+        final long timestamp;
+        final Map<String, AScalarDataPoint> data;
+
+        Snapshot(long timestamp, Map<String, AScalarDataPoint> data) {
+            this.timestamp = timestamp;
+            this.data = data;
+        }
+    }
+}
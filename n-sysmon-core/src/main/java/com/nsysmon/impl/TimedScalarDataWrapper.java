@@ -1,75 +1,217 @@
 package com.nsysmon.impl;
 
 import com.ajjpj.afoundation.collection.immutable.AList;
-import com.ajjpj.afoundation.collection.mutable.ARingBuffer;
 import com.nsysmon.config.NSysMonConfig;
+import com.nsysmon.config.log.NSysMonLogger;
 import com.nsysmon.data.AScalarDataPoint;
+import com.nsysmon.data.ATimedScalarBuffer;
+import com.nsysmon.data.ATimedScalarRollup;
+import com.nsysmon.data.ATimedScalarSeries;
+import com.nsysmon.util.DaemonThreadFactory;
 
 import java.util.Collections;
-import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * This class samples the timed scalar measurers and keeps their history. Every measurer is sampled at its own
+ *  interval, and it has its own mementos so that measurers are independent of each other.<p>
+ *
+ * Samples are taken on a single scheduler thread. A measurer that takes longer than {@link #SLOW_MEASURER_THRESHOLD_MILLIS}
+ *  is moved to a small pool of threads from then on, so that a slow measurer (e.g. one calling an external program)
+ *  does not delay the samples of all other measurers. A slow measurer's sample is skipped if its previous sample is
+ *  still running.<p>
+ *
+ * Every scalar's history has the {@link ATimedScalarRollup#createDefaultTiers() default rollup tiers} in addition to
+ *  its raw samples. Measurements can be added and read concurrently from arbitrary threads.
+ */
+class TimedScalarDataWrapper {
+    private static final NSysMonLogger log = NSysMonLogger.get(TimedScalarDataWrapper.class);
+
+    static final long SLOW_MEASURER_THRESHOLD_MILLIS = 100;
+    static final int NUM_SLOW_MEASURER_THREADS = 2;
+
+    private final ConcurrentMap<String, ATimedScalarBuffer> dataBuffer = new ConcurrentHashMap<>();
+    /**
+     * views of the buffers in the form they are returned. The monitoring window is a view of the same storage.
+     */
+    private final Map<String, ATimedScalarSeries> views = new ConcurrentSkipListMap<>();
+    private final Map<String, ATimedScalarSeries> viewsMonitoring = new ConcurrentSkipListMap<>();
 
-class TimedScalarDataWrapper implements Runnable {
-    private final Map<String, ARingBuffer<AScalarDataPoint>> dataBuffer = new TreeMap<>();
-    private final Map<String, ARingBuffer<AScalarDataPoint>> dataBufferMonitoring = new TreeMap<>();
     private final int maxEntriesTotal;
     private final int maxEntriesMonitoring;
-    private AList<RobustScalarMeasurerWrapper> timedScalarMeasurers = AList.nil();
-    private final Map<String, Object> mementos = new TreeMap<>();
+    private final long defaultIntervalMillis;
+    private final Map<String, Integer> configuredIntervalsSeconds;
 
-    TimedScalarDataWrapper(int maxEntriesTotal, int maxEntriesMonitoring) {
-        this.maxEntriesTotal = maxEntriesTotal;
-        this.maxEntriesMonitoring = maxEntriesMonitoring;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService slowMeasurerPool;
+
+    private volatile AList<RobustScalarMeasurerWrapper> timedScalarMeasurers = AList.nil();
+    private final Map<RobustScalarMeasurerWrapper, Sampler> samplers = new ConcurrentHashMap<>();
+
+    TimedScalarDataWrapper(NSysMonConfig config) {
+        this(config.maxNumMeasurementsPerTimedScalar, config.maxNumMeasurementsForMonitoring, config.durationOfOneTimedScalar * 1000L, config.timedScalarSamplingIntervals);
     }
 
-    @Override
-    public void run() {
-        if (NSysMonConfig.isGloballyDisabled()){
-            //do nothing it nsysmon is disabled
-            return;
-        }
-        long timestamp = new Date().getTime();
-        Map<String, AScalarDataPoint> data = new TreeMap<>();
+    TimedScalarDataWrapper(int maxEntriesTotal, int maxEntriesMonitoring, long defaultIntervalMillis, Map<String, Integer> configuredIntervalsSeconds) {
+        this.maxEntriesTotal = maxEntriesTotal;
+        this.maxEntriesMonitoring = maxEntriesMonitoring;
+        this.defaultIntervalMillis = defaultIntervalMillis;
+        this.configuredIntervalsSeconds = configuredIntervalsSeconds;
 
-        for (RobustScalarMeasurerWrapper timedScalarMeasurer : timedScalarMeasurers) {
-            timedScalarMeasurer.contributeMeasurements(data, timestamp, mementos);
-        }
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory());
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.scheduler = scheduler;
 
-        data.values().forEach(this::addMeasurement);
+        // samples of slow measurers are skipped rather than queued, so the queue can never grow beyond the number of measurers
+        final ThreadPoolExecutor slowMeasurerPool = new ThreadPoolExecutor(NUM_SLOW_MEASURER_THREADS, NUM_SLOW_MEASURER_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory());
+        slowMeasurerPool.allowCoreThreadTimeOut(true);
+        this.slowMeasurerPool = slowMeasurerPool;
     }
 
-    public Map<String, ARingBuffer<AScalarDataPoint>> getMeasurements() {
-        return Collections.unmodifiableMap(dataBuffer);
+    public Map<String, ATimedScalarSeries> getMeasurements() {
+        return Collections.unmodifiableMap(views);
     }
 
-    public Map<String, ARingBuffer<AScalarDataPoint>> getMeasurementsForMonitoring() {
-        return Collections.unmodifiableMap(dataBufferMonitoring);
+    public Map<String, ATimedScalarSeries> getMeasurementsForMonitoring() {
+        return Collections.unmodifiableMap(viewsMonitoring);
     }
 
-    void refreshMeasurers(AList<RobustScalarMeasurerWrapper> timedScalarMeasurers) {
+    /**
+     * starts sampling all measurers in the list that are not sampled yet
+     */
+    synchronized void refreshMeasurers(AList<RobustScalarMeasurerWrapper> timedScalarMeasurers) {
+        this.timedScalarMeasurers = timedScalarMeasurers;
+
         for (RobustScalarMeasurerWrapper timedScalarMeasurer : timedScalarMeasurers) {
-            timedScalarMeasurer.prepareMeasurements(mementos);
+            if (samplers.containsKey(timedScalarMeasurer)) {
+                continue;
+            }
+
+            final Sampler sampler = new Sampler(timedScalarMeasurer);
+            samplers.put(timedScalarMeasurer, sampler);
+
+            timedScalarMeasurer.prepareMeasurements(sampler.mementos);
+            final long intervalMillis = getIntervalMillis(timedScalarMeasurer);
+            try {
+                scheduler.scheduleAtFixedRate(sampler, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+            }
+            catch (RejectedExecutionException exc) {
+                // shut down concurrently
+            }
         }
-        this.timedScalarMeasurers = timedScalarMeasurers;
+    }
+
+    long getIntervalMillis(RobustScalarMeasurerWrapper measurer) {
+        final Integer configured = configuredIntervalsSeconds.get(measurer.getMeasurerName());
+        if (configured != null) {
+            return configured * 1000L;
+        }
+        return measurer.getSamplingIntervalInMilliSeconds().getOrElse(defaultIntervalMillis);
     }
 
     void addMeasurement(AScalarDataPoint... dataPoint) {
         for (AScalarDataPoint point : dataPoint) {
-            String name = point.getName();
-            if (!dataBuffer.containsKey(name)){
-                dataBuffer.put(name, new ARingBuffer<>(AScalarDataPoint.class, maxEntriesTotal));
-            }
-            dataBuffer.get(name).put(point);
-
-            if (!dataBufferMonitoring.containsKey(name)){
-                dataBufferMonitoring.put(name, new ARingBuffer<>(AScalarDataPoint.class, maxEntriesMonitoring));
+            ATimedScalarBuffer buffer = dataBuffer.get(point.getName());
+            if (buffer == null) {
+                buffer = dataBuffer.computeIfAbsent(point.getName(), name -> createBuffer(name, point.getNumFracDigits()));
             }
-            dataBufferMonitoring.get(name).put(point);
+            buffer.put(point);
         }
     }
 
+    private ATimedScalarBuffer createBuffer(String name, int numFracDigits) {
+        final ATimedScalarBuffer result = new ATimedScalarBuffer(name, numFracDigits, Math.max(maxEntriesTotal, maxEntriesMonitoring), ATimedScalarRollup.createDefaultTiers());
+        views.put(name, result.view(maxEntriesTotal));
+        viewsMonitoring.put(name, result.view(maxEntriesMonitoring));
+        return result;
+    }
+
     public AList<RobustScalarMeasurerWrapper> getTimedScalarMeasurers() {
         return timedScalarMeasurers;
     }
+
+    void shutdown() {
+        scheduler.shutdownNow();
+        slowMeasurerPool.shutdownNow();
+    }
+
+    private class Sampler implements Runnable {
+        private final RobustScalarMeasurerWrapper measurer;
+        /**
+         * accessed only by the thread that is currently sampling
+         */
+        private final Map<String, Object> mementos = new HashMap<>();
+
+        private volatile boolean isSlow = false;
+        private final AtomicBoolean isRunning = new AtomicBoolean(false);
+
+        Sampler(RobustScalarMeasurerWrapper measurer) {
+            this.measurer = measurer;
+        }
+
+        /**
+         * This is called on the scheduler thread.
+         */
+        @Override public void run() {
+            if (NSysMonConfig.isGloballyDisabled()) {
+                //do nothing it nsysmon is disabled
+                return;
+            }
+
+            if (! isSlow) {
+                sample();
+                return;
+            }
+
+            if (! isRunning.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                slowMeasurerPool.execute(() -> {
+                    try {
+                        sample();
+                    }
+                    finally {
+                        isRunning.set(false);
+                    }
+                });
+            }
+            catch (RejectedExecutionException exc) {
+                isRunning.set(false);
+            }
+        }
+
+        private void sample() {
+            try {
+                final long start = System.nanoTime();
+                final Map<String, AScalarDataPoint> data = new HashMap<>();
+
+                measurer.contributeMeasurements(data, System.currentTimeMillis(), mementos);
+                measurer.prepareMeasurements(mementos);
+                data.values().forEach(TimedScalarDataWrapper.this::addMeasurement);
+
+                if (! isSlow && System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(SLOW_MEASURER_THRESHOLD_MILLIS)) {
+                    log.info("timed scalar measurer " + measurer.getMeasurerName() + " is slow - sampling it on a separate thread from now on");
+                    isSlow = true;
+                }
+            }
+            catch (Exception exc) {
+                // a periodic task is cancelled if it throws an exception
+                log.error(exc);
+            }
+        }
+    }
 }
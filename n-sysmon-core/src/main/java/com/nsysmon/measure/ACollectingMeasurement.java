@@ -33,6 +33,11 @@ public class ACollectingMeasurement implements AWithParameters {
 
     private final List<AHierarchicalData> childrenOfParent;
 
+    /**
+     * the parent measurement's node if the hierarchy is recorded in an {@link AMeasurementEventBuffer}
+     */
+    private int parentNode = AMeasurementEventBuffer.NO_PARENT;
+
     private long totalDurationNanos = 0;
 
     private String detailIdentifier = null;
@@ -55,6 +60,12 @@ public class ACollectingMeasurement implements AWithParameters {
         return new ACollectingMeasurement (config, hierarchy, isSerial, identifier, childrenOfParent, false);
     }
 
+    static ACollectingMeasurement createRegular(NSysMonConfig config, AMeasurementHierarchy hierarchy, boolean isSerial, String identifier, int parentNode) {
+        final ACollectingMeasurement result = new ACollectingMeasurement (config, hierarchy, isSerial, identifier, null, false);
+        result.parentNode = parentNode;
+        return result;
+    }
+
     static ACollectingMeasurement createDisabled() {
         return new ACollectingMeasurement (null, null, true, null, null, true);
     }
@@ -63,6 +74,10 @@ public class ACollectingMeasurement implements AWithParameters {
         return childrenOfParent;
     }
 
+    int getParentNode() {
+        return parentNode;
+    }
+
     public boolean isSerial() {
         return isSerial;
     }
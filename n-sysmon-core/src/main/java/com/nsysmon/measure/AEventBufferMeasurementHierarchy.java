@@ -0,0 +1,315 @@
+package com.nsysmon.measure;
+
+import com.ajjpj.afoundation.function.AFunction0NoThrow;
+import com.nsysmon.config.NSysMonConfig;
+import com.nsysmon.config.log.NSysMonLogger;
+import com.nsysmon.data.ACorrelationId;
+import com.nsysmon.data.AHierarchicalData;
+import com.nsysmon.data.AHierarchicalDataRoot;
+import com.nsysmon.datasink.ADataSink;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * This is an alternative to {@link AMeasurementHierarchyImpl} that records measurements in a per-thread
+ *  {@link AMeasurementEventBuffer} instead of creating objects for every measurement. It has the same semantics with
+ *  regard to unrolling and killing hierarchies.<p>
+ *
+ * Simple measurements are represented by small handles that hold a node index and the event buffer's generation at the
+ *  time the measurement was started. The event buffer is reused for later hierarchies on the same thread, so a handle
+ *  that is used after its hierarchy was finished is rejected based on the generation rather than writing into the
+ *  later hierarchy's node with the same index.<p>
+ *
+ * The tree of {@link AHierarchicalData} is built only when a data sink calls
+ *  {@link AHierarchicalDataRoot#getRootNode()}.
+ *
+ * @author arno
+ */
+public class AEventBufferMeasurementHierarchy implements AMeasurementHierarchy {
+    private static final NSysMonLogger log = NSysMonLogger.get(AEventBufferMeasurementHierarchy.class);
+
+    private static final ThreadLocal<AMeasurementEventBuffer> bufferPerThread = ThreadLocal.withInitial(AMeasurementEventBuffer::new);
+
+    private static final ASimpleMeasurement DISABLED = new ASimpleMeasurement() {
+        @Override public void finish() {
+        }
+
+        @Override public void addParameter(String identifier, String value) {
+        }
+    };
+
+    private final NSysMonConfig config;
+    private final ADataSink dataSink;
+    private final AMeasurementEventBuffer buffer;
+
+    private int size = 0; // total number of measurements in this hierarchy
+
+    private Collection<ACorrelationId> startedFlows = null;
+    private Collection<ACorrelationId> joinedFlows = null;
+
+    /**
+     * shows if this measurement was finished in an orderly fashion
+     */
+    private boolean isFinished = false;
+
+    private boolean killedDueSize = false;
+
+    public AEventBufferMeasurementHierarchy(NSysMonConfig config, ADataSink dataSink) {
+        this.config = config;
+        this.dataSink = dataSink;
+
+        final AMeasurementEventBuffer candidate = bufferPerThread.get();
+        if(candidate.isInUse) {
+            // there is a hierarchy of a different NSysMon instance running in this thread
+            this.buffer = new AMeasurementEventBuffer();
+        }
+        else {
+            this.buffer = candidate;
+        }
+        this.buffer.isInUse = true;
+    }
+
+    private boolean checkNotFinished () {
+        if(isFinished) {
+            log.error (new IllegalStateException("This measurement is already closed."));
+        }
+        return isFinished;
+    }
+
+    @Override public ASimpleMeasurement start(String identifier, boolean isSerial) {
+        if(NSysMonConfig.isGloballyDisabled() || checkNotFinished()) {
+            return DISABLED;
+        }
+
+        if(buffer.getNumOpen() == 0) {
+            dataSink.onStartedHierarchicalMeasurement(identifier);
+        }
+
+        if(isSerial) {
+            checkOverflow();
+            if(killedDueSize) {
+                return DISABLED;
+            }
+
+            final int node = buffer.addNode(identifier, true, buffer.peekOpen(), config.timer.getCurrentNanos(), System.currentTimeMillis());
+            buffer.pushOpen(node);
+            size += 1;
+            return handle(node);
+        }
+        else {
+            final int node = buffer.addNode(identifier, false, buffer.peekOpen(), config.timer.getCurrentNanos(), System.currentTimeMillis());
+            return handle(node);
+        }
+    }
+
+    private Handle handle(int node) {
+        return new Handle(this, node, buffer.getGeneration());
+    }
+
+    private boolean isStale(int generation) {
+        return isFinished || generation != buffer.getGeneration();
+    }
+
+    private void checkOverflow() {
+        checkMaxDepth ();
+        checkMaxSize ();
+    }
+
+    private void checkMaxSize () {
+        if (size < config.maxNumMeasurementsPerHierarchy || killedDueSize) {
+            return;
+        }
+
+        doKill();
+    }
+
+    private void doKill() {
+        log.warn("Excessive number of measurements in a single hierarchy:  " + size + " - probable memory leak, forcefully cleaning measurement stack.");
+        killedDueSize = true;
+    }
+
+    private void checkMaxDepth () {
+        if (buffer.getNumOpen() < config.maxNestedMeasurements || killedDueSize) {
+            return;
+        }
+
+        doKill();
+    }
+
+    private void addParameter(int node, int generation, String identifier, String value) {
+        if(isStale(generation)) {
+            log.error (new IllegalStateException("This measurement is already closed."));
+            return;
+        }
+        if(buffer.isFinished(node)) {
+            return;
+        }
+        if(! buffer.addParameter(node, identifier, value)) {
+            log.warn("duplicate parameter " + identifier + " for a measurement");
+        }
+    }
+
+    private void finish(int node, int generation) {
+        if(NSysMonConfig.isGloballyDisabled()) {
+            return;
+        }
+
+        if(isStale(generation)) {
+            log.error (new IllegalStateException("a simple measurement can be finished only once."));
+            return;
+        }
+
+        finish(node);
+    }
+
+    private void finish(int node) {
+
+        if (checkNotFinished ()) {
+            return;
+        }
+
+        if(buffer.isFinished(node)) {
+            log.error (new IllegalStateException("a simple measurement can be finished only once."));
+            return;
+        }
+
+        if(! buffer.isSerial(node)) {
+            buffer.finishNode(node, config.timer.getCurrentNanos() - buffer.getStartNanos(node), killedDueSize);
+            return;
+        }
+
+        if (buffer.peekOpen() != node) {
+            // see AMeasurementHierarchyImpl for a discussion
+
+            if(buffer.isOpen(node)) {
+                log.warn("Calling 'finish' on a measurement " + buffer.getIdentifier(node) + " that is not innermost on the stack.");
+
+                while(buffer.peekOpen() != node) {
+                    log.warn("-> Implicitly unrolling the stack of open measurements: " + buffer.getIdentifier(buffer.peekOpen()));
+                    finish(buffer.peekOpen());
+                }
+            }
+            else {
+                if (!killedDueSize) {
+                    log.error(new IllegalStateException("Calling 'finish' on a measurement that is not on the measurement stack: " + buffer.getIdentifier(node)));
+                }
+                return;
+            }
+        }
+
+        buffer.finishNode(node, config.timer.getCurrentNanos() - buffer.getStartNanos(node), killedDueSize);
+        buffer.popOpen();
+
+        if(buffer.getNumOpen() == 0) {
+            // copy into a separate collection because the collection is modified in the loop
+            new ArrayList<>(buffer.collectingMeasurements).forEach(this::finish);
+            isFinished = true;
+
+            final AMeasurementEventBuffer snapshot = buffer.snapshot();
+            buffer.reset();
+            buffer.isInUse = false;
+
+            dataSink.onFinishedHierarchicalMeasurement(new AHierarchicalDataRoot(
+                    () -> snapshot.toHierarchicalData(node),
+                    startedFlows != null ? startedFlows : Collections.emptyList(),
+                    joinedFlows != null ? joinedFlows : Collections.emptyList(),
+                    killedDueSize));
+        }
+    }
+
+    @Override public void finish(ASimpleSerialMeasurementImpl measurement) {
+        log.error(new IllegalStateException("measurement " + measurement + " does not belong to this hierarchy"));
+    }
+
+    @Override public void finish(ASimpleParallelMeasurementImpl measurement) {
+        log.error(new IllegalStateException("measurement " + measurement.getIdentifier() + " does not belong to this hierarchy"));
+    }
+
+    @Override
+    public ACollectingMeasurement startCollectingMeasurement (final String identifier, boolean isSerial) {
+        if(NSysMonConfig.isGloballyDisabled() || checkNotFinished()) {
+            return ACollectingMeasurement.createDisabled ();
+        }
+
+        if(buffer.getNumOpen() == 0) {
+            // see AMeasurementHierarchyImpl
+            log.debug ((AFunction0NoThrow<String>) () -> "Trying to start a collectiong mesaurement outside of a measurement hierarchy: " + identifier);
+            return ACollectingMeasurement.createDisabled ();
+        }
+
+        size += 1;
+        checkOverflow();
+        if (killedDueSize){
+            return ACollectingMeasurement.createDisabled ();
+        }
+        final ACollectingMeasurement result = ACollectingMeasurement.createRegular (config, this, isSerial, identifier, buffer.peekOpen());
+        buffer.collectingMeasurements.add(result);
+        return result;
+    }
+
+    @Override public void finish(ACollectingMeasurement m) {
+        if(NSysMonConfig.isGloballyDisabled()) {
+            return;
+        }
+
+        if (checkNotFinished ()) {
+            return;
+        }
+
+        final List<AHierarchicalData> children = new ArrayList<>(m.getDetails().size());
+        for(Map.Entry<String, ACollectingMeasurement.Detail> detail: m.getDetails().entrySet()) {
+            children.add(new AHierarchicalData(true, m.getStartTimeMillis(), detail.getValue().getTotalNanos(), detail.getKey(), Collections.emptyMap(), Collections.emptyList(), killedDueSize));
+        }
+
+        final AHierarchicalData newData = new AHierarchicalData(m.isSerial(), m.getStartTimeMillis(), m.getTotalDurationNanos(), m.getIdentifier(), m.getParameters(), children, killedDueSize);
+        buffer.addPrebuiltNode(m.getParentNode(), newData);
+        buffer.collectingMeasurements.remove(m);
+    }
+
+    @Override public void onStartFlow(ACorrelationId correlationId) {
+        if(startedFlows == null) {
+            startedFlows = new HashSet<>();
+        }
+        if(!startedFlows.add(correlationId)) {
+            log.warn("called 'startFlow' for flow " + correlationId + " twice");
+        }
+    }
+
+    @Override public void onJoinFlow(ACorrelationId correlationId) {
+        if(joinedFlows == null) {
+            joinedFlows = new HashSet<>();
+        }
+        if(!joinedFlows.add(correlationId)) {
+            log.warn("called 'joinFlow' for flow " + correlationId + " twice");
+        }
+    }
+
+    /**
+     * A simple measurement is just the index of its node in the event buffer, stamped with the buffer's generation.
+     */
+    static final class Handle implements ASimpleMeasurement {
+        private final AEventBufferMeasurementHierarchy hierarchy;
+        private final int node;
+        private final int generation;
+
+        private Handle(AEventBufferMeasurementHierarchy hierarchy, int node, int generation) {
+            this.hierarchy = hierarchy;
+            this.node = node;
+            this.generation = generation;
+        }
+
+        @Override public void finish() {
+            hierarchy.finish(node, generation);
+        }
+
+        @Override public void addParameter(String identifier, String value) {
+            hierarchy.addParameter(node, generation, identifier, value);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package com.nsysmon.measure;
+
+import com.nsysmon.data.AHierarchicalData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * This class records the measurements of a single hierarchy in primitive arrays rather than in a tree of objects. It
+ *  is reused for all hierarchies measured on a given thread, so that recording a measurement does not allocate once
+ *  the arrays have grown to their working size.<p>
+ *
+ * Every measurement is a 'node', numbered in the order in which the measurements were started. Identifiers are stored
+ *  as int ids into a dictionary of the identifiers used in this hierarchy, and parameters are stored in a separate
+ *  set of arrays as a linked list per node.<p>
+ *
+ * When a hierarchy is finished, {@link #snapshot()} copies the used part of the arrays, and the buffer is reset for
+ *  the next hierarchy. The snapshot is turned into a tree of {@link AHierarchicalData} only when some data sink
+ *  actually asks for it.<p>
+ *
+ * Instances are not thread safe.
+ *
+ * @author arno
+ */
+class AMeasurementEventBuffer {
+    static final int NO_PARENT = -1;
+    private static final int NO_PARAM = -1;
+
+    private static final byte FLAG_SERIAL = 1;
+    private static final byte FLAG_FINISHED = 2;
+    private static final byte FLAG_KILLED = 4;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * After unusually big hierarchies, the arrays are shrunk back to this size so that threads do not hold on to large
+     *  amounts of memory.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 4096;
+
+    boolean isInUse = false;
+
+    /**
+     * incremented on every {@link #reset()}, so that handles of measurements from an earlier hierarchy can be detected
+     *  - see {@link AEventBufferMeasurementHierarchy}
+     */
+    private int generation = 0;
+
+    private int numNodes = 0;
+    private int numFinished = 0;
+    private long[] startMillis;
+    private long[] startNanos;
+    private long[] durationNanos;
+    private int[] identifierIds;
+    private int[] parents;
+    private int[] firstParams;
+    private int[] finishSeqs;
+    private byte[] flags;
+
+    /**
+     * for measurements that are aggregated elsewhere (i.e. collecting measurements) and just need to be attached to
+     *  the tree
+     */
+    private AHierarchicalData[] prebuilt;
+
+    private int numSymbols = 0;
+    private String[] symbols;
+    private int[] symbolTable; // open addressing, slots contain 'id+1' with 0 marking an empty slot
+
+    private int numParams = 0;
+    private String[] paramKeys;
+    private String[] paramValues;
+    private int[] paramNext;
+
+    /**
+     * the stack of unfinished serial measurements, innermost last
+     */
+    private int numOpen = 0;
+    private int[] openNodes = new int[16];
+
+    final List<ACollectingMeasurement> collectingMeasurements = new ArrayList<>();
+
+    AMeasurementEventBuffer() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        startMillis = new long[capacity];
+        startNanos = new long[capacity];
+        durationNanos = new long[capacity];
+        identifierIds = new int[capacity];
+        parents = new int[capacity];
+        firstParams = new int[capacity];
+        finishSeqs = new int[capacity];
+        flags = new byte[capacity];
+        prebuilt = new AHierarchicalData[capacity];
+
+        symbols = new String[capacity];
+        symbolTable = new int[2*capacity];
+
+        paramKeys = new String[capacity];
+        paramValues = new String[capacity];
+        paramNext = new int[capacity];
+    }
+
+    int getNumNodes() {
+        return numNodes;
+    }
+
+    int getNumOpen() {
+        return numOpen;
+    }
+
+    void pushOpen(int node) {
+        if(numOpen == openNodes.length) {
+            openNodes = Arrays.copyOf(openNodes, 2*numOpen);
+        }
+        openNodes[numOpen++] = node;
+    }
+
+    void popOpen() {
+        numOpen -= 1;
+    }
+
+    /**
+     * @return the innermost unfinished serial measurement, or NO_PARENT if there is none
+     */
+    int peekOpen() {
+        return numOpen == 0 ? NO_PARENT : openNodes[numOpen-1];
+    }
+
+    boolean isOpen(int node) {
+        for(int i=0; i<numOpen; i++) {
+            if(openNodes[i] == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int addNode(String identifier, boolean isSerial, int parent, long startNanos, long startMillis) {
+        ensureNodeCapacity();
+
+        final int result = numNodes++;
+        this.startMillis[result] = startMillis;
+        this.startNanos[result] = startNanos;
+        this.durationNanos[result] = 0;
+        this.identifierIds[result] = symbolId(identifier);
+        this.parents[result] = parent;
+        this.firstParams[result] = NO_PARAM;
+        this.flags[result] = isSerial ? FLAG_SERIAL : 0;
+        return result;
+    }
+
+    int addPrebuiltNode(int parent, AHierarchicalData data) {
+        final int result = addNode(data.getIdentifier(), data.isSerial(), parent, 0, data.getStartTimeMillis());
+        prebuilt[result] = data;
+        finishNode(result, data.getDurationNanos(), data.isWasKilled());
+        return result;
+    }
+
+    void finishNode(int node, long durationNanos, boolean wasKilled) {
+        this.durationNanos[node] = durationNanos;
+        this.flags[node] |= FLAG_FINISHED;
+        if(wasKilled) {
+            this.flags[node] |= FLAG_KILLED;
+        }
+        this.finishSeqs[node] = numFinished++;
+    }
+
+    boolean isSerial(int node) {
+        return (flags[node] & FLAG_SERIAL) != 0;
+    }
+
+    boolean isFinished(int node) {
+        return (flags[node] & FLAG_FINISHED) != 0;
+    }
+
+    long getStartNanos(int node) {
+        return startNanos[node];
+    }
+
+    String getIdentifier(int node) {
+        return symbols[identifierIds[node]];
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return false if the node had a parameter with the same key, which is replaced in that case
+     */
+    boolean addParameter(int node, String key, String value) {
+        int last = NO_PARAM;
+        for(int p = firstParams[node]; p != NO_PARAM; p = paramNext[p]) {
+            if(paramKeys[p].equals(key)) {
+                paramValues[p] = value;
+                return false;
+            }
+            last = p;
+        }
+
+        if(numParams == paramKeys.length) {
+            paramKeys = Arrays.copyOf(paramKeys, 2*numParams);
+            paramValues = Arrays.copyOf(paramValues, 2*numParams);
+            paramNext = Arrays.copyOf(paramNext, 2*numParams);
+        }
+
+        final int p = numParams++;
+        paramKeys[p] = key;
+        paramValues[p] = value;
+        paramNext[p] = NO_PARAM;
+        if(last == NO_PARAM) {
+            firstParams[node] = p;
+        }
+        else {
+            paramNext[last] = p;
+        }
+        return true;
+    }
+
+    private int symbolId(String identifier) {
+        final int mask = symbolTable.length - 1;
+        int slot = identifier.hashCode() & mask;
+        while(true) {
+            final int entry = symbolTable[slot];
+            if(entry == 0) {
+                break;
+            }
+            final String candidate = symbols[entry - 1];
+            //noinspection StringEquality
+            if(candidate == identifier || candidate.equals(identifier)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if(numSymbols == symbols.length) {
+            growSymbols();
+            return symbolId(identifier);
+        }
+
+        final int result = numSymbols++;
+        symbols[result] = identifier;
+        symbolTable[slot] = result + 1;
+        return result;
+    }
+
+    private void growSymbols() {
+        symbols = Arrays.copyOf(symbols, 2*symbols.length);
+        symbolTable = new int[2*symbols.length];
+        final int mask = symbolTable.length - 1;
+        for(int id=0; id<numSymbols; id++) {
+            int slot = symbols[id].hashCode() & mask;
+            while(symbolTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            symbolTable[slot] = id + 1;
+        }
+    }
+
+    private void ensureNodeCapacity() {
+        if(numNodes < flags.length) {
+            return;
+        }
+
+        final int newCapacity = 2*flags.length;
+        startMillis = Arrays.copyOf(startMillis, newCapacity);
+        startNanos = Arrays.copyOf(startNanos, newCapacity);
+        durationNanos = Arrays.copyOf(durationNanos, newCapacity);
+        identifierIds = Arrays.copyOf(identifierIds, newCapacity);
+        parents = Arrays.copyOf(parents, newCapacity);
+        firstParams = Arrays.copyOf(firstParams, newCapacity);
+        finishSeqs = Arrays.copyOf(finishSeqs, newCapacity);
+        flags = Arrays.copyOf(flags, newCapacity);
+        prebuilt = Arrays.copyOf(prebuilt, newCapacity);
+    }
+
+    /**
+     * @return a compact copy of this buffer's data. The copy is independent of this buffer, so this buffer can be
+     *          reset and reused afterwards.
+     */
+    AMeasurementEventBuffer snapshot() {
+        return new AMeasurementEventBuffer(this);
+    }
+
+    private AMeasurementEventBuffer(AMeasurementEventBuffer orig) {
+        numNodes = orig.numNodes;
+        numFinished = orig.numFinished;
+        startMillis = Arrays.copyOf(orig.startMillis, numNodes);
+        startNanos = null;
+        durationNanos = Arrays.copyOf(orig.durationNanos, numNodes);
+        identifierIds = Arrays.copyOf(orig.identifierIds, numNodes);
+        parents = Arrays.copyOf(orig.parents, numNodes);
+        firstParams = Arrays.copyOf(orig.firstParams, numNodes);
+        finishSeqs = Arrays.copyOf(orig.finishSeqs, numNodes);
+        flags = Arrays.copyOf(orig.flags, numNodes);
+        prebuilt = Arrays.copyOf(orig.prebuilt, numNodes);
+
+        numSymbols = orig.numSymbols;
+        symbols = Arrays.copyOf(orig.symbols, numSymbols);
+
+        numParams = orig.numParams;
+        paramKeys = Arrays.copyOf(orig.paramKeys, numParams);
+        paramValues = Arrays.copyOf(orig.paramValues, numParams);
+        paramNext = Arrays.copyOf(orig.paramNext, numParams);
+    }
+
+    /**
+     * Prepares this buffer for the next hierarchy, releasing all references to this hierarchy's data.
+     */
+    void reset() {
+        if(flags.length > MAX_RETAINED_CAPACITY) {
+            allocate(INITIAL_CAPACITY);
+        }
+        else {
+            Arrays.fill(prebuilt, 0, numNodes, null);
+            Arrays.fill(symbols, 0, numSymbols, null);
+            Arrays.fill(symbolTable, 0);
+            Arrays.fill(paramKeys, 0, numParams, null);
+            Arrays.fill(paramValues, 0, numParams, null);
+        }
+
+        numNodes = 0;
+        numFinished = 0;
+        numSymbols = 0;
+        numParams = 0;
+        numOpen = 0;
+        collectingMeasurements.clear();
+        generation += 1;
+    }
+
+    /**
+     * Builds the tree of {@link AHierarchicalData} for a given node. Children are ordered by the time at which they
+     *  were finished, and measurements that were not finished are skipped.
+     */
+    AHierarchicalData toHierarchicalData(int rootNode) {
+        final int[] nodesByFinishSeq = new int[numFinished];
+        final int[] numChildren = new int[numNodes];
+        for(int node=0; node<numNodes; node++) {
+            if((flags[node] & FLAG_FINISHED) == 0) {
+                continue;
+            }
+            nodesByFinishSeq[finishSeqs[node]] = node;
+            if(parents[node] != NO_PARENT) {
+                numChildren[parents[node]] += 1;
+            }
+        }
+
+        final List<List<AHierarchicalData>> children = new ArrayList<>(Collections.nCopies(numNodes, null));
+        AHierarchicalData result = null;
+
+        for(int node: nodesByFinishSeq) {
+            final AHierarchicalData data;
+            if(prebuilt[node] != null) {
+                data = prebuilt[node];
+            }
+            else {
+                data = new AHierarchicalData(
+                        (flags[node] & FLAG_SERIAL) != 0,
+                        startMillis[node],
+                        durationNanos[node],
+                        symbols[identifierIds[node]],
+                        parameters(node),
+                        childList(children, numChildren, node),
+                        (flags[node] & FLAG_KILLED) != 0);
+            }
+
+            if(parents[node] != NO_PARENT) {
+                childList(children, numChildren, parents[node]).add(data);
+            }
+            if(node == rootNode) {
+                result = data;
+            }
+        }
+        return result;
+    }
+
+    private static List<AHierarchicalData> childList(List<List<AHierarchicalData>> children, int[] numChildren, int node) {
+        List<AHierarchicalData> result = children.get(node);
+        if(result == null) {
+            result = numChildren[node] == 0 ? Collections.emptyList() : new ArrayList<>(numChildren[node]);
+            children.set(node, result);
+        }
+        return result;
+    }
+
+    private Map<String, String> parameters(int node) {
+        if(firstParams[node] == NO_PARAM) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, String> result = new HashMap<>();
+        for(int p = firstParams[node]; p != NO_PARAM; p = paramNext[p]) {
+            result.put(paramKeys[p], paramValues[p]);
+        }
+        return result;
+    }
+}
@@ -1,7 +1,9 @@
 package com.nsysmon.measure.environment.impl;
 
-import com.ajjpj.afoundation.proc.CliCommand;
+import com.nsysmon.NSysMonApi;
+import com.nsysmon.config.NSysMonAware;
 import com.nsysmon.measure.environment.AEnvironmentMeasurer;
+import com.nsysmon.measure.scalar.AMountedFileSystems;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -15,56 +17,53 @@ import java.util.Map;
  *
  * @author arno
  */
-public class AFileSystemsEnvironmentMeasurer implements AEnvironmentMeasurer {
+public class AFileSystemsEnvironmentMeasurer implements AEnvironmentMeasurer, NSysMonAware {
     public static final String KEY_FILESYSTEMS = "file systems";
 
+    /**
+     * This is replaced by an instance with the configured TTL and timeout when the measurer is registered with N-SysMon.
+     */
+    private volatile AMountedFileSystems fileSystems = new AMountedFileSystems(10_000, 1_000);
+
     @Override public void contributeMeasurements(EnvironmentCollector data) throws Exception {
         contributeMtab(data);
-        contributeDf(data);
+        contributeUsage(data);
     }
 
-    private static void contributeDf(EnvironmentCollector data) throws Exception {
-        for(String line: new CliCommand("df", "-P").getOutput()) {
-            if(! line.startsWith("/dev/")) {
-                continue;
-            }
-
-            final String[] split = line.split("\\s+");
-            if(split.length != 6) {
-                continue;
-            }
+    @Override public void setNSysMon(NSysMonApi sysMon) {
+        final AMountedFileSystems prev = fileSystems;
+        fileSystems = new AMountedFileSystems(sysMon.getConfig().diskUsageTtlMillis, sysMon.getConfig().diskUsageTimeoutMillis);
+        try {
+            prev.shutdown();
+        }
+        catch (IOException exc) {
+            // the previous instance was never used
+        }
+    }
 
-            final String device = split[0];
-            final String size = split[1];
-            final String used = split[2];
-            final String available = split[3];
-            final String usedPercent = split[4];
-            final String mountPoint = split[5];
-
-            add(data, device, "Size Total (1k Blocks)", size);
-            add(data, device, "Size Used (1k Blocks)", used);
-            add(data, device, "Size Available (1k Blocks)", available);
-            add(data, device, "Size Used (%)", usedPercent);
-            add(data, device, "Mount Point", mountPoint);
+    private void contributeUsage(EnvironmentCollector data) throws Exception {
+        for(AMountedFileSystems.Usage usage: fileSystems.getUsage()) {
+            final String device = "/dev/" + usage.mount.device;
+            // relative to the space available to non-privileged users, and rounded up - like 'df' does it
+            final long base = usage.usedBytes + usage.availableBytes;
+            final long usedPercent = base == 0 ? 0 : (usage.usedBytes * 100 + base - 1) / base;
+
+            add(data, device, "Size Total (1k Blocks)", String.valueOf(usage.totalBytes / 1024));
+            add(data, device, "Size Used (1k Blocks)", String.valueOf(usage.usedBytes / 1024));
+            add(data, device, "Size Available (1k Blocks)", String.valueOf(usage.availableBytes / 1024));
+            add(data, device, "Size Used (%)", usedPercent + "%");
+            add(data, device, "Mount Point", usage.mount.mountPoint);
         }
     }
 
+    /**
+     * @return mount points by device, with devices not including the '/dev/' prefix
+     */
     public static Map<String, String> getMountPoints() throws Exception {
         final Map<String, String> result = new HashMap<>();
-
-        for(String line: new CliCommand("df", "-P").getOutput()) {
-            if(! line.startsWith("/dev/")) {
-                continue;
-            }
-
-            final String[] split = line.split("\\s+");
-            if(split.length != 6) {
-                continue;
-            }
-
-            result.put(split[0].substring("/dev/".length()), split[5]);
+        for(AMountedFileSystems.Mount mount: AMountedFileSystems.readMounts()) {
+            result.put(mount.device, mount.mountPoint);
         }
-
         return result;
     }
 
@@ -106,5 +105,6 @@ public class AFileSystemsEnvironmentMeasurer implements AEnvironmentMeasurer {
 
     @Override
     public void shutdown() throws Exception {
+        fileSystems.shutdown();
     }
 }
@@ -0,0 +1,333 @@
+package com.nsysmon.measure.jdbc;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * This class normalizes SQL strings to 'fingerprints' so that statements differing only in their literals are
+ *  aggregated as a single measurement identifier: String and numeric literals are replaced by '?', IN-lists of
+ *  literals and placeholders are collapsed to a single '?', comments are removed and whitespace is normalized.<p>
+ *
+ * Fingerprinting is done by a hand-written single pass tokenizer. Fingerprints are cached per raw SQL string, so
+ *  that executing the same SQL repeatedly - which is the typical case, especially for prepared statements - does
+ *  not tokenize or build strings. The cache is bounded: It consists of two generations, and when the young generation
+ *  is full, the old generation is discarded. Entries that are used while in the old generation are copied back into
+ *  the young generation, so frequently used SQL stays in the cache.<p>
+ *
+ * Standard SQL escapes a quote inside a string literal by doubling it. Some databases (e.g. MySQL by default) also
+ *  treat a backslash as an escape character in all string literals. That is a dialect option, and it is off by
+ *  default: Treating backslashes as escapes in standard SQL would make a literal ending in a backslash swallow the rest
+ *  of the statement. PostgreSQL style E'...' literals always use backslash escapes.
+ *
+ * @author arno
+ */
+public class ASqlFingerprint {
+    public static final int DEFAULT_MAX_CACHE_SIZE = 10_000;
+
+    private static final ASqlFingerprint STANDARD = new ASqlFingerprint(DEFAULT_MAX_CACHE_SIZE, false);
+    private static final ASqlFingerprint BACKSLASH_ESCAPES = new ASqlFingerprint(DEFAULT_MAX_CACHE_SIZE, true);
+
+    private final int maxGenerationSize;
+    private final boolean backslashEscapes;
+
+    private volatile ConcurrentHashMap<String, String> youngGeneration = new ConcurrentHashMap<>();
+    private volatile ConcurrentHashMap<String, String> oldGeneration = new ConcurrentHashMap<>();
+
+    ASqlFingerprint(int maxCacheSize, boolean backslashEscapes) {
+        this.maxGenerationSize = Math.max(1, maxCacheSize / 2);
+        this.backslashEscapes = backslashEscapes;
+    }
+
+    /**
+     * @return the measurement identifier for a given SQL string, i.e. its fingerprint with the
+     *          {@link NSysMonStatement#IDENT_PREFIX_JDBC JDBC prefix}
+     */
+    public static String identFor(String sql) {
+        return identFor(sql, false);
+    }
+
+    /**
+     * @param backslashEscapes if true, a backslash inside a string literal escapes the next character
+     */
+    public static String identFor(String sql, boolean backslashEscapes) {
+        return (backslashEscapes ? BACKSLASH_ESCAPES : STANDARD).cachedIdent(sql);
+    }
+
+    String cachedIdent(String sql) {
+        if(sql == null) {
+            return NSysMonStatement.IDENT_PREFIX_JDBC + " " + null;
+        }
+
+        final ConcurrentHashMap<String, String> young = youngGeneration;
+        String result = young.get(sql);
+        if(result != null) {
+            return result;
+        }
+
+        result = oldGeneration.get(sql);
+        if(result == null) {
+            result = NSysMonStatement.IDENT_PREFIX_JDBC + " " + fingerprint(sql, backslashEscapes);
+        }
+
+        if(young.size() >= maxGenerationSize) {
+            synchronized (this) {
+                if(youngGeneration == young) {
+                    oldGeneration = young;
+                    youngGeneration = new ConcurrentHashMap<>();
+                }
+            }
+        }
+        youngGeneration.put(sql, result);
+        return result;
+    }
+
+    int size() {
+        return youngGeneration.size() + oldGeneration.size();
+    }
+
+    /**
+     * @return the normalized SQL string, treating backslashes as ordinary characters
+     */
+    public static String fingerprint(String sql) {
+        return fingerprint(sql, false);
+    }
+
+    /**
+     * @param backslashEscapes if true, a backslash inside a string literal escapes the next character
+     * @return the normalized SQL string
+     */
+    public static String fingerprint(String sql, boolean backslashEscapes) {
+        final int len = sql.length();
+        final StringBuilder sb = new StringBuilder(len);
+
+        boolean pendingSpace = false;
+        int i = 0;
+        while(i < len) {
+            final char ch = sql.charAt(i);
+
+            if(Character.isWhitespace(ch)) {
+                pendingSpace = sb.length() > 0;
+                i += 1;
+                continue;
+            }
+            if(ch == '-' && i+1 < len && sql.charAt(i+1) == '-') {
+                i = skipLineComment(sql, i);
+                pendingSpace = sb.length() > 0;
+                continue;
+            }
+            if(ch == '/' && i+1 < len && sql.charAt(i+1) == '*') {
+                i = skipBlockComment(sql, i);
+                pendingSpace = sb.length() > 0;
+                continue;
+            }
+
+            if(pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+
+            if(ch == '\'') {
+                i = skipQuoted(sql, i, '\'', backslashEscapes);
+                appendPlaceholder(sb);
+            }
+            else if(ch == '"' || ch == '`') {
+                // quoted identifiers are kept verbatim
+                final int end = skipQuoted(sql, i, ch, false);
+                sb.append(sql, i, end);
+                i = end;
+            }
+            else if(isDigit(ch) || (ch == '.' && i+1 < len && isDigit(sql.charAt(i+1)) && ! endsWithIdentifier(sb))) {
+                i = skipNumber(sql, i);
+                appendPlaceholder(sb);
+            }
+            else if(isIdentifierPart(ch)) {
+                final int end = skipIdentifier(sql, i);
+                if(end < len && sql.charAt(end) == '\'' && isStringPrefix(sql, i, end)) {
+                    // typed string literal, e.g. N'abc' or X'0F' - escape string literals E'...' always use backslash escapes
+                    final boolean isEscapeString = ch == 'E' || ch == 'e';
+                    i = skipQuoted(sql, end, '\'', backslashEscapes || isEscapeString);
+                    appendPlaceholder(sb);
+                }
+                else {
+                    sb.append(sql, i, end);
+                    i = end;
+                }
+            }
+            else if(ch == '(' && endsWithInKeyword(sb)) {
+                final int end = skipPlaceholderList(sql, i, backslashEscapes);
+                if(end > i) {
+                    sb.append("(?)");
+                    i = end;
+                }
+                else {
+                    sb.append(ch);
+                    i += 1;
+                }
+            }
+            else {
+                sb.append(ch);
+                i += 1;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendPlaceholder(StringBuilder sb) {
+        sb.append('?');
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static boolean isIdentifierPart(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_' || ch == '$' || ch == '#' || ch == '@';
+    }
+
+    private static boolean endsWithIdentifier(StringBuilder sb) {
+        return sb.length() > 0 && isIdentifierPart(sb.charAt(sb.length()-1));
+    }
+
+    private static boolean isStringPrefix(String sql, int start, int end) {
+        if(end - start != 1) {
+            return false;
+        }
+        switch(sql.charAt(start)) {
+            case 'N': case 'n':
+            case 'E': case 'e':
+            case 'X': case 'x':
+            case 'B': case 'b':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean endsWithInKeyword(StringBuilder sb) {
+        int end = sb.length();
+        if(end > 0 && sb.charAt(end-1) == ' ') {
+            end -= 1;
+        }
+        if(end < 2) {
+            return false;
+        }
+        final char c1 = sb.charAt(end-2);
+        final char c2 = sb.charAt(end-1);
+        return (c1 == 'i' || c1 == 'I') && (c2 == 'n' || c2 == 'N') && (end == 2 || ! isIdentifierPart(sb.charAt(end-3)));
+    }
+
+    private static int skipLineComment(String sql, int start) {
+        final int end = sql.indexOf('\n', start);
+        return end < 0 ? sql.length() : end + 1;
+    }
+
+    private static int skipBlockComment(String sql, int start) {
+        final int end = sql.indexOf("*/", start + 2);
+        return end < 0 ? sql.length() : end + 2;
+    }
+
+    /**
+     * @return the index after the closing quote, treating doubled quotes - and backslashes if requested - as escapes
+     */
+    private static int skipQuoted(String sql, int start, char quote, boolean backslashEscapes) {
+        int i = start + 1;
+        while(i < sql.length()) {
+            final char ch = sql.charAt(i);
+            if(ch == quote) {
+                if(i+1 < sql.length() && sql.charAt(i+1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            if(ch == '\\' && backslashEscapes) {
+                i += 2;
+                continue;
+            }
+            i += 1;
+        }
+        return sql.length();
+    }
+
+    private static int skipNumber(String sql, int start) {
+        int i = start;
+        final int len = sql.length();
+
+        if(sql.charAt(i) == '0' && i+1 < len && (sql.charAt(i+1) == 'x' || sql.charAt(i+1) == 'X')) {
+            i += 2;
+            while(i < len && Character.digit(sql.charAt(i), 16) >= 0) {
+                i += 1;
+            }
+            return i;
+        }
+
+        while(i < len) {
+            final char ch = sql.charAt(i);
+            if(isDigit(ch) || ch == '.') {
+                i += 1;
+            }
+            else if((ch == 'e' || ch == 'E') && i+1 < len && (isDigit(sql.charAt(i+1)) || ((sql.charAt(i+1) == '+' || sql.charAt(i+1) == '-') && i+2 < len && isDigit(sql.charAt(i+2))))) {
+                i += 2;
+            }
+            else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static int skipIdentifier(String sql, int start) {
+        int i = start;
+        while(i < sql.length() && isIdentifierPart(sql.charAt(i))) {
+            i += 1;
+        }
+        return i;
+    }
+
+    /**
+     * Checks if the parenthesis at a given position starts a list consisting only of literals and placeholders.
+     *
+     * @return the index after the closing parenthesis, or <code>start</code> if the list contains anything else
+     */
+    private static int skipPlaceholderList(String sql, int start, boolean backslashEscapes) {
+        final int len = sql.length();
+        int i = start + 1;
+        boolean expectingItem = true;
+
+        while(i < len) {
+            final char ch = sql.charAt(i);
+            if(Character.isWhitespace(ch)) {
+                i += 1;
+            }
+            else if(ch == ')') {
+                return expectingItem ? start : i + 1;
+            }
+            else if(ch == ',') {
+                if(expectingItem) {
+                    return start;
+                }
+                expectingItem = true;
+                i += 1;
+            }
+            else if(! expectingItem) {
+                return start;
+            }
+            else if(ch == '?') {
+                expectingItem = false;
+                i += 1;
+            }
+            else if(ch == '\'') {
+                expectingItem = false;
+                i = skipQuoted(sql, i, '\'', backslashEscapes);
+            }
+            else if(isDigit(ch) || ((ch == '-' || ch == '+' || ch == '.') && i+1 < len && isDigit(sql.charAt(i+1)))) {
+                expectingItem = false;
+                i = skipNumber(sql, ch == '-' || ch == '+' ? i+1 : i);
+            }
+            else {
+                return start;
+            }
+        }
+        return start;
+    }
+}
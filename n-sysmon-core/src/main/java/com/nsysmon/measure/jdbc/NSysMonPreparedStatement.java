@@ -34,7 +34,7 @@ public class NSysMonPreparedStatement extends NSysMonStatement implements Prepar
     public NSysMonPreparedStatement(Connection conn, PreparedStatement inner, NSysMonApi sysMon, String sql) {
         super(conn, inner, sysMon);
         this.inner = inner;
-        this.m = sysMon.startCollectingMeasurement(ident(sql));
+        this.m = sysMon.startCollectingMeasurement(ident(sysMon.getConfig(), sql));
     }
 
     //TODO it would be nice to call m.finish() if the connection is closed without the statement being closed first
@@ -1,6 +1,7 @@
 package com.nsysmon.measure.jdbc;
 
 import com.nsysmon.NSysMonApi;
+import com.nsysmon.config.NSysMonConfig;
 import com.nsysmon.measure.ACollectingMeasurement;
 
 import java.sql.*;
@@ -24,8 +25,23 @@ public class NSysMonStatement implements Statement {
         this.sysMon = sysMon;
     }
 
+    /**
+     * @return the measurement identifier for a SQL string, based on its {@link ASqlFingerprint fingerprint} so that
+     *          statements differing only in their literals are aggregated
+     */
     public static String ident(String sql) {
-        return IDENT_PREFIX_JDBC + " " + sql;
+        return ASqlFingerprint.identFor(sql);
+    }
+
+    /**
+     * @return the measurement identifier for a SQL string, based on its {@link ASqlFingerprint fingerprint} unless
+     *          fingerprinting is switched off in the configuration
+     */
+    public static String ident(NSysMonConfig config, String sql) {
+        if(! config.fingerprintSql) {
+            return IDENT_PREFIX_JDBC + " " + sql;
+        }
+        return ASqlFingerprint.identFor(sql, config.sqlBackslashEscapes);
     }
 
     //-------------------------- Wrapper interface
@@ -47,7 +63,7 @@ public class NSysMonStatement implements Statement {
     //-------------------------- execute
 
     @Override public ResultSet executeQuery(String sql) throws SQLException {
-        final ACollectingMeasurement m = sysMon.startCollectingMeasurement(ident(sql));
+        final ACollectingMeasurement m = sysMon.startCollectingMeasurement(ident(sysMon.getConfig(), sql));
         m.startDetail(IDENT_EXECUTE);
 
         ResultSet rs;
@@ -61,49 +77,49 @@ public class NSysMonStatement implements Statement {
     }
 
     @Override public int executeUpdate(final String sql) throws SQLException {
-        return sysMon.measure(ident(sql), m -> {
+        return sysMon.measure(ident(sysMon.getConfig(), sql), m -> {
             return inner.executeUpdate(sql);
         });
     }
 
     @Override public boolean execute(final String sql) throws SQLException {
-        return sysMon.measure(ident(sql), m -> {
+        return sysMon.measure(ident(sysMon.getConfig(), sql), m -> {
             return inner.execute(sql);
         });
     }
 
     @Override public int executeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException {
-        return sysMon.measure(ident(sql), m -> {
+        return sysMon.measure(ident(sysMon.getConfig(), sql), m -> {
             return inner.executeUpdate(sql, autoGeneratedKeys);
         });
     }
 
     @Override public int executeUpdate(final String sql, final int[] columnIndexes) throws SQLException {
-        return sysMon.measure(ident(sql), m -> {
+        return sysMon.measure(ident(sysMon.getConfig(), sql), m -> {
             return inner.executeUpdate(sql, columnIndexes);
         });
     }
 
     @Override public int executeUpdate(final String sql, final String[] columnNames) throws SQLException {
-        return sysMon.measure(ident(sql), m -> {
+        return sysMon.measure(ident(sysMon.getConfig(), sql), m -> {
             return inner.executeUpdate(sql, columnNames);
         });
     }
 
     @Override public boolean execute(final String sql, final int autoGeneratedKeys) throws SQLException {
-        return sysMon.measure(ident(sql), m -> {
+        return sysMon.measure(ident(sysMon.getConfig(), sql), m -> {
             return inner.execute(sql, autoGeneratedKeys);
         });
     }
 
     @Override public boolean execute(final String sql, final int[] columnIndexes) throws SQLException {
-        return sysMon.measure(ident(sql), m -> {
+        return sysMon.measure(ident(sysMon.getConfig(), sql), m -> {
             return inner.execute(sql, columnIndexes);
         });
     }
 
     @Override public boolean execute(final String sql, final String[] columnNames) throws SQLException {
-        return sysMon.measure(ident(sql), m -> {
+        return sysMon.measure(ident(sysMon.getConfig(), sql), m -> {
             return inner.execute(sql, columnNames);
         });
     }
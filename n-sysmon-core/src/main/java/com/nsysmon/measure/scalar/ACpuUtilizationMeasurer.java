@@ -1,7 +1,6 @@
 package com.nsysmon.measure.scalar;
 
 import com.ajjpj.afoundation.collection.immutable.AOption;
-import com.ajjpj.afoundation.function.AFunction1;
 import com.ajjpj.afoundation.io.AFile;
 import com.nsysmon.NSysMon;
 import com.nsysmon.data.AScalarDataPoint;
@@ -11,11 +10,9 @@ import java.lang.management.ManagementFactory;
 import java.lang.management.OperatingSystemMXBean;
 import java.nio.charset.Charset;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -34,6 +31,15 @@ public class ACpuUtilizationMeasurer implements AScalarMeasurer {
     public static final String KEY_PREFIX_MHZ = KEY_PREFIX + "freq-mhz:";
     public static final String KEY_SELF_KERNEL = KEY_PREFIX + "self-kernel";
 
+    private final AProcFileReader procStat = new AProcFileReader(PROC_STAT_FILE.getFile().getPath());
+    private final AProcFileReader procCpuinfo = new AProcFileReader(PROC_CPUINFO_FILE.getFile().getPath());
+    private final Map<String, String> mhzKeys = new ConcurrentHashMap<>();
+
+    /**
+     * the number of CPUs is determined once - 0 means that it was not determined yet
+     */
+    private volatile int numCpus = 0;
+
     @Override public void prepareMeasurements(Map<String, Object> mementos) throws IOException {
         //this measurement isn't working on windows
         if (NSysMon.isWindows()){
@@ -66,13 +72,8 @@ public class ACpuUtilizationMeasurer implements AScalarMeasurer {
             fillForWindows(data, timestamp, mementos);
             return;
         }
-        final Map<String, Snapshot> allCurrent = createSnapshot();
-        @SuppressWarnings("unchecked")
-        final Map<String, Snapshot> allPrev = (Map<String, Snapshot>) mementos.get(KEY_MEMENTO);
-
-        final int numCpus = allCurrent.size() - 1;
-        final Snapshot current = allCurrent.get("cpu");
-        final Snapshot prev = allPrev.get("cpu");
+        final Snapshot current = createSnapshot();
+        final Snapshot prev = (Snapshot) mementos.get(KEY_MEMENTO);
 
         final long diffTime = current.timestamp - prev.timestamp;
         if(diffTime <= 0) {
@@ -99,45 +100,71 @@ public class ACpuUtilizationMeasurer implements AScalarMeasurer {
     }
 
     private void contributeFreq(Map<String, AScalarDataPoint> data, long timestamp) throws IOException {
-        final Map<String, AtomicInteger> counter = new HashMap<>();
+        // there are only a few distinct frequencies, so linear search is good enough
+        final String[] frequencies = new String[8];
+        final int[] counts = new int[8];
+        int numFrequencies = 0;
+
+        synchronized (procCpuinfo) {
+            procCpuinfo.read();
+            for(; procCpuinfo.hasMoreLines(); procCpuinfo.nextLine()) {
+                if(! procCpuinfo.startsWith("cpu MHz") || ! procCpuinfo.skipPast(':')) {
+                    continue;
+                }
+                final String mhz = procCpuinfo.nextName();
 
-        for(String line: PROC_CPUINFO_FILE.lines()) {
-            if(! line.contains("MHz")) {
-                continue;
-            }
-            final String mhz = line.substring(line.indexOf(':') + 1).trim();
-            if(! counter.containsKey(mhz)) {
-                counter.put(mhz, new AtomicInteger());
+                int idx = 0;
+                while(idx < numFrequencies && ! frequencies[idx].equals(mhz)) {
+                    idx += 1;
+                }
+                if(idx == numFrequencies) {
+                    if(numFrequencies == frequencies.length) {
+                        continue;
+                    }
+                    frequencies[numFrequencies++] = mhz;
+                }
+                counts[idx] += 1;
             }
-            counter.get(mhz).incrementAndGet();
         }
 
-        for(String mhz: counter.keySet()) {
-            final String key = KEY_PREFIX_MHZ + mhz;
-            data.put(key, new AScalarDataPoint(timestamp, key, counter.get(mhz).intValue(), 0));
+        for(int i=0; i<numFrequencies; i++) {
+            final String key = mhzKeys.computeIfAbsent(frequencies[i], mhz -> KEY_PREFIX_MHZ + mhz);
+            data.put(key, new AScalarDataPoint(timestamp, key, counts[i], 0));
         }
     }
 
-    private Map<String, Snapshot> createSnapshot() throws IOException {
-        return PROC_STAT_FILE.iterate((AFunction1<Iterator<String>, Map<String, Snapshot>, RuntimeException>) iter -> {
-            final Map<String, Snapshot> result = new HashMap<>();
+    private Snapshot createSnapshot() throws IOException {
+        synchronized (procStat) {
+            procStat.read();
 
-            while(iter.hasNext()) {
-                final String line = iter.next();
-                final String[] split = line.split("\\s+");
-
-                if(split[0].startsWith("cpu")) {
-                    final long idle = Long.valueOf(split[4]);
-                    final long stolen = split.length >= 8 ? Long.valueOf(split[8]) : 0;
-                    result.put(split[0], new Snapshot(idle, stolen));
-                }
+            if(numCpus == 0) {
+                numCpus = countCpus(procStat);
+                procStat.read();
             }
 
-            return result;
-        });
+            // the first line contains the totals for all CPUs: 'cpu user nice system idle iowait irq softirq steal ...'
+            procStat.skipTokens(4);
+            final long idle = procStat.nextLong();
+            procStat.skipTokens(3);
+            final long stolen = procStat.isEndOfLine() ? 0 : procStat.nextLong();
+            return new Snapshot(idle, stolen);
+        }
+    }
+
+    private static int countCpus(AProcFileReader procStat) {
+        int result = 0;
+        for(; procStat.hasMoreLines(); procStat.nextLine()) {
+            if(procStat.startsWith("cpu")) {
+                result += 1;
+            }
+        }
+        // the first line is the total for all CPUs
+        return Math.max(1, result - 1);
     }
 
     @Override public void shutdown() throws Exception {
+        procStat.close();
+        procCpuinfo.close();
     }
 
     static class Snapshot {
@@ -0,0 +1,272 @@
+package com.nsysmon.measure.scalar;
+
+import com.nsysmon.util.DaemonThreadFactory;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * This class provides the mounted block device file systems and their usage without running external programs like
+ *  <code>df</code>: Forking a JVM with a big heap is expensive.<p>
+ *
+ * Mounts are read from <code>/proc/self/mountinfo</code>, which is parsed only if its content changed. Usage is
+ *  queried in-process through {@link FileStore}, every mount in a thread of its own and with a timeout, so that a
+ *  hanging mount (e.g. a stale network file system) delays neither the caller nor other mounts. A mount whose previous
+ *  query is still hanging is skipped until that query returns.<p>
+ *
+ * Both mounts and usage are cached for a configurable time to live.
+ *
+ * @author arno
+ */
+public class AMountedFileSystems {
+    public static final String PROC_SELF_MOUNTINFO = "/proc/self/mountinfo";
+
+    private static final String DEVICE_PREFIX = "/dev/";
+
+    private final AProcFileReader mountInfo;
+    private final long ttlMillis;
+    private final long timeoutMillis;
+
+    private final ExecutorService pool = Executors.newCachedThreadPool(new DaemonThreadFactory());
+
+    /**
+     * These fields are guarded by 'this'.
+     */
+    private int mountInfoHash;
+    private List<Mount> mounts = Collections.emptyList();
+    private List<Usage> usage = Collections.emptyList();
+    private long lastRefreshMillis = Long.MIN_VALUE;
+    private final Map<String, Future<Usage>> pending = new HashMap<>();
+
+    public AMountedFileSystems(long ttlMillis, long timeoutMillis) {
+        this(PROC_SELF_MOUNTINFO, ttlMillis, timeoutMillis);
+    }
+
+    AMountedFileSystems(String mountInfoPath, long ttlMillis, long timeoutMillis) {
+        this.mountInfo = new AProcFileReader(mountInfoPath);
+        this.ttlMillis = ttlMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return the mounted block devices, at most one mount per device
+     */
+    public synchronized List<Mount> getMounts() throws IOException {
+        refreshIfExpired();
+        return mounts;
+    }
+
+    /**
+     * @return the usage of all mounts that could be queried within the timeout
+     */
+    public synchronized List<Usage> getUsage() throws IOException {
+        refreshIfExpired();
+        return usage;
+    }
+
+    private void refreshIfExpired() throws IOException {
+        final long now = System.currentTimeMillis();
+        if(lastRefreshMillis != Long.MIN_VALUE && now - lastRefreshMillis < ttlMillis) {
+            return;
+        }
+        lastRefreshMillis = now;
+
+        synchronized (mountInfo) {
+            mountInfo.read();
+            final int hash = mountInfo.contentHash();
+            if(hash != mountInfoHash || mounts.isEmpty()) {
+                mountInfoHash = hash;
+                mounts = Collections.unmodifiableList(parseMounts(mountInfo));
+            }
+        }
+        usage = Collections.unmodifiableList(queryUsage());
+    }
+
+    /**
+     * reads the current mounts without caching
+     */
+    public static List<Mount> readMounts() throws IOException {
+        final AProcFileReader reader = new AProcFileReader(PROC_SELF_MOUNTINFO);
+        try {
+            reader.read();
+            return parseMounts(reader);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    static List<Mount> parseMounts(AProcFileReader source) {
+        final Map<String, Mount> result = new LinkedHashMap<>();
+        final Set<String> bindMounted = new HashSet<>();
+
+        // 'mount-id parent-id major:minor root mount-point options [optional fields...] - fs-type source super-options'
+        for(; source.hasMoreLines(); source.nextLine()) {
+            if(source.isEndOfLine()) {
+                continue;
+            }
+
+            source.skipTokens(3);
+            final String root = source.nextToken();
+            final String mountPoint = unescape(source.nextToken());
+            source.skipTokens(1);
+            while(! source.isEndOfLine() && ! source.startsWith("- ")) {
+                source.skipTokens(1);
+            }
+            if(source.isEndOfLine()) {
+                continue;
+            }
+            source.skipTokens(1);
+            final String fsType = source.nextToken();
+            final String devicePath = source.nextToken();
+
+            if(! devicePath.startsWith(DEVICE_PREFIX)) {
+                continue;
+            }
+            final String device = devicePath.substring(DEVICE_PREFIX.length());
+
+            // prefer the mount of a file system's root over bind mounts of its subdirectories
+            final boolean isBindMount = ! "/".equals(root);
+            if(! result.containsKey(device) || (bindMounted.contains(device) && ! isBindMount)) {
+                result.put(device, new Mount(device, mountPoint, fsType));
+                if(isBindMount) {
+                    bindMounted.add(device);
+                }
+                else {
+                    bindMounted.remove(device);
+                }
+            }
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    /**
+     * mountinfo escapes blanks, tabs, newlines and backslashes in paths as octal numbers, e.g. '\040' for a blank
+     */
+    static String unescape(String s) {
+        if(s.indexOf('\\') < 0) {
+            return s;
+        }
+
+        final StringBuilder sb = new StringBuilder(s.length());
+        for(int i=0; i<s.length(); i++) {
+            final char ch = s.charAt(i);
+            if(ch == '\\' && i+3 < s.length() && isOctal(s.charAt(i+1)) && isOctal(s.charAt(i+2)) && isOctal(s.charAt(i+3))) {
+                sb.append((char) Integer.parseInt(s.substring(i+1, i+4), 8));
+                i += 3;
+            }
+            else {
+                sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isOctal(char ch) {
+        return ch >= '0' && ch <= '7';
+    }
+
+    private List<Usage> queryUsage() {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        final Map<Mount, Future<Usage>> futures = new LinkedHashMap<>();
+        for(Mount mount: mounts) {
+            final Future<Usage> prev = pending.get(mount.mountPoint);
+            if(prev != null && ! prev.isDone()) {
+                continue; // still hanging
+            }
+
+            try {
+                final Future<Usage> f = pool.submit(() -> query(mount));
+                pending.put(mount.mountPoint, f);
+                futures.put(mount, f);
+            }
+            catch (RejectedExecutionException exc) {
+                // shut down concurrently
+            }
+        }
+
+        final List<Usage> result = new ArrayList<>();
+        for(Map.Entry<Mount, Future<Usage>> entry: futures.entrySet()) {
+            try {
+                result.add(entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                pending.remove(entry.getKey().mountPoint);
+            }
+            catch (TimeoutException exc) {
+                // the query remains pending, and the mount is skipped until it returns
+            }
+            catch (ExecutionException exc) {
+                // e.g. no permission to access the mount point
+                pending.remove(entry.getKey().mountPoint);
+            }
+            catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return result;
+    }
+
+    private static Usage query(Mount mount) throws IOException {
+        final FileStore store = Files.getFileStore(Paths.get(mount.mountPoint));
+        final long total = store.getTotalSpace();
+        return new Usage(mount, total, total - store.getUnallocatedSpace(), store.getUsableSpace());
+    }
+
+    public void shutdown() throws IOException {
+        pool.shutdownNow();
+        synchronized (mountInfo) {
+            mountInfo.close();
+        }
+    }
+
+    public static class Mount {
+        /**
+         * the device without the '/dev/' prefix, e.g. 'sda1'
+         */
+        public final String device;
+        public final String mountPoint;
+        public final String fsType;
+
+        public Mount(String device, String mountPoint, String fsType) {
+            this.device = device;
+            this.mountPoint = mountPoint;
+            this.fsType = fsType;
+        }
+    }
+
+    public static class Usage {
+        public final Mount mount;
+        public final long totalBytes;
+        public final long usedBytes;
+        /**
+         * the space available to non-privileged users, which is less than total minus used if space is reserved for root
+         */
+        public final long availableBytes;
+
+        public Usage(Mount mount, long totalBytes, long usedBytes, long availableBytes) {
+            this.mount = mount;
+            this.totalBytes = totalBytes;
+            this.usedBytes = usedBytes;
+            this.availableBytes = availableBytes;
+        }
+    }
+}
@@ -2,24 +2,28 @@ package com.nsysmon.measure.scalar;
 
 import com.ajjpj.afoundation.collection.immutable.AOption;
 import com.ajjpj.afoundation.io.AFile;
-import com.ajjpj.afoundation.proc.CliCommand;
 import com.nsysmon.NSysMon;
+import com.nsysmon.NSysMonApi;
+import com.nsysmon.config.NSysMonAware;
 import com.nsysmon.data.AScalarDataPoint;
-import com.nsysmon.measure.environment.impl.AFileSystemsEnvironmentMeasurer;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author arno
  */
-public class AProcDiskstatsMeasurer implements AScalarMeasurer {
-    private static final AFile PROC_DISKSTATS = new AFile("/proc/diskstats", Charset.defaultCharset());
+public class AProcDiskstatsMeasurer implements AScalarMeasurer, NSysMonAware {
+    private static final int DEFAULT_BLOCK_SIZE = 512;
+
+    /**
+     * physical block sizes per device, which do not change while the system is running
+     */
+    private static final Map<String, Integer> blockSizes = new ConcurrentHashMap<>();
 
     private static final String KEY_PREFIX = "disk:";
     private static final String KEY_MEMENTO = KEY_PREFIX;
@@ -34,12 +38,30 @@ public class AProcDiskstatsMeasurer implements AScalarMeasurer {
     private static final String KEY_SUFFIX_IOS_IN_PROGRESS = ":ios-in-progress";
 
     private static final String KEY_MOUNTPOINT = ":mountpoint:";
-    private static final Pattern PATTERN = Pattern.compile("\\s+");
 
+    private final AProcFileReader procDiskstats = new AProcFileReader("/proc/diskstats");
+    private final Map<String, String[]> trafficKeys = new ConcurrentHashMap<>();
+    private final Map<String, String[]> sizeKeys = new ConcurrentHashMap<>();
+
+    /**
+     * This is replaced by an instance with the configured TTL and timeout when the measurer is registered with N-SysMon.
+     */
+    private volatile AMountedFileSystems fileSystems = new AMountedFileSystems(10_000, 1_000);
 
     public AProcDiskstatsMeasurer(){
     }
 
+    @Override public void setNSysMon(NSysMonApi sysMon) {
+        final AMountedFileSystems prev = fileSystems;
+        fileSystems = new AMountedFileSystems(sysMon.getConfig().diskUsageTtlMillis, sysMon.getConfig().diskUsageTimeoutMillis);
+        try {
+            prev.shutdown();
+        }
+        catch (IOException exc) {
+            // the previous instance was never used
+        }
+    }
+
     @Override public void prepareMeasurements(Map<String, Object> mementos) throws Exception {
         //this measurement isn't working on windows
         if (NSysMon.isWindows()){
@@ -66,29 +88,31 @@ public class AProcDiskstatsMeasurer implements AScalarMeasurer {
         contributeMountPoints(data, timestamp);
     }
 
-    private static void contributeMountPoints(Map<String, AScalarDataPoint> data, long timestamp) throws Exception {
-        for(Map.Entry<String, String> entry: AFileSystemsEnvironmentMeasurer.getMountPoints().entrySet()) {
-            add(data, timestamp, getMountPointKey(entry.getKey(), entry.getValue()), 1, 0);
+    private void contributeMountPoints(Map<String, AScalarDataPoint> data, long timestamp) throws Exception {
+        for(AMountedFileSystems.Mount mount: fileSystems.getMounts()) {
+            add(data, timestamp, getMountPointKey(mount.device, mount.mountPoint), 1, 0);
         }
     }
 
-    private static void contributeTraffic(Map<String, AScalarDataPoint> data, long timestamp, Map<String, Object> mementos) throws Exception {
+    private void contributeTraffic(Map<String, AScalarDataPoint> data, long timestamp, Map<String, Object> mementos) throws Exception {
         final Snapshot prev = (Snapshot) mementos.get(KEY_MEMENTO);
         final Snapshot current = createSnapshot();
 
         final long diffTime = current.timestamp - prev.timestamp;
 
-        for(String dev: current.sectorsRead.keySet()) {
-            if(! prev.sectorsRead.containsKey(dev)) {
+        for(int i=0; i<current.size; i++) {
+            final String dev = current.devices[i];
+            final int prevIdx = prev.indexOf(dev, i);
+            if(prevIdx < 0) {
                 continue; // deal with dynamically added or removed devices
             }
 
-            if(current.sectorsRead.get(dev) == 0 && current.sectorsWritten.get(dev) == 0) {
+            if(current.sectorsRead[i] == 0 && current.sectorsWritten[i] == 0) {
                 continue; // filter out 'unused' devices, e.g. RAM disks
             }
 
-            final long sectorsReadRaw = current.sectorsRead.get(dev) - prev.sectorsRead.get(dev);
-            final long sectorsWrittenRaw = current.sectorsWritten.get(dev) - prev.sectorsWritten.get(dev);
+            final long sectorsReadRaw = current.sectorsRead[i] - prev.sectorsRead[prevIdx];
+            final long sectorsWrittenRaw = current.sectorsWritten[i] - prev.sectorsWritten[prevIdx];
 
             final long sectorsRead    = sectorsReadRaw    * 10*1000 / diffTime;
             final long sectorsWritten = sectorsWrittenRaw * 10*1000 / diffTime;
@@ -97,37 +121,24 @@ public class AProcDiskstatsMeasurer implements AScalarMeasurer {
             final long mBytesRead = sectorsReadRaw * blockSize * 100 * 1000 / diffTime / 1024 / 1024;
             final long mBytesWritten = sectorsWrittenRaw * blockSize * 100 * 1000 / diffTime / 1024 / 1024;
 
-            final long iosInProgress = current.iosInProgress.get(dev);
+            final long iosInProgress = current.iosInProgress[i];
 
-            add(data, timestamp, getReadSectorsKey(dev), sectorsRead, 1);
-            add(data, timestamp, getWrittenSectorsKey(dev), sectorsWritten, 1);
-            add(data, timestamp, getReadMbytesKey(dev), mBytesRead, 2);
-            add(data, timestamp, getWrittenMbytesKey(dev), mBytesWritten, 2);
-            add(data, timestamp, getIosInProgressKey(dev), iosInProgress, 0);
+            final String[] keys = trafficKeys.computeIfAbsent(dev, d -> new String[] {
+                    getReadSectorsKey(d), getWrittenSectorsKey(d), getReadMbytesKey(d), getWrittenMbytesKey(d), getIosInProgressKey(d)});
+            add(data, timestamp, keys[0], sectorsRead, 1);
+            add(data, timestamp, keys[1], sectorsWritten, 1);
+            add(data, timestamp, keys[2], mBytesRead, 2);
+            add(data, timestamp, keys[3], mBytesWritten, 2);
+            add(data, timestamp, keys[4], iosInProgress, 0);
         }
     }
 
-    private static void contributeDiskSize(Map<String, AScalarDataPoint> data, long timestamp) throws Exception {
-        final List<String> df = new CliCommand("df", "-P").getOutput();
-        for(String line: df) {
-            if(! line.startsWith("/dev/")) {
-                continue;
-            }
-
-            final String[] split = PATTERN.split(line.trim());
-            if(split.length < 6) {
-                continue;
-            }
-
-            final String dev = split[0].substring(5);
-            final long sizeKb = Long.valueOf(split[1]);
-            final long usedKb = Long.valueOf(split[2]);
-            final long availableKb = Long.valueOf(split[3]);
-//            final String mountPoint = split[5];
-
-            add(data, timestamp, getSizeKey(dev), sizeKb * 100 / (1024*1024), 2);
-            add(data, timestamp, getUsedKey(dev), usedKb * 100 / (1024*1024), 2);
-            add(data, timestamp, getAvailableKey(dev), availableKb * 100 / (1024*1024), 2);
+    private void contributeDiskSize(Map<String, AScalarDataPoint> data, long timestamp) throws Exception {
+        for(AMountedFileSystems.Usage usage: fileSystems.getUsage()) {
+            final String[] keys = sizeKeys.computeIfAbsent(usage.mount.device, d -> new String[] {getSizeKey(d), getUsedKey(d), getAvailableKey(d)});
+            add(data, timestamp, keys[0], usage.totalBytes * 100 / (1024*1024*1024), 2);
+            add(data, timestamp, keys[1], usage.usedBytes * 100 / (1024*1024*1024), 2);
+            add(data, timestamp, keys[2], usage.availableBytes * 100 / (1024*1024*1024), 2);
         }
     }
 
@@ -157,14 +168,22 @@ public class AProcDiskstatsMeasurer implements AScalarMeasurer {
 
 
     private static int physicalBlockSize(String dev) throws IOException {
-        while (! dev.isEmpty()) {
-            final File f = new File("/sys/block/" + dev + "/queue/physical_block_size");
+        final Integer cached = blockSizes.get(dev);
+        if(cached != null) {
+            return cached;
+        }
+
+        int result = DEFAULT_BLOCK_SIZE;
+        // partitions have no queue of their own, so they use that of the device whose name is a prefix of theirs
+        for(String candidate = dev; ! candidate.isEmpty(); candidate = candidate.substring(0, candidate.length()-1)) {
+            final File f = new File("/sys/block/" + candidate + "/queue/physical_block_size");
             if(f.exists()) {
-                return Integer.valueOf(new AFile(f, Charset.defaultCharset()).lines().get(0));
+                result = Integer.valueOf(new AFile(f, Charset.defaultCharset()).lines().get(0).trim());
+                break;
             }
-            dev = dev.substring(0, dev.length()-1);
         }
-        return 512;
+        blockSizes.put(dev, result);
+        return result;
     }
 
     private static void add(Map<String, AScalarDataPoint> data, long timestamp, String key, long value, int numFracDigits) {
@@ -207,37 +226,80 @@ public class AProcDiskstatsMeasurer implements AScalarMeasurer {
         return KEY_PREFIX + dev + KEY_SUFFIX_IOS_IN_PROGRESS;
     }
 
-    private static Snapshot createSnapshot() throws IOException {
-        return createSnapshot(PROC_DISKSTATS.lines());
+    private Snapshot createSnapshot() throws IOException {
+        synchronized (procDiskstats) {
+            procDiskstats.read();
+            return createSnapshot(procDiskstats);
+        }
     }
 
-    static Snapshot createSnapshot(Iterable<String> source) {
+    static Snapshot createSnapshot(AProcFileReader source) {
         final Snapshot result = new Snapshot();
 
-        for(String line: source) {
-            final String[] split = PATTERN.split(line.trim());
-
-            final String dev = split[2];
-            final long sectorsRead = Long.valueOf(split[2+3]);
-            final long sectorsWritten = Long.valueOf(split[2+7]);
-            final int iosInProgress = Integer.valueOf(split[2+9]);
+        for(; source.hasMoreLines(); source.nextLine()) {
+            if(source.isEndOfLine()) {
+                continue;
+            }
 
-            result.sectorsRead.put(dev, sectorsRead);
-            result.sectorsWritten.put(dev, sectorsWritten);
-            result.iosInProgress.put(dev, iosInProgress);
+            // major, minor, name, reads completed, reads merged, sectors read, time reading, writes completed,
+            //  writes merged, sectors written, time writing, I/Os in progress, ...
+            source.skipTokens(2);
+            final String dev = source.nextName();
+            source.skipTokens(2);
+            final long sectorsRead = source.nextLong();
+            source.skipTokens(3);
+            final long sectorsWritten = source.nextLong();
+            source.skipTokens(1);
+            final int iosInProgress = (int) source.nextLong();
+
+            result.add(dev, sectorsRead, sectorsWritten, iosInProgress);
         }
 
         return result;
     }
 
     @Override public void shutdown() throws Exception {
+        procDiskstats.close();
+        fileSystems.shutdown();
     }
 
     static class Snapshot {
         final long timestamp = System.currentTimeMillis();
-        final Map<String, Long> sectorsRead = new HashMap<>();
-        final Map<String, Long> sectorsWritten = new HashMap<>();
-        final Map<String, Integer> iosInProgress = new HashMap<>();
+        int size = 0;
+        String[] devices = new String[16];
+        long[] sectorsRead = new long[16];
+        long[] sectorsWritten = new long[16];
+        int[] iosInProgress = new int[16];
+
+        void add(String dev, long sectorsRead, long sectorsWritten, int iosInProgress) {
+            if(size == devices.length) {
+                devices = Arrays.copyOf(devices, 2*size);
+                this.sectorsRead = Arrays.copyOf(this.sectorsRead, 2*size);
+                this.sectorsWritten = Arrays.copyOf(this.sectorsWritten, 2*size);
+                this.iosInProgress = Arrays.copyOf(this.iosInProgress, 2*size);
+            }
+            devices[size] = dev;
+            this.sectorsRead[size] = sectorsRead;
+            this.sectorsWritten[size] = sectorsWritten;
+            this.iosInProgress[size] = iosInProgress;
+            size += 1;
+        }
+
+        /**
+         * @param hint the expected index - devices are usually listed in the same order every time
+         * @return the device's index, or -1 if it is not part of the snapshot
+         */
+        int indexOf(String dev, int hint) {
+            if(hint < size && devices[hint].equals(dev)) {
+                return hint;
+            }
+            for(int i=0; i<size; i++) {
+                if(devices[i].equals(dev)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
     }
 
     @Override public AOption<Long> getTimeoutInMilliSeconds() {
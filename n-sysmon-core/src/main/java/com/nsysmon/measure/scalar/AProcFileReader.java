@@ -0,0 +1,305 @@
+package com.nsysmon.measure.scalar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+/**
+ * This is a low-level reader for files in <code>/proc</code>, intended for measurers that sample them frequently. It
+ *  keeps the file open and reads it into a direct <code>ByteBuffer</code> that is reused for every sample, and it
+ *  parses numbers in place rather than splitting lines into Strings.<p>
+ *
+ * Names (devices, network interfaces etc.) are returned as Strings, but they are cached: a name that was read before
+ *  is returned as the same String instance without allocating. That allows callers to use names as keys, and to
+ *  compare them by identity for the common case that the file lists the same names in the same order every time.<p>
+ *
+ * The reader is a cursor over the file's content, so it is not thread safe. Callers must synchronize on the reader
+ *  for the duration of {@link #read()} and all subsequent parsing.
+ *
+ * @author arno
+ */
+public class AProcFileReader {
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+    private static final int MAX_NUM_CACHED_NAMES = 1024;
+
+    private final String path;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+
+    private int pos;
+    private int limit;
+
+    private byte[][] nameBytes = new byte[16][];
+    private String[] names = new String[16];
+    private int numNames = 0;
+    private int nameHint = 0;
+
+    public AProcFileReader(String path) {
+        this.path = path;
+        this.buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+    }
+
+    /**
+     * creates a reader with fixed content, e.g. for tests
+     */
+    public static AProcFileReader forContent(String content) {
+        final byte[] bytes = content.getBytes(StandardCharsets.ISO_8859_1);
+        final AProcFileReader result = new AProcFileReader(null);
+        result.buffer = ByteBuffer.allocateDirect(Math.max(1, bytes.length));
+        result.buffer.put(bytes);
+        result.buffer.flip();
+        result.limit = bytes.length;
+        return result;
+    }
+
+    /**
+     * reads the file's current content and positions the cursor at its start
+     */
+    public void read() throws IOException {
+        pos = 0;
+        nameHint = 0;
+        if(path == null) {
+            return;
+        }
+
+        if(channel == null) {
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        }
+
+        // files in /proc have no meaningful size, so they are read until EOF, growing the buffer as needed
+        buffer.clear();
+        long position = 0;
+        int numRead;
+        while((numRead = channel.read(buffer, position)) >= 0) {
+            position += numRead;
+            if(! buffer.hasRemaining()) {
+                final ByteBuffer newBuffer = ByteBuffer.allocateDirect(2 * buffer.capacity());
+                buffer.flip();
+                newBuffer.put(buffer);
+                buffer = newBuffer;
+            }
+        }
+        limit = buffer.position();
+    }
+
+    public boolean hasMoreLines() {
+        return pos < limit;
+    }
+
+    /**
+     * moves the cursor to the start of the next line
+     */
+    public void nextLine() {
+        while(pos < limit && buffer.get(pos) != '\n') {
+            pos += 1;
+        }
+        if(pos < limit) {
+            pos += 1;
+        }
+    }
+
+    /**
+     * @return true if there is nothing but whitespace between the cursor and the end of the line
+     */
+    public boolean isEndOfLine() {
+        skipSpaces();
+        return pos >= limit || buffer.get(pos) == '\n';
+    }
+
+    /**
+     * @return true if the text at the cursor starts with the given ASCII prefix
+     */
+    public boolean startsWith(String prefix) {
+        if(limit - pos < prefix.length()) {
+            return false;
+        }
+        for(int i=0; i<prefix.length(); i++) {
+            if(buffer.get(pos+i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the rest of the current line contains the given character. This does not move the cursor.
+     */
+    public boolean lineContains(char ch) {
+        for(int i=pos; i<limit && buffer.get(i) != '\n'; i++) {
+            if(buffer.get(i) == ch) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * moves the cursor past the next occurrence of a character in the current line
+     *
+     * @return false if there is no such character in the line, leaving the cursor unchanged
+     */
+    public boolean skipPast(char ch) {
+        return skipPast(ch, false);
+    }
+
+    /**
+     * moves the cursor past the last occurrence of a character in the current line
+     *
+     * @return false if there is no such character in the line, leaving the cursor unchanged
+     */
+    public boolean skipPastLast(char ch) {
+        return skipPast(ch, true);
+    }
+
+    private boolean skipPast(char ch, boolean last) {
+        int found = -1;
+        for(int i=pos; i<limit && buffer.get(i) != '\n'; i++) {
+            if(buffer.get(i) == ch) {
+                found = i;
+                if(! last) {
+                    break;
+                }
+            }
+        }
+        if(found < 0) {
+            return false;
+        }
+        pos = found + 1;
+        return true;
+    }
+
+    /**
+     * skips whitespace separated tokens in the current line
+     */
+    public void skipTokens(int numTokens) {
+        for(int i=0; i<numTokens; i++) {
+            skipSpaces();
+            while(pos < limit && ! isWhitespace(buffer.get(pos))) {
+                pos += 1;
+            }
+        }
+    }
+
+    public long nextLong() {
+        skipSpaces();
+
+        final boolean isNegative = pos < limit && buffer.get(pos) == '-';
+        if(isNegative) {
+            pos += 1;
+        }
+
+        final int start = pos;
+        long result = 0;
+        byte b;
+        while(pos < limit && (b = buffer.get(pos)) >= '0' && b <= '9') {
+            result = 10*result + (b - '0');
+            pos += 1;
+        }
+        if(pos == start) {
+            throw new NumberFormatException("no number at position " + pos + " in " + path);
+        }
+        return isNegative ? -result : result;
+    }
+
+    /**
+     * @return the name at the cursor, i.e. the text up to the next whitespace or colon
+     */
+    public String nextName() {
+        skipSpaces();
+        final int start = pos;
+        byte b;
+        while(pos < limit && ! isWhitespace(b = buffer.get(pos)) && b != ':') {
+            pos += 1;
+        }
+        return cachedName(start, pos - start);
+    }
+
+    /**
+     * @return the text up to the next whitespace. This is cached like {@link #nextName()}.
+     */
+    public String nextToken() {
+        skipSpaces();
+        final int start = pos;
+        while(pos < limit && ! isWhitespace(buffer.get(pos))) {
+            pos += 1;
+        }
+        return cachedName(start, pos - start);
+    }
+
+    /**
+     * @return a hash of the entire content that was read, allowing callers to skip parsing if it did not change
+     */
+    public int contentHash() {
+        int result = 1;
+        for(int i=0; i<limit; i++) {
+            result = 31*result + buffer.get(i);
+        }
+        return result;
+    }
+
+    private String cachedName(int start, int length) {
+        // names are typically read in the same order for every sample, so the search starts where the previous one ended
+        for(int i=0; i<numNames; i++) {
+            final int idx = (nameHint + i) % numNames;
+            if(isSameName(nameBytes[idx], start, length)) {
+                nameHint = idx + 1;
+                return names[idx];
+            }
+        }
+
+        final byte[] bytes = new byte[length];
+        for(int i=0; i<length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        final String result = new String(bytes, StandardCharsets.ISO_8859_1);
+
+        if(numNames == MAX_NUM_CACHED_NAMES) {
+            // guard against files with ever-changing names
+            numNames = 0;
+        }
+        if(numNames == names.length) {
+            nameBytes = Arrays.copyOf(nameBytes, 2*numNames);
+            names = Arrays.copyOf(names, 2*numNames);
+        }
+        nameBytes[numNames] = bytes;
+        names[numNames] = result;
+        numNames += 1;
+        nameHint = numNames;
+        return result;
+    }
+
+    private boolean isSameName(byte[] candidate, int start, int length) {
+        if(candidate.length != length) {
+            return false;
+        }
+        for(int i=0; i<length; i++) {
+            if(candidate[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipSpaces() {
+        byte b;
+        while(pos < limit && ((b = buffer.get(pos)) == ' ' || b == '\t')) {
+            pos += 1;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n';
+    }
+
+    public void close() throws IOException {
+        if(channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -1,23 +1,18 @@
 package com.nsysmon.measure.scalar;
 
 import com.ajjpj.afoundation.collection.immutable.AOption;
-import com.ajjpj.afoundation.io.AFile;
 import com.nsysmon.NSysMon;
 import com.nsysmon.data.AScalarDataPoint;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.TreeSet;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author arno
  */
 public class AProcNetDevMeasurer implements AScalarMeasurer {
-    private static final AFile PROC_NET_DEV = new AFile("/proc/net/dev", Charset.defaultCharset());
-
     private static final String KEY_PREFIX = "net:";
     private static final String KEY_MEMENTO = KEY_PREFIX;
     private static final String KEY_SUFFIX_RECEIVED_BYTES = ":received-bytes";
@@ -25,7 +20,9 @@ public class AProcNetDevMeasurer implements AScalarMeasurer {
     private static final String KEY_SUFFIX_SENT_BYTES = ":sent-bytes";
     private static final String KEY_SUFFIX_SENT_PACKETS = ":sent-pkt";
     private static final String KEY_SUFFIX_COLLISIONS = ":collisions";
-    private static final Pattern PATTERN_1 = Pattern.compile("\\s+");
+
+    private final AProcFileReader procNetDev = new AProcFileReader("/proc/net/dev");
+    private final Map<String, String[]> keys = new ConcurrentHashMap<>();
 
     @Override public void prepareMeasurements(Map<String, Object> mementos) throws Exception {
         //this measurement isn't working on windows
@@ -51,32 +48,18 @@ public class AProcNetDevMeasurer implements AScalarMeasurer {
 
         final long diffTime = cur.timestamp - prev.timestamp;
 
-        for(String iface: new TreeSet<>(cur.packetsReceived.keySet())) {
-            final long receivedBytes   = cur.bytesReceived  .get(iface) - prev.bytesReceived.  get(iface);
-            final long receivedPackets = cur.packetsReceived.get(iface) - prev.packetsReceived.get(iface);
-            final long sentBytes       = cur.bytesSent.      get(iface) - prev.bytesSent.      get(iface);
-            final long sentPackets     = cur.packetsSent.    get(iface) - prev.packetsSent.    get(iface);
-            final long collisions      = cur.collisions.     get(iface) - prev.collisions.     get(iface);
-
-            {
-                final String key = getKeyReceivedBytes(iface);
-                data.put(key, new AScalarDataPoint(timestamp, key, receivedBytes * 10*1000 / diffTime, 1));
-            }
-            {
-                final String key = getKeyReceivedPackets(iface);
-                data.put(key, new AScalarDataPoint(timestamp, key, receivedPackets * 10*1000 / diffTime, 1));
-            }
-            {
-                final String key = getKeySentBytes(iface);
-                data.put(key, new AScalarDataPoint(timestamp, key, sentBytes * 10*1000 / diffTime, 1));
+        for(int i=0; i<cur.size; i++) {
+            final String iface = cur.ifaces[i];
+            final int prevIdx = prev.indexOf(iface, i);
+            if(prevIdx < 0) {
+                continue; // deal with dynamically added or removed interfaces
             }
-            {
-                final String key = getKeySentPackets(iface);
-                data.put(key, new AScalarDataPoint(timestamp, key, sentPackets * 10*1000 / diffTime, 1));
-            }
-            {
-                final String key = getKeyCollisions(iface);
-                data.put(key, new AScalarDataPoint(timestamp, key, collisions * 10*1000 / diffTime, 1));
+
+            final String[] ifaceKeys = keys.computeIfAbsent(iface, x -> new String[] {
+                    getKeyReceivedBytes(x), getKeyReceivedPackets(x), getKeySentBytes(x), getKeySentPackets(x), getKeyCollisions(x)});
+            for(int col=0; col<Snapshot.NUM_COLUMNS; col++) {
+                final long diff = cur.values[i*Snapshot.NUM_COLUMNS + col] - prev.values[prevIdx*Snapshot.NUM_COLUMNS + col];
+                data.put(ifaceKeys[col], new AScalarDataPoint(timestamp, ifaceKeys[col], diff * 10*1000 / diffTime, 1));
             }
         }
     }
@@ -99,30 +82,35 @@ public class AProcNetDevMeasurer implements AScalarMeasurer {
         return KEY_PREFIX + iface + KEY_SUFFIX_COLLISIONS;
     }
 
-    private static Snapshot createSnapshot() throws IOException {
-        return createSnapshot(PROC_NET_DEV.lines());
+    private Snapshot createSnapshot() throws IOException {
+        synchronized (procNetDev) {
+            procNetDev.read();
+            return createSnapshot(procNetDev);
+        }
     }
 
-    static Snapshot createSnapshot(Iterable<String> source) {
+    static Snapshot createSnapshot(AProcFileReader source) {
         final Snapshot result = new Snapshot();
 
-        for(String line: source) {
-            final String[] ifaceSplit = line.split(":");
-            if(ifaceSplit.length != 2) {
+        for(; source.hasMoreLines(); source.nextLine()) {
+            // the header lines have no colon
+            if(source.isEndOfLine() || ! source.lineContains(':')) {
                 continue;
             }
-            final String iface = ifaceSplit[0].trim();
 
-            final String[] split = PATTERN_1.split(ifaceSplit[1].trim());
-            if(split.length < 14) {
+            final String iface = source.nextName();
+            source.skipPast(':');
+
+            final long bytesReceived   = source.nextLong();
+            final long packetsReceived = source.nextLong();
+            source.skipTokens(6);
+            final long bytesSent       = source.nextLong();
+            final long packetsSent     = source.nextLong();
+            source.skipTokens(3);
+            if(source.isEndOfLine()) {
                 continue;
             }
-
-            final long bytesReceived   = Long.valueOf(split[0]);
-            final long packetsReceived = Long.valueOf(split[1]);
-            final long bytesSent       = Long.valueOf(split[8]);
-            final long packetsSent     = Long.valueOf(split[9]);
-            final long collisions      = Long.valueOf(split[13]);
+            final long collisions      = source.nextLong();
 
             result.add(iface, bytesReceived, packetsReceived, bytesSent, packetsSent, collisions);
         }
@@ -131,22 +119,49 @@ public class AProcNetDevMeasurer implements AScalarMeasurer {
     }
 
     @Override public void shutdown() throws Exception {
+        procNetDev.close();
     }
 
     static class Snapshot {
+        static final int NUM_COLUMNS = 5;
+
         final long timestamp = System.currentTimeMillis();
-        final Map<String, Long> bytesReceived = new HashMap<>();
-        final Map<String, Long> packetsReceived = new HashMap<>();
-        final Map<String, Long> bytesSent = new HashMap<>();
-        final Map<String, Long> packetsSent = new HashMap<>();
-        final Map<String, Long> collisions = new HashMap<>();
+        int size = 0;
+        String[] ifaces = new String[8];
+        /**
+         * received bytes, received packets, sent bytes, sent packets and collisions for every interface
+         */
+        long[] values = new long[8 * NUM_COLUMNS];
 
         void add(String iface, long bytesReceived, long packetsReceived, long bytesSent, long packetsSent, long collisons) {
-            this.bytesReceived.  put(iface, bytesReceived);
-            this.packetsReceived.put(iface, packetsReceived);
-            this.bytesSent.      put(iface, bytesSent);
-            this.packetsSent.    put(iface, packetsSent);
-            this.collisions.     put(iface, collisons);
+            if(size == ifaces.length) {
+                ifaces = Arrays.copyOf(ifaces, 2*size);
+                values = Arrays.copyOf(values, 2*size*NUM_COLUMNS);
+            }
+            ifaces[size] = iface;
+            final int offs = size * NUM_COLUMNS;
+            values[offs]   = bytesReceived;
+            values[offs+1] = packetsReceived;
+            values[offs+2] = bytesSent;
+            values[offs+3] = packetsSent;
+            values[offs+4] = collisons;
+            size += 1;
+        }
+
+        int indexOf(String iface, int hint) {
+            if(hint < size && ifaces[hint].equals(iface)) {
+                return hint;
+            }
+            for(int i=0; i<size; i++) {
+                if(ifaces[i].equals(iface)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        long get(String iface, int col) {
+            return values[indexOf(iface, 0) * NUM_COLUMNS + col];
         }
     }
 
@@ -20,6 +20,8 @@ public class AProcSelfStatMeasurer implements AScalarMeasurer {
     public static final String KEY_SELF_USER = ACpuUtilizationMeasurer.KEY_PREFIX + "self-user";
     public static final String KEY_SELF_KERNEL = ACpuUtilizationMeasurer.KEY_PREFIX + "self-kernel";
 
+    private final AProcFileReader procSelfStat = new AProcFileReader(PROC_SELF_STAT_FILE.getFile().getPath());
+
 
     @Override public void prepareMeasurements(Map<String, Object> mementos) throws Exception {
         //this measurement isn't working on windows
@@ -56,16 +58,22 @@ public class AProcSelfStatMeasurer implements AScalarMeasurer {
     }
 
     @Override public void shutdown() throws Exception {
+        procSelfStat.close();
     }
 
     private Snapshot createSnapshot() throws IOException {
-        final String raw = PROC_SELF_STAT_FILE.lines().get(0);
-        final String[] split = raw.split("\\s+");
+        synchronized (procSelfStat) {
+            procSelfStat.read();
 
-        final long userJiffies = Long.valueOf(split[13]);
-        final long kernelJiffies = Long.valueOf(split[14]);
+            // 'pid (comm) state ppid ...' - comm may contain spaces and parentheses, so parsing starts after the last ')'
+            procSelfStat.skipPastLast(')');
+            // state, ppid, pgrp, session, tty_nr, tpgid, flags, minflt, cminflt, majflt, cmajflt
+            procSelfStat.skipTokens(11);
+            final long userJiffies = procSelfStat.nextLong();
+            final long kernelJiffies = procSelfStat.nextLong();
 
-        return new Snapshot(userJiffies, kernelJiffies);
+            return new Snapshot(userJiffies, kernelJiffies);
+        }
     }
 
     private static class Snapshot {
@@ -39,6 +39,15 @@ public interface AScalarMeasurer extends AShutdownable {
     void contributeMeasurements(Map<String, AScalarDataPoint> data, long timestamp, Map<String, Object> mementos) throws Exception;
     AOption<Long> getTimeoutInMilliSeconds();
 
+    /**
+     * When used as a timed scalar measurer, a measurer is sampled at this interval, or at the configured default
+     *  interval if this method returns <code>none</code>. Timed scalar measurers are prepared again after every
+     *  sample, so averaging measurers always average over their most recent interval.
+     */
+    default AOption<Long> getSamplingIntervalInMilliSeconds() {
+        return AOption.none();
+    }
+
     default String getGroupnameOfMeasurement(String measurement){
         return null;
     }
@@ -3,7 +3,11 @@ package com.nsysmon.measure.scalar;
 
 public class ScalarMeasurerStatus  {
 
-    public enum Status {RUNNING, STOPPED, UNKNOWN};
+    /**
+     * TIMED_OUT means that the measurer's most recent measurement did not finish in time, so its data was dropped.
+     *  It is still called for future measurements.
+     */
+    public enum Status {RUNNING, STOPPED, TIMED_OUT, UNKNOWN};
 
     private Status status;
 
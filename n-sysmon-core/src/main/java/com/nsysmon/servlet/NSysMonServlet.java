@@ -52,7 +52,9 @@ public class NSysMonServlet extends AbstractNSysMonServlet {
         if(pageDef == null) {
             throw new IllegalArgumentException("no page def with ID '" + pageId + "'");
         }
-        return pageDef.handleRestCall(service, restParams, json);
+        final boolean result = pageDef.handleRestCall(service, restParams, json);
+        json.flush();
+        return result;
     }
 
     @Override protected boolean handleDynamic(List<String> pathSegments, HttpServletResponse resp) throws IOException {
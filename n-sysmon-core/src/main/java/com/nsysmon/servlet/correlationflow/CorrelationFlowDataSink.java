@@ -1,24 +1,39 @@
 package com.nsysmon.servlet.correlationflow;
 
-import com.ajjpj.afoundation.collection.mutable.ARingBuffer;
 import com.nsysmon.config.log.NSysMonLogger;
 import com.nsysmon.data.ACorrelationId;
 import com.nsysmon.data.AHierarchicalDataRoot;
 import com.nsysmon.datasink.ADataSink;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * This data sink keeps the most recent correlation flows in a ring buffer, together with a hash index from correlation
+ *  id to the buffered flows with that id. The index is maintained on insertion and eviction, so linking a flow to its
+ *  parent takes constant time regardless of the buffer's size.
+ */
 public class CorrelationFlowDataSink implements ADataSink {
 	private static final NSysMonLogger LOG = NSysMonLogger.get(CorrelationFlowDataSink.class);
-	private ARingBuffer<CorrelationFlowDetails> dataBuffer;
+
+	/**
+	 * These fields are guarded by 'this'. The ring buffer overwrites its oldest entry when it is full, and every id's
+	 *  deque in the index holds that id's buffered flows oldest first - so an evicted flow is always the first of its deque.
+	 */
+	private final CorrelationFlowDetails[] dataBuffer;
+	private int next = 0;
+	private int size = 0;
+	private final Map<String, ArrayDeque<CorrelationFlowDetails>> index = new HashMap<>();
 
 	public CorrelationFlowDataSink(int maxNumDetails){
-		dataBuffer = new ARingBuffer<>(CorrelationFlowDetails.class, maxNumDetails);
+		dataBuffer = new CorrelationFlowDetails[maxNumDetails];
 	}
 
     @Override
@@ -27,89 +42,100 @@ public class CorrelationFlowDataSink implements ADataSink {
 
     @Override
     public void onFinishedHierarchicalMeasurement(AHierarchicalDataRoot root) {
+        if (root.getStartedFlows().isEmpty() && root.getJoinedFlows().isEmpty()) {
+            return;
+        }
         processMeasurement(root.getStartedFlows(), root.getJoinedFlows());
     }
 
-    private void processMeasurement(Collection<ACorrelationId> startedFlows,Collection<ACorrelationId> joinedFlows) {
+    private synchronized void processMeasurement(Collection<ACorrelationId> startedFlows,Collection<ACorrelationId> joinedFlows) {
 	    Set<ACorrelationId> flowsToProcess = new HashSet<>(startedFlows);
 	    flowsToProcess.addAll(joinedFlows);
-		int loops = flowsToProcess.size();
-	    for (int i = 0; i< loops; i++) {
-		    Set<ACorrelationId> flowsWithParent = findFlowsWithParent(flowsToProcess);
-		    flowsToProcess.removeAll(flowsWithParent);
-		    //System.out.println(flowsWithParent.size());
-		    addToData(flowsWithParent);
+
+	    // a flow's parent may be part of the same measurement, so flows are added in rounds until no parent is found
+	    boolean progress = true;
+	    while (progress && !flowsToProcess.isEmpty()) {
+		    progress = false;
+		    for (Iterator<ACorrelationId> it = flowsToProcess.iterator(); it.hasNext(); ) {
+			    final ACorrelationId flow = it.next();
+			    if (flow.getIdParent() == null || index.containsKey(flow.getIdParent())) {
+				    addToData(flow);
+				    it.remove();
+				    progress = true;
+			    }
+		    }
 	    }
-		Set<ACorrelationId> flowsWithParent = findFlowsWithParent(flowsToProcess);
-		flowsToProcess.removeAll(flowsWithParent);
 
 	    flowsToProcess.forEach(aCorrelationId -> {
 		    LOG.warn("Correlation " + aCorrelationId.getId() + " with description '" + aCorrelationId.getQualifier() + "' could not be saved, because parent isn't stored!");
 	    });
     }
 
-	private Set<ACorrelationId> findFlowsWithParent(Collection<ACorrelationId> flows) {
-		Set<ACorrelationId> rc = new HashSet<>();
-		for (ACorrelationId flow : flows) {
-			if (flow.getIdParent()==null){
-				rc.add(flow);
-			}else{
-				dataBuffer.forEach(correlationFlowDetails -> {
-					if (flow.getIdParent().equals(correlationFlowDetails.getaCorrelationId().getId())){
-						rc.add(flow);
+	private void addToData(ACorrelationId flow) {
+		put(new CorrelationFlowDetails(flow, new HashSet<>()));
+
+		if (flow.getIdParent() != null) {
+			final ArrayDeque<CorrelationFlowDetails> candidates = index.get(flow.getIdParent());
+			if (candidates != null) {
+				// the oldest flow with the parent's id is the parent, and the child is registered with all its copies
+				final ACorrelationId parent = candidates.getFirst().getaCorrelationId();
+				for (CorrelationFlowDetails details : candidates) {
+					if (details.getaCorrelationId().equals(parent)) {
+						details.getChilds().add(flow);
 					}
-				});
+				}
 			}
 		}
-		return rc;
 	}
 
-	private void addToData(Collection<ACorrelationId> flows) {
-		for (ACorrelationId flow : flows) {
-			if (flow.getIdParent() == null){
-				dataBuffer.put(new CorrelationFlowDetails(flow, new HashSet<>()));
-		    }else {
-				dataBuffer.put(new CorrelationFlowDetails(flow, new HashSet<>()));
-		        ACorrelationId parent = findParent(flow);
-		        if (parent != null){
-			        dataBuffer.forEach(correlationFlowDetails -> {
-				        if (correlationFlowDetails.getaCorrelationId().equals(parent)){
-					        correlationFlowDetails.getChilds().add(flow);
-				        }
-			        });
-		        }
-		    }
+	private void put(CorrelationFlowDetails details) {
+		final CorrelationFlowDetails evicted = dataBuffer[next];
+		if (evicted != null) {
+			final String evictedId = evicted.getaCorrelationId().getId();
+			final ArrayDeque<CorrelationFlowDetails> deque = index.get(evictedId);
+			if (deque != null) {
+				deque.pollFirst();
+				if (deque.isEmpty()) {
+					index.remove(evictedId);
+				}
+			}
 		}
-	}
 
-	private ACorrelationId findParent(ACorrelationId flow) {
-        if (flow == null || flow.getIdParent() == null){
-            return null;
-        }
-        for (CorrelationFlowDetails flowDetail : dataBuffer) {
-            if (flowDetail.getaCorrelationId() != null && flowDetail.getaCorrelationId().getId() != null && flowDetail.getaCorrelationId().getId().equals(flow.getIdParent())){
-                return flowDetail.getaCorrelationId();
-            }
-        }
-        return null;
-    }
+		dataBuffer[next] = details;
+		next = (next + 1) % dataBuffer.length;
+		size = Math.min(size + 1, dataBuffer.length);
+
+		final String id = details.getaCorrelationId().getId();
+		if (id != null) {
+			index.computeIfAbsent(id, x -> new ArrayDeque<>(1)).addLast(details);
+		}
+	}
 
     @Override
     public void shutdown() throws Exception {
         //nothing to do
     }
 
-    public Map<ACorrelationId, Set<ACorrelationId>> getDataAsMap() {
+    public synchronized Map<ACorrelationId, Set<ACorrelationId>> getDataAsMap() {
 
 	    //this way it is easier to parse for the page
 	    Map<ACorrelationId, Set<ACorrelationId>> rc = new HashMap<>();
-	    for (CorrelationFlowDetails correlationFlowDetails : dataBuffer) {
-		    rc.put(correlationFlowDetails.getaCorrelationId(), correlationFlowDetails.getChilds());
+	    for (int i = 0; i < size; i++) {
+		    // oldest first, so that newer flows with the same id win
+		    final CorrelationFlowDetails correlationFlowDetails = dataBuffer[(next - size + i + dataBuffer.length) % dataBuffer.length];
+		    rc.put(correlationFlowDetails.getaCorrelationId(), new HashSet<>(correlationFlowDetails.getChilds()));
 	    }
 	    return Collections.unmodifiableMap(rc);
     }
 
-	public void clearData() {
-		dataBuffer.clear();
+	synchronized int size() {
+		return size;
+	}
+
+	public synchronized void clearData() {
+		Arrays.fill(dataBuffer, null);
+		next = 0;
+		size = 0;
+		index.clear();
 	}
 }
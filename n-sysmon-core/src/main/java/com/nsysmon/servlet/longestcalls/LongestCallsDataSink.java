@@ -3,28 +3,27 @@ package com.nsysmon.servlet.longestcalls;
 import com.nsysmon.data.AHierarchicalData;
 import com.nsysmon.data.AHierarchicalDataRoot;
 import com.nsysmon.datasink.ADataSink;
+import com.nsysmon.util.ABoundedTopN;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.regex.Pattern;
 
+/**
+ * This data sink keeps the longest calls. Most calls are much faster than the slowest call that is kept, and they are
+ *  rejected by {@link ABoundedTopN} with a single comparison.
+ */
 public class LongestCallsDataSink implements ADataSink {
 
-    boolean isStarted = false;
-    private final SortedSet<AHierarchicalDataRoot> data;
-    private final int maxBufferSize;
+    volatile boolean isStarted = false;
+    private final ABoundedTopN<AHierarchicalDataRoot> data;
     private final boolean filterData;
     private final Set<String> entriesToIgnore;
     private final Pattern filterMatcher;
 
     LongestCallsDataSink(int bufferSize, boolean performStart, String findRegEx, Set<String> entriesToIgnore) {
-        this.data = new ConcurrentSkipListSet<>(new HierarchicalDataDurationComparator());
+        this.data = new ABoundedTopN<>(bufferSize);
         this.isStarted = performStart;
-        this.maxBufferSize = bufferSize;
         this.entriesToIgnore = entriesToIgnore;
         this.filterData = !findRegEx.isEmpty();
 
@@ -41,14 +40,11 @@ public class LongestCallsDataSink implements ADataSink {
             return;
         }
 
-        boolean callStored = filterData ? storeRcCalls(trace) : storeAllCalls(trace);
-        //callStored &= checkIfTraceShouldBeStored(trace);
-
-        //remove entries if needed, only if we added a new entry. if we did not add a new entry, we don't have to check anything here
-        if (callStored) {
-            while (data.size() > maxBufferSize) {
-                data.remove(data.last());
-            }
+        if (filterData) {
+            storeRcCalls(trace.getRootNode(), trace);
+        }
+        else {
+            data.offer(trace.getRootNode().getDurationNanos(), trace);
         }
     }
 
@@ -60,53 +56,28 @@ public class LongestCallsDataSink implements ADataSink {
         return true;
     }
 
-    private boolean storeAllCalls(AHierarchicalDataRoot trace) {
-        if ((data.size() > maxBufferSize) && (trace.getRootNode().getDurationNanos() <= data.last().getRootNode().getDurationNanos())) {
-            return false;
-        } else {
-            data.add(trace);
-            return true;
-        }
-    }
-
-    private boolean storeRcCalls(AHierarchicalDataRoot trace) {
-        final List<AHierarchicalData> rcServiceCalls = new ArrayList<>();
-        collectRcServiceCalls(trace.getRootNode(), rcServiceCalls);
-
-        boolean callStored = false;
-        for (AHierarchicalData current : rcServiceCalls) {
-            this.data.add(new AHierarchicalDataRoot(current, trace.getStartedFlows(), trace.getJoinedFlows()));
-            callStored = true;
-        }
-        return callStored;
-    }
-
-    private boolean collectRcServiceCalls(AHierarchicalData node, List<AHierarchicalData> rcServiceCalls) {
+    private void storeRcCalls(AHierarchicalData node, AHierarchicalDataRoot trace) {
         if (filterMatcher.matcher(node.getIdentifier()).matches()) {
-            if ((data.size() <= maxBufferSize) || (node.getDurationNanos() > data.last().getRootNode().getDurationNanos())) {
-                if (checkIfTraceShouldBeStored(node)) {
-                    rcServiceCalls.add(node);
-                }
-                return true;
+            // check before creating a new root
+            if (data.wouldAdmit(node.getDurationNanos()) && checkIfTraceShouldBeStored(node)) {
+                data.offer(node.getDurationNanos(), new AHierarchicalDataRoot(node, trace.getStartedFlows(), trace.getJoinedFlows()));
             }
         } else {
             for (AHierarchicalData child : node.getChildren()) {
-                collectRcServiceCalls(child, rcServiceCalls);
-                //  final boolean rcServiceCallAdded = collectRcServiceCalls(child, rcServiceCalls);
-                //if (rcServiceCallAdded) {
-                //return true;
-                //}
+                storeRcCalls(child, trace);
             }
         }
-        return false;
     }
 
     public void clear() {
         data.clear();
     }
 
-    public Iterable<AHierarchicalDataRoot> getData() {
-        return new TreeSet<>(data);
+    /**
+     * @return the longest calls, longest first
+     */
+    public List<AHierarchicalDataRoot> getData() {
+        return data.getDescending();
     }
 
     @Override
@@ -7,11 +7,11 @@ import com.nsysmon.impl.NSysMonConfigurer;
 import com.nsysmon.measure.scalar.AJmxGcMeasurer;
 import com.nsysmon.servlet.performance.AAbstractNsysmonPerformancePageDef;
 
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -99,40 +99,25 @@ public class LongestCallsPageDefinition extends AAbstractNsysmonPerformancePageD
     }
 
     @Override
-    protected List<TreeNode> getData() {
-        final List<TreeNode> result = new ArrayList<>();
-
+    protected void writeData(TreeNodeWriter out) throws IOException {
+        final long now = System.currentTimeMillis();
         for (AHierarchicalDataRoot root : collector.getData()) {
-            result.add(asTreeNode(root.getRootNode(), root.getUuid().toString(), System.currentTimeMillis(), root.getRootNode().getDurationNanos(), 0));
+            writeNode(out, root.getRootNode(), root.getUuid().toString(), now, root.getRootNode().getDurationNanos(), 0);
         }
-
-        Collections.sort(result, (o1, o2) -> (int) (o2.colDataRaw[1] - o1.colDataRaw[1]));
-
-        return result;
     }
 
-    private TreeNode asTreeNode(AHierarchicalData node, String id, long now, long parentNanos, int level) {
-        final List<TreeNode> children = new ArrayList<>();
+    private void writeNode(TreeNodeWriter out, AHierarchicalData node, String id, long now, long parentNanos, int level) throws IOException {
         long selfNanos = node.getDurationNanos();
-
-        final long childNow = level > 0 ? now : node.getStartTimeMillis();
-
-        int i = 0;
         for (AHierarchicalData child : node.getChildren()) {
             if (child.isSerial()) {
                 selfNanos -= child.getDurationNanos();
             }
-            children.add(asTreeNode(child, String.valueOf(i), childNow, node.getDurationNanos(), level + 1));
-            i++;
         }
 
         if (selfNanos < 0) selfNanos = 0;
         if (selfNanos > node.getDurationNanos()) selfNanos = node.getDurationNanos();
 
-        if (selfNanos != 0 && children.size() > 0) {
-            children.add(0, new TreeNode("<self>", true, new long[]{selfNanos * 1000 / node.getDurationNanos(), selfNanos / 1000, selfNanos / 1000, node.getStartTimeMillis() - childNow}, Collections.emptyList()));
-        }
-
+        final long childNow = level > 0 ? now : node.getStartTimeMillis();
 
         final long[] colDataRaw = new long[]{
                 node.getDurationNanos() * 100 * 10 / (parentNanos == 0 ? 1 : parentNanos), // 100 for '%', 10 for 1 frac digit
@@ -141,8 +126,19 @@ public class LongestCallsPageDefinition extends AAbstractNsysmonPerformancePageD
                 node.getStartTimeMillis() - now
         };
 
+        if (out.startNode(id, node.getIdentifier(), tooltipFor(node), node.isSerial(), colDataRaw, !node.getChildren().isEmpty(), node.isWasKilled())) {
+            if (selfNanos != 0) {
+                out.startNode("<self>", true, new long[]{selfNanos * 1000 / node.getDurationNanos(), selfNanos / 1000, selfNanos / 1000, node.getStartTimeMillis() - childNow}, false);
+                out.endNode();
+            }
 
-        return new TreeNode(id, node.getIdentifier(), tooltipFor(node), node.isSerial(), colDataRaw, children, node.isWasKilled());
+            int i = 0;
+            for (AHierarchicalData child : node.getChildren()) {
+                writeNode(out, child, String.valueOf(i), childNow, node.getDurationNanos(), level + 1);
+                i++;
+            }
+        }
+        out.endNode();
     }
 
     private List<List<String>> tooltipFor(AHierarchicalData node) {
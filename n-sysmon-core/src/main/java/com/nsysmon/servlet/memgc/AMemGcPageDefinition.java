@@ -5,10 +5,12 @@ import com.nsysmon.NSysMonApi;
 import com.nsysmon.config.presentation.APresentationPageDefinition;
 import com.nsysmon.impl.NSysMonConfigurer;
 import com.nsysmon.servlet.overview.DataFileGeneratorSupporter;
+import com.nsysmon.util.ASequencedRingBuffer;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
+import java.util.UUID;
 
 
 /**
@@ -23,6 +25,11 @@ public class AMemGcPageDefinition implements APresentationPageDefinition, DataFi
 
     private volatile GcDataSink gcDataSink;
 
+    /**
+     * identifies the current GC buffer, i.e. it changes whenever the sequence numbers start over
+     */
+    private volatile String epoch;
+
     @Override public String getId() {
         return "memgc";
     }
@@ -45,6 +52,7 @@ public class AMemGcPageDefinition implements APresentationPageDefinition, DataFi
 
     @Override public void init(NSysMonApi sysMon) {
         gcDataSink = new GcDataSink(bufferSize);
+        epoch = UUID.randomUUID().toString();
         NSysMonConfigurer.addDataSink(sysMon, gcDataSink);
     }
 
@@ -53,17 +61,38 @@ public class AMemGcPageDefinition implements APresentationPageDefinition, DataFi
             serveData(json);
             return true;
         }
+        if("getDataSince".equals(service)) {
+            serveData(json, gcDataSink.getDataSince(Long.parseLong(params.get(0))));
+            return true;
+        }
 
         return false;
     }
 
     private void serveData(AJsonSerHelperForNSysmon json) throws IOException {
+        serveData(json, gcDataSink.getData());
+    }
+
+    /**
+     * The sequence numbers allow the client to poll incrementally: It passes in the previous response's 'nextSequence'
+     *  and discards all GCs with a sequence number below 'firstSequence', which are no longer buffered.
+     */
+    private void serveData(AJsonSerHelperForNSysmon json, ASequencedRingBuffer.Snapshot<GcDetails> gcs) throws IOException {
         json.startObject();
 
+        json.writeKey("epoch");
+        json.writeStringLiteral(epoch);
+
+        json.writeKey("firstSequence");
+        json.writeNumberLiteral(gcs.getFirstSequence(), 0);
+
+        json.writeKey("nextSequence");
+        json.writeNumberLiteral(gcs.getNextSequence(), 0);
+
         json.writeKey("gcs");
         json.startArray();
-        for(GcDetails gc: gcDataSink.getData()) {
-            serveGcDetails(json, gc);
+        for(int i=0; i<gcs.getElements().size(); i++) {
+            serveGcDetails(json, gcs.getElements().get(i), gcs.getSequence(i));
         }
         json.endArray();
 
@@ -71,9 +100,12 @@ public class AMemGcPageDefinition implements APresentationPageDefinition, DataFi
 
     }
 
-    private void serveGcDetails(AJsonSerHelperForNSysmon json, GcDetails gc) throws IOException {
+    private void serveGcDetails(AJsonSerHelperForNSysmon json, GcDetails gc, long sequence) throws IOException {
         json.startObject();
 
+        json.writeKey("seq");
+        json.writeNumberLiteral(sequence, 0);
+
         json.writeKey("type");
         json.writeStringLiteral(gc.gcType);
 
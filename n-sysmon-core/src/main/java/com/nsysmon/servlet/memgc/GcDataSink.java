@@ -1,10 +1,10 @@
 package com.nsysmon.servlet.memgc;
 
-import com.ajjpj.afoundation.collection.mutable.ARingBuffer;
 import com.nsysmon.data.AHierarchicalData;
 import com.nsysmon.data.AHierarchicalDataRoot;
 import com.nsysmon.datasink.ADataSink;
 import com.nsysmon.measure.scalar.AJmxGcMeasurer;
+import com.nsysmon.util.ASequencedRingBuffer;
 
 import java.util.Collection;
 import java.util.HashSet;
@@ -18,10 +18,10 @@ import java.util.Set;
  * @author arno
  */
 class GcDataSink implements ADataSink {
-    private final ARingBuffer<GcDetails> dataBuffer;
+    private final ASequencedRingBuffer<GcDetails> dataBuffer;
 
     GcDataSink(int maxNumDetails) {
-        dataBuffer = new ARingBuffer<>(GcDetails.class, maxNumDetails);
+        dataBuffer = new ASequencedRingBuffer<>(maxNumDetails);
     }
 
     @Override public void onFinishedHierarchicalMeasurement(AHierarchicalDataRoot data) {
@@ -72,8 +72,12 @@ class GcDataSink implements ADataSink {
         return result;
     }
 
-    public Iterable<GcDetails> getData() {
-        return dataBuffer;
+    public ASequencedRingBuffer.Snapshot<GcDetails> getData() {
+        return dataBuffer.snapshot();
+    }
+
+    public ASequencedRingBuffer.Snapshot<GcDetails> getDataSince(long sequence) {
+        return dataBuffer.since(sequence);
     }
 
     @Override public void shutdown() throws Exception {
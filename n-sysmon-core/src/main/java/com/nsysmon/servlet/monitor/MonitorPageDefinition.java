@@ -1,10 +1,10 @@
 package com.nsysmon.servlet.monitor;
 
-import com.ajjpj.afoundation.collection.mutable.ARingBuffer;
 import com.ajjpj.afoundation.io.AJsonSerHelperForNSysmon;
 import com.nsysmon.NSysMon;
 import com.nsysmon.NSysMonApi;
 import com.nsysmon.data.AScalarDataPoint;
+import com.nsysmon.data.ATimedScalarSeries;
 import com.nsysmon.measure.scalar.AScalarMeasurer;
 import com.nsysmon.servlet.timedscalars.AScalarDataPointValueComparator;
 import com.nsysmon.servlet.timedscalars.TimedScalarsPageDefinition;
@@ -69,7 +69,7 @@ public class MonitorPageDefinition extends TimedScalarsPageDefinition {
         json.startArray();
         for (String param : selectedEntries.split(",")) {
             String paramWithoutHtml = URLDecoder.decode(param, "UTF-8");
-            final Map<String, ARingBuffer<AScalarDataPoint>> scalars = sysMon.getTimedScalarMeasurementsForMonitoring();
+            final Map<String, ATimedScalarSeries> scalars = sysMon.getTimedScalarMeasurementsForMonitoring();
 
             for (String key : scalars.keySet()) {
                 if (key.equalsIgnoreCase(paramWithoutHtml) && isMonitoringActive(key)) {
@@ -80,7 +80,7 @@ public class MonitorPageDefinition extends TimedScalarsPageDefinition {
         json.endArray();
     }
 
-    private void fillMonitoringData(AJsonSerHelperForNSysmon json, Map<String, ARingBuffer<AScalarDataPoint>> scalars, String key) throws IOException {
+    private void fillMonitoringData(AJsonSerHelperForNSysmon json, Map<String, ATimedScalarSeries> scalars, String key) throws IOException {
         json.startObject();
         addMetainfos(json, key, sysMon);
 
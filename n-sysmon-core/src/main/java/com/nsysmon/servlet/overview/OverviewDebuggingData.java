@@ -88,11 +88,23 @@ public class OverviewDebuggingData implements APresentationPageDefinition {
         json.startArray();
 
         addConfigEntry("averagingDelayForScalarsMillis", sysMon.getConfig().averagingDelayForScalarsMillis, json);
+        addConfigEntry("maxAgeOfScalarsMillis", sysMon.getConfig().maxAgeOfScalarsMillis, json);
+        addConfigEntry("numScalarMeasurementThreads", sysMon.getConfig().numScalarMeasurementThreads, json);
+        addConfigEntry("scalarMeasurementBudgetMillis", sysMon.getConfig().scalarMeasurementBudgetMillis, json);
+        addConfigEntry("diskUsageTtlMillis", sysMon.getConfig().diskUsageTtlMillis, json);
+        addConfigEntry("diskUsageTimeoutMillis", sysMon.getConfig().diskUsageTimeoutMillis, json);
         addConfigEntry("dataSinkTimeoutNanos", sysMon.getConfig().dataSinkTimeoutNanos, json);
+        addConfigEntry("asyncDataSinkDispatch", sysMon.getConfig().asyncDataSinkDispatch, json);
+        addConfigEntry("dataSinkDispatchQueueSize", sysMon.getConfig().dataSinkDispatchQueueSize, json);
+        addConfigEntry("numDataSinkDispatchThreads", sysMon.getConfig().numDataSinkDispatchThreads, json);
         addConfigEntry("durationOfOneTimedScalar", sysMon.getConfig().durationOfOneTimedScalar, json);
+        for (Map.Entry<String, Integer> interval : sysMon.getConfig().timedScalarSamplingIntervals.entrySet()) {
+            addConfigEntry("timedScalarSamplingInterval." + interval.getKey(), interval.getValue(), json);
+        }
         addConfigEntry("maxNestedMeasurements", sysMon.getConfig().maxNestedMeasurements, json);
         addConfigEntry("maxNumDataSinkTimeouts", sysMon.getConfig().maxNumDataSinkTimeouts, json);
         addConfigEntry("maxNumMeasurementsPerHierarchy", sysMon.getConfig().maxNumMeasurementsPerHierarchy, json);
+        addConfigEntry("recordMeasurementsInEventBuffer", sysMon.getConfig().recordMeasurementsInEventBuffer, json);
         addConfigEntry("maxNumMeasurementsPerTimedScalar", sysMon.getConfig().maxNumMeasurementsPerTimedScalar, json);
         addConfigEntry("maxNumMeasurementTimeouts", sysMon.getConfig().maxNumMeasurementTimeouts, json);
         addConfigEntry("measurementTimeoutNanos", sysMon.getConfig().measurementTimeoutNanos, json);
@@ -101,6 +113,8 @@ public class OverviewDebuggingData implements APresentationPageDefinition {
         addConfigEntry("collectTooltips (Configuration)", sysMon.getConfig().configuredCollectTooltips(), json);
         addConfigEntry("current collectSqlParameters", sysMon.getConfig().collectSqlParameters(), json);
         addConfigEntry("current collectTooltips", sysMon.getConfig().collectTooltips(), json);
+        addConfigEntry("fingerprintSql", sysMon.getConfig().fingerprintSql, json);
+        addConfigEntry("sqlBackslashEscapes", sysMon.getConfig().sqlBackslashEscapes, json);
 
         json.endArray();
     }
@@ -6,6 +6,11 @@ import com.nsysmon.NSysMonApi;
 import com.nsysmon.config.presentation.APresentationPageDefinition;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -13,6 +18,13 @@ import java.util.List;
  * @author arno
  */
 public abstract class AAbstractNsysmonPerformancePageDef implements APresentationPageDefinition {
+    public static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+
+    /**
+     * the duration percentiles that pages show as columns 'p50', 'p95', 'p99' and 'p99.9'
+     */
+    protected static final double[] PERCENTILES = {0.5, 0.95, 0.99, 0.999};
+
     @Override public String getHtmlFileName() {
         return "aggregated.html";
     }
@@ -26,37 +38,71 @@ public abstract class AAbstractNsysmonPerformancePageDef implements APresentatio
 
     @Override public boolean handleRestCall(String service, List<String> params, AJsonSerHelperForNSysmon json) throws IOException {
         if("getData".equals(service)) {
-            serveData(json);
+            serveData(json, maxDepth(params, 0));
+            return true;
+        }
+        if("getChildren".equals(service)) {
+            serveChildren(json, decodeNodeId(params.get(0)), maxDepth(params, 1));
             return true;
         }
         if("doStart".equals(service)) {
             doStartMeasurements();
-            serveData(json);
+            serveData(json, maxDepth(params, 0));
             return true;
         }
         if("doStop".equals(service)) {
             doStopMeasurements();
-            serveData(json);
+            serveData(json, maxDepth(params, 0));
             return true;
         }
         if("doClear".equals(service)) {
             doClearMeasurements();
-            serveData(json);
+            serveData(json, maxDepth(params, 0));
             return true;
         }
 
         return false;
     }
 
+    private static int maxDepth(List<String> params, int idx) {
+        return params.size() > idx && !params.get(idx).isEmpty() ? Integer.parseInt(params.get(idx)) : UNLIMITED_DEPTH;
+    }
+
+    /**
+     * A node's ID is the path of its and its ancestors' IDs (or labels for nodes without an ID), each prefixed by a
+     *  newline. It is sent URL encoded with '~' instead of '%' so that it can be passed as a single segment of the
+     *  URL path (encoded slashes are rejected by many servlet containers).
+     */
+    static List<String> decodeNodeId(String nodeId) throws UnsupportedEncodingException {
+        final String decoded = URLDecoder.decode(nodeId.replace('~', '%'), "UTF-8");
+
+        final List<String> result = new ArrayList<>(Arrays.asList(decoded.split("\n", -1)));
+        if(!result.isEmpty() && result.get(0).isEmpty()) {
+            result.remove(0);
+        }
+        return result;
+    }
+
     protected abstract void doStartMeasurements();
     protected abstract void doStopMeasurements();
     protected abstract void doClearMeasurements();
 
     protected abstract boolean isStarted();
     protected abstract List<ColDef> getColDefs();
-    protected abstract List<TreeNode> getData();
+
+    /**
+     * Writes the tree of nodes, reading them directly from the data sink. Implementations call
+     *  {@link TreeNodeWriter#startNode} and {@link TreeNodeWriter#endNode} for every node, and they recurse into a
+     *  node's children only if <code>startNode</code> returns true. That allows the writer to skip everything that
+     *  is not requested.
+     */
+    protected abstract void writeData(TreeNodeWriter out) throws IOException;
 
     protected void serveData(AJsonSerHelperForNSysmon json) throws IOException {
+        serveData(json, UNLIMITED_DEPTH);
+    }
+
+    protected void serveData(AJsonSerHelperForNSysmon json, int maxDepth) throws IOException {
         json.startObject();
 
         json.writeKey("isStarted");
@@ -71,10 +117,21 @@ public abstract class AAbstractNsysmonPerformancePageDef implements APresentatio
 
         json.writeKey("traces");
         json.startArray();
-        int nr = 0;
-        for(TreeNode n: getData()) {
-            writeDataNode(json, n, nr++);
-        }
+        writeData(new TreeNodeWriter(json, getColDefs(), Collections.emptyList(), maxDepth, NSysMon.get().getConfig().collectTooltips()));
+        json.endArray();
+
+        json.endObject();
+    }
+
+    /**
+     * writes the children of a single node, i.e. a subtree that was not sent with the initial data
+     */
+    protected void serveChildren(AJsonSerHelperForNSysmon json, List<String> nodePath, int maxDepth) throws IOException {
+        json.startObject();
+
+        json.writeKey("children");
+        json.startArray();
+        writeData(new TreeNodeWriter(json, getColDefs(), nodePath, maxDepth, NSysMon.get().getConfig().collectTooltips()));
         json.endArray();
 
         json.endObject();
@@ -101,29 +158,148 @@ public abstract class AAbstractNsysmonPerformancePageDef implements APresentatio
         json.endObject();
     }
 
-    private void writeDataNode(AJsonSerHelperForNSysmon json, TreeNode node, int nr) throws IOException {
-        json.startObject();
+    protected enum ColWidth {Short, Medium, Long}
+    protected static class ColDef {
+        public final String name;
+        public final boolean isPercentage;
+        public final boolean isTimestamp;
+        public final int numFracDigits;
+        public final ColWidth width;
 
-        if(node.id != null) {
-            json.writeKey("id");
-            //this is done to reduce the size of the json, because now we don'T send the 20 chars per id, but a smaller string
-//            json.writeStringLiteral("n"+nr);
-            json.writeStringLiteral(node.id);
+        public ColDef(String name, boolean isPercentage, int numFracDigits, ColWidth width, boolean isTimestamp) {
+            this.name = name;
+            this.isPercentage = isPercentage;
+            this.numFracDigits = numFracDigits;
+            this.width = width;
+            this.isTimestamp = isTimestamp;
         }
+    }
 
-        json.writeKey("name");
-        json.writeStringLiteral(node.label);
+    /**
+     * This class writes tree nodes to JSON while page definitions traverse their data. If it is restricted to the
+     *  children of a given node, it writes only nodes below that node's path, and it stops at a given depth, marking
+     *  nodes with unwritten children as <code>hasChildren</code>.
+     */
+    protected static class TreeNodeWriter {
+        private static final byte SKIPPED = 0;
+        private static final byte ANCESTOR = 1;
+        private static final byte WRITTEN = 2;
+        private static final byte WRITTEN_WITH_CHILDREN = 3;
+
+        private final AJsonSerHelperForNSysmon json;
+        private final List<ColDef> colDefs;
+        private final List<String> nodePath;
+        private final int maxDepth;
+        private final boolean collectTooltips;
+
+        private byte[] states = new byte[16];
+        private int depth;
+
+        TreeNodeWriter(AJsonSerHelperForNSysmon json, List<ColDef> colDefs, List<String> nodePath, int maxDepth, boolean collectTooltips) {
+            this.json = json;
+            this.colDefs = colDefs;
+            this.nodePath = nodePath;
+            this.maxDepth = maxDepth;
+            this.collectTooltips = collectTooltips;
+        }
 
-        if (node.wasKilled) {
-            json.writeKey("wasKilled");
-            json.writeBooleanLiteral(node.wasKilled);
+        public boolean startNode(String label, boolean isSerial, long[] colDataRaw, boolean hasChildren) throws IOException {
+            return startNode(null, label, null, isSerial, colDataRaw, hasChildren, false);
         }
 
-        if(node.tooltip != null && NSysMon.get().getConfig().collectTooltips()) {
+        /**
+         * Every call to this method must be followed by a call to {@link #endNode()} after the node's children were
+         *  written.
+         *
+         * @param tooltip list of rows, each row is a list of columns
+         * @return true if the node's children are to be written
+         */
+        public boolean startNode(String id, String label, List<List<String>> tooltip, boolean isSerial, long[] colDataRaw, boolean hasChildren, boolean wasKilled) throws IOException {
+            final int level = depth;
+            if(level > 0 && states[level-1] != ANCESTOR && states[level-1] != WRITTEN_WITH_CHILDREN) {
+                return push(SKIPPED);
+            }
+
+            if(level < nodePath.size()) {
+                if(! nodePath.get(level).equals(id != null ? id : label)) {
+                    return push(SKIPPED);
+                }
+                push(ANCESTOR);
+                return hasChildren;
+            }
+
+            json.startObject();
+
+            if(id != null) {
+                json.writeKey("id");
+                json.writeStringLiteral(id);
+            }
+
+            json.writeKey("name");
+            json.writeStringLiteral(label);
+
+            if (wasKilled) {
+                json.writeKey("wasKilled");
+                json.writeBooleanLiteral(true);
+            }
+
+            if(tooltip != null && collectTooltips) {
+                writeTooltip(tooltip);
+            }
+
+            //tweek to reduce the size of the json file
+            if (!isSerial) {
+                json.writeKey("isNotSerial");
+                json.writeBooleanLiteral(true);
+            }
+
+            json.writeKey("data");
+            json.startArray();
+            for(int i=0; i<colDataRaw.length; i++) {
+                json.writeNumberLiteral(colDataRaw[i], colDefs.get(i).numFracDigits);
+            }
+            json.endArray();
+
+            if(! hasChildren) {
+                return push(WRITTEN);
+            }
+            if(level - nodePath.size() + 1 >= maxDepth) {
+                json.writeKey("hasChildren");
+                json.writeBooleanLiteral(true);
+                return push(WRITTEN);
+            }
+
+            json.writeKey("children");
+            json.startArray();
+            return push(WRITTEN_WITH_CHILDREN);
+        }
+
+        public void endNode() throws IOException {
+            switch(states[--depth]) {
+                case WRITTEN_WITH_CHILDREN:
+                    json.endArray();
+                    json.endObject();
+                    break;
+                case WRITTEN:
+                    json.endObject();
+                    break;
+                default:
+            }
+        }
+
+        private boolean push(byte state) {
+            if(depth == states.length) {
+                states = Arrays.copyOf(states, 2*depth);
+            }
+            states[depth++] = state;
+            return state == ANCESTOR || state == WRITTEN_WITH_CHILDREN;
+        }
+
+        private void writeTooltip(List<List<String>> tooltip) throws IOException {
             json.writeKey("tooltip");
             json.startArray();
 
-            for(List<String> row: node.tooltip) {
+            for(List<String> row: tooltip) {
 
                 if (row.size() == 2){
                     json.startObject();
@@ -144,70 +320,5 @@ public abstract class AAbstractNsysmonPerformancePageDef implements APresentatio
 
             json.endArray();
         }
-
-        //tweek to reduce the size of the json file
-        if (!node.isSerial) {
-            json.writeKey("isNotSerial");
-            json.writeBooleanLiteral(true);
-        }
-
-        json.writeKey("data");
-        json.startArray();
-        for(int i=0; i<node.colDataRaw.length; i++) {
-            json.writeNumberLiteral(node.colDataRaw[i], getColDefs().get(i).numFracDigits);
-        }
-        json.endArray();
-
-        if(! node.children.isEmpty()) {
-            json.writeKey("children");
-            json.startArray();
-            for(TreeNode child: node.children) {
-                writeDataNode(json, child, nr++);
-            }
-            json.endArray();
-        }
-
-        json.endObject();
-    }
-
-    protected enum ColWidth {Short, Medium, Long}
-    protected static class ColDef {
-        public final String name;
-        public final boolean isPercentage;
-        public final boolean isTimestamp;
-        public final int numFracDigits;
-        public final ColWidth width;
-
-        public ColDef(String name, boolean isPercentage, int numFracDigits, ColWidth width, boolean isTimestamp) {
-            this.name = name;
-            this.isPercentage = isPercentage;
-            this.numFracDigits = numFracDigits;
-            this.width = width;
-            this.isTimestamp = isTimestamp;
-        }
-    }
-
-    protected static class TreeNode {
-        public final String id;
-        public final String label;
-        public final List<List<String>> tooltip; // list of rows, each row is a list of columns
-        public final boolean isSerial;
-        public final long[] colDataRaw;
-        public final List<TreeNode> children;
-        public boolean wasKilled;
-
-        public TreeNode(String label, boolean isSerial, long[] colDataRaw, List<TreeNode> children) {
-            this(null, label, null, isSerial, colDataRaw, children, false);
-        }
-
-        public TreeNode(String id, String label, List<List<String>> tooltip, boolean isSerial, long[] colDataRaw, List<TreeNode> children, boolean wasKilled) {
-            this.id = id == null ? null : id.intern();
-            this.label = label == null ? null : label.intern();
-            this.tooltip = tooltip;
-            this.isSerial = isSerial;
-            this.colDataRaw = colDataRaw;
-            this.children = children;
-            this.wasKilled = wasKilled;
-        }
     }
 }
@@ -0,0 +1,146 @@
+package com.nsysmon.servlet.performance;
+
+import com.nsysmon.config.log.NSysMonLogger;
+import com.nsysmon.util.ALatencyHistogram;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * This is the mutable counterpart to {@link AMinMaxAvgData}. It keeps its statistics in primitive fields and is updated
+ *  in place, i.e. recording a data point does not allocate (except for the first data point in a new power of two of
+ *  the duration histogram).<p>
+ *
+ * Instances are <em>not</em> thread safe. The intended use is for every thread to aggregate into its own tree of
+ *  accumulators, merging them into a single tree only when the aggregated data is actually requested.
+ *
+ * @author arno
+ */
+public class AMinMaxAvgAccumulator {
+    private static final NSysMonLogger log = NSysMonLogger.get(AMinMaxAvgAccumulator.class);
+
+    private final boolean isSerial;
+    private int totalNumInContext = 0;
+    private long minNanos = Long.MAX_VALUE;
+    private long maxNanos = Long.MIN_VALUE;
+    private long totalNanos = 0;
+    private final ALatencyHistogram histogram = new ALatencyHistogram();
+
+    private final Map<String, AMinMaxAvgAccumulator> children = new HashMap<>();
+
+    public AMinMaxAvgAccumulator(boolean isSerial) {
+        this.isSerial = isSerial;
+    }
+
+    public void addDataPoint(boolean isSerial, long durationNanos) {
+        if(isSerial != this.isSerial) {
+            log.error (new IllegalArgumentException("both parallel and serial measurements at the same level with the same identifier - ignoring measurement"));
+            return;
+        }
+
+        totalNumInContext += 1;
+        totalNanos += durationNanos;
+        histogram.record(Math.max(0, durationNanos));
+        if(durationNanos < minNanos) {
+            minNanos = durationNanos;
+        }
+        if(durationNanos > maxNanos) {
+            maxNanos = durationNanos;
+        }
+    }
+
+    /**
+     * Adds data that was pre-aggregated elsewhere, as if all of its data points were added individually.
+     *
+     * @param histogram the distribution of the data points' durations
+     */
+    public void addAggregated(boolean isSerial, int numDataPoints, long totalNanos, long minNanos, long maxNanos, ALatencyHistogram histogram) {
+        if(isSerial != this.isSerial) {
+            log.error (new IllegalArgumentException("both parallel and serial measurements at the same level with the same identifier - ignoring measurement"));
+            return;
+        }
+
+        this.totalNumInContext += numDataPoints;
+        this.totalNanos += totalNanos;
+        this.minNanos = Math.min(this.minNanos, minNanos);
+        this.maxNanos = Math.max(this.maxNanos, maxNanos);
+        this.histogram.mergeFrom(histogram);
+    }
+
+    /**
+     * @return the child accumulator for a given identifier, creating it if it does not exist yet
+     */
+    public AMinMaxAvgAccumulator getOrCreateChild(String identifier, boolean isSerial) {
+        return getOrCreate(children, identifier, isSerial);
+    }
+
+    public static AMinMaxAvgAccumulator getOrCreate(Map<String, AMinMaxAvgAccumulator> map, String identifier, boolean isSerial) {
+        AMinMaxAvgAccumulator result = map.get(identifier);
+        if(result == null) {
+            result = new AMinMaxAvgAccumulator(isSerial);
+            map.put(identifier, result);
+        }
+        return result;
+    }
+
+    /**
+     * Adds another accumulator's data - including its children, recursively - to this accumulator. The other
+     *  accumulator is left unchanged.
+     */
+    public void mergeFrom(AMinMaxAvgAccumulator other) {
+        if(other.isSerial != isSerial) {
+            log.error (new IllegalArgumentException("both parallel and serial measurements at the same level with the same identifier - ignoring measurement"));
+            return;
+        }
+
+        addAggregated(other.isSerial, other.totalNumInContext, other.totalNanos, other.minNanos, other.maxNanos, other.histogram);
+        mergeAll(children, other.children);
+    }
+
+    public static void mergeAll(Map<String, AMinMaxAvgAccumulator> target, Map<String, AMinMaxAvgAccumulator> source) {
+        for(Map.Entry<String, AMinMaxAvgAccumulator> entry: source.entrySet()) {
+            getOrCreate(target, entry.getKey(), entry.getValue().isSerial).mergeFrom(entry.getValue());
+        }
+    }
+
+    /**
+     * @return an immutable snapshot of this accumulator and all its children
+     */
+    public AMinMaxAvgData toMinMaxAvgData() {
+        final ALatencyHistogram histogramCopy = new ALatencyHistogram();
+        histogramCopy.mergeFrom(histogram);
+
+        return new AMinMaxAvgData(isSerial, totalNumInContext,
+                totalNumInContext == 0 ? 0 : minNanos,
+                totalNumInContext == 0 ? 0 : maxNanos,
+                totalNumInContext == 0 ? 0 : totalNanos / totalNumInContext,
+                totalNanos,
+                histogramCopy,
+                toMinMaxAvgData(children));
+    }
+
+    public static Map<String, AMinMaxAvgData> toMinMaxAvgData(Map<String, AMinMaxAvgAccumulator> accumulators) {
+        final Map<String, AMinMaxAvgData> result = new HashMap<>(accumulators.size() * 2);
+        for(Map.Entry<String, AMinMaxAvgAccumulator> entry: accumulators.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toMinMaxAvgData());
+        }
+        return result;
+    }
+
+    public boolean isSerial() {
+        return isSerial;
+    }
+
+    public int getTotalNumInContext() {
+        return totalNumInContext;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public Map<String, AMinMaxAvgAccumulator> getChildren() {
+        return children;
+    }
+}
@@ -1,6 +1,7 @@
 package com.nsysmon.servlet.performance;
 
 import com.nsysmon.config.log.NSysMonLogger;
+import com.nsysmon.util.ALatencyHistogram;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -16,6 +17,11 @@ public class AMinMaxAvgData {
     private final long avgNanos;
     private final long totalNanos;
 
+    /**
+     * null if no distribution of durations is available
+     */
+    private final ALatencyHistogram histogram;
+
     private final Map<String, AMinMaxAvgData> children;
 
     private static final NSysMonLogger log = NSysMonLogger.get(AMinMaxAvgData.class);
@@ -25,12 +31,17 @@ public class AMinMaxAvgData {
     }
 
     public AMinMaxAvgData(boolean isSerial, int totalNumInContext, long minNanos, long maxNanos, long avgNanos, long totalNanos, Map<String, AMinMaxAvgData> children) {
+        this(isSerial, totalNumInContext, minNanos, maxNanos, avgNanos, totalNanos, null, children);
+    }
+
+    public AMinMaxAvgData(boolean isSerial, int totalNumInContext, long minNanos, long maxNanos, long avgNanos, long totalNanos, ALatencyHistogram histogram, Map<String, AMinMaxAvgData> children) {
         this.isSerial = isSerial;
         this.totalNumInContext = totalNumInContext;
         this.minNanos = minNanos;
         this.maxNanos = maxNanos;
         this.avgNanos = avgNanos;
         this.totalNanos = totalNanos;
+        this.histogram = histogram;
 
         this.children = children;
         //TODO check if it is save to change this to local array with new instance like below
@@ -48,7 +59,7 @@ public class AMinMaxAvgData {
                 totalNumInContext+1,
                 Math.min(minNanos, durationNanos),
                 Math.max(maxNanos, durationNanos),
-                (avgNanos * totalNumInContext + durationNanos) / (totalNumInContext + 1), // this should be safe against overflow
+                (totalNanos + durationNanos) / (totalNumInContext + 1),
                 totalNanos + durationNanos,
                 children);
     }
@@ -77,6 +88,24 @@ public class AMinMaxAvgData {
         return avgNanos;
     }
 
+    /**
+     * @return the durations at the given percentiles (e.g. 0.99 for the 99th percentile) in ascending order, with a
+     *  relative error of at most 1/{@link ALatencyHistogram#NUM_SUB_BUCKETS} - or all zero if no distribution of
+     *  durations is available
+     */
+    public long[] getPercentileNanos(double... percentiles) {
+        if(histogram == null) {
+            return new long[percentiles.length];
+        }
+
+        final long[] result = histogram.getValuesAtPercentiles(percentiles);
+        for(int i=0; i<result.length; i++) {
+            // buckets are reported by their highest value, which may be beyond the actual maximum
+            result[i] = Math.max(minNanos, Math.min(maxNanos, result[i]));
+        }
+        return result;
+    }
+
     public Map<String, AMinMaxAvgData> getChildren() {
         return children;
     }
@@ -1,36 +1,82 @@
 package com.nsysmon.servlet.performance.bottomup;
 
-import com.ajjpj.afoundation.collection.mutable.ArrayStack;
 import com.nsysmon.data.AHierarchicalData;
 import com.nsysmon.data.AHierarchicalDataRoot;
+import com.nsysmon.data.ASymbolTable;
 import com.nsysmon.datasink.ADataSink;
+import com.nsysmon.servlet.performance.AMinMaxAvgAccumulator;
 import com.nsysmon.servlet.performance.AMinMaxAvgData;
+import com.nsysmon.util.ALatencyHistogram;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
+ * This data sink aggregates bottom-up without a global lock. Every distinct path from a leaf to the root of its
+ *  hierarchy is interned once as a {@link PathKey}, and all statistics for that path are kept in atomic counters
+ *  per level. Recording a path that was seen before is a single hash lookup followed by counter updates.<p>
+ *
+ * Paths are keyed by {@link AHierarchicalData#getIdentifierId() identifier ids}, so identifiers that overflowed the
+ *  symbol table are aggregated as {@link ASymbolTable#OTHER_SYMBOL}.<p>
+ *
+ * Every level also has a {@link ALatencyHistogram} for duration percentiles. The histograms' memory depends on the
+ *  range of durations rather than on the number of calls, but it is not counted in the budget of nodes below.<p>
+ *
+ * The tree of {@link AMinMaxAvgData} is built from the interned paths only when {@link #getData()} is called: A node
+ *  in the tree aggregates the statistics of all paths sharing the node's path as a prefix.<p>
+ *
+ * Memory is bounded by a budget of nodes, i.e. the sum of the lengths of all interned paths. When it is exceeded,
+ *  the paths with the least total leaf time are evicted.
+ *
  * @author arno
  */
 public class ABottomUpDataSink implements ADataSink {
+    public static final int DEFAULT_MAX_NUM_NODES = 100_000;
+
+    /**
+     * Eviction removes paths until the number of nodes is down to this fraction of the budget, so that eviction does
+     *  not happen again right away.
+     */
+    private static final double EVICTION_TARGET_FRACTION = 0.75;
+
     private volatile boolean isActive = false;
 
     /**
-     * Leaf node - e.g. JDBC call - at the top, service calls 'below' that, with the entry points as leaves. Statistics are collected
-     *  per context, i.e. per parent in this tree.
+     * Leaf node - e.g. JDBC call - first, service calls 'below' that, with the entry point last. Statistics are collected
+     *  per level of the path, i.e. per parent in the resulting tree.
      */
-    private final ConcurrentHashMap<String, AMinMaxAvgData> rootMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<PathKey, PathStatistics> paths = new ConcurrentHashMap<>();
+    private final AtomicInteger numNodes = new AtomicInteger(0);
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final ThreadLocal<CollectContext> collectContextPerThread = ThreadLocal.withInitial(CollectContext::new);
 
     private final ABottomUpLeafFilter leafFilter;
+    private final int maxNumNodes;
 
     public ABottomUpDataSink(ABottomUpLeafFilter leafFilter) {
+        this(leafFilter, DEFAULT_MAX_NUM_NODES);
+    }
+
+    public ABottomUpDataSink(ABottomUpLeafFilter leafFilter, int maxNumNodes) {
         this.leafFilter = leafFilter;
+        this.maxNumNodes = maxNumNodes;
     }
 
-    public synchronized void clear() {
-        rootMap.clear();
+    public void clear() {
+        for(PathKey key: paths.keySet()) {
+            remove(key);
+        }
     }
 
     public void setActive(boolean isActive) {
@@ -40,56 +86,273 @@ public class ABottomUpDataSink implements ADataSink {
         return this.isActive;
     }
 
+    int getNumNodes() {
+        return numNodes.get();
+    }
+
     @Override public void onStartedHierarchicalMeasurement(String identifier) {
     }
 
     @Override public void onFinishedHierarchicalMeasurement(AHierarchicalDataRoot data) {
         if(isActive) {
-            synchronizedCollect(data.getRootNode());
+            final CollectContext ctx = collectContextPerThread.get();
+            try {
+                recCollect(data.getRootNode(), ctx, 0);
+            }
+            finally {
+                ctx.clear();
+            }
         }
     }
 
     @Override public void shutdown() {
     }
 
+    /**
+     * @return a snapshot of the aggregated data, with the leaves at the top level
+     */
     public Map<String, AMinMaxAvgData> getData() {
-        return Collections.unmodifiableMap(rootMap);
-    }
+        final Map<String, AMinMaxAvgAccumulator> result = new HashMap<>();
+
+        for(Map.Entry<PathKey, PathStatistics> entry: paths.entrySet()) {
+            final PathKey key = entry.getKey();
+            final PathStatistics stats = entry.getValue();
+
+            final int count = (int) stats.count.sum();
+            if(count == 0) {
+                continue;
+            }
+
+            Map<String, AMinMaxAvgAccumulator> map = result;
+            for(int level=0; level<key.length; level++) {
+                final AMinMaxAvgAccumulator acc = AMinMaxAvgAccumulator.getOrCreate(map, key.names[level], key.serial[level]);
+                acc.addAggregated(key.serial[level], count, stats.totalNanos[level].sum(), stats.minNanos.get(level), stats.maxNanos.get(level), stats.histograms[level]);
+                map = acc.getChildren();
+            }
+        }
 
-    private synchronized void synchronizedCollect(AHierarchicalData newData) { //TODO change this to a non-blocking implementation
-        recCollect(newData, new ArrayStack<>());
+        return Collections.unmodifiableMap(AMinMaxAvgAccumulator.toMinMaxAvgData(result));
     }
 
-    private void recCollect(AHierarchicalData newData, ArrayStack<AHierarchicalData> callStack) {
-        callStack.push(newData);
+    private void recCollect(AHierarchicalData newData, CollectContext ctx, int depth) {
+        ctx.push(newData, depth);
 
         if(leafFilter.isLeaf(newData)) {
-            doStoreJdbc(newData, callStack, rootMap);
+            doStore(ctx, depth+1);
         }
         else {
             for(AHierarchicalData child: newData.getChildren()) {
-                recCollect(child, callStack);
+                recCollect(child, ctx, depth+1);
             }
         }
-        callStack.pop();
     }
 
-    private void doStoreJdbc(AHierarchicalData jdbcData, Iterable<AHierarchicalData> callStack, Map<String, AMinMaxAvgData> parentMap) {
-        for(AHierarchicalData data: callStack) {
-            final AMinMaxAvgData aggregated = registerData(data.getIdentifier(), parentMap, data.isSerial(), data.getDurationNanos());
-            parentMap = aggregated.getChildren();
+    private void doStore(CollectContext ctx, int pathLength) {
+        final PathKey probe = ctx.probeFor(pathLength);
+
+        PathStatistics stats = paths.get(probe);
+        if(stats == null) {
+            final PathKey key = probe.copy();
+            final PathStatistics newStats = new PathStatistics(pathLength);
+            stats = paths.putIfAbsent(key, newStats);
+            if(stats == null) {
+                stats = newStats;
+                if(numNodes.addAndGet(pathLength) > maxNumNodes) {
+                    evictIfNecessary();
+                }
+            }
+        }
+
+        for(int level=0; level<pathLength; level++) {
+            stats.register(level, ctx.callStack[pathLength - 1 - level].getDurationNanos());
         }
+        stats.count.increment();
     }
 
-    private AMinMaxAvgData registerData(String key, Map<String, AMinMaxAvgData> map, boolean isSerial, long durationNanos) {
-        AMinMaxAvgData result = map.get(key);
-        if(result == null) {
-            result = new AMinMaxAvgData(isSerial, durationNanos);
+    private void remove(PathKey key) {
+        if(paths.remove(key) != null) {
+            numNodes.addAndGet(-key.length);
         }
-        else {
-            result = result.withDataPoint(isSerial, durationNanos);
+    }
+
+    private void evictIfNecessary() {
+        if(! evictionLock.tryLock()) {
+            // some other thread is evicting already
+            return;
+        }
+
+        try {
+            if(numNodes.get() <= maxNumNodes) {
+                return;
+            }
+
+            // take a snapshot of the significance values - they keep changing while other threads record data
+            final List<EvictionCandidate> candidates = new ArrayList<>(paths.size());
+            for(Map.Entry<PathKey, PathStatistics> entry: paths.entrySet()) {
+                candidates.add(new EvictionCandidate(entry.getKey(), entry.getValue().getSignificance()));
+            }
+            candidates.sort((o1, o2) -> Long.compare(o1.significance, o2.significance));
+
+            final int target = (int) (maxNumNodes * EVICTION_TARGET_FRACTION);
+            for(EvictionCandidate candidate: candidates) {
+                if(numNodes.get() <= target) {
+                    break;
+                }
+                remove(candidate.key);
+            }
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * The sequence of identifier ids (and 'serial' flags) from a leaf to the root of its hierarchy. The hash code is
+     *  calculated once, and equality checks compare only ints. The names are kept for rendering, with identifiers
+     *  that overflowed the symbol table rendered as {@link ASymbolTable#OTHER_SYMBOL}.
+     */
+    private static class PathKey {
+        int[] identifierIds;
+        String[] names;
+        boolean[] serial;
+        int length;
+        int hash;
+
+        PathKey(int capacity) {
+            this.identifierIds = new int[capacity];
+            this.names = new String[capacity];
+            this.serial = new boolean[capacity];
+        }
+
+        PathKey copy() {
+            final PathKey result = new PathKey(0);
+            result.identifierIds = Arrays.copyOf(identifierIds, length);
+            result.names = new String[length];
+            for(int i=0; i<length; i++) {
+                result.names[i] = identifierIds[i] == ASymbolTable.OTHER ? ASymbolTable.OTHER_SYMBOL : names[i];
+            }
+            result.serial = Arrays.copyOf(serial, length);
+            result.length = length;
+            result.hash = hash;
+            return result;
+        }
+
+        @Override public int hashCode() {
+            return hash;
+        }
+
+        @Override public boolean equals(Object o) {
+            if(this == o) return true;
+            if(! (o instanceof PathKey)) return false;
+
+            final PathKey other = (PathKey) o;
+            if(hash != other.hash || length != other.length) {
+                return false;
+            }
+            for(int i=0; i<length; i++) {
+                if(identifierIds[i] != other.identifierIds[i] || serial[i] != other.serial[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class PathStatistics {
+        final LongAdder count = new LongAdder();
+        final LongAdder[] totalNanos;
+        final AtomicLongArray minNanos;
+        final AtomicLongArray maxNanos;
+        final ALatencyHistogram[] histograms;
+
+        PathStatistics(int pathLength) {
+            totalNanos = new LongAdder[pathLength];
+            histograms = new ALatencyHistogram[pathLength];
+            for(int i=0; i<pathLength; i++) {
+                totalNanos[i] = new LongAdder();
+                histograms[i] = new ALatencyHistogram();
+            }
+            minNanos = new AtomicLongArray(pathLength);
+            maxNanos = new AtomicLongArray(pathLength);
+            for(int i=0; i<pathLength; i++) {
+                minNanos.set(i, Long.MAX_VALUE);
+                maxNanos.set(i, Long.MIN_VALUE);
+            }
+        }
+
+        void register(int level, long durationNanos) {
+            totalNanos[level].add(durationNanos);
+            histograms[level].record(Math.max(0, durationNanos));
+
+            long prev;
+            while(durationNanos < (prev = minNanos.get(level))) {
+                if(minNanos.compareAndSet(level, prev, durationNanos)) {
+                    break;
+                }
+            }
+            while(durationNanos > (prev = maxNanos.get(level))) {
+                if(maxNanos.compareAndSet(level, prev, durationNanos)) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Paths are ranked by the total time spent in their leaf.
+         */
+        long getSignificance() {
+            return totalNanos[0].sum();
+        }
+    }
+
+    private static class EvictionCandidate {
+        final PathKey key;
+        final long significance;
+
+        EvictionCandidate(PathKey key, long significance) {
+            this.key = key;
+            this.significance = significance;
+        }
+    }
+
+    /**
+     * Per-thread state that is reused between collections to avoid allocating on every finished hierarchy.
+     */
+    private static class CollectContext {
+        AHierarchicalData[] callStack = new AHierarchicalData[16];
+        final PathKey probe = new PathKey(16);
+
+        void push(AHierarchicalData data, int depth) {
+            if(depth >= callStack.length) {
+                callStack = Arrays.copyOf(callStack, 2*callStack.length);
+            }
+            callStack[depth] = data;
+        }
+
+        PathKey probeFor(int pathLength) {
+            if(probe.identifierIds.length < pathLength) {
+                probe.identifierIds = new int[callStack.length];
+                probe.names = new String[callStack.length];
+                probe.serial = new boolean[callStack.length];
+            }
+
+            int hash = 1;
+            for(int level=0; level<pathLength; level++) {
+                final AHierarchicalData data = callStack[pathLength - 1 - level];
+                probe.identifierIds[level] = data.getIdentifierId();
+                probe.names[level] = data.getIdentifier();
+                probe.serial[level] = data.isSerial();
+                hash = 31*hash + data.getIdentifierId();
+                hash = 31*hash + (data.isSerial() ? 1 : 0);
+            }
+            probe.length = pathLength;
+            probe.hash = hash;
+            return probe;
+        }
+
+        void clear() {
+            Arrays.fill(callStack, null);
+            Arrays.fill(probe.names, null);
         }
-        map.put(key, result);
-        return result;
     }
 }
@@ -5,6 +5,7 @@ import com.nsysmon.impl.NSysMonConfigurer;
 import com.nsysmon.servlet.performance.AAbstractNsysmonPerformancePageDef;
 import com.nsysmon.servlet.performance.AMinMaxAvgData;
 
+import java.io.IOException;
 import java.text.Collator;
 import java.util.*;
 
@@ -20,16 +21,33 @@ public abstract class ABottomUpPageDefinition extends AAbstractNsysmonPerformanc
             new ColDef("#calls", false, 0, ColWidth.Medium, false),
             new ColDef("avg ms", false, 0, ColWidth.Medium, false),
             new ColDef("min ms", false, 0, ColWidth.Medium, false),
-            new ColDef("max ms", false, 0, ColWidth.Medium, false)
+            new ColDef("max ms", false, 0, ColWidth.Medium, false),
+            new ColDef("p50 ms", false, 0, ColWidth.Medium, false),
+            new ColDef("p95 ms", false, 0, ColWidth.Medium, false),
+            new ColDef("p99 ms", false, 0, ColWidth.Medium, false),
+            new ColDef("p99.9 ms", false, 0, ColWidth.Medium, false)
     );
 
     public static final int MILLION = 1000*1000;
 
+    private final int maxNumNodes;
+
+    protected ABottomUpPageDefinition() {
+        this(ABottomUpDataSink.DEFAULT_MAX_NUM_NODES);
+    }
+
+    /**
+     * @param maxNumNodes limits the memory used for aggregation - see {@link ABottomUpDataSink}
+     */
+    protected ABottomUpPageDefinition(int maxNumNodes) {
+        this.maxNumNodes = maxNumNodes;
+    }
+
     protected abstract ABottomUpLeafFilter createLeafFilter();
 
     @Override public void init(NSysMonApi sysMon) {
         super.init(sysMon);
-        collector = new ABottomUpDataSink(createLeafFilter());
+        collector = new ABottomUpDataSink(createLeafFilter(), maxNumNodes);
         NSysMonConfigurer.addDataSink(sysMon, collector);
     }
 
@@ -53,20 +71,20 @@ public abstract class ABottomUpPageDefinition extends AAbstractNsysmonPerformanc
         return COL_DEFS;
     }
 
-    @Override protected List<TreeNode> getData() {
+    @Override protected void writeData(TreeNodeWriter out) throws IOException {
+        final Map<String, AMinMaxAvgData> data = collector.getData();
+
         long totalJdbcNanos = 0;
         int totalJdbcCalls = 0;
-        for(AMinMaxAvgData d: collector.getData().values()) {
+        for(AMinMaxAvgData d: data.values()) {
             totalJdbcNanos += d.getTotalNanos();
             totalJdbcCalls += d.getTotalNumInContext();
         }
 
-        return getDataRec(collector.getData(), 0, totalJdbcNanos, totalJdbcNanos, totalJdbcCalls);
+        writeDataRec(out, data, 0, totalJdbcNanos, totalJdbcNanos, totalJdbcCalls);
     }
 
-    private List<TreeNode> getDataRec(Map<String, AMinMaxAvgData> map, int level, double jdbcTimeInParent, double totalJdbcTime, int totalNumCallsInContext) {
-        final List<TreeNode> result = new ArrayList<>();
-
+    private void writeDataRec(TreeNodeWriter out, Map<String, AMinMaxAvgData> map, int level, double jdbcTimeInParent, double totalJdbcTime, int totalNumCallsInContext) throws IOException {
         for(Map.Entry<String, AMinMaxAvgData> entry: getSorted(map, level == 0)) {
             final AMinMaxAvgData inputData = entry.getValue();
 
@@ -74,24 +92,31 @@ public abstract class ABottomUpPageDefinition extends AAbstractNsysmonPerformanc
             final double timeFracLocal = jdbcTimeHere / jdbcTimeInParent;
             final double timeFracGlobal = jdbcTimeHere / totalJdbcTime;
 
+            final long[] percentileNanos = inputData.getPercentileNanos(PERCENTILES);
+
             final long[] dataRaw = new long[] {
                     (long)(timeFracGlobal * 100 * 10),
                     (long)(timeFracLocal * 100 * 10),
                     inputData.getTotalNumInContext(),
                     inputData.getAvgNanos() / MILLION,
                     inputData.getMinNanos() / MILLION,
-                    inputData.getMaxNanos() / MILLION
+                    inputData.getMaxNanos() / MILLION,
+                    percentileNanos[0] / MILLION,
+                    percentileNanos[1] / MILLION,
+                    percentileNanos[2] / MILLION,
+                    percentileNanos[3] / MILLION
             };
 
-            int totalChildCalls = 0;
-            for(AMinMaxAvgData childData: inputData.getChildren().values()) {
-                totalChildCalls += childData.getTotalNumInContext();
-            }
             // TODO: Add Tooltip to Treenode. @See: ATracePageDefinition.class
-            result.add(new TreeNode(entry.getKey(), inputData.isSerial(), dataRaw, getDataRec(inputData.getChildren(), level+1, jdbcTimeHere, totalJdbcTime, totalChildCalls)));
+            if(out.startNode(entry.getKey(), inputData.isSerial(), dataRaw, !inputData.getChildren().isEmpty())) {
+                int totalChildCalls = 0;
+                for(AMinMaxAvgData childData: inputData.getChildren().values()) {
+                    totalChildCalls += childData.getTotalNumInContext();
+                }
+                writeDataRec(out, inputData.getChildren(), level+1, jdbcTimeHere, totalJdbcTime, totalChildCalls);
+            }
+            out.endNode();
         }
-
-        return result;
     }
 
     private List<Map.Entry<String, AMinMaxAvgData>> getSorted(Map<String, AMinMaxAvgData> raw, final boolean rootLevel) {
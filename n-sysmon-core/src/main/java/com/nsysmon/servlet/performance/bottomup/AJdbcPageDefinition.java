@@ -7,6 +7,13 @@ import com.nsysmon.measure.jdbc.NSysMonStatement;
  * @author arno
  */
 public class AJdbcPageDefinition extends ABottomUpPageDefinition {
+    public AJdbcPageDefinition() {
+    }
+
+    public AJdbcPageDefinition(int maxNumNodes) {
+        super(maxNumNodes);
+    }
+
     @Override protected ABottomUpLeafFilter createLeafFilter() {
         return data -> data.getIdentifier().startsWith(NSysMonStatement.IDENT_PREFIX_JDBC) &&
                 !data.getIdentifier ().startsWith (NSysMonStatement.IDENT_PREFIX_JDBC + "connection");
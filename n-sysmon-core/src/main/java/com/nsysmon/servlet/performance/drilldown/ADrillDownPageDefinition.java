@@ -5,6 +5,7 @@ import com.nsysmon.impl.NSysMonConfigurer;
 import com.nsysmon.servlet.performance.AAbstractNsysmonPerformancePageDef;
 import com.nsysmon.servlet.performance.AMinMaxAvgData;
 
+import java.io.IOException;
 import java.text.Collator;
 import java.util.*;
 
@@ -21,7 +22,11 @@ public class ADrillDownPageDefinition extends AAbstractNsysmonPerformancePageDef
             new ColDef("total ms", false, 0, ColWidth.Long, false),
             new ColDef("avg ms", false, 0, ColWidth.Medium, false),
             new ColDef("min ms", false, 0, ColWidth.Medium, false),
-            new ColDef("max ms", false, 0, ColWidth.Medium, false)
+            new ColDef("max ms", false, 0, ColWidth.Medium, false),
+            new ColDef("p50 ms", false, 0, ColWidth.Medium, false),
+            new ColDef("p95 ms", false, 0, ColWidth.Medium, false),
+            new ColDef("p99 ms", false, 0, ColWidth.Medium, false),
+            new ColDef("p99.9 ms", false, 0, ColWidth.Medium, false)
     );
 
     private final boolean initiallyStarted;
@@ -78,17 +83,18 @@ public class ADrillDownPageDefinition extends AAbstractNsysmonPerformancePageDef
         return colDefs;
     }
 
-    @Override protected List<TreeNode> getData() {
+    @Override protected void writeData(TreeNodeWriter out) throws IOException {
+        final Map<String, AMinMaxAvgData> data = collector.getData();
+
         long totalNanos = 0;
-        for(AMinMaxAvgData d: collector.getData().values()) {
+        for(AMinMaxAvgData d: data.values()) {
             totalNanos += d.getTotalNanos();
         }
 
-        return getDataRec(collector.getData(), 0, totalNanos, 1);
+        writeDataRec(out, data, 0, totalNanos, 1);
     }
 
-    private List<TreeNode> getDataRec(Map<String, AMinMaxAvgData> map, long parentSelfNanos, double parentTotalNanos, int numParentCalls) {
-        final List<TreeNode> result = new ArrayList<>();
+    private void writeDataRec(TreeNodeWriter out, Map<String, AMinMaxAvgData> map, long parentSelfNanos, double parentTotalNanos, int numParentCalls) throws IOException {
         for(Map.Entry<String, AMinMaxAvgData> entry: getSorted(map, parentSelfNanos, numParentCalls)) {
             final AMinMaxAvgData inputData = entry.getValue();
 
@@ -101,18 +107,26 @@ public class ADrillDownPageDefinition extends AAbstractNsysmonPerformancePageDef
                 }
             }
 
+            final long[] percentileNanos = inputData.getPercentileNanos(PERCENTILES);
+
             final long[] dataRaw = new long[] {
                     (long)(100 * 10 * fractionOfParent),
                     (long)(100 * inputData.getTotalNumInContext()), // / numParentCalls),
                     inputData.getTotalNanos() / MILLION,
                     inputData.getAvgNanos() / MILLION,
                     inputData.getMinNanos() / MILLION,
-                    inputData.getMaxNanos() / MILLION
+                    inputData.getMaxNanos() / MILLION,
+                    percentileNanos[0] / MILLION,
+                    percentileNanos[1] / MILLION,
+                    percentileNanos[2] / MILLION,
+                    percentileNanos[3] / MILLION
             };
 
-            result.add(new TreeNode(entry.getKey(), inputData.isSerial(), dataRaw, getDataRec(inputData.getChildren(), selfNanos, inputData.getTotalNanos(), inputData.getTotalNumInContext())));
+            if(out.startNode(entry.getKey(), inputData.isSerial(), dataRaw, !inputData.getChildren().isEmpty())) {
+                writeDataRec(out, inputData.getChildren(), selfNanos, inputData.getTotalNanos(), inputData.getTotalNumInContext());
+            }
+            out.endNode();
         }
-        return result;
     }
 
     private List<Map.Entry<String, AMinMaxAvgData>> getSorted(Map<String, AMinMaxAvgData> raw, long selfNanos, int numParent) {
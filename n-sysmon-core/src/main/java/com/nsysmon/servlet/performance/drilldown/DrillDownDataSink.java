@@ -3,20 +3,36 @@ package com.nsysmon.servlet.performance.drilldown;
 import com.nsysmon.data.AHierarchicalData;
 import com.nsysmon.data.AHierarchicalDataRoot;
 import com.nsysmon.datasink.ADataSink;
+import com.nsysmon.servlet.performance.AMinMaxAvgAccumulator;
 import com.nsysmon.servlet.performance.AMinMaxAvgData;
 
+import java.lang.ref.WeakReference;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 
 /**
+ * This data sink aggregates measurements without any contention between request threads: Every thread records into
+ *  its own tree of {@link AMinMaxAvgAccumulator}s (a 'stripe'), and the stripes are merged only when {@link #getData()}
+ *  is called.<p>
+ *
+ * Every stripe is guarded by its own monitor. That monitor is shared only between the owning thread and a reader
+ *  merging the data, so it is practically never contended.
+ *
  * @author arno
  */
 class DrillDownDataSink implements ADataSink {
     private volatile boolean isActive = false;
 
-    private final ConcurrentHashMap<String, AMinMaxAvgData> rootMap = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Stripe> stripes = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Stripe> stripePerThread = ThreadLocal.withInitial(this::registerStripe);
+
+    /**
+     * accumulated data of threads that have terminated in the meantime
+     */
+    private final Stripe retired = new Stripe(null);
 
     public void setActive(boolean active) {
         this.isActive = active;
@@ -26,12 +42,33 @@ class DrillDownDataSink implements ADataSink {
         return isActive;
     }
 
-    public synchronized void clear() {
-        rootMap.clear();
+    public void clear() {
+        for(Stripe stripe: stripes) {
+            stripe.clear();
+        }
+        retired.clear();
     }
 
+    /**
+     * @return a snapshot of the aggregated data of all threads
+     */
     public Map<String, AMinMaxAvgData> getData() {
-        return Collections.unmodifiableMap(rootMap);
+        final Map<String, AMinMaxAvgAccumulator> merged = new HashMap<>();
+
+        for(Stripe stripe: stripes) {
+            if(stripe.isOwnerAlive()) {
+                stripe.mergeInto(merged);
+            }
+            else if(stripes.remove(stripe)) {
+                // the owning thread is gone, so nobody will add to this stripe anymore - keep its data but release the stripe
+                synchronized (retired) {
+                    stripe.mergeInto(retired.rootMap);
+                }
+            }
+        }
+        retired.mergeInto(merged);
+
+        return Collections.unmodifiableMap(AMinMaxAvgAccumulator.toMinMaxAvgData(merged));
     }
 
     @Override public void onStartedHierarchicalMeasurement(String identifier) {
@@ -40,34 +77,50 @@ class DrillDownDataSink implements ADataSink {
     @Override
     public void onFinishedHierarchicalMeasurement(AHierarchicalDataRoot data) {
         if(isActive) {
-            synchronizedCollect(data.getRootNode());
+            final Stripe stripe = stripePerThread.get();
+            synchronized (stripe) {
+                recCollect(data.getRootNode(), stripe.rootMap);
+            }
         }
     }
 
     @Override public void shutdown() {
     }
 
-    private synchronized void synchronizedCollect(AHierarchicalData newData) { //TODO change this to a non-blocking implementation
-        recCollect(newData, rootMap);
+    private Stripe registerStripe() {
+        final Stripe result = new Stripe(Thread.currentThread());
+        stripes.add(result);
+        return result;
+    }
+
+    private void recCollect(AHierarchicalData data, Map<String, AMinMaxAvgAccumulator> parentMap) {
+        final AMinMaxAvgAccumulator acc = AMinMaxAvgAccumulator.getOrCreate(parentMap, data.getIdentifier(), data.isSerial());
+        acc.addDataPoint(data.isSerial(), data.getDurationNanos());
+
+        for(AHierarchicalData childData: data.getChildren()) {
+            recCollect(childData, acc.getChildren());
+        }
     }
 
-    private void recCollect(AHierarchicalData data, Map<String, AMinMaxAvgData> parentMap) {
-        final AMinMaxAvgData prev = parentMap.get(data.getIdentifier());
+    private static class Stripe {
+        private final WeakReference<Thread> owner;
+        private final Map<String, AMinMaxAvgAccumulator> rootMap = new HashMap<>();
 
-        final Map<String, AMinMaxAvgData> childMap;
+        Stripe(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
 
-        if(prev == null) {
-            final AMinMaxAvgData newData = new AMinMaxAvgData(data.isSerial(), data.getDurationNanos());
-            childMap = newData.getChildren();
-            parentMap.put(data.getIdentifier(), newData);
+        boolean isOwnerAlive() {
+            final Thread t = owner.get();
+            return t != null && t.isAlive();
         }
-        else {
-            childMap = prev.getChildren();
-            parentMap.put(data.getIdentifier(), prev.withDataPoint(data.isSerial(), data.getDurationNanos()));
+
+        synchronized void clear() {
+            rootMap.clear();
         }
 
-        for(AHierarchicalData childData: data.getChildren()) {
-            recCollect(childData, childMap);
+        synchronized void mergeInto(Map<String, AMinMaxAvgAccumulator> target) {
+            AMinMaxAvgAccumulator.mergeAll(target, rootMap);
         }
     }
 }
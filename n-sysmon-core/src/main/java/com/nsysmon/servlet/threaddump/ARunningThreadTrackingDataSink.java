@@ -43,6 +43,13 @@ class ARunningThreadTrackingDataSink implements ADataSink {
         startTimestamps.remove(Thread.currentThread().getName());
     }
 
+    /**
+     * This data sink identifies measurements by the thread they run on, so it must be called on that thread.
+     */
+    @Override public boolean requiresSynchronousDispatch() {
+        return true;
+    }
+
     public Map<String, Long> getStartTimestamps() {
         // return a stable snapshot
         return new HashMap<>(startTimestamps);
@@ -1,11 +1,10 @@
 package com.nsysmon.servlet.timedscalars;
 
-import com.ajjpj.afoundation.collection.mutable.ARingBuffer;
 import com.ajjpj.afoundation.io.AJsonSerHelperForNSysmon;
 import com.nsysmon.NSysMonApi;
 import com.nsysmon.config.log.NSysMonLogger;
 import com.nsysmon.config.presentation.APresentationPageDefinition;
-import com.nsysmon.data.AScalarDataPoint;
+import com.nsysmon.data.ATimedScalarSeries;
 import com.nsysmon.impl.RobustScalarMeasurerWrapper;
 import com.nsysmon.measure.scalar.AScalarMeasurer;
 import com.nsysmon.measure.scalar.ScalarMeasurerStatus;
@@ -15,14 +14,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URLDecoder;
 import java.time.Duration;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 
@@ -30,6 +25,12 @@ public class TimedScalarsPageDefinition implements APresentationPageDefinition,
     private volatile NSysMonApi sysMon;
     private static final NSysMonLogger LOG = NSysMonLogger.get(TimedScalarsPageDefinition.class);
 
+    /**
+     * Graphs are served from the finest tier of a scalar's history (raw samples or rollups) that covers the requested
+     *  range with at most this many entries.
+     */
+    static final int MAX_NUM_GRAPH_ENTRIES = 1000;
+
     @Override
     public String getId() {
         return "timedScalars";
@@ -88,7 +89,7 @@ public class TimedScalarsPageDefinition implements APresentationPageDefinition,
         json.startArray();
         for (String param : selectedEntries.split(",")) {
             String paramWithoutHtml = URLDecoder.decode(param, "UTF-8");
-            final Map<String, ARingBuffer<AScalarDataPoint>> scalars = sysMon.getTimedScalarMeasurements();
+            final Map<String, ATimedScalarSeries> scalars = sysMon.getTimedScalarMeasurements();
 
             for (String key : scalars.keySet()) {
                 if (key.equalsIgnoreCase(paramWithoutHtml)) {
@@ -97,7 +98,7 @@ public class TimedScalarsPageDefinition implements APresentationPageDefinition,
 
                     json.writeKey("values");
                     json.startArray();
-                    writeRingBufferIntoJson(json, scalars.get(key));
+                    writeSeriesIntoJson(json, scalars.get(key));
                     json.endArray();
                     json.endObject();
                 }
@@ -118,7 +119,7 @@ public class TimedScalarsPageDefinition implements APresentationPageDefinition,
         json.startArray();
         for (String param : selectedEntries.split(",")) {
             String paramWithoutHtml = URLDecoder.decode(param, "UTF-8");
-            final Map<String, ARingBuffer<AScalarDataPoint>> scalars = sysMon.getTimedScalarMeasurements();
+            final Map<String, ATimedScalarSeries> scalars = sysMon.getTimedScalarMeasurements();
 
             for (String key : scalars.keySet()) {
                 if (key.equalsIgnoreCase(paramWithoutHtml)) {
@@ -127,7 +128,7 @@ public class TimedScalarsPageDefinition implements APresentationPageDefinition,
 
                     json.writeKey("values");
                     json.startArray();
-                    writeRingBufferIntoJson(json, scalars.get(key), newerThan);
+                    writeSeriesIntoJson(json, scalars.get(key), newerThan);
                     json.endArray();
                     json.endObject();
                 }
@@ -193,7 +194,7 @@ public class TimedScalarsPageDefinition implements APresentationPageDefinition,
     }
 
     protected void serveData(final AJsonSerHelperForNSysmon json, List<String> params, NSysMonApi givenSysMon) throws IOException {
-        final Map<String, ARingBuffer<AScalarDataPoint>> scalars = givenSysMon.getTimedScalarMeasurements();
+        final Map<String, ATimedScalarSeries> scalars = givenSysMon.getTimedScalarMeasurements();
         json.startObject();
 
         json.writeKey("timedScalars");
@@ -222,59 +223,32 @@ public class TimedScalarsPageDefinition implements APresentationPageDefinition,
         serveData(json, params, givenSysMon);
     }
 
-    private void writeRingBufferIntoJson(final AJsonSerHelperForNSysmon json, final ARingBuffer buffer) throws IOException {
-        for (Object aBuffer : buffer) {
-            AScalarDataPoint scalarDataPoint = (AScalarDataPoint) aBuffer;
-            try {
-                json.startObject();
-
-                json.writeKey("x");
-                json.writeNumberLiteral(scalarDataPoint.getTimestamp(), 0);
-                json.writeKey("y");
-                json.writeNumberLiteral(scalarDataPoint.getValue(), scalarDataPoint.getNumFracDigits());
-
-                json.endObject();
-            } catch (IOException e) {
-                LOG.error(e);
-            }
-        }
+    private void writeSeriesIntoJson(final AJsonSerHelperForNSysmon json, final ATimedScalarSeries series) throws IOException {
+        writeSamplesIntoJson(json, series.samplesSince(Long.MIN_VALUE, MAX_NUM_GRAPH_ENTRIES));
     }
 
-    private TreeSet<AScalarDataPoint> filterByTimestamp(final ARingBuffer<AScalarDataPoint> buffer, Duration newerThan){
-        Set<AScalarDataPoint> tmpRc = new TreeSet<>(new AScalarDataPointTimestampComparator());
-        TreeSet<AScalarDataPoint> rc = new TreeSet<>(new AScalarDataPointTimestampComparator());
-
-        final LocalDateTime localDateTime = LocalDateTime.now();
-        for (AScalarDataPoint scalarDataPoint : buffer) {
-
-            long timeStamp = scalarDataPoint.getTimestamp();
-            long latestMillis = localDateTime
-                    .minus(newerThan)
-                    .toEpochSecond(ZoneOffset.systemDefault().getRules().getOffset(localDateTime))
-                    *1000;
-
-            if (latestMillis >= timeStamp) {
-                //entry too old
-                continue;
-            }
-            tmpRc.add(scalarDataPoint);
-        }
-        tmpRc.forEach(rc::add);
-        return rc;
+    private void writeSeriesIntoJson(final AJsonSerHelperForNSysmon json, final ATimedScalarSeries series, Duration newerThan) throws IOException {
+        writeSamplesIntoJson(json, series.samplesSince(System.currentTimeMillis() - newerThan.toMillis(), MAX_NUM_GRAPH_ENTRIES));
     }
 
-    private void writeRingBufferIntoJson(final AJsonSerHelperForNSysmon json, final ARingBuffer<AScalarDataPoint> buffer, Duration newerThan) throws IOException {
-
-        for (AScalarDataPoint scalarDataPoint : filterByTimestamp(buffer, newerThan)) {
+    private void writeSamplesIntoJson(final AJsonSerHelperForNSysmon json, final ATimedScalarSeries.Samples samples) throws IOException {
+        for (int i=0; i<samples.size(); i++) {
             try {
-                long timeStamp = scalarDataPoint.getTimestamp();
-
                 json.startObject();
 
                 json.writeKey("x");
-                json.writeNumberLiteral(timeStamp, 0);
+                json.writeNumberLiteral(samples.getTimestamp(i), 0);
                 json.writeKey("y");
-                json.writeNumberLiteral(scalarDataPoint.getValue(), scalarDataPoint.getNumFracDigits());
+                json.writeNumberLiteral(samples.getValue(i), samples.getNumFracDigits());
+
+                if (samples.getResolutionMillis() > 0) {
+                    json.writeKey("min");
+                    json.writeNumberLiteral(samples.getMin(i), samples.getNumFracDigits());
+                    json.writeKey("max");
+                    json.writeNumberLiteral(samples.getMax(i), samples.getNumFracDigits());
+                    json.writeKey("count");
+                    json.writeNumberLiteral(samples.getCount(i), 0);
+                }
 
                 json.endObject();
             } catch (IOException e) {
@@ -285,7 +259,7 @@ public class TimedScalarsPageDefinition implements APresentationPageDefinition,
 
     @Override
     public void getDataForExport(OutputStream os) throws IOException {
-        final Map<String, ARingBuffer<AScalarDataPoint>> scalars = sysMon.getTimedScalarMeasurements();
+        final Map<String, ATimedScalarSeries> scalars = sysMon.getTimedScalarMeasurements();
         List<String> params = new ArrayList<>();
         for (String key : scalars.keySet()) {
             params.add(key);
@@ -1,40 +1,194 @@
 package com.nsysmon.servlet.trace;
 
-import com.ajjpj.afoundation.collection.mutable.ARingBuffer;
 import com.nsysmon.data.AHierarchicalDataRoot;
 import com.nsysmon.datasink.ADataSink;
+import com.nsysmon.util.ASequencedRingBuffer;
+import com.nsysmon.util.AStreamingQuantile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 /**
+ * This data sink samples traces rather than keeping the most recent ones, so that a flood of identical fast requests
+ *  does not push out rare or slow ones:
+ *
+ * <ul>
+ *     <li>Traces that are slower than a configurable percentile of their root identifier's durations (tracked by a
+ *         streaming quantile estimate), and traces that were killed, are outliers. They are always kept, in a ring
+ *         buffer of their own.</li>
+ *     <li>All other traces are sampled into a small reservoir per root identifier, so that every endpoint keeps some
+ *         samples however rare it is. The number of traces a reservoir counts as 'seen' is capped, so that reservoirs
+ *         keep refreshing on long-running systems.</li>
+ *     <li>A global rate limit caps the number of samples that are stored in reservoirs per second. Outliers are not
+ *         rate limited, so that a flood of sampled fast traces can not crowd them out - their ring buffer bounds the
+ *         memory they use.</li>
+ * </ul>
+ *
+ * Memory is bounded: Root identifiers beyond the configured maximum share a single reservoir and quantile estimate.
+ *
  * @author arno
  */
 class ATraceCollectingDataSink implements ADataSink {
-    public boolean isStarted = true;
+    /**
+     * percentile estimates for fewer durations than this are too unreliable to decide whether a trace is an outlier
+     */
+    static final int MIN_DURATIONS_FOR_PERCENTILE = 100;
+    static final int RESERVOIR_REFRESH_FACTOR = 10;
+
+    public volatile boolean isStarted = true;
     private final ATraceFilter traceFilter;
-    private final ARingBuffer<AHierarchicalDataRoot> data;
 
-    ATraceCollectingDataSink(ATraceFilter traceFilter, int bufferSize) {
+    private final int reservoirSize;
+    private final int maxNumIdentifiers;
+    private final double percentile;
+
+    private final ASequencedRingBuffer<AHierarchicalDataRoot> outliers;
+    private final ConcurrentHashMap<String, IdentifierSamples> samplesByIdentifier = new ConcurrentHashMap<>();
+    private final IdentifierSamples overflowSamples;
+    private final RateLimiter rateLimiter;
+
+    ATraceCollectingDataSink(ATraceFilter traceFilter, int bufferSize, int reservoirSize, int maxNumIdentifiers, double percentile, int maxTracesPerSecond) {
         this.traceFilter = traceFilter;
-        this.data = new ARingBuffer<>(AHierarchicalDataRoot.class, bufferSize);
+        this.reservoirSize = reservoirSize;
+        this.maxNumIdentifiers = maxNumIdentifiers;
+        this.percentile = percentile;
+
+        this.outliers = new ASequencedRingBuffer<>(bufferSize);
+        this.overflowSamples = new IdentifierSamples(reservoirSize, percentile);
+        this.rateLimiter = new RateLimiter(maxTracesPerSecond);
     }
 
     @Override public void onStartedHierarchicalMeasurement(String identifier) {
     }
 
     @Override public void onFinishedHierarchicalMeasurement(AHierarchicalDataRoot trace) {
-        if(isStarted && traceFilter.shouldCollect(trace)) {
-            this.data.put(trace);
+        if(! isStarted || ! traceFilter.shouldCollect(trace)) {
+            return;
+        }
+
+        final IdentifierSamples samples = samplesFor(trace.getRootNode().getIdentifier());
+        final int reservoirIdx = samples.sample(trace);
+        if(reservoirIdx == IdentifierSamples.OUTLIER) {
+            outliers.put(trace);
+        }
+        else if(reservoirIdx != IdentifierSamples.DISCARD && rateLimiter.tryAcquire()) {
+            samples.store(reservoirIdx, trace);
+        }
+    }
+
+    private IdentifierSamples samplesFor(String identifier) {
+        final IdentifierSamples result = samplesByIdentifier.get(identifier);
+        if(result != null) {
+            return result;
+        }
+        if(samplesByIdentifier.size() >= maxNumIdentifiers) {
+            return overflowSamples;
         }
+        return samplesByIdentifier.computeIfAbsent(identifier, x -> new IdentifierSamples(reservoirSize, percentile));
     }
 
     @Override public void shutdown() throws Exception {
     }
 
     public void clear() {
-        data.clear();
+        outliers.clear();
+        samplesByIdentifier.clear();
+        overflowSamples.clear();
+    }
+
+    /**
+     * @return the outliers and the samples of all reservoirs, in no particular order
+     */
+    public List<AHierarchicalDataRoot> getData() {
+        final List<AHierarchicalDataRoot> result = new ArrayList<>(outliers.snapshot().getElements());
+        for(IdentifierSamples samples: samplesByIdentifier.values()) {
+            samples.addTo(result);
+        }
+        overflowSamples.addTo(result);
+        return result;
+    }
+
+    /**
+     * This class holds a reservoir and a duration percentile estimate. Its state is guarded by 'this'.
+     */
+    static class IdentifierSamples {
+        static final int OUTLIER = -1;
+        static final int DISCARD = -2;
+
+        private final AHierarchicalDataRoot[] reservoir;
+        private final AStreamingQuantile durations;
+        private long numSeen = 0;
+
+        IdentifierSamples(int reservoirSize, double percentile) {
+            this.reservoir = new AHierarchicalDataRoot[reservoirSize];
+            this.durations = new AStreamingQuantile(percentile);
+        }
+
+        /**
+         * @return the reservoir index the trace should be stored at, {@link #OUTLIER} or {@link #DISCARD}
+         */
+        synchronized int sample(AHierarchicalDataRoot trace) {
+            final long durationNanos = trace.getRootNode().getDurationNanos();
+            final boolean isSlow = durations.getCount() >= MIN_DURATIONS_FOR_PERCENTILE && durationNanos > durations.get();
+            durations.add(durationNanos);
+
+            if(isSlow || trace.isKilled()) {
+                return OUTLIER;
+            }
+
+            numSeen = Math.min(numSeen + 1, (long) reservoir.length * RESERVOIR_REFRESH_FACTOR);
+            final long idx = numSeen <= reservoir.length ? numSeen-1 : ThreadLocalRandom.current().nextLong(numSeen);
+            return idx < reservoir.length ? (int) idx : DISCARD;
+        }
+
+        synchronized void store(int idx, AHierarchicalDataRoot trace) {
+            reservoir[idx] = trace;
+        }
+
+        synchronized void addTo(List<AHierarchicalDataRoot> result) {
+            for(AHierarchicalDataRoot trace: reservoir) {
+                if(trace != null) {
+                    result.add(trace);
+                }
+            }
+        }
+
+        synchronized void clear() {
+            for(int i=0; i<reservoir.length; i++) {
+                reservoir[i] = null;
+            }
+            durations.clear();
+            numSeen = 0;
+        }
     }
 
-    public Iterable<AHierarchicalDataRoot> getData() {
-        return data;
+    /**
+     * a token bucket that allows bursts of up to one second's worth of traces
+     */
+    static class RateLimiter {
+        private final int maxPerSecond;
+
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+
+        RateLimiter(int maxPerSecond) {
+            this.maxPerSecond = maxPerSecond;
+            this.tokens = maxPerSecond;
+        }
+
+        synchronized boolean tryAcquire() {
+            final long now = System.nanoTime();
+            tokens = Math.min(maxPerSecond, tokens + (now - lastRefillNanos) * maxPerSecond / 1e9);
+            lastRefillNanos = now;
+
+            if(tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
     }
 }
@@ -25,6 +25,11 @@ import java.util.TreeSet;
  * @author arno
  */
 public class ATracePageDefinition extends AAbstractNsysmonPerformancePageDef implements DataFileGeneratorSupporter {
+    public static final int DEFAULT_RESERVOIR_SIZE = 3;
+    public static final int DEFAULT_MAX_NUM_IDENTIFIERS = 50;
+    public static final double DEFAULT_OUTLIER_PERCENTILE = 0.99;
+    public static final int DEFAULT_MAX_TRACES_PER_SECOND = 50;
+
     private final ATraceFilter filter;
     private final ATraceCollectingDataSink collector;
 
@@ -37,8 +42,20 @@ public class ATracePageDefinition extends AAbstractNsysmonPerformancePageDef imp
 
 
     public ATracePageDefinition(ATraceFilter traceFilter, int bufferSize) {
+        this(traceFilter, bufferSize, DEFAULT_RESERVOIR_SIZE, DEFAULT_MAX_NUM_IDENTIFIERS, DEFAULT_OUTLIER_PERCENTILE, DEFAULT_MAX_TRACES_PER_SECOND);
+    }
+
+    /**
+     * @param bufferSize the number of outliers (i.e. slow or killed traces) that are kept
+     * @param reservoirSize the number of sampled traces that are kept per root identifier
+     * @param maxNumIdentifiers the number of root identifiers with reservoirs of their own; all others share one
+     * @param outlierPercentile traces slower than this percentile of their root identifier's durations are outliers, e.g. 0.99
+     * @param maxTracesPerSecond the maximum number of sampled traces that are retained per second - outliers are
+     *                           always retained
+     */
+    public ATracePageDefinition(ATraceFilter traceFilter, int bufferSize, int reservoirSize, int maxNumIdentifiers, double outlierPercentile, int maxTracesPerSecond) {
         this.filter = traceFilter;
-        this.collector = new ATraceCollectingDataSink(traceFilter, bufferSize);
+        this.collector = new ATraceCollectingDataSink(traceFilter, bufferSize, reservoirSize, maxNumIdentifiers, outlierPercentile, maxTracesPerSecond);
     }
 
     @Override public void init(NSysMonApi sysMon) {
@@ -78,40 +95,28 @@ public class ATracePageDefinition extends AAbstractNsysmonPerformancePageDef imp
         return colDefs;
     }
 
-    @Override protected List<TreeNode> getData() {
-        final List<TreeNode> result = new ArrayList<>();
+    @Override protected void writeData(TreeNodeWriter out) throws IOException {
+        final List<AHierarchicalDataRoot> roots = collector.getData();
+        Collections.sort(roots, (o1, o2) -> Long.compare(o2.getRootNode().getStartTimeMillis(), o1.getRootNode().getStartTimeMillis()));
 
-        for(AHierarchicalDataRoot root: collector.getData()) {
-            result.add(asTreeNode(root.getRootNode(), root.getUuid().toString(), System.currentTimeMillis(), root.getRootNode().getDurationNanos(), 0, root.isKilled()));
+        final long now = System.currentTimeMillis();
+        for(AHierarchicalDataRoot root: roots) {
+            writeNode(out, root.getRootNode(), root.getUuid().toString(), now, root.getRootNode().getDurationNanos(), 0, root.isKilled());
         }
-
-        Collections.sort(result, (o1, o2) -> (int) (o2.colDataRaw[3] - o1.colDataRaw[3]));
-
-        return result;
     }
 
-    private TreeNode asTreeNode(AHierarchicalData node, String id, long now, long parentNanos, int level, boolean wasKilled) {
-        final List<TreeNode> children = new ArrayList<>();
+    private void writeNode(TreeNodeWriter out, AHierarchicalData node, String id, long now, long parentNanos, int level, boolean wasKilled) throws IOException {
         long selfNanos = node.getDurationNanos();
-
-        final long childNow = level > 0 ? now : node.getStartTimeMillis();
-
-        int i=0;
         for(AHierarchicalData child: node.getChildren()) {
             if(child.isSerial()) {
                 selfNanos -= child.getDurationNanos();
             }
-            children.add(asTreeNode(child, String.valueOf(i), childNow, node.getDurationNanos(), level+1, wasKilled));
-            i++;
         }
 
         if(selfNanos < 0) selfNanos = 0;
         if(selfNanos > node.getDurationNanos()) selfNanos = node.getDurationNanos();
 
-        if(selfNanos != 0 && children.size() > 0) {
-            children.add(0, new TreeNode("<self>", true, new long[]{selfNanos * 1000 / node.getDurationNanos(), selfNanos / 1000, selfNanos / 1000, node.getStartTimeMillis() - childNow}, Collections.emptyList()));
-        }
-
+        final long childNow = level > 0 ? now : node.getStartTimeMillis();
 
         final long[] colDataRaw = new long[] {
                 node.getDurationNanos() * 100 * 10 / (parentNanos == 0 ? 1 : parentNanos), // 100 for '%', 10 for 1 frac digit
@@ -120,7 +125,19 @@ public class ATracePageDefinition extends AAbstractNsysmonPerformancePageDef imp
                 node.getStartTimeMillis() - now
         };
 
-        return new TreeNode(id, node.getIdentifier(), tooltipFor(node), node.isSerial(), colDataRaw, children, wasKilled);
+        if(out.startNode(id, node.getIdentifier(), tooltipFor(node), node.isSerial(), colDataRaw, !node.getChildren().isEmpty(), wasKilled)) {
+            if(selfNanos != 0) {
+                out.startNode("<self>", true, new long[]{selfNanos * 1000 / node.getDurationNanos(), selfNanos / 1000, selfNanos / 1000, node.getStartTimeMillis() - childNow}, false);
+                out.endNode();
+            }
+
+            int i=0;
+            for(AHierarchicalData child: node.getChildren()) {
+                writeNode(out, child, String.valueOf(i), childNow, node.getDurationNanos(), level+1, wasKilled);
+                i++;
+            }
+        }
+        out.endNode();
     }
 
     private List<List<String>> tooltipFor(AHierarchicalData node) {
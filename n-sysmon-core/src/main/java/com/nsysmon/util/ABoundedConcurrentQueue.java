@@ -0,0 +1,110 @@
+package com.nsysmon.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * This is a bounded, lock-free queue backed by a ring buffer. Every slot carries a sequence number that tells producers
+ *  and consumers whether the slot is free for writing or ready for reading, so that <code>offer()</code> and
+ *  <code>poll()</code> each need only a single CAS in the uncontended case.<p>
+ *
+ * Any number of threads may call both <code>offer()</code> and <code>poll()</code> concurrently. This allows producers
+ *  to make room by polling the oldest element when the queue is full.<p>
+ *
+ * The capacity is rounded up to the next power of two, and it is at least two - the sequence numbers can not
+ *  distinguish a full slot from a free one with a single slot.
+ *
+ * @author arno
+ */
+public class ABoundedConcurrentQueue<T> {
+    private final int mask;
+    private final AtomicReferenceArray<T> elements;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong(0);
+    private final AtomicLong head = new AtomicLong(0);
+
+    public ABoundedConcurrentQueue(int minCapacity) {
+        if(minCapacity < 1 || minCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30: " + minCapacity);
+        }
+
+        final int capacity = Math.max(2, Integer.highestOneBit(minCapacity) == minCapacity ? minCapacity : Integer.highestOneBit(minCapacity) << 1);
+        this.mask = capacity - 1;
+        this.elements = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for(int i=0; i<capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return <code>false</code> iff the queue is full
+     */
+    public boolean offer(T element) {
+        long pos = tail.get();
+        while(true) {
+            final int idx = (int) (pos & mask);
+            final long delta = sequences.get(idx) - pos;
+            if(delta == 0) {
+                if(tail.compareAndSet(pos, pos+1)) {
+                    elements.lazySet(idx, element);
+                    sequences.set(idx, pos+1);
+                    return true;
+                }
+                pos = tail.get();
+            }
+            else if(delta < 0) {
+                return false;
+            }
+            else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * @return the oldest element, or <code>null</code> if the queue is empty
+     */
+    public T poll() {
+        long pos = head.get();
+        while(true) {
+            final int idx = (int) (pos & mask);
+            final long delta = sequences.get(idx) - (pos+1);
+            if(delta == 0) {
+                if(head.compareAndSet(pos, pos+1)) {
+                    final T result = elements.get(idx);
+                    elements.lazySet(idx, null);
+                    sequences.set(idx, pos + mask + 1);
+                    return result;
+                }
+                pos = head.get();
+            }
+            else if(delta < 0) {
+                return null;
+            }
+            else {
+                pos = head.get();
+            }
+        }
+    }
+
+    /**
+     * @return the number of elements in the queue. This is a snapshot that may be outdated by the time it is returned.
+     */
+    public int size() {
+        final long h = head.get();
+        final long t = tail.get();
+        return (int) Math.max(0, Math.min(t - h, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
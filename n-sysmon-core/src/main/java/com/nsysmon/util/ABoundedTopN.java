@@ -0,0 +1,159 @@
+package com.nsysmon.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * This class collects the <code>capacity</code> elements with the highest scores, e.g. the longest running calls. It
+ *  is intended for high-frequency offers of which only very few are admitted.<p>
+ *
+ * Once the collection is full, a volatile admission threshold holds the lowest score in it, so that the vast majority
+ *  of offers is rejected with a single comparison, without locking or allocation. Admitted elements go into a binary
+ *  min-heap under a lock, replacing the element with the lowest score.<p>
+ *
+ * Elements with equal scores are all kept (as long as there is room), and an element must have a strictly higher score
+ *  than the lowest one to replace it, i.e. among equal scores the older elements win.
+ *
+ * @author arno
+ */
+public class ABoundedTopN<T> {
+    private final int capacity;
+
+    /**
+     * the minimum score of admitted elements is <em>greater</em> than this. It is the lowest score in the heap if the heap
+     *  is full, and Long.MIN_VALUE otherwise.
+     */
+    private volatile long threshold = Long.MIN_VALUE;
+
+    /**
+     * These fields are guarded by 'this'. They form a min-heap ordered by score.
+     */
+    private final long[] scores;
+    private final Object[] elements;
+    private int size = 0;
+
+    public ABoundedTopN(int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.scores = new long[capacity];
+        this.elements = new Object[capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * This is a cheap check that allows callers to avoid the effort of creating an element if it would be rejected anyway.
+     */
+    public boolean wouldAdmit(long score) {
+        return score > threshold;
+    }
+
+    /**
+     * @return true if the element was admitted
+     */
+    public boolean offer(long score, T element) {
+        if(score <= threshold) {
+            return false;
+        }
+
+        synchronized (this) {
+            if(size < capacity) {
+                scores[size] = score;
+                elements[size] = element;
+                siftUp(size);
+                size += 1;
+            }
+            else if(score > scores[0]) {
+                scores[0] = score;
+                elements[0] = element;
+                siftDown(0);
+            }
+            else {
+                return false;
+            }
+
+            if(size == capacity) {
+                threshold = scores[0];
+            }
+            return true;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(elements, null);
+        size = 0;
+        threshold = Long.MIN_VALUE;
+    }
+
+    /**
+     * @return a copy of the elements, highest score first
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getDescending() {
+        final long[] scoresCopy;
+        final Object[] elementsCopy;
+        synchronized (this) {
+            scoresCopy = Arrays.copyOf(scores, size);
+            elementsCopy = Arrays.copyOf(elements, size);
+        }
+
+        final Integer[] indices = new Integer[scoresCopy.length];
+        for(int i=0; i<indices.length; i++) {
+            indices[i] = i;
+        }
+        Arrays.sort(indices, (i1, i2) -> Long.compare(scoresCopy[i2], scoresCopy[i1]));
+
+        final List<T> result = new ArrayList<>(indices.length);
+        for(Integer idx: indices) {
+            result.add((T) elementsCopy[idx]);
+        }
+        return result;
+    }
+
+    private void siftUp(int idx) {
+        while(idx > 0) {
+            final int parent = (idx-1) / 2;
+            if(scores[parent] <= scores[idx]) {
+                return;
+            }
+            swap(idx, parent);
+            idx = parent;
+        }
+    }
+
+    private void siftDown(int idx) {
+        while(true) {
+            final int left = 2*idx + 1;
+            if(left >= size) {
+                return;
+            }
+            final int right = left + 1;
+            final int smallest = (right < size && scores[right] < scores[left]) ? right : left;
+            if(scores[idx] <= scores[smallest]) {
+                return;
+            }
+            swap(idx, smallest);
+            idx = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        final long score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+
+        final Object element = elements[i];
+        elements[i] = elements[j];
+        elements[j] = element;
+    }
+}
@@ -0,0 +1,159 @@
+package com.nsysmon.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * This is a histogram of non-negative values (typically durations in nanoseconds) with log-linear buckets, similar to
+ *  an HdrHistogram: Every power of two is split into {@link #NUM_SUB_BUCKETS} linear buckets, so the relative error of
+ *  a percentile is at most 1/{@link #NUM_SUB_BUCKETS} over the entire range of <code>long</code> values, and values
+ *  below {@link #NUM_SUB_BUCKETS} are counted exactly.<p>
+ *
+ * Recording and merging are lock-free, so any number of threads can record into a histogram and merge it into others
+ *  concurrently. The buckets of a power of two are allocated on first use, so a histogram's memory is bounded by the
+ *  range of its values rather than by the number of recorded values - durations typically span a handful of powers of
+ *  two.
+ *
+ * @author arno
+ */
+public class ALatencyHistogram {
+    static final int SUB_BUCKET_BITS = 4;
+    public static final int NUM_SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * group 0 holds values below NUM_SUB_BUCKETS, group g &gt; 0 holds values with their highest bit at position
+     *  g + SUB_BUCKET_BITS - 1
+     */
+    private static final int NUM_GROUPS = 64 - SUB_BUCKET_BITS;
+
+    private final AtomicReferenceArray<AtomicLongArray> groups = new AtomicReferenceArray<>(NUM_GROUPS);
+
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    public void record(long value, long count) {
+        if(value < 0) {
+            throw new IllegalArgumentException("negative value: " + value);
+        }
+        final int group = groupOf(value);
+        group(group).addAndGet(subBucketOf(value, group), count);
+    }
+
+    /**
+     * Adds all of another histogram's counts to this histogram. The other histogram is left unchanged.
+     */
+    public void mergeFrom(ALatencyHistogram other) {
+        for(int g=0; g<NUM_GROUPS; g++) {
+            final AtomicLongArray otherGroup = other.groups.get(g);
+            if(otherGroup == null) {
+                continue;
+            }
+            for(int i=0; i<NUM_SUB_BUCKETS; i++) {
+                final long count = otherGroup.get(i);
+                if(count != 0) {
+                    group(g).addAndGet(i, count);
+                }
+            }
+        }
+    }
+
+    public long getCount() {
+        long result = 0;
+        for(int g=0; g<NUM_GROUPS; g++) {
+            final AtomicLongArray group = groups.get(g);
+            if(group != null) {
+                for(int i=0; i<NUM_SUB_BUCKETS; i++) {
+                    result += group.get(i);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param percentile between 0 and 1, e.g. 0.99 for the 99th percentile
+     * @return the highest value that is in the same bucket as the value at the given percentile, or 0 if the histogram
+     *  is empty. Concurrent recording may or may not be reflected in the result.
+     */
+    public long getValueAtPercentile(double percentile) {
+        return getValuesAtPercentiles(percentile)[0];
+    }
+
+    /**
+     * This is more efficient than calling {@link #getValueAtPercentile(double)} repeatedly.
+     *
+     * @param percentiles in ascending order
+     */
+    public long[] getValuesAtPercentiles(double... percentiles) {
+        final long[] result = new long[percentiles.length];
+        final long total = getCount();
+        if(total == 0) {
+            return result;
+        }
+
+        int idx = 0;
+        long cumulative = 0;
+        for(int g=0; g<NUM_GROUPS && idx < percentiles.length; g++) {
+            final AtomicLongArray group = groups.get(g);
+            if(group == null) {
+                continue;
+            }
+            for(int i=0; i<NUM_SUB_BUCKETS && idx < percentiles.length; i++) {
+                cumulative += group.get(i);
+                while(idx < percentiles.length && cumulative >= rankOf(percentiles[idx], total)) {
+                    result[idx] = highestValueInBucket(g, i);
+                    idx += 1;
+                }
+            }
+        }
+
+        // values recorded concurrently after the total was read
+        while(idx < percentiles.length) {
+            result[idx] = idx > 0 ? result[idx-1] : 0;
+            idx += 1;
+        }
+        return result;
+    }
+
+    private static long rankOf(double percentile, long total) {
+        return Math.max(1, (long) Math.ceil(percentile * total));
+    }
+
+    public void clear() {
+        for(int g=0; g<NUM_GROUPS; g++) {
+            groups.set(g, null);
+        }
+    }
+
+    private AtomicLongArray group(int g) {
+        final AtomicLongArray result = groups.get(g);
+        if(result != null) {
+            return result;
+        }
+        groups.compareAndSet(g, null, new AtomicLongArray(NUM_SUB_BUCKETS));
+        return groups.get(g);
+    }
+
+    static int groupOf(long value) {
+        final int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        return highestBit < SUB_BUCKET_BITS ? 0 : highestBit - SUB_BUCKET_BITS + 1;
+    }
+
+    static int subBucketOf(long value, int group) {
+        if(group == 0) {
+            return (int) value;
+        }
+        // the bits below the highest bit, i.e. the offset into the power of two
+        return (int) (value >>> (group - 1)) - NUM_SUB_BUCKETS;
+    }
+
+    static long highestValueInBucket(int group, int subBucket) {
+        if(group == 0) {
+            return subBucket;
+        }
+        final long lowest = (long) (NUM_SUB_BUCKETS + subBucket) << (group - 1);
+        return lowest + (1L << (group - 1)) - 1;
+    }
+}
@@ -0,0 +1,189 @@
+package com.nsysmon.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * This is a ring buffer that keeps the most recent <code>capacity</code> elements, with any number of concurrent
+ *  writers and readers and without locking.<p>
+ *
+ * Every element is assigned a unique, ascending sequence number when it is put into the buffer. <code>put()</code>
+ *  claims the sequence number with a single atomic increment and publishes an immutable (sequence, element) pair to
+ *  the slot for that sequence number, so writers never wait for each other in the common case. They only retry if two
+ *  writers race for the same slot, i.e. if the buffer wrapped around while one of them was between claiming and
+ *  publishing, and then the writer with the older sequence number gives up.<p>
+ *
+ * Readers get a consistent snapshot: a slot is included only if it holds exactly the sequence number the reader expects
+ *  there. Slots that were overwritten during the read are skipped, and a snapshot ends before the first slot that was
+ *  claimed but not yet published, so readers never see torn or duplicate elements.<p>
+ *
+ * {@link #since(long)} allows callers to poll incrementally, fetching only elements that were added since a previous
+ *  snapshot.
+ *
+ * @author arno
+ */
+public class ASequencedRingBuffer<T> implements Iterable<T> {
+    private final int capacity;
+    private final AtomicReferenceArray<Slot<T>> slots;
+    private final AtomicLong nextSequence = new AtomicLong(0);
+
+    /**
+     * elements with a sequence number below this were cleared
+     */
+    private volatile long clearedBefore = 0;
+
+    public ASequencedRingBuffer(int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the sequence number that was assigned to the element
+     */
+    public long put(T element) {
+        final long sequence = nextSequence.getAndIncrement();
+        final Slot<T> slot = new Slot<>(sequence, element);
+        final int idx = indexOf(sequence);
+
+        while(true) {
+            final Slot<T> prev = slots.get(idx);
+            if(prev != null && prev.sequence > sequence) {
+                // a newer element overtook this one, which is therefore already evicted
+                return sequence;
+            }
+            if(slots.compareAndSet(idx, prev, slot)) {
+                return sequence;
+            }
+        }
+    }
+
+    /**
+     * removes all elements that were put into the buffer before this call. Sequence numbers are not reset, so that
+     *  incremental readers keep working.
+     */
+    public void clear() {
+        final long sequence = nextSequence.get();
+        clearedBefore = sequence;
+
+        for(int i=0; i<capacity; i++) {
+            final Slot<T> prev = slots.get(i);
+            if(prev != null && prev.sequence < sequence) {
+                // a concurrently published newer element is left in place
+                slots.compareAndSet(i, prev, null);
+            }
+        }
+    }
+
+    /**
+     * @return a snapshot of all buffered elements, oldest first
+     */
+    public Snapshot<T> snapshot() {
+        return since(0);
+    }
+
+    /**
+     * @return a snapshot of all buffered elements with a sequence number of at least <code>sequence</code>, oldest first.
+     *  Passing in a previous snapshot's {@link Snapshot#getNextSequence()} returns only the elements that were added
+     *  after that snapshot was taken.
+     */
+    public Snapshot<T> since(long sequence) {
+        final long to = nextSequence.get();
+        final long first = Math.max(Math.max(0, to - capacity), clearedBefore);
+        final long from = Math.max(sequence, first);
+
+        final List<T> elements = new ArrayList<>((int) Math.max(0, to - from));
+        final long[] sequences = new long[(int) Math.max(0, to - from)];
+        for(long s=from; s<to; s++) {
+            final Slot<T> slot = slots.get(indexOf(s));
+            if(slot == null || slot.sequence < s) {
+                // claimed but not yet published: the snapshot ends here so that an incremental reader does not miss it
+                return new Snapshot<>(first, s, elements, sequences);
+            }
+            if(slot.sequence == s) {
+                sequences[elements.size()] = s;
+                elements.add(slot.element);
+            }
+        }
+        return new Snapshot<>(first, to, elements, sequences);
+    }
+
+    @Override public Iterator<T> iterator() {
+        return snapshot().iterator();
+    }
+
+    private int indexOf(long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    private static class Slot<T> {
+        final long sequence;
+        final T element;
+
+        Slot(long sequence, T element) {
+            this.sequence = sequence;
+            this.element = element;
+        }
+    }
+
+    public static class Snapshot<T> implements Iterable<T> {
+        private final long firstSequence;
+        private final long nextSequence;
+        private final List<T> elements;
+        private final long[] sequences;
+
+        Snapshot(long firstSequence, long nextSequence, List<T> elements, long[] sequences) {
+            this.firstSequence = firstSequence;
+            this.nextSequence = nextSequence;
+            this.elements = Collections.unmodifiableList(elements);
+            this.sequences = sequences;
+        }
+
+        /**
+         * @return the lowest sequence number that was still buffered when the snapshot was taken. Elements with lower
+         *  sequence numbers that a reader got from previous snapshots are evicted (or cleared) from the buffer.
+         */
+        public long getFirstSequence() {
+            return firstSequence;
+        }
+
+        /**
+         * @return the sequence number of the next element put into the buffer after this snapshot was taken
+         */
+        public long getNextSequence() {
+            return nextSequence;
+        }
+
+        /**
+         * @return the snapshot's elements, oldest first
+         */
+        public List<T> getElements() {
+            return elements;
+        }
+
+        /**
+         * @return the sequence number of the snapshot's <code>idx</code>th element
+         */
+        public long getSequence(int idx) {
+            if(idx < 0 || idx >= elements.size()) {
+                throw new IndexOutOfBoundsException(String.valueOf(idx));
+            }
+            return sequences[idx];
+        }
+
+        @Override public Iterator<T> iterator() {
+            return elements.iterator();
+        }
+    }
+}
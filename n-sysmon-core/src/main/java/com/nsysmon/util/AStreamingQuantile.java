@@ -0,0 +1,124 @@
+package com.nsysmon.util;
+
+import java.util.Arrays;
+
+
+/**
+ * This class estimates a quantile (e.g. the 99th percentile) of a stream of values in constant memory, using the P²
+ *  algorithm by Jain and Chlamtac: It keeps five markers at the minimum, the maximum, the quantile and halfway to it
+ *  on either side, and adjusts their heights with a piecewise-parabolic approximation as values come in.<p>
+ *
+ * This class is not thread safe.
+ *
+ * @author arno
+ */
+public class AStreamingQuantile {
+    private final double quantile;
+
+    private long count = 0;
+    private final double[] heights = new double[5];
+    private final double[] positions = new double[5];
+    private final double[] desiredPositions = new double[5];
+    private final double[] increments;
+
+    public AStreamingQuantile(double quantile) {
+        if(quantile <= 0 || quantile >= 1) {
+            throw new IllegalArgumentException("quantile must be between 0 and 1: " + quantile);
+        }
+        this.quantile = quantile;
+        this.increments = new double[] {0, quantile/2, quantile, (1+quantile)/2, 1};
+    }
+
+    public double getQuantile() {
+        return quantile;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void add(double value) {
+        if(count < 5) {
+            heights[(int) count] = value;
+            count += 1;
+            if(count == 5) {
+                Arrays.sort(heights);
+                for(int i=0; i<5; i++) {
+                    positions[i] = i+1;
+                }
+                desiredPositions[0] = 1;
+                desiredPositions[1] = 1 + 2*quantile;
+                desiredPositions[2] = 1 + 4*quantile;
+                desiredPositions[3] = 3 + 2*quantile;
+                desiredPositions[4] = 5;
+            }
+            return;
+        }
+        count += 1;
+
+        final int cell;
+        if(value < heights[0]) {
+            heights[0] = value;
+            cell = 0;
+        }
+        else if(value >= heights[4]) {
+            heights[4] = value;
+            cell = 3;
+        }
+        else {
+            int i = 1;
+            while(value >= heights[i]) {
+                i += 1;
+            }
+            cell = i-1;
+        }
+
+        for(int i=cell+1; i<5; i++) {
+            positions[i] += 1;
+        }
+        for(int i=0; i<5; i++) {
+            desiredPositions[i] += increments[i];
+        }
+
+        for(int i=1; i<4; i++) {
+            final double d = desiredPositions[i] - positions[i];
+            if((d >= 1 && positions[i+1] - positions[i] > 1) || (d <= -1 && positions[i-1] - positions[i] < -1)) {
+                final int sign = d > 0 ? 1 : -1;
+                final double parabolic = parabolic(i, sign);
+                if(heights[i-1] < parabolic && parabolic < heights[i+1]) {
+                    heights[i] = parabolic;
+                }
+                else {
+                    heights[i] += sign * (heights[i+sign] - heights[i]) / (positions[i+sign] - positions[i]);
+                }
+                positions[i] += sign;
+            }
+        }
+    }
+
+    private double parabolic(int i, int sign) {
+        return heights[i] + sign / (positions[i+1] - positions[i-1]) * (
+                (positions[i] - positions[i-1] + sign) * (heights[i+1] - heights[i]) / (positions[i+1] - positions[i]) +
+                (positions[i+1] - positions[i] - sign) * (heights[i] - heights[i-1]) / (positions[i] - positions[i-1]));
+    }
+
+    /**
+     * @return the estimated quantile, or <code>NaN</code> if no value was added yet. The estimate is exact for fewer than
+     *  five values.
+     */
+    public double get() {
+        if(count == 0) {
+            return Double.NaN;
+        }
+        if(count < 5) {
+            final double[] sorted = Arrays.copyOf(heights, (int) count);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(count-1, (long) Math.ceil(quantile * count) - 1)];
+        }
+        return heights[2];
+    }
+
+    public void clear() {
+        count = 0;
+    }
+}
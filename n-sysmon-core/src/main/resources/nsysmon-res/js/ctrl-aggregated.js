@@ -43,13 +43,19 @@ angular.module('NSysMonApp').controller('CtrlAggregated', function($scope, $log,
             $scope.nodeSearchText = tempFilterText;
             //collapse all nodes when search is active
             $scope.expansionModel = [];
-            renderTree();
+            renderTreeForSearch();
         }, searchDelayInMs); // delay
     });
     /* Delayed Search - End */
 
     var nodesByFqn = {};
 
+    // the column definitions in the order the server sent them, which is the order of every node's 'data'
+    var serverColumnDefs = [];
+
+    // number of tree levels that are loaded initially, deeper levels are loaded when a node is expanded
+    var LAZY_LOADING_DEPTH = 3;
+
     $scope.$watch('hideTitleRows', renderTree);
     $scope.$watch('showDataTooltips', renderTree);
     $scope.$watch('hideSearchNonMatchingNodes', renderTree);
@@ -60,7 +66,8 @@ angular.module('NSysMonApp').controller('CtrlAggregated', function($scope, $log,
             $scope.data = angular.toJson(data);
         }
         $scope.isStarted = data.isStarted;
-        $scope.columnDefs = data.columnDefs.reverse();
+        serverColumnDefs = data.columnDefs;
+        $scope.columnDefs = data.columnDefs.slice().reverse();
         $scope.traces = data.traces;
         $scope.pickedTraces = $scope.traces; //TODO keep selection on 'refresh'
 
@@ -84,9 +91,9 @@ angular.module('NSysMonApp').controller('CtrlAggregated', function($scope, $log,
             }
         }
 
-        renderTree();
         // unblock GUI after process
         blockGui(false);
+        renderTreeForSearch();
     }
 
     // TODO : Analyse this why it computes so long. Firefox causes an Script error.
@@ -105,7 +112,61 @@ angular.module('NSysMonApp').controller('CtrlAggregated', function($scope, $log,
     function sendCommand(cmd) {
         // block gui for long calls
         blockGui(true);
-        Rest.call(cmd, initFromResponse);
+        Rest.call(cmd + '/' + LAZY_LOADING_DEPTH, initFromResponse);
+    }
+
+    // URL encoding with '~' instead of '%' so that the node ID is a single path segment, see AAbstractNsysmonPerformancePageDef
+    function encodeNodeId(fqn) {
+        return encodeURIComponent(fqn).replace(/~/g, '%7E').replace(/%/g, '~');
+    }
+
+    // an empty depth loads the entire subtree
+    function loadChildren(node, depth, onLoaded, onError) {
+        Rest.call('getChildren/' + encodeNodeId(node.fqn) + '/' + depth, function(data) {
+            node.children = data.children;
+            initTraceNodes(node.children, node.level+1, node.fqn);
+            onLoaded();
+        }, onError);
+    }
+
+    // operations on the entire tree (expanding all nodes, searching, exporting) first load all subtrees that were
+    //  not loaded yet
+    function loadAllChildren(nodes, onLoaded) {
+        var incomplete = [];
+        function collectIncomplete(nodes) {
+            angular.forEach(nodes, function(node) {
+                if(node.hasChildren && !node.children) {
+                    incomplete.push(node);
+                }
+                else {
+                    collectIncomplete(node.children);
+                }
+            });
+        }
+        collectIncomplete(nodes);
+
+        if(incomplete.length === 0) {
+            onLoaded();
+            return;
+        }
+
+        blockGui(true);
+        var numPending = incomplete.length;
+        angular.forEach(incomplete, function(node) {
+            loadChildren(node, '', function() {
+                numPending -= 1;
+                if(numPending === 0) {
+                    blockGui(false);
+                    onLoaded();
+                }
+            }, function() {
+                blockGui(false);
+            });
+        });
+    }
+
+    function hasChildren(node) {
+        return (node.children && node.children.length) || node.hasChildren;
     }
 
     $scope.refresh = function() {
@@ -186,8 +247,10 @@ angular.module('NSysMonApp').controller('CtrlAggregated', function($scope, $log,
             }
         }
 
-        setExpandedMainLevel($scope.traces);
-        renderTree();
+        loadAllChildren($scope.traces, function() {
+            setExpandedMainLevel($scope.traces);
+            renderTree();
+        });
     };
 
     $scope.expandAll = function() {
@@ -200,8 +263,10 @@ angular.module('NSysMonApp').controller('CtrlAggregated', function($scope, $log,
             }
         }
 
-        setExpanded($scope.traces);
-        renderTree();
+        loadAllChildren($scope.traces, function() {
+            setExpanded($scope.traces);
+            renderTree();
+        });
     };
 
     $scope.collapseAll = function() {
@@ -226,7 +291,7 @@ angular.module('NSysMonApp').controller('CtrlAggregated', function($scope, $log,
             node = nodesByFqn[node];
         }
 
-        if(node.children && node.children.length) {
+        if(hasChildren(node)) {
             return $scope.isExpanded(node) ? 'node-icon-expanded' : 'node-icon-collapsed';
         }
         return 'node-icon-empty';
@@ -268,6 +333,13 @@ angular.module('NSysMonApp').controller('CtrlAggregated', function($scope, $log,
     };
 
     function toggleTreeNode(dataRow, node) {
+        if(node.hasChildren && !node.children) {
+            loadChildren(node, LAZY_LOADING_DEPTH, function() {
+                toggleTreeNode(dataRow, node);
+            });
+            return;
+        }
+
         var childrenDiv = dataRow.next();
 
         if(childrenDiv.hasClass('unrendered')) {
@@ -323,8 +395,15 @@ angular.module('NSysMonApp').controller('CtrlAggregated', function($scope, $log,
     };
 
     $scope.doExportVisibleAsJSON = function() {
-        var blob = new Blob([$scope.data], {type: "application/json;charset=utf-8"});
-        saveAs(blob, "nsysmon-export-" + getFormattedNow() + '.json');
+        // the initial response does not contain the subtrees that are loaded lazily
+        loadAllChildren($scope.traces, function() {
+            var data = JSON.stringify({isStarted: $scope.isStarted, columnDefs: serverColumnDefs, traces: $scope.traces}, function(key, value) {
+                // only the properties the server sent, not those added for rendering
+                return (key === 'level' || key === 'fqn' || key.indexOf('$$') === 0) ? undefined : value;
+            });
+            var blob = new Blob([data], {type: "application/json;charset=utf-8"});
+            saveAs(blob, "nsysmon-export-" + getFormattedNow() + '.json');
+        });
     };
 
     $scope.uploadFile = function(){
@@ -381,15 +460,28 @@ angular.module('NSysMonApp').controller('CtrlAggregated', function($scope, $log,
                 append(node.children[j]);
             }
         }
-        for(var j=0; j<$scope.pickedTraces.length; j++) {
-            append($scope.pickedTraces[j]);
-        }
 
-        var blob = new Blob([data], {type: "application/excel;charset=utf-8"});
-        saveAs(blob, "nsysmon-export-" + getFormattedNow() + '.xls');
+        loadAllChildren($scope.pickedTraces, function() {
+            for(var j=0; j<$scope.pickedTraces.length; j++) {
+                append($scope.pickedTraces[j]);
+            }
+
+            var blob = new Blob([data], {type: "application/excel;charset=utf-8"});
+            saveAs(blob, "nsysmon-export-" + getFormattedNow() + '.xls');
+        });
     };
 
 
+    // the search covers the entire tree, not only the levels that were loaded so far
+    function renderTreeForSearch() {
+        if(isValidSearchActive($scope.nodeSearchText)) {
+            loadAllChildren($scope.traces, renderTree);
+        }
+        else {
+            renderTree();
+        }
+    }
+
     function renderTree() {
         var hhttmmll = htmlForAllTrees();
 
@@ -563,7 +655,7 @@ angular.module('NSysMonApp').controller('CtrlAggregated', function($scope, $log,
             dataCols += '</div>';
         });
 
-        var withChildrenClass = (curNode.children && curNode.children.length) ? ' with-children' : '';
+        var withChildrenClass = hasChildren(curNode) ? ' with-children' : '';
         var result =
             '<div class="data-row data-row-' + (curNode.level - $scope.rootLevel) + withChildrenClass + ' ' + dataRowSubdued + ' ' + $scope.nodeMarker(curNode) + '">' +
                 '<div class="fqn-holder">' + escapeHtml(curNode.fqn) + '</div>' +
@@ -637,10 +729,15 @@ angular.module('NSysMonApp').controller('CtrlAggregated', function($scope, $log,
     }
 
     function htmlForChildrenDiv(curNode, shouldRender) {
-        if(! curNode.children || curNode.children.length === 0) {
+        if(! hasChildren(curNode)) {
             return '';
         }
 
+        if(! curNode.children) {
+            // the children are loaded from the server when the node is expanded
+            return '<div class="children unrendered"></div>';
+        }
+
         if(shouldRender || $scope.isExpanded(curNode)) {
             var result = '';
             result += '<div class="children" style="display: ' + $scope.expansionStyle(curNode) + ';">';
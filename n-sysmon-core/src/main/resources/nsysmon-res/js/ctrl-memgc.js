@@ -68,7 +68,12 @@ angular.module('NSysMonApp').controller('CtrlMemGc', function($scope, $timeout,
     }
 
     $scope.refresh = function() {
-        sendCommand('getData');
+        if($scope.nextSequence === undefined) {
+            sendCommand('getData');
+        }
+        else {
+            sendCommand('getDataSince/' + $scope.nextSequence);
+        }
     };
 
     // check if data from other sources should be loaded
@@ -212,11 +217,33 @@ angular.module('NSysMonApp').controller('CtrlMemGc', function($scope, $timeout,
 
     function sendCommand(cmd) {
         Rest.call(cmd, function(data) {
-            initFromResponse(data);
+            if($scope.nextSequence !== undefined && data.epoch !== $scope.epoch) {
+                // the server was restarted, so the sequence numbers started over
+                $scope.nextSequence = undefined;
+                $scope.epoch = undefined;
+                $scope.refresh();
+                return;
+            }
+            initFromResponse(mergeWithPrevious(data));
             doPlot();
         });
     }
 
+    // incremental responses contain only new GCs, and GCs that were evicted on the server are discarded here as well
+    function mergeWithPrevious(data) {
+        var merged = [];
+        if($scope.gcs && $scope.nextSequence !== undefined) {
+            for(var i=0; i<$scope.gcs.length; i++) {
+                if($scope.gcs[i].seq >= data.firstSequence) {
+                    merged.push($scope.gcs[i]);
+                }
+            }
+        }
+        $scope.nextSequence = data.nextSequence;
+        $scope.epoch = data.epoch;
+        return {gcs: merged.concat(data.gcs)};
+    }
+
     var plot;
     function doPlot() {
         plot = $.plot(
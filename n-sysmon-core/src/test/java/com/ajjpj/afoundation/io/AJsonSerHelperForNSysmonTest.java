@@ -0,0 +1,234 @@
+package com.ajjpj.afoundation.io;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class AJsonSerHelperForNSysmonTest {
+    private static String serialize(JsonWriteAction action) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        action.write(new AJsonSerHelperForNSysmon(baos));
+        return new String(baos.toByteArray(), AJsonSerHelperForNSysmon.UTF_8);
+    }
+
+    @Test
+    public void testStructure() throws IOException {
+        assertEquals("{\"a\":[1,true,null,\"x\"],\"b\":{}\n}\n", serialize(json -> {
+            json.startObject();
+            json.writeKey("a");
+            json.startArray();
+            json.writeNumberLiteral(1, 0);
+            json.writeBooleanLiteral(true);
+            json.writeStringLiteral(null);
+            json.writeStringLiteral("x");
+            json.endArray();
+            json.writeKey("b");
+            json.startObject();
+            json.endObject();
+            json.endObject();
+        }));
+    }
+
+    @Test
+    public void testIllegalState() throws IOException {
+        final AJsonSerHelperForNSysmon json = new AJsonSerHelperForNSysmon(new ByteArrayOutputStream());
+        try {
+            json.writeKey("a");
+            fail("exception expected");
+        }
+        catch (IllegalStateException exc) {
+            // expected
+        }
+
+        json.writeNullLiteral();
+        try {
+            json.writeNullLiteral();
+            fail("exception expected");
+        }
+        catch (IllegalStateException exc) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testStringEscapes() throws IOException {
+        assertEquals("\"a\\\"b\\\\c\\u0000\\u001f\\u000a/\"", serialize(json -> json.writeStringLiteral("a\"b\\c\u0000\u001f\n/")));
+        assertEquals("\"äöü € 😀 ?\"", serialize(json -> json.writeStringLiteral("äöü € 😀 \uD83D")));
+    }
+
+    @Test
+    public void testLongNumbers() throws IOException {
+        assertEquals("0", serialize(json -> json.writeNumberLiteral(0, 0)));
+        assertEquals("-1234567", serialize(json -> json.writeNumberLiteral(-1234567, 0)));
+        assertEquals("12.05", serialize(json -> json.writeNumberLiteral(1205, 2)));
+        assertEquals("-0.005", serialize(json -> json.writeNumberLiteral(-5, 3)));
+        assertEquals("9223372036854775807", serialize(json -> json.writeNumberLiteral(Long.MAX_VALUE, 0)));
+        assertEquals("-9223372036854775808", serialize(json -> json.writeNumberLiteral(Long.MIN_VALUE, 0)));
+        assertEquals("-9223372036.854775808", serialize(json -> json.writeNumberLiteral(Long.MIN_VALUE, 9)));
+    }
+
+    @Test
+    public void testDoubleNumbers() throws IOException {
+        assertEquals("1.50", serialize(json -> json.writeNumberLiteral(1.5, 2)));
+        assertEquals("0.12", serialize(json -> json.writeNumberLiteral(0.125, 2)));
+        assertEquals("-3", serialize(json -> json.writeNumberLiteral(-2.5001, 0)));
+        assertEquals("-0.00", serialize(json -> json.writeNumberLiteral(-0.001, 2)));
+        assertEquals("12345678901234567000", serialize(json -> json.writeNumberLiteral(12345678901234567890.0, 0)));
+    }
+
+    @Test
+    public void testSameOutputAsOriginal() throws IOException {
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        writeDocument(new AJsonSerHelper(expected), 100);
+
+        final String actual = serialize(json -> writeDocument(json, 100));
+        // the only intended difference is the newline after every object
+        assertEquals(new String(expected.toByteArray(), AJsonSerHelperForNSysmon.UTF_8), actual.replace("\n", ""));
+    }
+
+    @Test
+    public void testLargeDocumentAndBufferReuse() throws IOException {
+        final String first = serialize(json -> writeDocument(json, 10_000));
+        assertTrue(first.length() > 10 * AJsonSerHelperForNSysmon.BUFFER_SIZE);
+        assertEquals(first, serialize(json -> writeDocument(json, 10_000)));
+
+        // nested use on the same thread
+        final ByteArrayOutputStream outer = new ByteArrayOutputStream();
+        final AJsonSerHelperForNSysmon outerJson = new AJsonSerHelperForNSysmon(outer);
+        outerJson.startArray();
+        outerJson.writeStringLiteral("outer");
+        assertEquals("\"inner\"", serialize(json -> json.writeStringLiteral("inner")));
+        outerJson.endArray();
+        assertEquals("[\"outer\"]", new String(outer.toByteArray(), AJsonSerHelperForNSysmon.UTF_8));
+    }
+
+    @Test
+    public void testRawWriter() throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final Writer writer = new AJsonSerHelperForNSysmon(baos).getOut();
+        writer.write("{\"ä\":");
+        writer.write('\uD83D');
+        writer.write('\uDE00');
+        writer.write("}");
+        writer.flush();
+        assertEquals("{\"ä\":😀}", new String(baos.toByteArray(), AJsonSerHelperForNSysmon.UTF_8));
+    }
+
+    @Test @Ignore
+    public void testPerformance() throws IOException {
+        final OutputStream nullStream = new OutputStream() {
+            @Override public void write(int b) {
+            }
+            @Override public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        for(int i=0; i<5; i++) {
+            long start = System.nanoTime();
+            for(int j=0; j<20; j++) {
+                writeDocument(new AJsonSerHelper(nullStream), 5_000);
+            }
+            System.out.println("original:  " + (System.nanoTime() - start) / 1_000_000 + "ms");
+
+            start = System.nanoTime();
+            for(int j=0; j<20; j++) {
+                writeDocument(new AJsonSerHelperForNSysmon(nullStream), 5_000);
+            }
+            System.out.println("optimized: " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        }
+    }
+
+    /**
+     * writes a document similar to a page of traces
+     */
+    private static void writeDocument(JsonSerTarget json, int numTraces) throws IOException {
+        json.startObject();
+        json.writeKey("traces");
+        json.startArray();
+        for(int i=0; i<numTraces; i++) {
+            json.startObject();
+            json.writeKey("name");
+            json.writeStringLiteral("jdbc: select * from \"Table\" where x = ? -- trace #" + i + " äöü\t");
+            json.writeKey("startTimeMillis");
+            json.writeNumberLiteral(1_400_000_000_000L + i, 0);
+            json.writeKey("durationMillis");
+            json.writeNumberLiteral(i * 1_234_567L, 6);
+            json.writeKey("fraction");
+            json.writeNumberLiteral(i / 7.0, 3);
+            json.writeKey("isSerial");
+            json.writeBooleanLiteral(i % 2 == 0);
+            json.writeKey("parameters");
+            json.startArray();
+            json.writeStringLiteral(null);
+            json.endArray();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    private static void writeDocument(AJsonSerHelperForNSysmon json, int numTraces) throws IOException {
+        writeDocument(JsonSerTarget.of(json), numTraces);
+    }
+
+    private static void writeDocument(AJsonSerHelper json, int numTraces) throws IOException {
+        writeDocument(JsonSerTarget.of(json), numTraces);
+    }
+
+    private interface JsonWriteAction {
+        void write(AJsonSerHelperForNSysmon json) throws IOException;
+    }
+
+    /**
+     * allows writing the same document with the original a-foundation implementation and with the modified copy
+     */
+    private interface JsonSerTarget {
+        void startObject() throws IOException;
+        void endObject() throws IOException;
+        void writeKey(String key) throws IOException;
+        void startArray() throws IOException;
+        void endArray() throws IOException;
+        void writeStringLiteral(String s) throws IOException;
+        void writeNumberLiteral(long value, int numFracDigits) throws IOException;
+        void writeNumberLiteral(double value, int numFracDigits) throws IOException;
+        void writeBooleanLiteral(boolean value) throws IOException;
+
+        static JsonSerTarget of(AJsonSerHelperForNSysmon json) {
+            return new JsonSerTarget() {
+                @Override public void startObject() throws IOException { json.startObject(); }
+                @Override public void endObject() throws IOException { json.endObject(); }
+                @Override public void writeKey(String key) throws IOException { json.writeKey(key); }
+                @Override public void startArray() throws IOException { json.startArray(); }
+                @Override public void endArray() throws IOException { json.endArray(); }
+                @Override public void writeStringLiteral(String s) throws IOException { json.writeStringLiteral(s); }
+                @Override public void writeNumberLiteral(long value, int numFracDigits) throws IOException { json.writeNumberLiteral(value, numFracDigits); }
+                @Override public void writeNumberLiteral(double value, int numFracDigits) throws IOException { json.writeNumberLiteral(value, numFracDigits); }
+                @Override public void writeBooleanLiteral(boolean value) throws IOException { json.writeBooleanLiteral(value); }
+            };
+        }
+
+        static JsonSerTarget of(AJsonSerHelper json) {
+            return new JsonSerTarget() {
+                @Override public void startObject() throws IOException { json.startObject(); }
+                @Override public void endObject() throws IOException { json.endObject(); }
+                @Override public void writeKey(String key) throws IOException { json.writeKey(key); }
+                @Override public void startArray() throws IOException { json.startArray(); }
+                @Override public void endArray() throws IOException { json.endArray(); }
+                @Override public void writeStringLiteral(String s) throws IOException { json.writeStringLiteral(s); }
+                @Override public void writeNumberLiteral(long value, int numFracDigits) throws IOException { json.writeNumberLiteral(value, numFracDigits); }
+                @Override public void writeNumberLiteral(double value, int numFracDigits) throws IOException { json.writeNumberLiteral(value, numFracDigits); }
+                @Override public void writeBooleanLiteral(boolean value) throws IOException { json.writeBooleanLiteral(value); }
+            };
+        }
+    }
+}
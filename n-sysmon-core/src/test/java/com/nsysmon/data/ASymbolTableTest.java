@@ -0,0 +1,155 @@
+package com.nsysmon.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ASymbolTableTest {
+    @Test
+    public void testCanonicalSymbols() {
+        final ASymbolTable table = new ASymbolTable(10);
+        assertEquals(ASymbolTable.OTHER_SYMBOL, table.symbolOf(ASymbolTable.OTHER));
+
+        final String a1 = new String("a");
+        final String a2 = new String("a");
+
+        final int id = table.idOf(a1);
+        assertNotEquals(ASymbolTable.OTHER, id);
+        assertEquals(id, table.idOf(a2));
+        assertSame(a1, table.canonical(a2));
+        assertSame(a1, table.canonicalIfPresent(a2));
+        assertSame(a1, table.symbolOf(id));
+
+        final String b = new String("b");
+        assertSame(b, table.canonicalIfPresent(b));
+        assertEquals(2, table.size());
+
+        assertNotEquals(id, table.idOf("b"));
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    public void testOverflowAndEviction() {
+        final ASymbolTable table = new ASymbolTable(4);
+        final int a = table.idOf("a");
+        final int b = table.idOf("b");
+        final int c = table.idOf("c");
+        assertEquals(4, table.size());
+
+        // all symbols were used recently, so the first scan only clears their 'referenced' flags
+        assertEquals(ASymbolTable.OTHER, table.idOf("d"));
+        assertSame("e", table.canonical("e")); // no longer referenced, so "a" is evicted
+
+        assertNull(table.symbolOf(a));
+        final int e = table.idOf("e");
+        assertNotEquals(a, e);
+        assertEquals(a & 0xFFFFF, e & 0xFFFFF); // same slot, new generation
+        assertEquals("e", table.symbolOf(e));
+
+        // "b" is used again and survives the next eviction
+        assertEquals(b, table.idOf("b"));
+        assertNotEquals(ASymbolTable.OTHER, table.idOf("f"));
+        assertNull(table.symbolOf(c));
+        assertEquals("b", table.symbolOf(b));
+        assertEquals(4, table.size());
+    }
+
+    @Test
+    public void testOverflowCache() {
+        final ASymbolTable table = new ASymbolTable(3);
+        final int a = table.idOf("a");
+        final int b = table.idOf("b");
+
+        // the first lookup clears the 'referenced' flags, repeated lookups of the overflowed symbol do not evict anything
+        for(int i=0; i<ASymbolTable.OVERFLOW_RETRY_INTERVAL; i++) {
+            assertEquals(ASymbolTable.OTHER, table.idOf("x"));
+        }
+        assertEquals("a", table.symbolOf(a));
+        assertEquals("b", table.symbolOf(b));
+
+        // the overflowed symbol is retried eventually, and "a" was not used in the meantime
+        final int x = table.idOf("x");
+        assertNotEquals(ASymbolTable.OTHER, x);
+        assertEquals("x", table.symbolOf(x));
+        assertNull(table.symbolOf(a));
+        assertEquals(x, table.idOf("x"));
+    }
+
+    @Test
+    public void testHierarchicalDataUsesSymbolTable() {
+        final AHierarchicalData d1 = new AHierarchicalData(true, 0, 0, new String("x-symbol-test"), new ConcurrentHashMap<>(), new ArrayList<>(), false);
+        final AHierarchicalData d2 = new AHierarchicalData(true, 0, 0, new String("x-symbol-test"), new ConcurrentHashMap<>(), new ArrayList<>(), false);
+
+        assertSame(d1.getIdentifier(), d2.getIdentifier());
+        assertEquals(d1.getIdentifierId(), d2.getIdentifierId());
+        assertEquals("x-symbol-test", ASymbolTable.IDENTIFIERS.symbolOf(d1.getIdentifierId()));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        final ASymbolTable table = new ASymbolTable(64);
+        final ConcurrentHashMap<String, Integer> idsBySymbol = new ConcurrentHashMap<>();
+
+        final List<Thread> threads = new ArrayList<>();
+        for(int t=0; t<4; t++) {
+            threads.add(new Thread(() -> {
+                for(int i=0; i<20_000; i++) {
+                    final String symbol = "s" + (i % 100);
+                    final int id = table.idOf(symbol);
+                    if(id != ASymbolTable.OTHER) {
+                        final String resolved = table.symbolOf(id);
+                        // the symbol may have been evicted in the meantime, but an id never stands for another symbol
+                        assertTrue(resolved == null || resolved.equals(symbol));
+                        idsBySymbol.put(symbol, id);
+                    }
+                }
+            }));
+        }
+        for(Thread t: threads) {
+            t.start();
+        }
+        for(Thread t: threads) {
+            t.join();
+        }
+
+        assertTrue(table.size() <= 64);
+        assertFalse(idsBySymbol.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentInsertOfSameSymbol() throws InterruptedException {
+        final ASymbolTable table = new ASymbolTable(1024);
+        final int numThreads = 8;
+        final int[][] ids = new int[numThreads][500];
+
+        final List<Thread> threads = new ArrayList<>();
+        for(int t=0; t<numThreads; t++) {
+            final int[] idsOfThread = ids[t];
+            threads.add(new Thread(() -> {
+                for(int i=0; i<idsOfThread.length; i++) {
+                    idsOfThread[i] = table.idOf("s" + i);
+                }
+            }));
+        }
+        for(Thread t: threads) {
+            t.start();
+        }
+        for(Thread t: threads) {
+            t.join();
+        }
+
+        // every symbol got a single slot, however many threads added it concurrently
+        for(int t=1; t<numThreads; t++) {
+            assertArrayEquals(ids[0], ids[t]);
+        }
+        assertEquals(501, table.size());
+    }
+}
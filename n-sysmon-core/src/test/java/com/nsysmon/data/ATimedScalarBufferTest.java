@@ -0,0 +1,141 @@
+package com.nsysmon.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ATimedScalarBufferTest {
+    @Test
+    public void testRingAndViews() {
+        final ATimedScalarBuffer buffer = new ATimedScalarBuffer("a", 0, 100);
+        final ATimedScalarSeries all = buffer.view();
+        final ATimedScalarSeries newest = buffer.view(10);
+        assertEquals(0, all.size());
+        assertEquals(0, all.samples().size());
+
+        for(int i=0; i<5; i++) {
+            buffer.put(1000 + i, i);
+        }
+        assertEquals(5, all.size());
+        assertEquals(5, newest.size());
+        assertEquals(1000, all.samples().getTimestamp(0));
+
+        // more entries than the initial size of the arrays, and overwriting the oldest entries
+        for(int i=5; i<250; i++) {
+            buffer.put(1000 + i, i);
+        }
+        assertEquals(100, buffer.size());
+
+        final ATimedScalarSeries.Samples allSamples = all.samples();
+        assertEquals(100, allSamples.size());
+        for(int i=0; i<100; i++) {
+            assertEquals(1150 + i, allSamples.getTimestamp(i));
+            assertEquals(150 + i, allSamples.getValueRaw(i));
+        }
+
+        final ATimedScalarSeries.Samples newestSamples = newest.samples();
+        assertEquals(10, newestSamples.size());
+        for(int i=0; i<10; i++) {
+            assertEquals(1240 + i, newestSamples.getTimestamp(i));
+        }
+
+        buffer.clear();
+        assertEquals(0, all.size());
+    }
+
+    @Test
+    public void testDataPoints() {
+        final ATimedScalarBuffer buffer = new ATimedScalarBuffer("a", 2, 10);
+        buffer.put(new AScalarDataPoint(1000, "a", 1205, 2));
+        buffer.put(new AScalarDataPoint(2000, "a", 3, 0));
+        buffer.put(new AScalarDataPoint(3000, "a", 12345, 3));
+
+        final List<AScalarDataPoint> points = new ArrayList<>();
+        for(AScalarDataPoint p: buffer.view()) {
+            points.add(p);
+        }
+        assertEquals(3, points.size());
+        for(AScalarDataPoint p: points) {
+            assertEquals("a", p.getName());
+            assertEquals(2, p.getNumFracDigits());
+        }
+        assertEquals(1000, points.get(0).getTimestamp());
+        assertEquals(12.05, points.get(0).getValue(), 1e-9);
+        assertEquals(3.0, points.get(1).getValue(), 1e-9);
+        assertEquals(12.35, points.get(2).getValue(), 1e-9);
+        assertEquals(12.35, buffer.view().samples().getValue(2), 1e-9);
+    }
+
+    @Test
+    public void testRollup() {
+        final ATimedScalarRollup rollup = new ATimedScalarRollup(1000, 3);
+        final ATimedScalarBuffer buffer = new ATimedScalarBuffer("a", 1, 100, rollup);
+
+        buffer.put(10_000, 10);
+        buffer.put(10_500, 30);
+        buffer.put(10_900, 20);
+        buffer.put(11_000, 5);
+        buffer.put(10_999, 60); // out of order, but its bucket still exists
+
+        ATimedScalarSeries.Samples samples = rollup.copySince("a", 1, Long.MIN_VALUE);
+        assertEquals(2, samples.size());
+        assertEquals(1000, samples.getResolutionMillis());
+        assertEquals(10_000, samples.getTimestamp(0));
+        assertEquals(4, samples.getCount(0));
+        assertEquals(3.0, samples.getValue(0), 1e-9);
+        assertEquals(30, samples.getValueRaw(0));
+        assertEquals(1.0, samples.getMin(0), 1e-9);
+        assertEquals(6.0, samples.getMax(0), 1e-9);
+        assertEquals(0.5, samples.getValue(1), 1e-9);
+
+        buffer.put(12_000, 1);
+        buffer.put(13_000, 1);
+        assertFalse(rollup.isComplete());
+        assertEquals(11_000, rollup.getOldestTimestamp());
+
+        // the bucket was overwritten already
+        buffer.put(10_000, 1);
+        samples = rollup.copySince("a", 1, 12_500);
+        assertEquals(2, samples.size());
+        assertEquals(12_000, samples.getTimestamp(0));
+        assertEquals(1, samples.getCount(0));
+    }
+
+    @Test
+    public void testTierSelection() {
+        final ATimedScalarBuffer buffer = new ATimedScalarBuffer("a", 0, 100, new ATimedScalarRollup(100_000, 100), new ATimedScalarRollup(10_000, 100));
+        final ATimedScalarSeries series = buffer.view(50);
+
+        for(int i=0; i<40; i++) {
+            buffer.put(i * 1000, i);
+        }
+        // raw data is complete and small enough
+        assertEquals(0, series.samplesSince(Long.MIN_VALUE, 1000).getResolutionMillis());
+        assertEquals(40, series.samplesSince(Long.MIN_VALUE, 1000).size());
+        assertEquals(10, series.samplesSince(30_000, 1000).size());
+
+        // too many raw entries --> finest rollup that is small enough
+        assertEquals(10_000, series.samplesSince(Long.MIN_VALUE, 10).getResolutionMillis());
+        assertEquals(4, series.samplesSince(Long.MIN_VALUE, 10).size());
+        assertEquals(100_000, series.samplesSince(Long.MIN_VALUE, 2).getResolutionMillis());
+        assertEquals(1, series.samplesSince(Long.MIN_VALUE, 2).size());
+
+        for(int i=40; i<1000; i++) {
+            buffer.put(i * 1000, i);
+        }
+        assertEquals(0, series.samplesSince(960_000, 1000).getResolutionMillis());
+        // the raw view does not reach back far enough
+        final ATimedScalarSeries.Samples all = series.samplesSince(Long.MIN_VALUE, 1000);
+        assertEquals(10_000, all.getResolutionMillis());
+        assertEquals(100, all.size());
+        assertEquals(4.5, all.getValue(0), 1e-9);
+        assertEquals(999.0, all.getMax(99), 1e-9);
+    }
+}
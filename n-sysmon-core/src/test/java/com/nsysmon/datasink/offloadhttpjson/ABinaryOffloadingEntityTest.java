@@ -0,0 +1,199 @@
+package com.nsysmon.datasink.offloadhttpjson;
+
+import com.nsysmon.data.ACorrelationId;
+import com.nsysmon.data.AHierarchicalData;
+import com.nsysmon.data.AHierarchicalDataRoot;
+import com.nsysmon.data.AScalarDataPoint;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.InflaterInputStream;
+
+import static com.nsysmon.datasink.offloadhttpjson.AOffloadingBinaryFormat.*;
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ABinaryOffloadingEntityTest {
+    @Test
+    public void testVarLong() throws IOException {
+        for(long l: new long[] {0, 1, 127, 128, 300, Integer.MAX_VALUE, Long.MAX_VALUE, -1, Long.MIN_VALUE}) {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            writeVarLong(baos, l);
+            writeSignedVarLong(baos, l);
+            writeSignedVarLong(baos, -l);
+
+            final InputStream in = new ByteArrayInputStream(baos.toByteArray());
+            assertEquals(l, readVarLong(in));
+            assertEquals(l, readSignedVarLong(in));
+            assertEquals(-l, readSignedVarLong(in));
+            assertEquals(-1, in.read());
+        }
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writeVarLong(baos, 127);
+        writeSignedVarLong(baos, -64);
+        assertEquals(2, baos.size());
+    }
+
+    @Test
+    public void testStringDictionary() throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final Map<String, Integer> writeDictionary = new HashMap<>();
+        for(String s: Arrays.asList("a", "äöü", null, "a", "äöü", "b")) {
+            writeString(baos, s, writeDictionary);
+        }
+        assertEquals(3, writeDictionary.size());
+
+        final InputStream in = new ByteArrayInputStream(baos.toByteArray());
+        final List<String> readDictionary = new ArrayList<>();
+        final List<String> read = new ArrayList<>();
+        for(int i=0; i<6; i++) {
+            read.add(readString(in, readDictionary));
+        }
+        assertEquals(Arrays.asList("a", "äöü", null, "a", "äöü", "b"), read);
+        assertEquals(Arrays.asList("a", "äöü", "b"), readDictionary);
+    }
+
+    @Test
+    public void testStructure() throws IOException {
+        final long start = System.currentTimeMillis();
+        final AHierarchicalData child = new AHierarchicalData(false, start + 2, 500, "child", Collections.singletonMap("k", "v"), Collections.emptyList(), false);
+        final AHierarchicalData root = new AHierarchicalData(true, start, 1_000_000, "root", Collections.emptyMap(), Collections.singletonList(child), false);
+        final AHierarchicalDataRoot trace = new AHierarchicalDataRoot(root, Collections.singletonList(new ACorrelationId("q", "id", null)), Collections.emptyList());
+        final AScalarDataPoint scalar = new AScalarDataPoint(start, "scalar", 1205, 2);
+
+        for(boolean compress: new boolean[] {false, true}) {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            new ABinaryOffloadingEntity(Collections.singletonList(trace), Collections.singletonList(scalar), "app", "instance", compress).writeTo(baos);
+
+            InputStream in = new ByteArrayInputStream(baos.toByteArray());
+            assertEquals(compress ? FLAG_DEFLATE : 0, readHeader(in));
+            if(compress) {
+                in = new InflaterInputStream(in);
+            }
+
+            final List<String> dictionary = new ArrayList<>();
+            assertEquals("app", readString(in, dictionary));
+            assertEquals("instance", readString(in, dictionary));
+            final long senderTimestamp = readVarLong(in);
+
+            assertEquals(1, readVarInt(in));
+            assertArrayEquals(trace.getUuid().getData(), readBytes(in));
+            assertEquals(1, readVarInt(in));
+            assertEquals("q", readString(in, dictionary));
+            assertEquals("id", readString(in, dictionary));
+            assertEquals(0, readVarInt(in));
+
+            assertEquals("root", readString(in, dictionary));
+            assertEquals((1 << 1) | 1, readVarLong(in));
+            assertEquals(start, senderTimestamp + readSignedVarLong(in));
+            assertEquals(1_000_000, readSignedVarLong(in));
+            assertEquals(0, readVarInt(in));
+
+            assertEquals("child", readString(in, dictionary));
+            assertEquals(0, readVarLong(in));
+            assertEquals(2, readSignedVarLong(in));
+            assertEquals(500 - 1_000_000, readSignedVarLong(in));
+            assertEquals(1, readVarInt(in));
+            assertEquals("k", readString(in, dictionary));
+            assertEquals("v", readString(in, dictionary));
+
+            assertEquals(1, readVarInt(in));
+            assertArrayEquals(scalar.getUuid().getData(), readBytes(in));
+            assertEquals("scalar", readString(in, dictionary));
+            assertEquals(start, senderTimestamp + readSignedVarLong(in));
+            assertEquals(1205, readSignedVarLong(in));
+            assertEquals(2, readVarInt(in));
+
+            assertEquals(0, readVarInt(in));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testLengthLimits() throws IOException {
+        // a corrupt length is rejected before anything is allocated for it
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writeVarLong(baos, Integer.MAX_VALUE);
+        try {
+            readBytes(new ByteArrayInputStream(baos.toByteArray()));
+            fail("exception expected");
+        }
+        catch (IOException exc) {
+            // expected
+        }
+
+        final char[] chars = new char[MAX_BYTES_LENGTH + 10];
+        Arrays.fill(chars, 'x');
+        final ByteArrayOutputStream longString = new ByteArrayOutputStream();
+        writeString(longString, new String(chars), new HashMap<>());
+        assertEquals(MAX_BYTES_LENGTH, readString(new ByteArrayInputStream(longString.toByteArray()), new ArrayList<>()).length());
+    }
+
+    @Test
+    public void testUnsupportedHeader() throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writeHeader(baos, FLAG_DEFLATE);
+        final byte[] header = baos.toByteArray();
+        assertEquals(FLAG_DEFLATE, readHeader(new ByteArrayInputStream(header)));
+
+        // a newer client's version or flags must be distinguishable from corrupt data so that it can fall back to JSON
+        final byte[] newerVersion = header.clone();
+        newerVersion[MAGIC.length] = VERSION + 1;
+        final byte[] unknownFlag = header.clone();
+        unknownFlag[MAGIC.length + 1] = FLAG_DEFLATE | 4;
+        for(byte[] unsupported: Arrays.asList(newerVersion, unknownFlag)) {
+            try {
+                readHeader(new ByteArrayInputStream(unsupported));
+                fail("exception expected");
+            }
+            catch (AUnsupportedBinaryFormatException exc) {
+                // expected
+            }
+        }
+
+        final byte[] corrupt = header.clone();
+        corrupt[0] = 'X';
+        try {
+            readHeader(new ByteArrayInputStream(corrupt));
+            fail("exception expected");
+        }
+        catch (IOException exc) {
+            assertFalse(exc instanceof AUnsupportedBinaryFormatException);
+        }
+    }
+
+    @Test
+    public void testCompactness() throws IOException {
+        final List<AHierarchicalDataRoot> traces = new ArrayList<>();
+        for(int i=0; i<100; i++) {
+            final List<AHierarchicalData> children = new ArrayList<>();
+            for(int j=0; j<20; j++) {
+                children.add(new AHierarchicalData(true, 1_400_000_000_000L + i + j, 10_000 + j, "jdbc: select * from A where x=?", Collections.singletonMap("param", String.valueOf(j)), Collections.emptyList(), false));
+            }
+            traces.add(new AHierarchicalDataRoot(new AHierarchicalData(true, 1_400_000_000_000L + i, 1_000_000 + i, "/app/page", Collections.emptyMap(), children, false), Collections.emptyList(), Collections.emptyList()));
+        }
+
+        final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        new ABinaryOffloadingEntity(traces, Collections.emptyList(), "app", "instance", false).writeTo(binary);
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new ABinaryOffloadingEntity(traces, Collections.emptyList(), "app", "instance", true).writeTo(compressed);
+
+        // the JSON representation of a child node takes well over 150 bytes
+        assertTrue(binary.size() < 100 * (20 + 21 * 12));
+        assertTrue(compressed.size() < binary.size());
+    }
+}
@@ -0,0 +1,173 @@
+package com.nsysmon.datasink.offloadhttpjson;
+
+import com.nsysmon.data.ACorrelationId;
+import com.nsysmon.data.AHierarchicalData;
+import com.nsysmon.data.AHierarchicalDataRoot;
+import com.nsysmon.data.AScalarDataPoint;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ADiskSpoolTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static byte[] payload(int i) {
+        final byte[] result = new byte[100];
+        for(int j=0; j<result.length; j++) {
+            result[j] = (byte) (i + j);
+        }
+        return result;
+    }
+
+    private static int numSegmentFiles(File dir) {
+        final String[] names = dir.list();
+        return names == null ? 0 : names.length;
+    }
+
+    @Test
+    public void testOrderAndRotation() throws IOException {
+        final File dir = tempFolder.newFolder();
+        final ADiskSpool spool = new ADiskSpool(dir, SEGMENT_SIZE, 100 * SEGMENT_SIZE);
+        assertTrue(spool.isEmpty());
+        assertNull(spool.nextRecord());
+
+        for(int i=0; i<200; i++) {
+            assertTrue(spool.append(payload(i)));
+        }
+        assertFalse(spool.isEmpty());
+        assertTrue(numSegmentFiles(dir) > 1);
+
+        for(int i=0; i<200; i++) {
+            assertArrayEquals(payload(i), spool.nextRecord());
+        }
+        assertNull(spool.nextRecord());
+        assertTrue(spool.isEmpty());
+        assertEquals(1, numSegmentFiles(dir));
+
+        // the remaining segment is reused
+        assertTrue(spool.append(payload(1)));
+        assertArrayEquals(payload(1), spool.nextRecord());
+        assertNull(spool.nextRecord());
+    }
+
+    @Test
+    public void testQuota() throws IOException {
+        final File dir = tempFolder.newFolder();
+        final ADiskSpool spool = new ADiskSpool(dir, SEGMENT_SIZE, 2 * SEGMENT_SIZE);
+
+        int numAppended = 0;
+        while(spool.append(payload(numAppended))) {
+            numAppended += 1;
+        }
+        assertEquals(2 * (SEGMENT_SIZE / (100 + ADiskSpool.RECORD_HEADER_SIZE)), numAppended);
+        assertFalse(spool.append(payload(0)));
+        assertEquals(2, spool.getNumDiscarded());
+        assertEquals(2, numSegmentFiles(dir));
+
+        assertFalse(spool.append(new byte[SEGMENT_SIZE]));
+
+        for(int i=0; i<numAppended; i++) {
+            assertArrayEquals(payload(i), spool.nextRecord());
+        }
+        assertNull(spool.nextRecord());
+        assertTrue(spool.append(payload(0)));
+    }
+
+    @Test
+    public void testReplayAfterRestart() throws IOException {
+        final File dir = tempFolder.newFolder();
+        final ADiskSpool spool = new ADiskSpool(dir, SEGMENT_SIZE, 100 * SEGMENT_SIZE);
+        for(int i=0; i<100; i++) {
+            spool.append(payload(i));
+        }
+        spool.flush();
+
+        final ADiskSpool restarted = new ADiskSpool(dir, SEGMENT_SIZE, 100 * SEGMENT_SIZE);
+        assertFalse(restarted.isEmpty());
+        restarted.append(payload(100));
+        for(int i=0; i<=100; i++) {
+            assertArrayEquals(payload(i), restarted.nextRecord());
+        }
+        assertNull(restarted.nextRecord());
+        assertEquals(1, numSegmentFiles(dir));
+    }
+
+    @Test
+    public void testCorruptRecord() throws IOException {
+        final File dir = tempFolder.newFolder();
+        final ADiskSpool spool = new ADiskSpool(dir, SEGMENT_SIZE, 100 * SEGMENT_SIZE);
+        for(int i=0; i<3; i++) {
+            spool.append(payload(i));
+        }
+        spool.flush();
+
+        // simulate a crash while the second record was written
+        final File segment = dir.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(2 * ADiskSpool.RECORD_HEADER_SIZE + 100 + 50);
+            raf.write(0);
+        }
+
+        final ADiskSpool restarted = new ADiskSpool(dir, SEGMENT_SIZE, 100 * SEGMENT_SIZE);
+        assertArrayEquals(payload(0), restarted.nextRecord());
+        assertNull(restarted.nextRecord());
+        assertEquals(1, numSegmentFiles(dir));
+    }
+
+    @Test
+    public void testItems() throws IOException {
+        final ADiskSpool spool = new ADiskSpool(tempFolder.newFolder(), SEGMENT_SIZE, 100 * SEGMENT_SIZE);
+
+        final AHierarchicalData child = new AHierarchicalData(false, 1_400_000_000_100L, 500, "child", Collections.singletonMap("k", "v"), Collections.emptyList(), false);
+        final AHierarchicalData root = new AHierarchicalData(true, 1_400_000_000_000L, 1_000_000, "root", Collections.emptyMap(), Collections.singletonList(child), false);
+        final AHierarchicalDataRoot trace = new AHierarchicalDataRoot(root, Collections.singletonList(new ACorrelationId("q", "id", null)), Collections.emptyList());
+        final AScalarDataPoint scalar = new AScalarDataPoint(1_400_000_000_000L, "scalar", 1205, 2);
+
+        spool.append(scalar);
+        spool.append(trace);
+        spool.append(scalar);
+
+        final List<AHierarchicalDataRoot> traces = new ArrayList<>();
+        final List<AScalarDataPoint> scalars = new ArrayList<>();
+        assertEquals(2, spool.replayInto(traces, scalars, 2));
+        assertEquals(1, spool.replayInto(traces, scalars, 2));
+        assertEquals(0, spool.replayInto(traces, scalars, 2));
+
+        assertEquals(2, scalars.size());
+        assertArrayEquals(scalar.getUuid().getData(), scalars.get(0).getUuid().getData());
+        assertEquals(scalar.getTimestamp(), scalars.get(0).getTimestamp());
+        assertEquals("scalar", scalars.get(0).getName());
+        assertEquals(12.05, scalars.get(0).getValue(), 1e-9);
+
+        assertEquals(1, traces.size());
+        final AHierarchicalDataRoot readTrace = traces.get(0);
+        assertArrayEquals(trace.getUuid().getData(), readTrace.getUuid().getData());
+        assertEquals(trace.getStartedFlows(), readTrace.getStartedFlows());
+        assertEquals("root", readTrace.getRootNode().getIdentifier());
+        assertEquals(1_400_000_000_000L, readTrace.getRootNode().getStartTimeMillis());
+        assertEquals(1_000_000, readTrace.getRootNode().getDurationNanos());
+
+        final AHierarchicalData readChild = readTrace.getRootNode().getChildren().get(0);
+        assertFalse(readChild.isSerial());
+        assertEquals("child", readChild.getIdentifier());
+        assertEquals(1_400_000_000_100L, readChild.getStartTimeMillis());
+        assertEquals(500, readChild.getDurationNanos());
+        assertEquals(Collections.singletonMap("k", "v"), readChild.getParameters());
+    }
+}
@@ -0,0 +1,323 @@
+package com.nsysmon.datasink.offloadhttpjson;
+
+import com.nsysmon.config.NSysMonConfigBuilder;
+import com.nsysmon.config.appinfo.ADefaultApplicationInfoProvider;
+import com.nsysmon.data.AHierarchicalData;
+import com.nsysmon.data.AHierarchicalDataRoot;
+import com.nsysmon.impl.NSysMonImpl;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class AHttpJsonOffloadingDataSinkTest {
+    private static final Pattern TRACE_IDENTIFIER = Pattern.compile("\"identifier\"\\s*:\\s*\"(t-\\d+)\"");
+    private static final Pattern SCALAR_NAME = Pattern.compile("\"name\"\\s*:");
+
+    private NSysMonImpl sysMon;
+    private HttpServer server;
+    private ExecutorService serverThreadPool;
+    private AHttpJsonOffloadingDataSink dataSink;
+
+    /**
+     * all requests the stub server received, in the order in which they arrived
+     */
+    private final List<StubRequest> requests = new CopyOnWriteArrayList<>();
+
+    /**
+     * decides the stub server's HTTP status for a request - the default is to accept everything
+     */
+    private volatile StubResponder responder = r -> 200;
+
+    /**
+     * whether the stub server announces support for the binary format
+     */
+    private volatile boolean announceBinary = false;
+
+    @Before
+    public void before() throws IOException {
+        sysMon = new NSysMonImpl(new NSysMonConfigBuilder(new ADefaultApplicationInfoProvider("dummy", "version")).build());
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        serverThreadPool = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreadPool);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    @After
+    public void after() throws IOException {
+        if(dataSink != null) {
+            dataSink.shutdown();
+        }
+        server.stop(0);
+        serverThreadPool.shutdownNow();
+        sysMon.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        final StubRequest request = new StubRequest(exchange.getRequestHeaders().getFirst("Content-Type"), readFully(exchange.getRequestBody()));
+        final int status = responder.statusFor(request);
+        request.status = status;
+        requests.add(request);
+
+        if(announceBinary) {
+            exchange.getResponseHeaders().add(AOffloadingBinaryFormat.HEADER_ACCEPT_POST, AOffloadingBinaryFormat.CONTENT_TYPE);
+        }
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final byte[] buf = new byte[4096];
+        int n;
+        while((n = in.read(buf)) > 0) {
+            baos.write(buf, 0, n);
+        }
+        return baos.toByteArray();
+    }
+
+    private void createDataSink(int numOffloadingThreads, int maxBatchItems, int maxBatchBytes, boolean preferBinaryFormat) {
+        // scalars are measured only once, right after startup
+        dataSink = new AHttpJsonOffloadingDataSink(sysMon, "http://localhost:" + server.getAddress().getPort() + "/upload", "app", "instance",
+                1000, 1000, numOffloadingThreads, (int) TimeUnit.HOURS.toMillis(1), maxBatchItems, maxBatchBytes, preferBinaryFormat, false, null);
+    }
+
+    private static AHierarchicalDataRoot trace(int i) {
+        final AHierarchicalData root = new AHierarchicalData(true, System.currentTimeMillis(), 1000, "t-" + i, Collections.emptyMap(), Collections.emptyList(), false);
+        return new AHierarchicalDataRoot(root, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * @return the identifiers of all traces the stub server accepted, in the order in which they arrived
+     */
+    private List<String> acceptedTraces() {
+        final List<String> result = new ArrayList<>();
+        for(StubRequest request: requests) {
+            if(request.status == 200) {
+                result.addAll(request.traceIdentifiers());
+            }
+        }
+        return result;
+    }
+
+    private static List<String> expectedTraces(int numTraces) {
+        final List<String> result = new ArrayList<>();
+        for(int i=0; i<numTraces; i++) {
+            result.add("t-" + i);
+        }
+        return result;
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while(! condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testBatchItemLimit() throws InterruptedException {
+        createDataSink(1, 3, AHttpJsonOffloadingDataSink.DEFAULT_MAX_BATCH_BYTES, false);
+        for(int i=0; i<10; i++) {
+            dataSink.onFinishedHierarchicalMeasurement(trace(i));
+        }
+
+        awaitCondition(() -> acceptedTraces().size() == 10);
+        assertEquals(expectedTraces(10), acceptedTraces());
+        for(StubRequest request: requests) {
+            assertTrue(request.numItems() <= 3);
+        }
+    }
+
+    @Test
+    public void testBatchByteLimit() throws InterruptedException {
+        // every item exceeds the limit on its own, so every request contains a single item
+        createDataSink(1, AHttpJsonOffloadingDataSink.DEFAULT_MAX_BATCH_ITEMS, 1, false);
+        for(int i=0; i<5; i++) {
+            dataSink.onFinishedHierarchicalMeasurement(trace(i));
+        }
+
+        awaitCondition(() -> acceptedTraces().size() == 5);
+        assertEquals(expectedTraces(5), acceptedTraces());
+        for(StubRequest request: requests) {
+            assertEquals(1, request.numItems());
+        }
+    }
+
+    @Test
+    public void testWakeUpOnNewData() throws InterruptedException {
+        createDataSink(1, AHttpJsonOffloadingDataSink.DEFAULT_MAX_BATCH_ITEMS, AHttpJsonOffloadingDataSink.DEFAULT_MAX_BATCH_BYTES, false);
+
+        // give the offloading thread time to become idle
+        Thread.sleep(100);
+
+        for(int i=0; i<5; i++) {
+            final long start = System.currentTimeMillis();
+            dataSink.onFinishedHierarchicalMeasurement(trace(i));
+            final int numExpected = i+1;
+            awaitCondition(() -> acceptedTraces().size() == numExpected);
+            assertTrue(System.currentTimeMillis() - start < AHttpJsonOffloadingDataSink.IDLE_WAIT_MILLIS / 2);
+        }
+    }
+
+    @Test
+    public void testRequeueOnFailure() throws InterruptedException {
+        final AtomicBoolean hasFailed = new AtomicBoolean();
+        responder = r -> r.traceIdentifiers().isEmpty() || ! hasFailed.compareAndSet(false, true) ? 200 : 503;
+
+        createDataSink(1, 2, AHttpJsonOffloadingDataSink.DEFAULT_MAX_BATCH_BYTES, false);
+
+        dataSink.onFinishedHierarchicalMeasurement(trace(0));
+        dataSink.onFinishedHierarchicalMeasurement(trace(1));
+        awaitCondition(hasFailed::get);
+        for(int i=2; i<6; i++) {
+            dataSink.onFinishedHierarchicalMeasurement(trace(i));
+        }
+
+        // failed data is resent before newer data
+        awaitCondition(() -> acceptedTraces().size() == 6);
+        assertEquals(expectedTraces(6), acceptedTraces());
+    }
+
+    @Test
+    public void testSharedBackoff() throws InterruptedException {
+        final AtomicLong failedAtMillis = new AtomicLong();
+        responder = r -> r.traceIdentifiers().isEmpty() || ! failedAtMillis.compareAndSet(0, System.currentTimeMillis()) ? 200 : 503;
+
+        createDataSink(3, 1, AHttpJsonOffloadingDataSink.DEFAULT_MAX_BATCH_BYTES, false);
+
+        dataSink.onFinishedHierarchicalMeasurement(trace(0));
+        awaitCondition(() -> failedAtMillis.get() != 0);
+        // give the client time to process the failed response
+        Thread.sleep(20);
+        for(int i=1; i<6; i++) {
+            dataSink.onFinishedHierarchicalMeasurement(trace(i));
+        }
+
+        // the offloading threads whose requests did not fail do not send anything before the backoff expires either
+        awaitCondition(() -> acceptedTraces().size() == 6);
+        for(StubRequest request: requests) {
+            if(request.status == 200 && ! request.traceIdentifiers().isEmpty()) {
+                assertTrue(request.receivedAtMillis - failedAtMillis.get() >= AHttpJsonOffloadingDataSink.MIN_BACKOFF_MILLIS / 2);
+            }
+        }
+    }
+
+    @Test
+    public void testFallbackToJson() throws InterruptedException {
+        announceBinary = true;
+        responder = r -> r.isBinary() ? 415 : 200;
+
+        createDataSink(1, AHttpJsonOffloadingDataSink.DEFAULT_MAX_BATCH_ITEMS, AHttpJsonOffloadingDataSink.DEFAULT_MAX_BATCH_BYTES, true);
+
+        for(int i=0; i<5; i++) {
+            dataSink.onFinishedHierarchicalMeasurement(trace(i));
+            final int numExpected = i+1;
+            awaitCondition(() -> acceptedTraces().size() == numExpected);
+        }
+
+        // the server keeps announcing binary support, but after rejecting it once, it only gets JSON
+        assertEquals(expectedTraces(5), acceptedTraces());
+        int numBinary = 0;
+        for(StubRequest request: requests) {
+            if(request.isBinary()) {
+                numBinary += 1;
+            }
+        }
+        assertEquals(1, numBinary);
+    }
+
+    private interface StubResponder {
+        int statusFor(StubRequest request);
+    }
+
+    private static class StubRequest {
+        final long receivedAtMillis = System.currentTimeMillis();
+        final String contentType;
+        final String body;
+        volatile int status;
+
+        StubRequest(String contentType, byte[] body) {
+            this.contentType = contentType;
+            this.body = new String(body, StandardCharsets.UTF_8);
+        }
+
+        boolean isBinary() {
+            return contentType != null && contentType.startsWith(AOffloadingBinaryFormat.CONTENT_TYPE);
+        }
+
+        List<String> traceIdentifiers() {
+            final List<String> result = new ArrayList<>();
+            if(! isBinary()) {
+                final Matcher matcher = TRACE_IDENTIFIER.matcher(body);
+                while(matcher.find()) {
+                    result.add(matcher.group(1));
+                }
+            }
+            return result;
+        }
+
+        int numItems() {
+            int numScalars = 0;
+            final Matcher matcher = SCALAR_NAME.matcher(body);
+            while(matcher.find()) {
+                numScalars += 1;
+            }
+            return traceIdentifiers().size() + numScalars;
+        }
+    }
+
+    @Test
+    public void testBackoff() {
+        for(int i=0; i<100; i++) {
+            assertInRange(AHttpJsonOffloadingDataSink.MIN_BACKOFF_MILLIS, AHttpJsonOffloadingDataSink.backoffMillis(1));
+            assertInRange(4 * AHttpJsonOffloadingDataSink.MIN_BACKOFF_MILLIS, AHttpJsonOffloadingDataSink.backoffMillis(3));
+            assertInRange(AHttpJsonOffloadingDataSink.MAX_BACKOFF_MILLIS, AHttpJsonOffloadingDataSink.backoffMillis(30));
+            assertInRange(AHttpJsonOffloadingDataSink.MAX_BACKOFF_MILLIS, AHttpJsonOffloadingDataSink.backoffMillis(Integer.MAX_VALUE));
+        }
+    }
+
+    private static void assertInRange(long nominal, long actual) {
+        assertTrue(actual + " not in range for " + nominal, actual >= nominal / 2 && actual <= nominal);
+    }
+
+    @Test
+    public void testEstimateSize() {
+        final AHierarchicalData empty = new AHierarchicalData(true, 0, 0, "", Collections.emptyMap(), Collections.emptyList(), false);
+        final AHierarchicalData child = new AHierarchicalData(true, 0, 0, "abc", Collections.singletonMap("key", null), Collections.emptyList(), false);
+        final AHierarchicalData leaf = new AHierarchicalData(true, 0, 0, "a", Collections.singletonMap("k", "value"), Collections.emptyList(), false);
+        final AHierarchicalData root = new AHierarchicalData(true, 0, 0, "a", Collections.singletonMap("k", "value"), Collections.singletonList(child), false);
+
+        assertEquals(6, AHttpJsonOffloadingDataSink.estimateSize(child) - AHttpJsonOffloadingDataSink.estimateSize(empty));
+        assertEquals(7, AHttpJsonOffloadingDataSink.estimateSize(leaf) - AHttpJsonOffloadingDataSink.estimateSize(empty));
+        assertEquals(AHttpJsonOffloadingDataSink.estimateSize(leaf) + AHttpJsonOffloadingDataSink.estimateSize(child), AHttpJsonOffloadingDataSink.estimateSize(root));
+    }
+}
@@ -0,0 +1,197 @@
+package com.nsysmon.impl;
+
+import com.nsysmon.NSysMonApi;
+import com.nsysmon.config.ADispatchOverflowPolicy;
+import com.nsysmon.config.NSysMonConfigBuilder;
+import com.nsysmon.config.appinfo.ADefaultApplicationInfoProvider;
+import com.nsysmon.data.AHierarchicalData;
+import com.nsysmon.data.AHierarchicalDataRoot;
+import com.nsysmon.datasink.ADataSink;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class AsyncDataSinkDispatcherTest {
+    private NSysMonConfigBuilder configBuilder;
+
+    @Before
+    public void before() throws UnknownHostException {
+        configBuilder = new NSysMonConfigBuilder(new ADefaultApplicationInfoProvider("dummy", "version"))
+                .setAsyncDataSinkDispatch(true)
+                .setDataSinkTimeoutNanos(TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @Test
+    public void testAsyncDispatch() throws Exception {
+        final NSysMonImpl sysMon = new NSysMonImpl(configBuilder.build());
+        final ThreadRecordingDataSink asyncSink = new ThreadRecordingDataSink(false);
+        final ThreadRecordingDataSink syncSink = new ThreadRecordingDataSink(true);
+        NSysMonConfigurer.addDataSink(sysMon, asyncSink);
+        NSysMonConfigurer.addDataSink(sysMon, syncSink);
+
+        sysMon.start("a").finish();
+        sysMon.start("b").finish();
+
+        assertEquals(2, syncSink.threads.size());
+        for(Thread t: syncSink.threads) {
+            assertSame(Thread.currentThread(), t);
+        }
+
+        sysMon.shutdown();
+
+        assertEquals(2, asyncSink.threads.size());
+        for(Thread t: asyncSink.threads) {
+            assertNotSame(Thread.currentThread(), t);
+        }
+        assertEquals("a", asyncSink.identifiers.get(0));
+        assertEquals("b", asyncSink.identifiers.get(1));
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        checkOverflow(ADispatchOverflowPolicy.DROP_NEWEST, "0", "1", "2");
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        checkOverflow(ADispatchOverflowPolicy.DROP_OLDEST, "0", "3", "4");
+    }
+
+    private void checkOverflow(ADispatchOverflowPolicy policy, String... expectedIdentifiers) throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final ThreadRecordingDataSink sink = new ThreadRecordingDataSink(false) {
+            @Override public void onFinishedHierarchicalMeasurement(AHierarchicalDataRoot data) {
+                super.onFinishedHierarchicalMeasurement(data);
+                started.countDown();
+                try {
+                    proceed.await();
+                }
+                catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        final List<RobustDataSinkWrapper> handlers = Collections.singletonList(new RobustDataSinkWrapper(sink, Long.MAX_VALUE, 1));
+        final AsyncDataSinkDispatcher dispatcher = new AsyncDataSinkDispatcher(() -> handlers, 2, 1, policy);
+
+        // the first item is taken from the queue right away and blocks the consumer thread
+        dispatcher.dispatch(root("0"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // the queue has room for exactly two of the remaining items
+        dispatcher.dispatch(root("1"));
+        dispatcher.dispatch(root("2"));
+        dispatcher.dispatch(root("3"));
+        dispatcher.dispatch(root("4"));
+        assertEquals(2, dispatcher.getQueueSize());
+        assertEquals(2, dispatcher.getNumDropped());
+
+        proceed.countDown();
+        dispatcher.shutdown();
+
+        assertEquals(expectedIdentifiers.length, sink.identifiers.size());
+        for(int i=0; i<expectedIdentifiers.length; i++) {
+            assertEquals(expectedIdentifiers[i], sink.identifiers.get(i));
+        }
+    }
+
+    @Test
+    public void testDispatchAfterShutdown() throws Exception {
+        final ThreadRecordingDataSink sink = new ThreadRecordingDataSink(false);
+        final List<RobustDataSinkWrapper> handlers = Collections.singletonList(new RobustDataSinkWrapper(sink, Long.MAX_VALUE, 1));
+
+        for(ADispatchOverflowPolicy policy: ADispatchOverflowPolicy.values()) {
+            final AsyncDataSinkDispatcher dispatcher = new AsyncDataSinkDispatcher(() -> handlers, 10, 1, policy);
+            dispatcher.shutdown();
+
+            dispatcher.dispatch(root("a"));
+            assertEquals(0, dispatcher.getNumQueued());
+            assertEquals(1, dispatcher.getNumDropped());
+            assertEquals(0, dispatcher.getQueueSize());
+        }
+        assertTrue(sink.identifiers.isEmpty());
+    }
+
+    @Test
+    public void testDispatchConcurrentlyWithShutdown() throws Exception {
+        final ThreadRecordingDataSink sink = new ThreadRecordingDataSink(false);
+        final List<RobustDataSinkWrapper> handlers = Collections.singletonList(new RobustDataSinkWrapper(sink, Long.MAX_VALUE, 1));
+
+        for(int run=0; run<20; run++) {
+            sink.identifiers.clear();
+            final AsyncDataSinkDispatcher dispatcher = new AsyncDataSinkDispatcher(() -> handlers, 1000, 2, ADispatchOverflowPolicy.DROP_NEWEST);
+
+            final AtomicInteger numDispatched = new AtomicInteger();
+            final AtomicBoolean isDone = new AtomicBoolean();
+            final Thread[] producers = new Thread[4];
+            for(int i=0; i<producers.length; i++) {
+                producers[i] = new Thread(() -> {
+                    while(! isDone.get()) {
+                        dispatcher.dispatch(root("a"));
+                        numDispatched.incrementAndGet();
+                    }
+                });
+                producers[i].start();
+            }
+
+            Thread.sleep(5);
+            dispatcher.shutdown();
+            isDone.set(true);
+            for(Thread producer: producers) {
+                producer.join();
+            }
+
+            // every measurement was either passed on or counted as dropped
+            assertEquals(numDispatched.get(), sink.identifiers.size() + dispatcher.getNumDropped());
+            assertEquals(0, dispatcher.getQueueSize());
+        }
+    }
+
+    private static AHierarchicalDataRoot root(String identifier) {
+        return new AHierarchicalDataRoot(new AHierarchicalData(true, 0, 0, identifier, Collections.emptyMap(), Collections.emptyList(), false), Collections.emptyList(), Collections.emptyList());
+    }
+
+    private static class ThreadRecordingDataSink implements ADataSink {
+        final List<Thread> threads = new CopyOnWriteArrayList<>();
+        final List<String> identifiers = new CopyOnWriteArrayList<>();
+        private final boolean synchronous;
+
+        ThreadRecordingDataSink(boolean synchronous) {
+            this.synchronous = synchronous;
+        }
+
+        @Override public void onStartedHierarchicalMeasurement(String identifier) {
+        }
+
+        @Override public void onFinishedHierarchicalMeasurement(AHierarchicalDataRoot data) {
+            if("Garbage Collection".equals(data.getRootNode().getIdentifier())) {
+                return;
+            }
+            threads.add(Thread.currentThread());
+            identifiers.add(data.getRootNode().getIdentifier());
+        }
+
+        @Override public boolean requiresSynchronousDispatch() {
+            return synchronous;
+        }
+
+        @Override public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.nsysmon.impl;
+
+import com.ajjpj.afoundation.collection.immutable.AList;
+import com.ajjpj.afoundation.collection.immutable.AOption;
+import com.nsysmon.data.AScalarDataPoint;
+import com.nsysmon.measure.scalar.AScalarMeasurer;
+import com.nsysmon.measure.scalar.ScalarMeasurerStatus;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ParallelScalarMeasurerExecutorTest {
+    private final ParallelScalarMeasurerExecutor executor = new ParallelScalarMeasurerExecutor(2, 200);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void after() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testHangingMeasurer() throws Exception {
+        final HangingMeasurer hangingMeasurer = new HangingMeasurer();
+        final RobustScalarMeasurerWrapper hanging = new RobustScalarMeasurerWrapper(hangingMeasurer, TimeUnit.SECONDS.toNanos(10), 3);
+        final RobustScalarMeasurerWrapper a = new RobustScalarMeasurerWrapper(new ConstantMeasurer("a"), TimeUnit.SECONDS.toNanos(10), 3);
+        final RobustScalarMeasurerWrapper b = new RobustScalarMeasurerWrapper(new ConstantMeasurer("b"), TimeUnit.SECONDS.toNanos(10), 3);
+        final AList<RobustScalarMeasurerWrapper> measurers = AList.create(hanging, a, b);
+
+        long start = System.nanoTime();
+        Map<String, AScalarDataPoint> data = executor.contribute(measurers, 1000, new ConcurrentHashMap<>());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+        assertEquals(2, data.size());
+        assertEquals(1, data.get("a").getValueRaw());
+        assertEquals(1, data.get("b").getValueRaw());
+
+        assertEquals(ScalarMeasurerStatus.Status.TIMED_OUT, hanging.getStatus("x").getStatus());
+        assertEquals(ScalarMeasurerStatus.Status.RUNNING, a.getStatus("a").getStatus());
+
+        // the measurer still hangs, so it is not called again
+        start = System.nanoTime();
+        data = executor.contribute(measurers, 2000, new ConcurrentHashMap<>());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+        assertEquals(2, data.size());
+        assertEquals(1, hangingMeasurer.numCalls.get());
+
+        // the measurer recovers once it finishes in time again
+        release.countDown();
+        Thread.sleep(100);
+        data = executor.contribute(measurers, 3000, new ConcurrentHashMap<>());
+        assertEquals(3, data.size());
+        assertEquals(2, hangingMeasurer.numCalls.get());
+        assertEquals(ScalarMeasurerStatus.Status.RUNNING, hanging.getStatus("x").getStatus());
+    }
+
+    @Test
+    public void testPrepare() throws Exception {
+        final RobustScalarMeasurerWrapper hanging = new RobustScalarMeasurerWrapper(new HangingMeasurer(), TimeUnit.SECONDS.toNanos(10), 3);
+        final RobustScalarMeasurerWrapper a = new RobustScalarMeasurerWrapper(new ConstantMeasurer("a"), TimeUnit.SECONDS.toNanos(10), 3);
+
+        final Map<String, Object> mementos = new ConcurrentHashMap<>();
+        assertEquals(Collections.singleton(a), executor.prepare(AList.create(hanging, a), mementos));
+        assertEquals(1, mementos.get("a"));
+    }
+
+    private class HangingMeasurer implements AScalarMeasurer {
+        final AtomicInteger numCalls = new AtomicInteger();
+
+        @Override public void prepareMeasurements(Map<String, Object> mementos) throws Exception {
+            numCalls.incrementAndGet();
+            release.await();
+        }
+
+        @Override public void contributeMeasurements(Map<String, AScalarDataPoint> data, long timestamp, Map<String, Object> mementos) throws Exception {
+            numCalls.incrementAndGet();
+            release.await();
+            data.put("x", new AScalarDataPoint(timestamp, "x", 1, 0));
+        }
+
+        @Override public boolean isResponsibleForMeasurement(String key) {
+            return "x".equals(key);
+        }
+
+        @Override public AOption<Long> getTimeoutInMilliSeconds() {
+            return AOption.none();
+        }
+
+        @Override public void shutdown() {
+        }
+    }
+
+    private static class ConstantMeasurer implements AScalarMeasurer {
+        private final String name;
+
+        ConstantMeasurer(String name) {
+            this.name = name;
+        }
+
+        @Override public void prepareMeasurements(Map<String, Object> mementos) {
+            mementos.put(name, 1);
+        }
+
+        @Override public void contributeMeasurements(Map<String, AScalarDataPoint> data, long timestamp, Map<String, Object> mementos) {
+            data.put(name, new AScalarDataPoint(timestamp, name, 1, 0));
+        }
+
+        @Override public boolean isResponsibleForMeasurement(String key) {
+            return name.equals(key);
+        }
+
+        @Override public AOption<Long> getTimeoutInMilliSeconds() {
+            return AOption.none();
+        }
+
+        @Override public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.nsysmon.impl;
+
+import com.ajjpj.afoundation.collection.immutable.AList;
+import com.ajjpj.afoundation.collection.immutable.AOption;
+import com.nsysmon.data.AScalarDataPoint;
+import com.nsysmon.measure.scalar.AScalarMeasurer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ScalarSamplerTest {
+    private final CountingMeasurer measurer = new CountingMeasurer();
+    private volatile AList<RobustScalarMeasurerWrapper> measurers = AList.create(new RobustScalarMeasurerWrapper(measurer, TimeUnit.SECONDS.toNanos(10), 3));
+    private final ParallelScalarMeasurerExecutor executor = new ParallelScalarMeasurerExecutor(2, 500);
+    private final ScalarSampler sampler = new ScalarSampler(() -> measurers, executor, 100, 1000);
+
+    @After
+    public void after() {
+        sampler.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSharedSnapshot() throws Exception {
+        final long start = System.currentTimeMillis();
+        final Map<String, AScalarDataPoint> first = sampler.get();
+        assertTrue(System.currentTimeMillis() - start >= 100);
+        assertEquals(1, first.size());
+
+        // the memento of the previous cycle is passed to the measurer
+        assertTrue(first.get("counter").getValueRaw() > 0);
+
+        final List<Thread> threads = new ArrayList<>();
+        final AtomicInteger numFast = new AtomicInteger();
+        for (int i=0; i<10; i++) {
+            threads.add(new Thread(() -> {
+                final long before = System.nanoTime();
+                if (! sampler.get().isEmpty() && System.nanoTime() - before < TimeUnit.MILLISECONDS.toNanos(50)) {
+                    numFast.incrementAndGet();
+                }
+            }));
+        }
+        final int numContributionsBefore = measurer.numContributions.get();
+        for (Thread t: threads) {
+            t.start();
+        }
+        for (Thread t: threads) {
+            t.join();
+        }
+        assertEquals(10, numFast.get());
+        assertTrue(measurer.numContributions.get() - numContributionsBefore <= 1);
+
+        // the sampler keeps running while there are requests
+        Thread.sleep(500);
+        assertTrue(measurer.numContributions.get() >= 4);
+        assertNotSame(first, sampler.get());
+    }
+
+    @Test
+    public void testAddedMeasurer() throws Exception {
+        sampler.get();
+        final CountingMeasurer added = new CountingMeasurer();
+        measurers = measurers.cons(new RobustScalarMeasurerWrapper(added, TimeUnit.SECONDS.toNanos(10), 3));
+
+        Thread.sleep(300);
+        sampler.get();
+        assertTrue(added.numContributions.get() > 0);
+        assertTrue(added.numPreparations.get() > added.numContributions.get());
+    }
+
+    private static class CountingMeasurer implements AScalarMeasurer {
+        final AtomicInteger numPreparations = new AtomicInteger();
+        final AtomicInteger numContributions = new AtomicInteger();
+
+        @Override public void prepareMeasurements(Map<String, Object> mementos) {
+            mementos.put("prepared", numPreparations.incrementAndGet());
+        }
+
+        @Override public void contributeMeasurements(Map<String, AScalarDataPoint> data, long timestamp, Map<String, Object> mementos) {
+            numContributions.incrementAndGet();
+            // fails with an NPE if there is no memento, disabling the measurer
+            final int prepared = (Integer) mementos.get("prepared");
+            data.put("counter", new AScalarDataPoint(timestamp, "counter", prepared, 0));
+        }
+
+        @Override public AOption<Long> getTimeoutInMilliSeconds() {
+            return AOption.none();
+        }
+
+        @Override public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.nsysmon.impl;
+
+import com.ajjpj.afoundation.collection.immutable.AList;
+import com.ajjpj.afoundation.collection.immutable.AOption;
+import com.nsysmon.data.AScalarDataPoint;
+import com.nsysmon.data.ATimedScalarSeries;
+import com.nsysmon.measure.scalar.AScalarMeasurer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class TimedScalarDataWrapperTest {
+    private final TimedScalarDataWrapper timedScalars = new TimedScalarDataWrapper(1000, 10, 60_000, Collections.singletonMap("ConfiguredMeasurer", 3));
+
+    @After
+    public void after() {
+        timedScalars.shutdown();
+    }
+
+    private static RobustScalarMeasurerWrapper wrap(AScalarMeasurer m) {
+        return new RobustScalarMeasurerWrapper(m, TimeUnit.SECONDS.toNanos(10), 3);
+    }
+
+    @Test
+    public void testIntervals() {
+        assertEquals(60_000, timedScalars.getIntervalMillis(wrap(new CountingMeasurer("a", AOption.none(), 0))));
+        assertEquals(20, timedScalars.getIntervalMillis(wrap(new CountingMeasurer("a", AOption.some(20L), 0))));
+        assertEquals(3000, timedScalars.getIntervalMillis(wrap(new ConfiguredMeasurer())));
+    }
+
+    @Test
+    public void testSlowMeasurerDoesNotDelayOthers() throws Exception {
+        final CountingMeasurer fast = new CountingMeasurer("fast", AOption.some(10L), 0);
+        final CountingMeasurer slow = new CountingMeasurer("slow", AOption.some(10L), 300);
+        timedScalars.refreshMeasurers(AList.create(wrap(fast), wrap(slow)));
+
+        Thread.sleep(1000);
+
+        // the slow measurer blocks the scheduler thread only once
+        assertTrue(fast.numContributions.get() > 30);
+        assertTrue(slow.numContributions.get() >= 2);
+        assertTrue(slow.numContributions.get() < 10);
+
+        // every contribution is followed by a preparation for the next interval
+        assertEquals(fast.numContributions.get() + 1, fast.numPreparations.get(), 1);
+
+        final Map<String, ATimedScalarSeries> measurements = timedScalars.getMeasurements();
+        assertEquals(2, measurements.size());
+        assertEquals(fast.numContributions.get(), measurements.get("fast").size(), 1);
+        assertEquals(10, timedScalars.getMeasurementsForMonitoring().get("fast").size());
+    }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        final List<Thread> threads = new ArrayList<>();
+        for(int t=0; t<4; t++) {
+            final String name = "scalar-" + (t % 2);
+            threads.add(new Thread(() -> {
+                for(int i=0; i<10_000; i++) {
+                    timedScalars.addMeasurement(new AScalarDataPoint(i, name, i, 0));
+                }
+            }));
+        }
+        for(Thread t: threads) {
+            t.start();
+        }
+
+        // read concurrently
+        while(threads.get(0).isAlive()) {
+            for(ATimedScalarSeries series: timedScalars.getMeasurements().values()) {
+                assertTrue(series.samples().size() <= 1000);
+            }
+        }
+        for(Thread t: threads) {
+            t.join();
+        }
+
+        assertEquals(2, timedScalars.getMeasurements().size());
+        assertEquals(1000, timedScalars.getMeasurements().get("scalar-0").size());
+        assertEquals(10, timedScalars.getMeasurementsForMonitoring().get("scalar-1").size());
+    }
+
+    private static class CountingMeasurer implements AScalarMeasurer {
+        final String name;
+        final AOption<Long> interval;
+        final long durationMillis;
+
+        final AtomicInteger numPreparations = new AtomicInteger();
+        final AtomicInteger numContributions = new AtomicInteger();
+
+        CountingMeasurer(String name, AOption<Long> interval, long durationMillis) {
+            this.name = name;
+            this.interval = interval;
+            this.durationMillis = durationMillis;
+        }
+
+        @Override public void prepareMeasurements(Map<String, Object> mementos) {
+            numPreparations.incrementAndGet();
+        }
+
+        @Override public void contributeMeasurements(Map<String, AScalarDataPoint> data, long timestamp, Map<String, Object> mementos) throws Exception {
+            Thread.sleep(durationMillis);
+            data.put(name, new AScalarDataPoint(timestamp, name, numContributions.incrementAndGet(), 0));
+        }
+
+        @Override public AOption<Long> getTimeoutInMilliSeconds() {
+            return AOption.none();
+        }
+
+        @Override public AOption<Long> getSamplingIntervalInMilliSeconds() {
+            return interval;
+        }
+
+        @Override public void shutdown() {
+        }
+    }
+
+    private static class ConfiguredMeasurer extends CountingMeasurer {
+        ConfiguredMeasurer() {
+            super("configured", AOption.some(20L), 0);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.nsysmon.measure;
+
+import com.nsysmon.NSysMonApi;
+import com.nsysmon.config.NSysMonConfigBuilder;
+import com.nsysmon.config.appinfo.ADefaultApplicationInfoProvider;
+import com.nsysmon.data.AHierarchicalData;
+import com.nsysmon.datasink.ADataSink;
+import com.nsysmon.impl.NSysMonConfigurer;
+import com.nsysmon.impl.NSysMonImpl;
+import com.nsysmon.testutil.CollectingDataSink;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class AEventBufferMeasurementHierarchyTest {
+    private NSysMonConfigBuilder configBuilder;
+
+    @Before public void before() throws UnknownHostException {
+        configBuilder = new NSysMonConfigBuilder(new ADefaultApplicationInfoProvider("dummy", "version"))
+                .setDataSinkTimeoutNanos(TimeUnit.SECONDS.toNanos(10));
+    }
+
+    private NSysMonApi createSysMon(boolean eventBuffer, ADataSink dataSink) {
+        configBuilder.setRecordMeasurementsInEventBuffer(eventBuffer);
+        final NSysMonApi result = new NSysMonImpl(configBuilder.build());
+        NSysMonConfigurer.addDataSink(result, dataSink);
+        return result;
+    }
+
+    private static void performMeasurement(NSysMonApi sysMon) {
+        sysMon.measure("root", m -> {
+            m.addParameter("p1", "v1");
+            m.addParameter("p2", "v2");
+
+            final ASimpleMeasurement parallel = sysMon.start("parallel", false);
+
+            sysMon.measure("a", m1 -> {
+                sysMon.measure("a1", m2 -> {});
+                final ACollectingMeasurement collecting = sysMon.startCollectingMeasurement("collecting");
+                collecting.addParameter("q", "x");
+                collecting.addDetailMeasurement("d1", 10);
+                collecting.addDetailMeasurement("d2", 20);
+                collecting.finish();
+                sysMon.measure("a2", m2 -> {
+                    m2.addParameter("p", "a2");
+                });
+            });
+
+            parallel.addParameter("pp", "parallel");
+            parallel.finish();
+
+            sysMon.measure("b", m1 -> {
+                // this collecting measurement is finished implicitly when the hierarchy is finished
+                sysMon.startCollectingMeasurement("unfinished-collecting").addDetailMeasurement("x", 5);
+            });
+        });
+    }
+
+    private static void assertSameStructure(AHierarchicalData expected, AHierarchicalData actual) {
+        assertEquals(expected.getIdentifier(), actual.getIdentifier());
+        assertEquals(expected.isSerial(), actual.isSerial());
+        assertEquals(expected.isWasKilled(), actual.isWasKilled());
+        assertEquals(expected.getParameters(), actual.getParameters());
+        assertEquals(expected.getChildren().size(), actual.getChildren().size());
+        for(int i=0; i<expected.getChildren().size(); i++) {
+            assertSameStructure(expected.getChildren().get(i), actual.getChildren().get(i));
+        }
+    }
+
+    @Test public void testSameTreeAsObjectHierarchy() {
+        final CollectingDataSink objectSink = new CollectingDataSink();
+        final CollectingDataSink bufferSink = new CollectingDataSink();
+
+        performMeasurement(createSysMon(false, objectSink));
+        performMeasurement(createSysMon(true, bufferSink));
+
+        assertEquals(1, objectSink.data.size());
+        assertEquals(1, bufferSink.data.size());
+        assertEquals(1, bufferSink.numStarted);
+
+        final AHierarchicalData root = bufferSink.data.get(0).getRootNode();
+        assertSameStructure(objectSink.data.get(0).getRootNode(), root);
+
+        assertEquals("root", root.getIdentifier());
+        assertEquals(3, root.getChildren().size());
+        assertEquals("parallel", root.getChildren().get(1).getIdentifier());
+        assertEquals("v1", root.getParameters().get("p1"));
+        assertTrue(root.getDurationNanos() >= root.getChildren().get(0).getDurationNanos());
+    }
+
+    @Test public void testBufferReuse() {
+        final CollectingDataSink dataSink = new CollectingDataSink();
+        final NSysMonApi sysMon = createSysMon(true, dataSink);
+
+        sysMon.measure("first", m -> {
+            m.addParameter("p", "first");
+            sysMon.measure("first-child", m1 -> {});
+        });
+        sysMon.measure("second", m -> {
+            sysMon.measure("second-child-1", m1 -> {});
+            sysMon.measure("second-child-2", m1 -> {});
+        });
+
+        assertFalse(sysMon.hasRunningMeasurement());
+        assertEquals(2, dataSink.data.size());
+
+        // the first tree is created after the buffer was reused for the second hierarchy
+        final AHierarchicalData first = dataSink.data.get(0).getRootNode();
+        assertEquals("first", first.getIdentifier());
+        assertEquals("first", first.getParameters().get("p"));
+        assertEquals(1, first.getChildren().size());
+        assertEquals("first-child", first.getChildren().get(0).getIdentifier());
+
+        final AHierarchicalData second = dataSink.data.get(1).getRootNode();
+        assertEquals("second", second.getIdentifier());
+        assertTrue(second.getParameters().isEmpty());
+        assertEquals(2, second.getChildren().size());
+    }
+
+    @Test public void testStaleHandle() {
+        final CollectingDataSink dataSink = new CollectingDataSink();
+        final NSysMonApi sysMon = createSysMon(true, dataSink);
+
+        final ASimpleMeasurement first = sysMon.start("first");
+        first.finish();
+
+        // the second hierarchy reuses the buffer, and its root has the same node index as the first one's
+        final ASimpleMeasurement second = sysMon.start("second");
+        first.finish();
+        first.addParameter("p", "stale");
+        assertTrue(sysMon.hasRunningMeasurement());
+
+        second.finish();
+        assertFalse(sysMon.hasRunningMeasurement());
+        assertEquals(2, dataSink.data.size());
+
+        final AHierarchicalData root = dataSink.data.get(1).getRootNode();
+        assertEquals("second", root.getIdentifier());
+        assertTrue(root.getParameters().isEmpty());
+    }
+
+    @Test public void testUnrollStack() {
+        final CollectingDataSink dataSink = new CollectingDataSink();
+        final NSysMonApi sysMon = createSysMon(true, dataSink);
+
+        final ASimpleMeasurement outer = sysMon.start("outer");
+        sysMon.start("middle");
+        sysMon.start("inner");
+        outer.finish();
+
+        assertFalse(sysMon.hasRunningMeasurement());
+        assertEquals(1, dataSink.data.size());
+
+        final AHierarchicalData root = dataSink.data.get(0).getRootNode();
+        assertEquals("outer", root.getIdentifier());
+        assertEquals("middle", root.getChildren().get(0).getIdentifier());
+        assertEquals("inner", root.getChildren().get(0).getChildren().get(0).getIdentifier());
+    }
+
+    @Test public void testKilledDueSize() {
+        final CollectingDataSink dataSink = new CollectingDataSink();
+        configBuilder.setMaxNumMeasurementsPerHierarchy(10);
+        final NSysMonApi sysMon = createSysMon(true, dataSink);
+
+        sysMon.measure("root", m -> {
+            for(int i=0; i<20; i++) {
+                sysMon.measure("child-" + i, m1 -> {
+                    sysMon.measure("grandchild", m2 -> {});
+                });
+            }
+        });
+
+        assertFalse(sysMon.hasRunningMeasurement());
+        assertEquals(1, dataSink.numStarted);
+        assertEquals(1, dataSink.data.size());
+        assertTrue(dataSink.data.get(0).isKilled());
+        assertTrue(dataSink.data.get(0).getRootNode().isWasKilled());
+    }
+
+    /**
+     * On JDK 17 this reports about 355 bytes per measurement with objects and about 80 bytes with the event buffer. The
+     *  latter are the measurement handle and the per-hierarchy snapshot copy.
+     */
+    @Test @Ignore
+    public void testAllocationsPerMeasurement() {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if(! (threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("allocation counting is not supported by this JVM");
+            return;
+        }
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+
+        // a data sink that does not ask for the tree of measurements
+        final ADataSink ignoringDataSink = new ADataSink() {
+            @Override public void onStartedHierarchicalMeasurement(String identifier) {
+            }
+            @Override public void onFinishedHierarchicalMeasurement(com.nsysmon.data.AHierarchicalDataRoot data) {
+            }
+            @Override public void shutdown() {
+            }
+        };
+
+        final int NUM_HIERARCHIES = 10_000;
+        final int NUM_CHILDREN = 100;
+
+        for(boolean eventBuffer: new boolean[] {false, true, false, true}) {
+            final NSysMonApi sysMon = createSysMon(eventBuffer, ignoringDataSink);
+
+            final long startBytes = allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+            final long startNanos = System.nanoTime();
+            for(int i=0; i<NUM_HIERARCHIES; i++) {
+                final ASimpleMeasurement root = sysMon.start("root");
+                for(int j=0; j<NUM_CHILDREN; j++) {
+                    final ASimpleMeasurement child = sysMon.start("child");
+                    child.addParameter("p", "v");
+                    child.finish();
+                }
+                root.finish();
+            }
+            final long durationNanos = System.nanoTime() - startNanos;
+            final long bytes = allocations.getThreadAllocatedBytes(Thread.currentThread().getId()) - startBytes;
+
+            final int numMeasurements = NUM_HIERARCHIES * (NUM_CHILDREN + 1);
+            System.out.println((eventBuffer ? "event buffer: " : "objects:      ") + bytes / numMeasurements + " bytes / " + durationNanos / numMeasurements + "ns per measurement");
+        }
+    }
+}
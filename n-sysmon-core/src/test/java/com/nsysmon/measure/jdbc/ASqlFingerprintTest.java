@@ -0,0 +1,81 @@
+package com.nsysmon.measure.jdbc;
+
+import com.nsysmon.config.NSysMonConfigBuilder;
+import com.nsysmon.config.appinfo.ADefaultApplicationInfoProvider;
+import org.junit.Test;
+
+import java.net.UnknownHostException;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ASqlFingerprintTest {
+    @Test
+    public void testLiterals() {
+        assertEquals("select * from A where x=? and y = ?", ASqlFingerprint.fingerprint("select * from A where x=1 and y = 'abc'"));
+        assertEquals("select * from A where x=? and y=?", ASqlFingerprint.fingerprint("select * from A where x='it''s' and y=N'x'"));
+        assertEquals("select ?, ?, -?, ? from dual", ASqlFingerprint.fingerprint("select 1.5, 2e-3, -7, 0x1F from dual"));
+        assertEquals("insert into A (oid) values (?)", ASqlFingerprint.fingerprint("insert into A (oid) values (1)"));
+    }
+
+    @Test
+    public void testBackslashEscapes() {
+        // standard SQL: the backslash is an ordinary character, so the literal ends right after it
+        assertEquals("select * from A where x=? and y=?", ASqlFingerprint.fingerprint("select * from A where x='C:\\' and y=1"));
+        assertEquals("select * from A where x=? and y=?", ASqlFingerprint.fingerprint("select * from A where x='it\\''s' and y=1", false));
+
+        // dialects with backslash escapes
+        assertEquals("select * from A where x=? and y=?", ASqlFingerprint.fingerprint("select * from A where x='it\\'s' and y=1", true));
+        assertEquals("select * from A where x in (?)", ASqlFingerprint.fingerprint("select * from A where x in ('a\\'b', 'c')", true));
+
+        // escape string literals always use backslash escapes
+        assertEquals("select * from A where x=? and y=?", ASqlFingerprint.fingerprint("select * from A where x=E'it\\'s' and y=1"));
+    }
+
+    @Test
+    public void testIdentWithoutFingerprint() throws UnknownHostException {
+        final NSysMonConfigBuilder builder = new NSysMonConfigBuilder(new ADefaultApplicationInfoProvider("dummy", "version"));
+        assertEquals("jdbc: select ? from dual", NSysMonStatement.ident(builder.build(), "select 1 from dual"));
+
+        builder.setFingerprintSql(false);
+        assertEquals("jdbc: select 1 from dual", NSysMonStatement.ident(builder.build(), "select 1 from dual"));
+    }
+
+    @Test
+    public void testIdentifiersAreKept() {
+        assertEquals("select t1.col2, \"Quoted 1\" from table_3 t1 where t1.x = ?", ASqlFingerprint.fingerprint("select t1.col2, \"Quoted 1\" from table_3 t1 where t1.x = ?"));
+        assertEquals("select $1, :name from A", ASqlFingerprint.fingerprint("select $1, :name from A"));
+    }
+
+    @Test
+    public void testWhitespaceAndComments() {
+        assertEquals("select * from A where x = ?", ASqlFingerprint.fingerprint("  select *\n\tfrom A -- comment\n where /* another\ncomment */ x =  5  "));
+    }
+
+    @Test
+    public void testInLists() {
+        assertEquals("select * from A where x in (?)", ASqlFingerprint.fingerprint("select * from A where x in (1, 2, 3)"));
+        assertEquals("select * from A where x IN (?) and y not in(?)", ASqlFingerprint.fingerprint("select * from A where x IN ( 'a','b' ) and y not in(?, ?, ?)"));
+        assertEquals("select * from A where x in (select y from B)", ASqlFingerprint.fingerprint("select * from A where x in (select y from B)"));
+        assertEquals("select min (?) from A", ASqlFingerprint.fingerprint("select min (1) from A"));
+    }
+
+    @Test
+    public void testCache() {
+        final ASqlFingerprint cache = new ASqlFingerprint(4, false);
+
+        final String ident = cache.cachedIdent("select 1 from dual");
+        assertEquals("jdbc: select ? from dual", ident);
+        assertSame(ident, cache.cachedIdent("select 1 from dual"));
+
+        for(int i=0; i<100; i++) {
+            cache.cachedIdent("select " + i + " from A");
+            // used repeatedly, so it survives generation changes
+            assertSame(ident, cache.cachedIdent("select 1 from dual"));
+            assertTrue(cache.size() <= 4);
+        }
+    }
+}
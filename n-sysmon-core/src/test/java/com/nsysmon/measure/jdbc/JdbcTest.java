@@ -41,7 +41,7 @@ public class JdbcTest {
         // meaurement of 'select' statement was discarded --> top-level collecting measurement
         assertEquals(2, dataSink.data.size());
         assertEquals("jdbc: create table A (oid number primary key)", dataSink.data.get(0).getRootNode().getIdentifier());
-        assertEquals("jdbc: insert into A (oid) values (1)", dataSink.data.get(1).getRootNode().getIdentifier());
+        assertEquals("jdbc: insert into A (oid) values (?)", dataSink.data.get(1).getRootNode().getIdentifier());
     }
 
     @Test
@@ -68,7 +68,7 @@ public class JdbcTest {
         assertEquals (3, root.getChildren ().size ());
 
         assertEquals ("jdbc: create table A (oid number primary key)", root.getChildren ().get (0).getIdentifier ());
-        assertEquals ("jdbc: insert into A (oid) values (1)",          root.getChildren ().get (1).getIdentifier ());
+        assertEquals ("jdbc: insert into A (oid) values (?)",          root.getChildren ().get (1).getIdentifier ());
 
         assertEquals ("jdbc: select * from A",                         root.getChildren ().get (2).getIdentifier ());
     }
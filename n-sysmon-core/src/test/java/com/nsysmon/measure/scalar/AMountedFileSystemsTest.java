@@ -0,0 +1,96 @@
+package com.nsysmon.measure.scalar;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class AMountedFileSystemsTest {
+    static final String MOUNTINFO =
+            "23 28 0:22 / /proc rw,relatime - proc proc rw\n" +
+            "25 28 0:6 / /dev rw,relatime - devtmpfs devtmpfs rw,size=3071996k,mode=755\n" +
+            "28 1 253:0 / / rw,relatime shared:1 - ext4 /dev/mapper/vg-root rw,errors=remount-ro\n" +
+            "30 28 8:1 /data /srv/bind rw,relatime shared:5 master:2 - ext4 /dev/sda1 rw\n" +
+            "31 28 8:1 / /mnt/my\\040disk rw,relatime - ext4 /dev/sda1 rw\n" +
+            "32 28 8:1 / /mnt/other rw,relatime - ext4 /dev/sda1 rw\n" +
+            "33 28 0:40 / /mnt/nfs rw,relatime - nfs4 server:/export rw\n";
+
+    @Test
+    public void testParseMounts() {
+        final List<AMountedFileSystems.Mount> mounts = AMountedFileSystems.parseMounts(AProcFileReader.forContent(MOUNTINFO));
+        assertEquals(2, mounts.size());
+
+        assertEquals("mapper/vg-root", mounts.get(0).device);
+        assertEquals("/", mounts.get(0).mountPoint);
+        assertEquals("ext4", mounts.get(0).fsType);
+
+        // the root of the file system is preferred over a bind mount, and the first mount wins otherwise
+        assertEquals("sda1", mounts.get(1).device);
+        assertEquals("/mnt/my disk", mounts.get(1).mountPoint);
+    }
+
+    @Test
+    public void testUnescape() {
+        assertEquals("/a b\tc\\d", AMountedFileSystems.unescape("/a\\040b\\011c\\134d"));
+        assertEquals("/a\\x", AMountedFileSystems.unescape("/a\\x"));
+        assertEquals("/a\\04", AMountedFileSystems.unescape("/a\\04"));
+    }
+
+    @Test
+    public void testUsageAndTtl() throws Exception {
+        final File mountPoint = Files.createTempDirectory("mnt").toFile();
+        mountPoint.deleteOnExit();
+        final File mountInfo = File.createTempFile("mountinfo", ".txt");
+        mountInfo.deleteOnExit();
+        write(mountInfo, "40 28 8:2 / " + mountPoint.getPath() + " rw - ext4 /dev/test1 rw\n");
+
+        final AMountedFileSystems fileSystems = new AMountedFileSystems(mountInfo.getPath(), 200, 1000);
+        try {
+            final List<AMountedFileSystems.Usage> usage = fileSystems.getUsage();
+            assertEquals(1, usage.size());
+            assertEquals("test1", usage.get(0).mount.device);
+            assertTrue(usage.get(0).totalBytes > 0);
+            assertTrue(usage.get(0).usedBytes + usage.get(0).availableBytes <= usage.get(0).totalBytes);
+
+            // cached within the TTL
+            write(mountInfo, "");
+            assertSame(usage, fileSystems.getUsage());
+            assertEquals(1, fileSystems.getMounts().size());
+
+            Thread.sleep(250);
+            assertEquals(0, fileSystems.getMounts().size());
+            assertEquals(0, fileSystems.getUsage().size());
+        }
+        finally {
+            fileSystems.shutdown();
+        }
+    }
+
+    @Test
+    public void testUnavailableMount() throws Exception {
+        final File mountInfo = File.createTempFile("mountinfo", ".txt");
+        mountInfo.deleteOnExit();
+        write(mountInfo, "40 28 8:2 / /does/not/exist rw - ext4 /dev/test1 rw\n");
+
+        final AMountedFileSystems fileSystems = new AMountedFileSystems(mountInfo.getPath(), 200, 1000);
+        try {
+            assertEquals(1, fileSystems.getMounts().size());
+            assertEquals(0, fileSystems.getUsage().size());
+        }
+        finally {
+            fileSystems.shutdown();
+        }
+    }
+
+    private static void write(File f, String content) throws Exception {
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
@@ -2,8 +2,6 @@ package com.nsysmon.measure.scalar;
 
 import org.junit.Test;
 
-import java.util.Arrays;
-
 import static org.junit.Assert.*;
 
 /**
@@ -87,31 +85,31 @@ public class AProcDiskstatsMeasurerTest {
 
     @Test
     public void testSnapshot1() throws Exception {
-        final AProcDiskstatsMeasurer.Snapshot snapshot = AProcDiskstatsMeasurer.createSnapshot(Arrays.asList(DISKSTATS_1.split("\n")));
-        assertEquals(31, snapshot.iosInProgress.size());
+        final AProcDiskstatsMeasurer.Snapshot snapshot = AProcDiskstatsMeasurer.createSnapshot(AProcFileReader.forContent(DISKSTATS_1));
+        assertEquals(31, snapshot.size);
 
-        assertEquals(2482424, (long) snapshot.sectorsRead.get("sda"));
-        assertEquals(1390166, (long) snapshot.sectorsRead.get("sda1"));
+        assertEquals(2482424, snapshot.sectorsRead[snapshot.indexOf("sda", 0)]);
+        assertEquals(1390166, snapshot.sectorsRead[snapshot.indexOf("sda1", 0)]);
 
-        assertEquals(3117160, (long) snapshot.sectorsWritten.get("sda"));
-        assertEquals(2025488, (long) snapshot.sectorsWritten.get("sda1"));
+        assertEquals(3117160, snapshot.sectorsWritten[snapshot.indexOf("sda", 0)]);
+        assertEquals(2025488, snapshot.sectorsWritten[snapshot.indexOf("sda1", 0)]);
 
-        assertEquals(1, (long) snapshot.iosInProgress.get("sda"));
-        assertEquals(0, (long) snapshot.iosInProgress.get("sda1"));
+        assertEquals(1, snapshot.iosInProgress[snapshot.indexOf("sda", 0)]);
+        assertEquals(0, snapshot.iosInProgress[snapshot.indexOf("sda1", 0)]);
     }
 
     @Test
     public void testSnapshot2() throws Exception {
-        final AProcDiskstatsMeasurer.Snapshot snapshot = AProcDiskstatsMeasurer.createSnapshot(Arrays.asList(DISKSTATS_2.split("\n")));
-        assertEquals(40, snapshot.iosInProgress.size());
+        final AProcDiskstatsMeasurer.Snapshot snapshot = AProcDiskstatsMeasurer.createSnapshot(AProcFileReader.forContent(DISKSTATS_2));
+        assertEquals(40, snapshot.size);
 
-        assertEquals(423107196, (long) snapshot.sectorsRead.get("sda"));
-        assertEquals(42049802, (long) snapshot.sectorsRead.get("dm-0"));
+        assertEquals(423107196, snapshot.sectorsRead[snapshot.indexOf("sda", 0)]);
+        assertEquals(42049802, snapshot.sectorsRead[snapshot.indexOf("dm-0", 0)]);
 
-        assertEquals(529847732, (long) snapshot.sectorsWritten.get("sda"));
-        assertEquals(2983320, (long) snapshot.sectorsWritten.get("dm-0"));
+        assertEquals(529847732, snapshot.sectorsWritten[snapshot.indexOf("sda", 0)]);
+        assertEquals(2983320, snapshot.sectorsWritten[snapshot.indexOf("dm-0", 0)]);
 
-        assertEquals(0, (long) snapshot.iosInProgress.get("sda"));
-        assertEquals(3, (long) snapshot.iosInProgress.get("dm-0"));
+        assertEquals(0, snapshot.iosInProgress[snapshot.indexOf("sda", 0)]);
+        assertEquals(3, snapshot.iosInProgress[snapshot.indexOf("dm-0", 0)]);
     }
 }
@@ -0,0 +1,101 @@
+package com.nsysmon.measure.scalar;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class AProcFileReaderTest {
+    @Test
+    public void testParsing() throws Exception {
+        final AProcFileReader reader = AProcFileReader.forContent("12345 (a b) c) S -17 abc\n\n  eth0:1 2\t3\n");
+        reader.read();
+
+        assertTrue(reader.startsWith("123"));
+        assertEquals(12345, reader.nextLong());
+        assertTrue(reader.skipPastLast(')'));
+        assertEquals("S", reader.nextName());
+        assertEquals(-17, reader.nextLong());
+        assertFalse(reader.isEndOfLine());
+        reader.skipTokens(1);
+        assertTrue(reader.isEndOfLine());
+
+        reader.nextLine();
+        assertTrue(reader.hasMoreLines());
+        assertTrue(reader.isEndOfLine());
+        assertFalse(reader.lineContains(':'));
+
+        reader.nextLine();
+        assertTrue(reader.lineContains(':'));
+        assertEquals("eth0", reader.nextName());
+        assertTrue(reader.skipPast(':'));
+        assertEquals(1, reader.nextLong());
+        assertEquals(2, reader.nextLong());
+        assertEquals(3, reader.nextLong());
+        assertFalse(reader.skipPast(':'));
+
+        reader.nextLine();
+        assertFalse(reader.hasMoreLines());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testNoNumber() throws Exception {
+        final AProcFileReader reader = AProcFileReader.forContent("abc");
+        reader.read();
+        reader.nextLong();
+    }
+
+    @Test
+    public void testCachedNames() throws Exception {
+        final AProcFileReader reader = AProcFileReader.forContent("sda sdb sda\n");
+        reader.read();
+        final String sda = reader.nextName();
+        final String sdb = reader.nextName();
+        assertEquals("sda", sda);
+        assertEquals("sdb", sdb);
+        assertSame(sda, reader.nextName());
+
+        reader.read();
+        assertSame(sda, reader.nextName());
+        assertSame(sdb, reader.nextName());
+    }
+
+    @Test
+    public void testRereadFile() throws Exception {
+        final File file = File.createTempFile("proc", ".txt");
+        file.deleteOnExit();
+
+        // bigger than the initial buffer
+        final StringBuilder sb = new StringBuilder();
+        for(int i=0; i<2000; i++) {
+            sb.append(i).append('\n');
+        }
+        Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+        final AProcFileReader reader = new AProcFileReader(file.getPath());
+        try {
+            reader.read();
+            long sum = 0;
+            for(; reader.hasMoreLines(); reader.nextLine()) {
+                sum += reader.nextLong();
+            }
+            assertEquals(1999 * 2000 / 2, sum);
+
+            Files.write(file.toPath(), "42\n".getBytes(StandardCharsets.ISO_8859_1));
+            reader.read();
+            assertEquals(42, reader.nextLong());
+            reader.nextLine();
+            assertFalse(reader.hasMoreLines());
+        }
+        finally {
+            reader.close();
+        }
+    }
+}
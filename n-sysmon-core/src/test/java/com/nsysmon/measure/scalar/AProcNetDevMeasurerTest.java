@@ -3,8 +3,6 @@ package com.nsysmon.measure.scalar;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
-import java.util.Arrays;
-
 /**
  * @author arno
  */
@@ -24,48 +22,48 @@ public class AProcNetDevMeasurerTest {
 
     @Test
     public void test1() throws Exception {
-        final AProcNetDevMeasurer.Snapshot snapshot = AProcNetDevMeasurer.createSnapshot(Arrays.asList(DATA_1.split("\n")));
-        assertEquals(3, snapshot.bytesReceived.size());
+        final AProcNetDevMeasurer.Snapshot snapshot = AProcNetDevMeasurer.createSnapshot(AProcFileReader.forContent(DATA_1));
+        assertEquals(3, snapshot.size);
 
-        assertEquals(0, (long) snapshot.bytesReceived.get("eth0"));
-        assertEquals(197331, (long) snapshot.bytesReceived.get("lo"));
-        assertEquals(290141208, (long) snapshot.bytesReceived.get("wlan0"));
+        assertEquals(0, snapshot.get("eth0", 0));
+        assertEquals(197331, snapshot.get("lo", 0));
+        assertEquals(290141208, snapshot.get("wlan0", 0));
 
-        assertEquals(0, (long) snapshot.packetsReceived.get("eth0"));
-        assertEquals(1907, (long) snapshot.packetsReceived.get("lo"));
-        assertEquals(199237, (long) snapshot.packetsReceived.get("wlan0"));
+        assertEquals(0, snapshot.get("eth0", 1));
+        assertEquals(1907, snapshot.get("lo", 1));
+        assertEquals(199237, snapshot.get("wlan0", 1));
 
-        assertEquals(0, (long) snapshot.bytesSent.get("eth0"));
-        assertEquals(197331, (long) snapshot.bytesSent.get("lo"));
-        assertEquals(11169874, (long) snapshot.bytesSent.get("wlan0"));
+        assertEquals(0, snapshot.get("eth0", 2));
+        assertEquals(197331, snapshot.get("lo", 2));
+        assertEquals(11169874, snapshot.get("wlan0", 2));
 
-        assertEquals(0, (long) snapshot.packetsSent.get("eth0"));
-        assertEquals(1907, (long) snapshot.packetsSent.get("lo"));
-        assertEquals(112278, (long) snapshot.packetsSent.get("wlan0"));
+        assertEquals(0, snapshot.get("eth0", 3));
+        assertEquals(1907, snapshot.get("lo", 3));
+        assertEquals(112278, snapshot.get("wlan0", 3));
 
-        assertEquals(1, (long) snapshot.collisions.get("eth0"));
-        assertEquals(2, (long) snapshot.collisions.get("lo"));
-        assertEquals(3, (long) snapshot.collisions.get("wlan0"));
+        assertEquals(1, snapshot.get("eth0", 4));
+        assertEquals(2, snapshot.get("lo", 4));
+        assertEquals(3, snapshot.get("wlan0", 4));
     }
 
     @Test
     public void test2() throws Exception {
-        final AProcNetDevMeasurer.Snapshot snapshot = AProcNetDevMeasurer.createSnapshot(Arrays.asList(DATA_2.split("\n")));
-        assertEquals(2, snapshot.bytesReceived.size());
+        final AProcNetDevMeasurer.Snapshot snapshot = AProcNetDevMeasurer.createSnapshot(AProcFileReader.forContent(DATA_2));
+        assertEquals(2, snapshot.size);
 
-        assertEquals(867736240, (long) snapshot.bytesReceived.get("lo"));
-        assertEquals(1101013679977L, (long) snapshot.bytesReceived.get("eth0"));
+        assertEquals(867736240, snapshot.get("lo", 0));
+        assertEquals(1101013679977L, snapshot.get("eth0", 0));
 
-        assertEquals(8499431, (long) snapshot.packetsReceived.get("lo"));
-        assertEquals(1629454605L, (long) snapshot.packetsReceived.get("eth0"));
+        assertEquals(8499431, snapshot.get("lo", 1));
+        assertEquals(1629454605L, snapshot.get("eth0", 1));
 
-        assertEquals(867736240, (long) snapshot.bytesSent.get("lo"));
-        assertEquals(1661278422272L, (long) snapshot.bytesSent.get("eth0"));
+        assertEquals(867736240, snapshot.get("lo", 2));
+        assertEquals(1661278422272L, snapshot.get("eth0", 2));
 
-        assertEquals(8499431, (long) snapshot.packetsSent.get("lo"));
-        assertEquals(1511248593L, (long) snapshot.packetsSent.get("eth0"));
+        assertEquals(8499431, snapshot.get("lo", 3));
+        assertEquals(1511248593L, snapshot.get("eth0", 3));
 
-        assertEquals(4, (long) snapshot.collisions.get("lo"));
-        assertEquals(5, (long) snapshot.collisions.get("eth0"));
+        assertEquals(4, snapshot.get("lo", 4));
+        assertEquals(5, snapshot.get("eth0", 4));
     }
 }
@@ -0,0 +1,93 @@
+package com.nsysmon.servlet.correlationflow;
+
+import com.nsysmon.data.ACorrelationId;
+import com.nsysmon.data.AHierarchicalData;
+import com.nsysmon.data.AHierarchicalDataRoot;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class CorrelationFlowDataSinkTest {
+    private static AHierarchicalDataRoot root(Collection<ACorrelationId> startedFlows, Collection<ACorrelationId> joinedFlows) {
+        return new AHierarchicalDataRoot(new AHierarchicalData(true, 0, 0, "a", Collections.emptyMap(), Collections.emptyList(), false), startedFlows, joinedFlows);
+    }
+
+    @Test
+    public void testParentLinking() {
+        final CorrelationFlowDataSink sink = new CorrelationFlowDataSink(100);
+
+        final ACorrelationId parent = new ACorrelationId("q", "p", null);
+        final ACorrelationId child = new ACorrelationId("q", "c", "p");
+        final ACorrelationId grandChild = new ACorrelationId("q", "g", "c");
+        final ACorrelationId orphan = new ACorrelationId("q", "o", "unknown");
+
+        sink.onFinishedHierarchicalMeasurement(root(Collections.singletonList(parent), Collections.emptyList()));
+        // the child's parent is part of the same measurement
+        sink.onFinishedHierarchicalMeasurement(root(Arrays.asList(grandChild, orphan), Collections.singletonList(child)));
+
+        final Map<ACorrelationId, Set<ACorrelationId>> data = sink.getDataAsMap();
+        assertEquals(3, data.size());
+        assertEquals(Collections.singleton(child), data.get(parent));
+        assertEquals(Collections.singleton(grandChild), data.get(child));
+        assertEquals(Collections.emptySet(), data.get(grandChild));
+        assertFalse(data.containsKey(orphan));
+    }
+
+    @Test
+    public void testEviction() {
+        final CorrelationFlowDataSink sink = new CorrelationFlowDataSink(2);
+
+        final ACorrelationId parent = new ACorrelationId("q", "p", null);
+        sink.onFinishedHierarchicalMeasurement(root(Collections.singletonList(parent), Collections.emptyList()));
+        sink.onFinishedHierarchicalMeasurement(root(Collections.singletonList(new ACorrelationId("q", "x", null)), Collections.emptyList()));
+        sink.onFinishedHierarchicalMeasurement(root(Collections.singletonList(new ACorrelationId("q", "y", null)), Collections.emptyList()));
+        assertEquals(2, sink.size());
+
+        // the parent was evicted, so it is not found any more
+        sink.onFinishedHierarchicalMeasurement(root(Collections.singletonList(new ACorrelationId("q", "c", "p")), Collections.emptyList()));
+        assertEquals(2, sink.getDataAsMap().size());
+        assertFalse(sink.getDataAsMap().containsKey(parent));
+
+        // a flow with the same id is indexed again after the old one was evicted
+        sink.onFinishedHierarchicalMeasurement(root(Collections.singletonList(parent), Collections.emptyList()));
+        final ACorrelationId child = new ACorrelationId("q", "c", "p");
+        sink.onFinishedHierarchicalMeasurement(root(Collections.singletonList(child), Collections.emptyList()));
+        assertEquals(Collections.singleton(child), sink.getDataAsMap().get(parent));
+
+        sink.clearData();
+        assertEquals(0, sink.size());
+        assertTrue(sink.getDataAsMap().isEmpty());
+    }
+
+    /**
+     * a benchmark for adding flows to a full buffer
+     */
+    @Test
+    @Ignore
+    public void testPerformance() {
+        final int numFlows = 100_000;
+        final CorrelationFlowDataSink sink = new CorrelationFlowDataSink(numFlows);
+
+        for (int round=0; round<5; round++) {
+            final long start = System.nanoTime();
+            for (int i=0; i<numFlows; i++) {
+                final String id = round + "-" + i;
+                final ACorrelationId flow = new ACorrelationId("q", id, i == 0 ? null : round + "-" + (i/2));
+                final ACorrelationId joined = new ACorrelationId("q", id + "-joined", id);
+                sink.onFinishedHierarchicalMeasurement(root(Collections.singletonList(flow), Collections.singletonList(joined)));
+            }
+            System.out.println((System.nanoTime() - start) / 1_000_000 + "ms for " + numFlows + " measurements with " + sink.size() + " buffered flows");
+        }
+    }
+}
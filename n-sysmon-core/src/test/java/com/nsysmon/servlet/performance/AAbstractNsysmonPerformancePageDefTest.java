@@ -0,0 +1,85 @@
+package com.nsysmon.servlet.performance;
+
+import com.ajjpj.afoundation.io.AJsonSerHelperForNSysmon;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class AAbstractNsysmonPerformancePageDefTest {
+    private static final List<AAbstractNsysmonPerformancePageDef.ColDef> COL_DEFS = Collections.singletonList(
+            new AAbstractNsysmonPerformancePageDef.ColDef("#", false, 0, AAbstractNsysmonPerformancePageDef.ColWidth.Short, false));
+
+    /**
+     * writes the tree a(a1(a11), a2), b
+     */
+    private static String write(List<String> nodePath, int maxDepth) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final AJsonSerHelperForNSysmon json = new AJsonSerHelperForNSysmon(baos);
+
+        json.startArray();
+        final AAbstractNsysmonPerformancePageDef.TreeNodeWriter out = new AAbstractNsysmonPerformancePageDef.TreeNodeWriter(json, COL_DEFS, nodePath, maxDepth, true);
+        if(out.startNode("a", true, new long[] {1}, true)) {
+            if(out.startNode("a1", true, new long[] {2}, true)) {
+                if(out.startNode(null, "a11", Collections.singletonList(Arrays.asList("k", "v")), false, new long[] {3}, false, true)) {
+                    fail("a11 has no children");
+                }
+                out.endNode();
+            }
+            out.endNode();
+            out.startNode("a2", true, new long[] {4}, false);
+            out.endNode();
+        }
+        out.endNode();
+        if(out.startNode("b", true, new long[] {5}, false)) {
+            fail("b has no children");
+        }
+        out.endNode();
+        json.endArray();
+
+        return new String(baos.toByteArray(), "UTF-8").replace("\n", "");
+    }
+
+    @Test
+    public void testFullTree() throws IOException {
+        assertEquals("[{\"name\":\"a\",\"data\":[1],\"children\":[" +
+                "{\"name\":\"a1\",\"data\":[2],\"children\":[{\"name\":\"a11\",\"wasKilled\":true,\"tooltip\":[{\"id\":\"k\",\"value\":\"v\"}],\"isNotSerial\":true,\"data\":[3]}]}," +
+                "{\"name\":\"a2\",\"data\":[4]}]}," +
+                "{\"name\":\"b\",\"data\":[5]}]",
+                write(Collections.emptyList(), AAbstractNsysmonPerformancePageDef.UNLIMITED_DEPTH));
+    }
+
+    @Test
+    public void testMaxDepth() throws IOException {
+        assertEquals("[{\"name\":\"a\",\"data\":[1],\"hasChildren\":true},{\"name\":\"b\",\"data\":[5]}]", write(Collections.emptyList(), 1));
+        assertEquals("[{\"name\":\"a\",\"data\":[1],\"children\":[{\"name\":\"a1\",\"data\":[2],\"hasChildren\":true},{\"name\":\"a2\",\"data\":[4]}]},{\"name\":\"b\",\"data\":[5]}]", write(Collections.emptyList(), 2));
+    }
+
+    @Test
+    public void testChildren() throws IOException {
+        assertEquals("[{\"name\":\"a1\",\"data\":[2],\"hasChildren\":true},{\"name\":\"a2\",\"data\":[4]}]", write(Collections.singletonList("a"), 1));
+        assertEquals("[{\"name\":\"a11\",\"wasKilled\":true,\"tooltip\":[{\"id\":\"k\",\"value\":\"v\"}],\"isNotSerial\":true,\"data\":[3]}]", write(Arrays.asList("a", "a1"), 1));
+        assertEquals("[]", write(Arrays.asList("a", "x"), 1));
+        assertEquals("[]", write(Collections.singletonList("b"), 1));
+    }
+
+    @Test
+    public void testDecodeNodeId() throws IOException {
+        final String fqn = "\njdbc: select * from A where x = '~+ /'\n/app/page?x=1%";
+        // the client side encoding done in ctrl-aggregated.js
+        final String encoded = URLEncoder.encode(fqn, "UTF-8").replace("+", "%20").replace("~", "%7E").replace('%', '~');
+        assertFalse(encoded.contains("/"));
+
+        assertEquals(Arrays.asList("jdbc: select * from A where x = '~+ /'", "/app/page?x=1%"), AAbstractNsysmonPerformancePageDef.decodeNodeId(encoded));
+    }
+}
@@ -0,0 +1,123 @@
+package com.nsysmon.servlet.performance.bottomup;
+
+import com.nsysmon.data.AHierarchicalData;
+import com.nsysmon.data.AHierarchicalDataRoot;
+import com.nsysmon.servlet.performance.AMinMaxAvgData;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ABottomUpDataSinkTest {
+    private static final ABottomUpLeafFilter LEAF_FILTER = data -> data.getIdentifier().startsWith("jdbc");
+
+    private static AHierarchicalData node(String identifier, long durationNanos, AHierarchicalData... children) {
+        return new AHierarchicalData(true, 0, durationNanos, identifier, Collections.emptyMap(), new ArrayList<>(Arrays.asList(children)), false);
+    }
+
+    private static AHierarchicalDataRoot root(AHierarchicalData rootNode) {
+        return new AHierarchicalDataRoot(rootNode, Collections.emptyList(), Collections.emptyList());
+    }
+
+    @Test
+    public void testAggregation() {
+        final ABottomUpDataSink sink = new ABottomUpDataSink(LEAF_FILTER);
+        sink.setActive(true);
+
+        sink.onFinishedHierarchicalMeasurement(root(node("a", 100, node("b", 50, node("jdbc1", 10), node("jdbc1", 20)), node("jdbc2", 30))));
+        sink.onFinishedHierarchicalMeasurement(root(node("c", 200, node("jdbc1", 40))));
+
+        final Map<String, AMinMaxAvgData> data = sink.getData();
+        assertEquals(2, data.size());
+
+        final AMinMaxAvgData jdbc1 = data.get("jdbc1");
+        assertEquals(3, jdbc1.getTotalNumInContext());
+        assertEquals(70, jdbc1.getTotalNanos());
+        assertEquals(10, jdbc1.getMinNanos());
+        assertEquals(40, jdbc1.getMaxNanos());
+        assertArrayEquals(new long[] {20, 40}, jdbc1.getPercentileNanos(0.5, 0.99));
+
+        // parents are registered once per leaf, with their own duration
+        assertEquals(2, jdbc1.getChildren().size());
+        final AMinMaxAvgData b = jdbc1.getChildren().get("b");
+        assertEquals(2, b.getTotalNumInContext());
+        assertEquals(100, b.getTotalNanos());
+        assertEquals(2, b.getChildren().get("a").getTotalNumInContext());
+        assertEquals(200, b.getChildren().get("a").getTotalNanos());
+
+        assertEquals(1, jdbc1.getChildren().get("c").getTotalNumInContext());
+        assertTrue(jdbc1.getChildren().get("c").getChildren().isEmpty());
+
+        final AMinMaxAvgData jdbc2 = data.get("jdbc2");
+        assertEquals(1, jdbc2.getTotalNumInContext());
+        assertEquals(100, jdbc2.getChildren().get("a").getTotalNanos());
+    }
+
+    @Test
+    public void testClear() {
+        final ABottomUpDataSink sink = new ABottomUpDataSink(LEAF_FILTER);
+        sink.setActive(true);
+
+        sink.onFinishedHierarchicalMeasurement(root(node("a", 100, node("jdbc", 10))));
+        assertEquals(2, sink.getNumNodes());
+
+        sink.clear();
+        assertEquals(0, sink.getNumNodes());
+        assertTrue(sink.getData().isEmpty());
+    }
+
+    @Test
+    public void testEvictionKeepsMostSignificantPaths() {
+        final ABottomUpDataSink sink = new ABottomUpDataSink(LEAF_FILTER, 20);
+        sink.setActive(true);
+
+        // the slow path is recorded first and must survive eviction
+        sink.onFinishedHierarchicalMeasurement(root(node("slow", 1_000_000, node("jdbc-slow", 1_000_000))));
+
+        for(int i=0; i<100; i++) {
+            sink.onFinishedHierarchicalMeasurement(root(node("fast" + i, 10, node("jdbc-fast" + i, i))));
+            assertTrue(sink.getNumNodes() <= 20);
+        }
+
+        assertNotNull(sink.getData().get("jdbc-slow"));
+        assertTrue(sink.getData().size() <= 10);
+    }
+
+    @Test
+    public void testConcurrentCollection() throws InterruptedException {
+        final ABottomUpDataSink sink = new ABottomUpDataSink(LEAF_FILTER);
+        sink.setActive(true);
+
+        final int NUM_THREADS = 8;
+        final int NUM_ITERATIONS = 10_000;
+
+        final List<Thread> threads = new ArrayList<>();
+        for(int t=0; t<NUM_THREADS; t++) {
+            threads.add(new Thread(() -> {
+                for(int i=0; i<NUM_ITERATIONS; i++) {
+                    sink.onFinishedHierarchicalMeasurement(root(node("a", 10, node("jdbc", 5))));
+                }
+            }));
+        }
+        for(Thread t: threads) {
+            t.start();
+        }
+        for(Thread t: threads) {
+            t.join();
+        }
+
+        final AMinMaxAvgData jdbc = sink.getData().get("jdbc");
+        assertEquals(NUM_THREADS * NUM_ITERATIONS, jdbc.getTotalNumInContext());
+        assertEquals(5L * NUM_THREADS * NUM_ITERATIONS, jdbc.getTotalNanos());
+        assertEquals(NUM_THREADS * NUM_ITERATIONS, jdbc.getChildren().get("a").getTotalNumInContext());
+    }
+}
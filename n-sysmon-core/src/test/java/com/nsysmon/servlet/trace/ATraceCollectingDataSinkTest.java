@@ -0,0 +1,113 @@
+package com.nsysmon.servlet.trace;
+
+import com.nsysmon.data.AHierarchicalData;
+import com.nsysmon.data.AHierarchicalDataRoot;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ATraceCollectingDataSinkTest {
+    private static AHierarchicalDataRoot trace(String identifier, long durationNanos, boolean wasKilled) {
+        return new AHierarchicalDataRoot(new AHierarchicalData(true, 0, durationNanos, identifier, Collections.emptyMap(), Collections.emptyList(), wasKilled), Collections.emptyList(), Collections.emptyList(), wasKilled);
+    }
+
+    private static int count(List<AHierarchicalDataRoot> traces, String identifier) {
+        int result = 0;
+        for(AHierarchicalDataRoot trace: traces) {
+            if(trace.getRootNode().getIdentifier().equals(identifier)) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testRareIdentifiersKeepSamples() {
+        final ATraceCollectingDataSink sink = new ATraceCollectingDataSink(ATraceFilter.ALL, 10, 3, 10, 0.99, 1_000_000);
+
+        sink.onFinishedHierarchicalMeasurement(trace("rare", 1000, false));
+        for(int i=0; i<10_000; i++) {
+            sink.onFinishedHierarchicalMeasurement(trace("frequent", 1000, false));
+        }
+
+        final List<AHierarchicalDataRoot> data = sink.getData();
+        assertEquals(1, count(data, "rare"));
+        assertEquals(3, count(data, "frequent"));
+        assertEquals(4, data.size());
+
+        sink.clear();
+        assertTrue(sink.getData().isEmpty());
+    }
+
+    @Test
+    public void testOutliersAreKept() {
+        final ATraceCollectingDataSink sink = new ATraceCollectingDataSink(ATraceFilter.ALL, 10, 3, 10, 0.99, 1_000_000);
+
+        // no outliers while there are too few durations for a reliable percentile
+        sink.onFinishedHierarchicalMeasurement(trace("a", 1_000_000, false));
+        for(int i=0; i<10_000; i++) {
+            sink.onFinishedHierarchicalMeasurement(trace("a", 1000 + i%100, false));
+        }
+        sink.onFinishedHierarchicalMeasurement(trace("a", 1_000_000, false));
+        sink.onFinishedHierarchicalMeasurement(trace("a", 1000, true));
+
+        final List<AHierarchicalDataRoot> data = sink.getData();
+        int numSlow = 0;
+        int numKilled = 0;
+        for(AHierarchicalDataRoot trace: data) {
+            if(trace.getRootNode().getDurationNanos() == 1_000_000) numSlow += 1;
+            if(trace.isKilled()) numKilled += 1;
+        }
+        assertEquals(1, numKilled);
+        assertTrue(numSlow >= 1);
+        assertTrue(data.size() <= 3 + 10);
+    }
+
+    @Test
+    public void testMaxNumIdentifiers() {
+        final ATraceCollectingDataSink sink = new ATraceCollectingDataSink(ATraceFilter.ALL, 10, 2, 5, 0.99, 1_000_000);
+        for(int i=0; i<100; i++) {
+            sink.onFinishedHierarchicalMeasurement(trace("id" + i, 1000, false));
+        }
+        // five reservoirs of their own plus one shared reservoir
+        assertEquals(5*1 + 2, sink.getData().size());
+    }
+
+    @Test
+    public void testRateLimit() {
+        final ATraceCollectingDataSink sink = new ATraceCollectingDataSink(ATraceFilter.ALL, 100, 100, 100, 0.99, 5);
+        for(int i=0; i<50; i++) {
+            sink.onFinishedHierarchicalMeasurement(trace("id" + i, 1000, false));
+        }
+        assertTrue(sink.getData().size() <= 6);
+    }
+
+    @Test
+    public void testOutliersAreNotRateLimited() {
+        final ATraceCollectingDataSink sink = new ATraceCollectingDataSink(ATraceFilter.ALL, 100, 100, 100, 0.99, 5);
+
+        // fast traces use up the rate limit's budget
+        for(int i=0; i<50; i++) {
+            sink.onFinishedHierarchicalMeasurement(trace("id" + i, 1000, false));
+        }
+        for(int i=0; i<10; i++) {
+            sink.onFinishedHierarchicalMeasurement(trace("killed", 1000, true));
+        }
+        assertEquals(10, count(sink.getData(), "killed"));
+    }
+
+    @Test
+    public void testStopped() {
+        final ATraceCollectingDataSink sink = new ATraceCollectingDataSink(ATraceFilter.ALL, 10, 3, 10, 0.99, 100);
+        sink.isStarted = false;
+        sink.onFinishedHierarchicalMeasurement(trace("a", 1000, true));
+        assertTrue(sink.getData().isEmpty());
+    }
+}
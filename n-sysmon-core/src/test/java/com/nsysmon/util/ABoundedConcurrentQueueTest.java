@@ -0,0 +1,78 @@
+package com.nsysmon.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ABoundedConcurrentQueueTest {
+    @Test
+    public void testFifo() {
+        assertEquals(2, new ABoundedConcurrentQueue<>(1).capacity());
+
+        final ABoundedConcurrentQueue<Integer> queue = new ABoundedConcurrentQueue<>(3);
+        assertEquals(4, queue.capacity());
+        assertNull(queue.poll());
+
+        for(int i=0; i<4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(99));
+        assertEquals(4, queue.size());
+
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertTrue(queue.offer(4));
+        for(int i=1; i<5; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentProducersAndConsumers() throws InterruptedException {
+        final ABoundedConcurrentQueue<Long> queue = new ABoundedConcurrentQueue<>(64);
+        final int NUM_PRODUCERS = 4;
+        final int NUM_PER_PRODUCER = 10_000;
+
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong count = new AtomicLong();
+
+        final List<Thread> threads = new ArrayList<>();
+        for(int p=0; p<NUM_PRODUCERS; p++) {
+            threads.add(new Thread(() -> {
+                for(long i=1; i<=NUM_PER_PRODUCER; i++) {
+                    while(! queue.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+        for(int c=0; c<2; c++) {
+            threads.add(new Thread(() -> {
+                while(count.get() < NUM_PRODUCERS * NUM_PER_PRODUCER) {
+                    final Long l = queue.poll();
+                    if(l != null) {
+                        sum.addAndGet(l);
+                        count.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for(Thread t: threads) {
+            t.start();
+        }
+        for(Thread t: threads) {
+            t.join();
+        }
+
+        assertEquals(NUM_PRODUCERS * NUM_PER_PRODUCER, count.get());
+        assertEquals(NUM_PRODUCERS * (long) NUM_PER_PRODUCER * (NUM_PER_PRODUCER + 1) / 2, sum.get());
+    }
+}
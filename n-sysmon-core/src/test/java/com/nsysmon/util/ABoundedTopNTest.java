@@ -0,0 +1,88 @@
+package com.nsysmon.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ABoundedTopNTest {
+    @Test
+    public void testTopN() {
+        final ABoundedTopN<String> topN = new ABoundedTopN<>(3);
+        assertTrue(topN.wouldAdmit(Long.MIN_VALUE + 1));
+
+        assertTrue(topN.offer(5, "5"));
+        assertTrue(topN.offer(1, "1"));
+        assertTrue(topN.offer(3, "3"));
+        assertEquals(3, topN.size());
+        assertEquals(Arrays.asList("5", "3", "1"), topN.getDescending());
+
+        assertFalse(topN.wouldAdmit(1));
+        assertFalse(topN.offer(1, "1a"));
+        assertTrue(topN.offer(4, "4"));
+        assertEquals(Arrays.asList("5", "4", "3"), topN.getDescending());
+
+        assertFalse(topN.wouldAdmit(3));
+        assertTrue(topN.wouldAdmit(4));
+
+        topN.clear();
+        assertEquals(0, topN.size());
+        assertTrue(topN.offer(1, "1"));
+    }
+
+    @Test
+    public void testEqualScores() {
+        final ABoundedTopN<String> topN = new ABoundedTopN<>(3);
+        assertTrue(topN.offer(7, "a"));
+        assertTrue(topN.offer(7, "b"));
+        assertTrue(topN.offer(7, "c"));
+
+        // equal scores do not replace older elements
+        assertFalse(topN.offer(7, "d"));
+        assertEquals(3, topN.size());
+        assertTrue(topN.getDescending().containsAll(Arrays.asList("a", "b", "c")));
+    }
+
+    @Test
+    public void testConcurrentOffers() throws Exception {
+        final int numThreads = 4;
+        final int numPerThread = 100_000;
+        final ABoundedTopN<Long> topN = new ABoundedTopN<>(50);
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int t=0; t<numThreads; t++) {
+            final Random rand = new Random(t);
+            threads.add(new Thread(() -> {
+                for (int i=0; i<numPerThread; i++) {
+                    final long score = rand.nextInt(1_000_000);
+                    topN.offer(score, score);
+                }
+            }));
+        }
+        for (Thread t: threads) {
+            t.start();
+        }
+        for (Thread t: threads) {
+            t.join();
+        }
+
+        final List<Long> expected = new ArrayList<>();
+        for (int t=0; t<numThreads; t++) {
+            final Random rand = new Random(t);
+            for (int i=0; i<numPerThread; i++) {
+                expected.add((long) rand.nextInt(1_000_000));
+            }
+        }
+        expected.sort((l1, l2) -> Long.compare(l2, l1));
+
+        assertEquals(expected.subList(0, 50), topN.getDescending());
+    }
+}
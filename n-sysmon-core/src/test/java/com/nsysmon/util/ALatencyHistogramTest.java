@@ -0,0 +1,95 @@
+package com.nsysmon.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ALatencyHistogramTest {
+    @Test
+    public void testBuckets() {
+        for(long value: new long[] {0, 1, 15, 16, 17, 31, 32, 33, 1000, 123_456_789, Long.MAX_VALUE / 3, Long.MAX_VALUE}) {
+            final int group = ALatencyHistogram.groupOf(value);
+            final int subBucket = ALatencyHistogram.subBucketOf(value, group);
+            assertTrue(subBucket >= 0 && subBucket < ALatencyHistogram.NUM_SUB_BUCKETS);
+
+            final long highest = ALatencyHistogram.highestValueInBucket(group, subBucket);
+            assertTrue(value + " -> " + highest, highest >= value);
+            assertTrue(value + " -> " + highest, highest - value <= value / ALatencyHistogram.NUM_SUB_BUCKETS);
+        }
+        assertEquals(Long.MAX_VALUE, ALatencyHistogram.highestValueInBucket(ALatencyHistogram.groupOf(Long.MAX_VALUE), ALatencyHistogram.subBucketOf(Long.MAX_VALUE, ALatencyHistogram.groupOf(Long.MAX_VALUE))));
+    }
+
+    @Test
+    public void testPercentiles() {
+        final ALatencyHistogram histogram = new ALatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(0.5));
+
+        for(int i=1; i<=10; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10, histogram.getCount());
+        assertEquals(5, histogram.getValueAtPercentile(0.5));
+        assertEquals(10, histogram.getValueAtPercentile(0.99));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+
+        histogram.clear();
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void testAccuracy() {
+        final Random rand = new Random(1);
+        final ALatencyHistogram histogram = new ALatencyHistogram();
+        final List<Long> values = new ArrayList<>();
+        for(int i=0; i<100_000; i++) {
+            final long value = (long) (Math.exp(rand.nextGaussian() * 2) * 1_000_000);
+            values.add(value);
+            histogram.record(value);
+        }
+        values.sort(Long::compare);
+
+        final double[] percentiles = {0.5, 0.95, 0.99, 0.999};
+        final long[] estimates = histogram.getValuesAtPercentiles(percentiles);
+        for(int i=0; i<percentiles.length; i++) {
+            final long exact = values.get((int) Math.ceil(percentiles[i] * values.size()) - 1);
+            assertTrue(estimates[i] >= exact);
+            assertTrue(estimates[i] - exact <= exact / ALatencyHistogram.NUM_SUB_BUCKETS);
+        }
+    }
+
+    @Test
+    public void testConcurrentRecordingAndMerging() throws Exception {
+        final int numThreads = 4;
+        final int numPerThread = 100_000;
+
+        final ALatencyHistogram merged = new ALatencyHistogram();
+        final List<Thread> threads = new ArrayList<>();
+        for(int t=0; t<numThreads; t++) {
+            threads.add(new Thread(() -> {
+                final ALatencyHistogram own = new ALatencyHistogram();
+                for(int i=0; i<numPerThread; i++) {
+                    own.record(i % 1000);
+                    merged.record(i % 1000);
+                }
+                merged.mergeFrom(own);
+            }));
+        }
+        for(Thread t: threads) {
+            t.start();
+        }
+        for(Thread t: threads) {
+            t.join();
+        }
+
+        assertEquals(2L * numThreads * numPerThread, merged.getCount());
+        assertEquals(500, merged.getValueAtPercentile(0.5), 500 / ALatencyHistogram.NUM_SUB_BUCKETS);
+    }
+}
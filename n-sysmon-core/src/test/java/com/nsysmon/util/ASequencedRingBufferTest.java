@@ -0,0 +1,139 @@
+package com.nsysmon.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ASequencedRingBufferTest {
+    @Test
+    public void testPutAndEvict() {
+        final ASequencedRingBuffer<String> buffer = new ASequencedRingBuffer<>(3);
+        assertTrue(buffer.snapshot().getElements().isEmpty());
+
+        assertEquals(0, buffer.put("a"));
+        assertEquals(1, buffer.put("b"));
+        assertEquals(Arrays.asList("a", "b"), buffer.snapshot().getElements());
+
+        buffer.put("c");
+        buffer.put("d");
+        final ASequencedRingBuffer.Snapshot<String> snapshot = buffer.snapshot();
+        assertEquals(Arrays.asList("b", "c", "d"), snapshot.getElements());
+        assertEquals(1, snapshot.getFirstSequence());
+        assertEquals(4, snapshot.getNextSequence());
+        assertEquals(1, snapshot.getSequence(0));
+        assertEquals(3, snapshot.getSequence(2));
+
+        final List<String> iterated = new ArrayList<>();
+        for(String s: buffer) {
+            iterated.add(s);
+        }
+        assertEquals(Arrays.asList("b", "c", "d"), iterated);
+    }
+
+    @Test
+    public void testSince() {
+        final ASequencedRingBuffer<String> buffer = new ASequencedRingBuffer<>(3);
+        buffer.put("a");
+        buffer.put("b");
+        final long next = buffer.snapshot().getNextSequence();
+
+        assertTrue(buffer.since(next).getElements().isEmpty());
+
+        buffer.put("c");
+        assertEquals(Collections.singletonList("c"), buffer.since(next).getElements());
+
+        // elements that were evicted in the meantime are missing
+        buffer.put("d");
+        buffer.put("e");
+        final ASequencedRingBuffer.Snapshot<String> snapshot = buffer.since(1);
+        assertEquals(Arrays.asList("c", "d", "e"), snapshot.getElements());
+        assertEquals(2, snapshot.getFirstSequence());
+    }
+
+    @Test
+    public void testClear() {
+        final ASequencedRingBuffer<String> buffer = new ASequencedRingBuffer<>(3);
+        buffer.put("a");
+        buffer.put("b");
+        buffer.clear();
+
+        final ASequencedRingBuffer.Snapshot<String> snapshot = buffer.snapshot();
+        assertTrue(snapshot.getElements().isEmpty());
+        assertEquals(2, snapshot.getFirstSequence());
+        assertEquals(2, snapshot.getNextSequence());
+
+        buffer.put("c");
+        assertEquals(Collections.singletonList("c"), buffer.snapshot().getElements());
+        assertEquals(Collections.singletonList("c"), buffer.since(0).getElements());
+    }
+
+    @Test
+    public void testConcurrentWritersAndReaders() throws Exception {
+        final int numWriters = 4;
+        final int numPerWriter = 200_000;
+        final ASequencedRingBuffer<long[]> buffer = new ASequencedRingBuffer<>(1000);
+
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+        final List<Thread> writers = new ArrayList<>();
+        for(int t=0; t<numWriters; t++) {
+            final long writer = t;
+            writers.add(new Thread(() -> {
+                for(long i=0; i<numPerWriter; i++) {
+                    buffer.put(new long[] {writer, i});
+                }
+            }));
+        }
+
+        // every snapshot must be ordered by sequence number, with every writer's elements in the order they were put
+        final Thread reader = new Thread(() -> {
+            long next = 0;
+            while(! done.get()) {
+                final ASequencedRingBuffer.Snapshot<long[]> snapshot = buffer.since(next);
+                final long[] lastPerWriter = new long[numWriters];
+                Arrays.fill(lastPerWriter, -1);
+                for(int i=0; i<snapshot.getElements().size(); i++) {
+                    final long[] el = snapshot.getElements().get(i);
+                    if(el[1] <= lastPerWriter[(int) el[0]]) {
+                        errors.add("out of order: " + el[0] + "/" + el[1]);
+                    }
+                    lastPerWriter[(int) el[0]] = el[1];
+                    if(i > 0 && snapshot.getSequence(i) <= snapshot.getSequence(i-1)) {
+                        errors.add("sequence out of order");
+                    }
+                    if(snapshot.getSequence(i) < next) {
+                        errors.add("already read");
+                    }
+                }
+                next = snapshot.getNextSequence();
+            }
+        });
+
+        reader.start();
+        for(Thread t: writers) {
+            t.start();
+        }
+        for(Thread t: writers) {
+            t.join();
+        }
+        done.set(true);
+        reader.join();
+
+        assertEquals(Collections.emptyList(), errors);
+
+        final ASequencedRingBuffer.Snapshot<long[]> snapshot = buffer.snapshot();
+        assertEquals(1000, snapshot.getElements().size());
+        assertEquals(numWriters * numPerWriter, snapshot.getNextSequence());
+    }
+}
@@ -0,0 +1,59 @@
+package com.nsysmon.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class AStreamingQuantileTest {
+    @Test
+    public void testFewValues() {
+        final AStreamingQuantile q = new AStreamingQuantile(0.5);
+        assertTrue(Double.isNaN(q.get()));
+
+        q.add(3);
+        assertEquals(3, q.get(), 0);
+        q.add(1);
+        q.add(2);
+        assertEquals(2, q.get(), 0);
+
+        q.clear();
+        assertEquals(0, q.getCount());
+        assertTrue(Double.isNaN(q.get()));
+    }
+
+    @Test
+    public void testUniform() {
+        final Random rand = new Random(1);
+        final AStreamingQuantile median = new AStreamingQuantile(0.5);
+        final AStreamingQuantile p99 = new AStreamingQuantile(0.99);
+        for(int i=0; i<100_000; i++) {
+            final double value = rand.nextDouble() * 1000;
+            median.add(value);
+            p99.add(value);
+        }
+        assertEquals(500, median.get(), 10);
+        assertEquals(990, p99.get(), 5);
+    }
+
+    @Test
+    public void testSkewed() {
+        // log-normally distributed, like durations
+        final Random rand = new Random(2);
+        final double[] values = new double[100_000];
+        final AStreamingQuantile p95 = new AStreamingQuantile(0.95);
+        for(int i=0; i<values.length; i++) {
+            values[i] = Math.exp(rand.nextGaussian());
+            p95.add(values[i]);
+        }
+        Arrays.sort(values);
+        final double exact = values[(int) (values.length * 0.95)];
+        assertEquals(exact, p95.get(), exact * 0.03);
+    }
+}
@@ -8,13 +8,17 @@ import com.nsysmon.server.services.ConfigProvider;
 import com.nsysmon.server.services.impl.AdminServiceImpl;
 import com.nsysmon.server.processing.impl.BufferingPersistenceProcessorImpl;
 import com.nsysmon.server.services.impl.ConfigProviderImpl;
+import com.nsysmon.server.storage.EnvironmentDataDao;
 import com.nsysmon.server.storage.MonitoredApplicationDao;
 import com.nsysmon.server.storage.ScalarDataDao;
 import com.nsysmon.server.storage.ScalarMetaDataDao;
+import com.nsysmon.server.storage.TraceDataDao;
+import com.nsysmon.server.storage.impl.EnvironmentDataDaoImpl;
 import com.nsysmon.server.storage.impl.MongoDbProvider;
 import com.nsysmon.server.storage.impl.MonitoredApplicationDaoImpl;
 import com.nsysmon.server.storage.impl.ScalarDataDaoImpl;
 import com.nsysmon.server.storage.impl.ScalarMetaDataDaoImpl;
+import com.nsysmon.server.storage.impl.TraceDataDaoImpl;
 import com.nsysmon.server.upload.preprocess.InputProcessor;
 import com.nsysmon.server.upload.preprocess.SystemClockCorrector;
 import com.nsysmon.server.upload.preprocess.impl.InputProcessorImpl;
@@ -37,6 +41,8 @@ public class NSysMonModule extends AbstractModule {
         bind(MonitoredApplicationDao.class).to(MonitoredApplicationDaoImpl.class);
         bind(ScalarMetaDataDao.class).to(ScalarMetaDataDaoImpl.class);
         bind(ScalarDataDao.class).to(ScalarDataDaoImpl.class);
+        bind(TraceDataDao.class).to(TraceDataDaoImpl.class);
+        bind(EnvironmentDataDao.class).to(EnvironmentDataDaoImpl.class);
 
         // services
         bind(AdminService.class).to(AdminServiceImpl.class);
@@ -0,0 +1,76 @@
+package com.nsysmon.server.processing;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * This class collects statistics about the batches in which a persistence stage stores data, i.e. how many items are
+ *  stored per database round trip and how long that takes.
+ *
+ * @author arno
+ */
+public class BatchStatistics {
+    private final AtomicLong numBatches = new AtomicLong();
+    private final AtomicLong numItems = new AtomicLong();
+    private final AtomicLong numFailedBatches = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    public void onBatchStored(int batchSize, long flushNanos) {
+        numBatches.incrementAndGet();
+        numItems.addAndGet(batchSize);
+        maxBatchSize.accumulateAndGet(batchSize, Math::max);
+
+        totalFlushNanos.addAndGet(flushNanos);
+        maxFlushNanos.accumulateAndGet(flushNanos, Math::max);
+    }
+
+    public void onBatchFailed() {
+        numFailedBatches.incrementAndGet();
+    }
+
+    public long getNumBatches() {
+        return numBatches.get();
+    }
+
+    public long getNumItems() {
+        return numItems.get();
+    }
+
+    public long getNumFailedBatches() {
+        return numFailedBatches.get();
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    public double getAvgBatchSize() {
+        final long n = numBatches.get();
+        return n == 0 ? 0 : (double) numItems.get() / n;
+    }
+
+    public double getAvgFlushMillis() {
+        final long n = numBatches.get();
+        return n == 0 ? 0 : (double) totalFlushNanos.get() / n / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxFlushMillis() {
+        return (double) maxFlushNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override public String toString() {
+        return "BatchStatistics{" +
+                "numBatches=" + getNumBatches() +
+                ", numItems=" + getNumItems() +
+                ", numFailedBatches=" + getNumFailedBatches() +
+                ", avgBatchSize=" + getAvgBatchSize() +
+                ", maxBatchSize=" + getMaxBatchSize() +
+                ", avgFlushMillis=" + getAvgFlushMillis() +
+                ", maxFlushMillis=" + getMaxFlushMillis() +
+                '}';
+    }
+}
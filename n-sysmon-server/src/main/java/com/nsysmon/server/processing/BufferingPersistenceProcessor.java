@@ -1,7 +1,13 @@
 package com.nsysmon.server.processing;
 
+import java.util.Map;
+
 /**
  * @author arno
  */
 public interface BufferingPersistenceProcessor {
+    /**
+     * @return batch statistics per kind of data, i.e. 'scalar', 'trace' and 'environment'
+     */
+    Map<String, BatchStatistics> getBatchStatistics();
 }
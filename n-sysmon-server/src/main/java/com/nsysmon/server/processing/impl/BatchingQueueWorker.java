@@ -0,0 +1,125 @@
+package com.nsysmon.server.processing.impl;
+
+import com.nsysmon.server.processing.BatchStatistics;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+
+/**
+ * This worker pumps data from a queue into persistent storage in batches: It waits for a first item, then collects
+ *  more items until there are <code>maxBatchSize</code> of them or <code>maxBatchDelayMillis</code> have passed, and
+ *  then stores them together. That way, storage needs a single round trip per batch rather than one per item, while
+ *  data is never delayed by more than the configured time.
+ *
+ * @author arno
+ */
+class BatchingQueueWorker<T> implements Runnable {
+    private static final Logger log = Logger.getLogger(BatchingQueueWorker.class);
+
+    /**
+     * the interval in which the worker checks for shutdown while the queue is empty
+     */
+    private static final long IDLE_POLL_MILLIS = 200;
+
+    interface BatchHandler<T> {
+        void store(List<T> batch) throws Exception;
+    }
+
+    private final String name;
+    private final BlockingQueue<T> queue;
+    private final int maxBatchSize;
+    private final long maxBatchDelayNanos;
+    private final BatchHandler<T> handler;
+    private final BatchStatistics statistics;
+    private final BooleanSupplier isShutDown;
+
+    BatchingQueueWorker(String name, BlockingQueue<T> queue, int maxBatchSize, long maxBatchDelayMillis, BatchHandler<T> handler, BatchStatistics statistics, BooleanSupplier isShutDown) {
+        this.name = name;
+        this.queue = queue;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+        this.handler = handler;
+        this.statistics = statistics;
+        this.isShutDown = isShutDown;
+    }
+
+    @Override public void run() {
+        final List<T> batch = new ArrayList<>(maxBatchSize);
+        boolean wasInterrupted = false;
+
+        while (!isShutDown.getAsBoolean()) {
+            try {
+                collectBatch(batch);
+                storeBatch(batch);
+            }
+            catch (InterruptedException e) {
+                wasInterrupted = true;
+                break;
+            }
+        }
+
+        // store the items that were collected when the worker was interrupted, and then everything that is left in the
+        //  queue, but do not wait for more
+        storeBatch(batch);
+        while(queue.drainTo(batch, maxBatchSize) > 0) {
+            storeBatch(batch);
+        }
+
+        if(wasInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void collectBatch(List<T> batch) throws InterruptedException {
+        final T first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if(first == null) {
+            return;
+        }
+        batch.add(first);
+
+        final long deadline = System.nanoTime() + maxBatchDelayNanos;
+        while(batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            if(batch.size() >= maxBatchSize) {
+                break;
+            }
+
+            final long remainingNanos = deadline - System.nanoTime();
+            if(remainingNanos <= 0) {
+                break;
+            }
+            final T next = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+            if(next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * stores the batch and clears it afterwards, even if storing it failed
+     */
+    private void storeBatch(List<T> batch) {
+        if(batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            final long start = System.nanoTime();
+            handler.store(batch);
+            statistics.onBatchStored(batch.size(), System.nanoTime() - start);
+        }
+        catch (Exception e) {
+            statistics.onBatchFailed();
+            log.error("exception storing a batch of " + batch.size() + " " + name + " items", e);
+        }
+        finally {
+            batch.clear();
+        }
+    }
+}
@@ -4,17 +4,22 @@ import com.ajjpj.afoundation.collection.mutable.ASoftlyLimitedBlockingQueue;
 import com.nsysmon.server.data.json.EnvironmentNode;
 import com.nsysmon.server.data.json.ScalarNode;
 import com.nsysmon.server.data.json.TraceRootNode;
+import com.nsysmon.server.processing.BatchStatistics;
 import com.nsysmon.server.processing.BufferingPersistenceProcessor;
 import com.nsysmon.server.processing.EventBus;
 import com.nsysmon.server.processing.NewDataListener;
 import com.nsysmon.server.services.ConfigData;
 import com.nsysmon.server.services.ConfigProvider;
+import com.nsysmon.server.storage.EnvironmentDataDao;
 import com.nsysmon.server.storage.ScalarDataDao;
+import com.nsysmon.server.storage.TraceDataDao;
 import com.nsysmon.util.AShutdownable;
 import org.apache.log4j.Logger;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -34,6 +39,8 @@ public class BufferingPersistenceProcessorImpl implements BufferingPersistencePr
 
     private final EventBus eventBus;
     private final ScalarDataDao scalarDataDao;
+    private final TraceDataDao traceDataDao;
+    private final EnvironmentDataDao environmentDataDao;
 
 
     private final ASoftlyLimitedBlockingQueue<ScalarNode> scalarQueue;
@@ -58,42 +65,20 @@ public class BufferingPersistenceProcessorImpl implements BufferingPersistencePr
         }
     };
 
-    private final Runnable scalarWorker = new Runnable() {
-        @Override public void run() {
-            while (!isShutDown) {
-                try {
-                    scalarDataDao.storeScalarData(scalarQueue.take());
-                } catch (Exception e) {
-                    log.error("exception storing environment", e);
-                }
-            }
-        }
-    };
+    private final BatchStatistics scalarStatistics = new BatchStatistics();
+    private final BatchStatistics traceStatistics = new BatchStatistics();
+    private final BatchStatistics environmentStatistics = new BatchStatistics();
 
-    private final Runnable traceWorker = () -> {
-//            while (!isShutDown) {
-//                try {
-//                    persister.storeTraceData(traceQueue.take());
-//                } catch (Exception e) {
-//                    log.error("exception storing trace", e);
-//                }
-//            }
-    };
-
-    private final Runnable environmentWorker = () -> {
-//            while (!isShutDown) {
-//                try {
-//                    persister.storeEnvironmentData(environmentQueue.take());
-//                } catch (Exception e) {
-//                    log.warn("exception storing environment", e);
-//                }
-//            }
-    };
+    private final Runnable scalarWorker;
+    private final Runnable traceWorker;
+    private final Runnable environmentWorker;
 
 
     @Inject
-    public BufferingPersistenceProcessorImpl(EventBus eventBus, ScalarDataDao scalarDataDao, ConfigProvider configProvider) {
+    public BufferingPersistenceProcessorImpl(EventBus eventBus, ScalarDataDao scalarDataDao, TraceDataDao traceDataDao, EnvironmentDataDao environmentDataDao, ConfigProvider configProvider) {
         this.scalarDataDao = scalarDataDao;
+        this.traceDataDao = traceDataDao;
+        this.environmentDataDao = environmentDataDao;
         this.eventBus = eventBus;
 
         final ConfigData config = configProvider.getConfigData();
@@ -102,6 +87,13 @@ public class BufferingPersistenceProcessorImpl implements BufferingPersistencePr
         traceQueue       = new ASoftlyLimitedBlockingQueue<>(config.getTraceQueueSize(),       new Log4JWarnCallback("trace queue overflow - discarding data"));
         environmentQueue = new ASoftlyLimitedBlockingQueue<>(config.getEnvironmentQueueSize(), new Log4JWarnCallback("environment queue overflow - discarding data"));
 
+        scalarWorker = new BatchingQueueWorker<>("scalar", scalarQueue, config.getMaxPersistenceBatchSize(), config.getMaxPersistenceBatchDelayMillis(),
+                scalarDataDao::storeScalarData, scalarStatistics, () -> isShutDown);
+        traceWorker = new BatchingQueueWorker<>("trace", traceQueue, config.getMaxPersistenceBatchSize(), config.getMaxPersistenceBatchDelayMillis(),
+                traceDataDao::storeTraces, traceStatistics, () -> isShutDown);
+        environmentWorker = new BatchingQueueWorker<>("environment", environmentQueue, config.getMaxPersistenceBatchSize(), config.getMaxPersistenceBatchDelayMillis(),
+                environmentDataDao::storeEnvironmentData, environmentStatistics, () -> isShutDown);
+
         scalarEs      = Executors.newFixedThreadPool(config.getNumScalarWorkerThreads());
         traceEs       = Executors.newFixedThreadPool(config.getNumTraceWorkerThreads());
         environmentEs = Executors.newFixedThreadPool(config.getNumEnvironmentWorkerThreads());
@@ -121,6 +113,14 @@ public class BufferingPersistenceProcessorImpl implements BufferingPersistencePr
         eventBus.addListener(listener);
     }
 
+    @Override public Map<String, BatchStatistics> getBatchStatistics() {
+        final Map<String, BatchStatistics> result = new LinkedHashMap<>();
+        result.put("scalar", scalarStatistics);
+        result.put("trace", traceStatistics);
+        result.put("environment", environmentStatistics);
+        return result;
+    }
+
     @Override public void shutdown() throws Exception {
         isShutDown = true;
         eventBus.removeListener(listener);
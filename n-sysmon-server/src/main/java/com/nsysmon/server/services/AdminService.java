@@ -1,10 +1,13 @@
 package com.nsysmon.server.services;
 
 
+import com.nsysmon.server.processing.BatchStatistics;
 import com.nsysmon.server.storage.ScalarMetaData;
 import com.nsysmon.server.util.AOption;
 import com.nsysmon.server.util.json.ListWrapper;
 
+import java.util.Map;
+
 /**
  * @author arno
  */
@@ -12,4 +15,6 @@ public interface AdminService {
     ListWrapper<String> getMonitoredApplicationNames();
 
     AOption<ScalarMetaData> get(String name);
+
+    Map<String, BatchStatistics> getPersistenceStatistics();
 }
@@ -14,13 +14,20 @@ public class ConfigData {
     private final int numScalarWorkerThreads;
     private final int numTraceWorkerThreads;
 
-    public ConfigData(int environmentQueueSize, int scalarQueueSize, int traceQueueSize, int numEnvironmentWorkerThreads, int numScalarWorkerThreads, int numTraceWorkerThreads) {
+    // worker threads store data in batches of up to this size, waiting at most this long for a batch to fill up
+    private final int maxPersistenceBatchSize;
+    private final long maxPersistenceBatchDelayMillis;
+
+    public ConfigData(int environmentQueueSize, int scalarQueueSize, int traceQueueSize, int numEnvironmentWorkerThreads, int numScalarWorkerThreads, int numTraceWorkerThreads,
+                      int maxPersistenceBatchSize, long maxPersistenceBatchDelayMillis) {
         this.environmentQueueSize = environmentQueueSize;
         this.scalarQueueSize = scalarQueueSize;
         this.traceQueueSize = traceQueueSize;
         this.numEnvironmentWorkerThreads = numEnvironmentWorkerThreads;
         this.numScalarWorkerThreads = numScalarWorkerThreads;
         this.numTraceWorkerThreads = numTraceWorkerThreads;
+        this.maxPersistenceBatchSize = maxPersistenceBatchSize;
+        this.maxPersistenceBatchDelayMillis = maxPersistenceBatchDelayMillis;
     }
 
     public int getEnvironmentQueueSize() {
@@ -46,4 +53,12 @@ public class ConfigData {
     public int getNumTraceWorkerThreads() {
         return numTraceWorkerThreads;
     }
+
+    public int getMaxPersistenceBatchSize() {
+        return maxPersistenceBatchSize;
+    }
+
+    public long getMaxPersistenceBatchDelayMillis() {
+        return maxPersistenceBatchDelayMillis;
+    }
 }
@@ -1,5 +1,7 @@
 package com.nsysmon.server.services.impl;
 
+import com.nsysmon.server.processing.BatchStatistics;
+import com.nsysmon.server.processing.BufferingPersistenceProcessor;
 import com.nsysmon.server.services.AdminService;
 import com.nsysmon.server.storage.MonitoredApplicationDao;
 import com.nsysmon.server.storage.ScalarMetaData;
@@ -28,14 +30,16 @@ public class AdminServiceImpl implements AdminService {
 
     private final MonitoredApplicationDao monitoredApplicationDao;
     private final ScalarMetaDataDao scalarMetaDataDao;
+    private final BufferingPersistenceProcessor persistenceProcessor;
 
     private volatile Map<String, ScalarMetaData> scalarMetaData = new HashMap<>();
     private volatile long scalarMetaDataLastRefreshed = 0;
 
     @Inject
-    public AdminServiceImpl(MonitoredApplicationDao monitoredApplicationDao, ScalarMetaDataDao scalarMetaDataDao) {
+    public AdminServiceImpl(MonitoredApplicationDao monitoredApplicationDao, ScalarMetaDataDao scalarMetaDataDao, BufferingPersistenceProcessor persistenceProcessor) {
         this.monitoredApplicationDao = monitoredApplicationDao;
         this.scalarMetaDataDao = scalarMetaDataDao;
+        this.persistenceProcessor = persistenceProcessor;
     }
 
     @GET
@@ -45,6 +49,16 @@ public class AdminServiceImpl implements AdminService {
         return new ListWrapper<>(monitoredApplicationDao.getMonitoredApplicationNames());
     }
 
+    /**
+     * @return batch size and flush latency of the persistence workers
+     */
+    @GET
+    @Path("persistenceStatistics")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, BatchStatistics> getPersistenceStatistics() {
+        return persistenceProcessor.getBatchStatistics();
+    }
+
     private void checkRefresh() {
         final long now = System.currentTimeMillis();
         if(now < scalarMetaDataLastRefreshed + SCALAR_META_REFRESH_INTERVAL_MILLIS) {
@@ -10,6 +10,6 @@ import com.nsysmon.server.services.ConfigProvider;
 public class ConfigProviderImpl implements ConfigProvider {
     @Override public ConfigData getConfigData() {
         //TODO read from the database
-        return new ConfigData(1000, 10_000, 1000, 4, 10, 10);
+        return new ConfigData(1000, 10_000, 1000, 4, 10, 10, 500, 200);
     }
 }
@@ -0,0 +1,18 @@
+package com.nsysmon.server.storage;
+
+import com.nsysmon.server.data.json.EnvironmentNode;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author arno
+ */
+public interface EnvironmentDataDao {
+    void storeEnvironmentData(List<EnvironmentNode> environmentNodes);
+
+    /**
+     * @return the current environment of an application instance as a map from key to value
+     */
+    Map<String, String> getEnvironment(String appId, String instanceId);
+}
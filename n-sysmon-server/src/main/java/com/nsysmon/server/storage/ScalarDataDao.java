@@ -2,9 +2,16 @@ package com.nsysmon.server.storage;
 
 import com.nsysmon.server.data.json.ScalarNode;
 
+import java.util.List;
+
 /**
  * @author arno
  */
 public interface ScalarDataDao {
     void storeScalarData(ScalarNode scalarNode);
+
+    /**
+     * stores a batch of data points with one bulk insert per target collection
+     */
+    void storeScalarData(List<ScalarNode> scalarNodes);
 }
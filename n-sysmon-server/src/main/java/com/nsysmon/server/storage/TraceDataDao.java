@@ -0,0 +1,25 @@
+package com.nsysmon.server.storage;
+
+import com.nsysmon.server.data.json.TraceRootNode;
+import com.nsysmon.server.util.AOption;
+
+import java.util.List;
+
+/**
+ * @author arno
+ */
+public interface TraceDataDao {
+    void storeTraces(List<TraceRootNode> traces);
+
+    /**
+     * @return the slowest traces with an adjusted start time in a given range, slowest first
+     */
+    List<TraceSummary> findSlowest(String appId, long fromTimestamp, long toTimestamp, int maxNumResults);
+
+    /**
+     * @return the slowest traces with a given root identifier and an adjusted start time in a given range, slowest first
+     */
+    List<TraceSummary> findSlowest(String appId, String rootIdentifier, long fromTimestamp, long toTimestamp, int maxNumResults);
+
+    AOption<TraceRootNode> get(String appId, String uuid);
+}
@@ -0,0 +1,33 @@
+package com.nsysmon.server.storage;
+
+/**
+ * This is the indexed part of a stored trace, i.e. what is needed to list traces without decoding them.
+ *
+ * @author arno
+ */
+public class TraceSummary {
+    public final String uuid;
+    public final String instance;
+    public final String rootIdentifier;
+    public final long timestamp;
+    public final long durationNanos;
+
+    public TraceSummary(String uuid, String instance, String rootIdentifier, long timestamp, long durationNanos) {
+        this.uuid = uuid;
+        this.instance = instance;
+        this.rootIdentifier = rootIdentifier;
+        this.timestamp = timestamp;
+        this.durationNanos = durationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "TraceSummary{" +
+                "uuid='" + uuid + '\'' +
+                ", instance='" + instance + '\'' +
+                ", rootIdentifier='" + rootIdentifier + '\'' +
+                ", timestamp=" + timestamp +
+                ", durationNanos=" + durationNanos +
+                '}';
+    }
+}
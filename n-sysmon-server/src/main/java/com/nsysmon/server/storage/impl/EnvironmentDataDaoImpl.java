@@ -0,0 +1,105 @@
+package com.nsysmon.server.storage.impl;
+
+import com.nsysmon.server.data.json.EnvironmentNode;
+import com.nsysmon.server.storage.EnvironmentDataDao;
+import com.mongodb.*;
+import org.apache.log4j.Logger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Environment data changes rarely but is sent periodically, so this DAO stores only the current value per instance and
+ *  key rather than every data point: there is one document per application instance and key, and it is updated in
+ *  place - but never with a value that is older than the stored one.
+ *
+ * @author arno
+ */
+@Singleton
+public class EnvironmentDataDaoImpl implements EnvironmentDataDao {
+    private static final Logger log = Logger.getLogger(EnvironmentDataDaoImpl.class);
+
+    public static final String COLLECTION_SUFFIX_ENVIRONMENT = "environment";
+
+    public static final String FIELD_NAME_INSTANCE = "instance";
+    public static final String FIELD_NAME_KEY = "key";
+    public static final String FIELD_NAME_VALUE = "value";
+    public static final String FIELD_NAME_TIMESTAMP = "timestamp";
+
+    public static final String INDEX_NAME_INSTANCE = "instance";
+
+    private final DB db;
+
+    /**
+     * the collections for which indexes were checked by this process
+     */
+    private final Set<String> initializedCollections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    @Inject
+    public EnvironmentDataDaoImpl(DB db) {
+        this.db = db;
+    }
+
+    private DBCollection getEnvironmentCollection(String appId) {
+        final DBCollection result = db.getCollection(appId + MongoDbHelper.SEPARATOR + COLLECTION_SUFFIX_ENVIRONMENT);
+        if(initializedCollections.add(result.getName()) && result.count() == 0) {
+            result.ensureIndex(new BasicDBObject(FIELD_NAME_INSTANCE, 1), INDEX_NAME_INSTANCE);
+        }
+        return result;
+    }
+
+    @Override public void storeEnvironmentData(List<EnvironmentNode> environmentNodes) {
+        log.debug("storing " + environmentNodes.size() + " environment entries");
+
+        // a batch typically contains several data points for the same entry - only the most recent one is of interest
+        final Map<String, EnvironmentNode> newest = new LinkedHashMap<>();
+        for(EnvironmentNode node: environmentNodes) {
+            final String id = node.getInstanceIdentifier().getApplicationId() + MongoDbHelper.SEPARATOR + getId(node);
+            final EnvironmentNode prev = newest.get(id);
+            if(prev == null || prev.getAdjustedTimestamp() <= node.getAdjustedTimestamp()) {
+                newest.put(id, node);
+            }
+        }
+
+        for(EnvironmentNode node: newest.values()) {
+            final BasicDBObject data = new BasicDBObject();
+            data.append(FIELD_NAME_INSTANCE, node.getInstanceIdentifier().getInstanceId());
+            data.append(FIELD_NAME_KEY, node.getKey());
+            data.append(FIELD_NAME_VALUE, node.getValue());
+            data.append(FIELD_NAME_TIMESTAMP, node.getAdjustedTimestamp());
+
+            // Batches may be stored out of order, so a value is only replaced by a newer one. If the stored value is
+            //  newer, the query does not match, and the upsert fails because the document exists already.
+            final BasicDBObject query = new BasicDBObject("_id", getId(node));
+            query.append(FIELD_NAME_TIMESTAMP, new BasicDBObject("$lte", node.getAdjustedTimestamp()));
+
+            try {
+                getEnvironmentCollection(node.getInstanceIdentifier().getApplicationId()).update(
+                        query, new BasicDBObject("$set", data), true, false);
+            }
+            catch (MongoException.DuplicateKey exc) {
+                log.debug("ignoring outdated environment entry " + getId(node) + " of application " + node.getInstanceIdentifier().getApplicationId());
+            }
+        }
+    }
+
+    private String getId(EnvironmentNode node) {
+        return node.getInstanceIdentifier().getInstanceId() + MongoDbHelper.SEPARATOR + node.getKey();
+    }
+
+    @Override public Map<String, String> getEnvironment(String appId, String instanceId) {
+        final Map<String, String> result = new HashMap<>();
+        for(DBObject o: getEnvironmentCollection(appId).find(new BasicDBObject(FIELD_NAME_INSTANCE, instanceId))) {
+            result.put((String) o.get(FIELD_NAME_KEY), (String) o.get(FIELD_NAME_VALUE));
+        }
+        return result;
+    }
+}
@@ -14,7 +14,9 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -30,6 +32,12 @@ public class ScalarDataDaoImpl implements ScalarDataDao {
 
     public static final String INDEX_NAME_SCALAR_INSTANCE_AND_TIME = "timestamp-and-instance";
 
+    /**
+     * A duplicate data point in a bulk insert (e.g. due to a client re-sending data) must not prevent the rest of the
+     *  batch from being stored.
+     */
+    private static final WriteConcern BULK_INSERT_WRITE_CONCERN = WriteConcern.ACKNOWLEDGED.continueOnErrorForInsert(true);
+
     private final DB db;
 
     private final MonitoredApplicationDao monitoredApplicationDao;
@@ -58,18 +66,41 @@ public class ScalarDataDaoImpl implements ScalarDataDao {
     @Override public void storeScalarData(ScalarNode scalarData) {
         log.debug("storing " + scalarData);
 
+        try {
+            getScalarCollection(scalarData.getInstanceIdentifier(), scalarData.getName()).insert(toDbObject(scalarData));
+        } catch (MongoException.DuplicateKey e) {
+            log.warn("Attempted to insert environment data " + scalarData + " twice, ignoring. This is probably due to a client sending the same data twice.");
+        }
+    }
+
+    @Override public void storeScalarData(List<ScalarNode> scalarNodes) {
+        log.debug("storing " + scalarNodes.size() + " scalar data points");
+
+        // every application / scalar combination has a collection of its own
+        final Map<String, List<DBObject>> byCollection = new HashMap<>();
+        for(ScalarNode scalarData: scalarNodes) {
+            byCollection
+                    .computeIfAbsent(getScalarCollectionName(scalarData.getInstanceIdentifier().getApplicationId(), scalarData.getName()), n -> new ArrayList<>())
+                    .add(toDbObject(scalarData));
+        }
+
+        for(Map.Entry<String, List<DBObject>> e: byCollection.entrySet()) {
+            try {
+                db.getCollection(e.getKey()).insert(e.getValue(), BULK_INSERT_WRITE_CONCERN);
+            } catch (MongoException.DuplicateKey exc) {
+                log.warn("Attempted to insert environment data into " + e.getKey() + " twice, ignoring. This is probably due to a client sending the same data twice.");
+            }
+        }
+    }
+
+    private DBObject toDbObject(ScalarNode scalarData) {
         final BasicDBObject object = new BasicDBObject();
         object.append("_id", scalarData.getUuid());
         object.append(FIELD_NAME_INSTANCE, scalarData.getInstanceIdentifier().getInstanceId());
         object.append(FIELD_NAME_TIMESTAMP, scalarData.getAdjustedTimestamp());
         object.append("sender-timestamp", scalarData.getSenderTimestamp());
         object.append(FIELD_NAME_VALUE, scalarData.getValue());
-
-        try {
-            getScalarCollection(scalarData.getInstanceIdentifier(), scalarData.getName()).insert(object);
-        } catch (MongoException.DuplicateKey e) {
-            log.warn("Attempted to insert environment data " + scalarData + " twice, ignoring. This is probably due to a client sending the same data twice.");
-        }
+        return object;
     }
 
     private ScalarDataPoint fromDbObject(DBObject o) {
@@ -0,0 +1,273 @@
+package com.nsysmon.server.storage.impl;
+
+import com.nsysmon.server.data.json.TraceRootNode;
+import com.nsysmon.server.storage.TraceDataDao;
+import com.nsysmon.server.storage.TraceSummary;
+import com.nsysmon.server.util.AOption;
+import com.mongodb.*;
+import org.apache.log4j.Logger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Traces are stored in a compact encoding (see {@link TraceEncoder}) with one document per trace. Every batch of traces
+ *  shares a dictionary of identifiers which is stored in a separate collection.<p>
+ *
+ * The fields needed for listing traces - root identifier, start time and duration - are stored un-encoded and indexed
+ *  so that 'slowest traces' queries can be answered without decoding any traces.
+ *
+ * @author arno
+ */
+@Singleton
+public class TraceDataDaoImpl implements TraceDataDao {
+    private static final Logger log = Logger.getLogger(TraceDataDaoImpl.class);
+
+    public static final String COLLECTION_SUFFIX_TRACES = "traces";
+    public static final String COLLECTION_SUFFIX_DICTIONARIES = "trace-dictionaries";
+
+    public static final String FIELD_NAME_SYMBOLS = "symbols";
+
+    public static final String INDEX_NAME_TIMESTAMP = "timestamp-and-duration";
+    public static final String INDEX_NAME_ROOT_IDENTIFIER = "root-identifier-and-timestamp-and-duration";
+
+    private static final int MAX_NUM_CACHED_DICTIONARIES = 100;
+
+    private static final WriteConcern BULK_INSERT_WRITE_CONCERN = WriteConcern.ACKNOWLEDGED.continueOnErrorForInsert(true);
+
+    private static final DBObject SUMMARY_PROJECTION = new BasicDBObject()
+            .append(TraceEncoder.FIELD_NAME_INSTANCE, 1)
+            .append(TraceEncoder.FIELD_NAME_ROOT_IDENTIFIER, 1)
+            .append(TraceEncoder.FIELD_NAME_TIMESTAMP, 1)
+            .append(TraceEncoder.FIELD_NAME_DURATION, 1);
+
+    private static final DBObject SORT_SLOWEST_FIRST = new BasicDBObject(TraceEncoder.FIELD_NAME_DURATION, -1);
+
+    private final DB db;
+
+    /**
+     * the collections for which indexes were checked by this process
+     */
+    private final Set<String> initializedCollections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /**
+     * Dictionaries are immutable once they are stored, and traces that are looked at together typically share them.
+     */
+    private final Map<String, List<String>> dictionaryCache = new LinkedHashMap<String, List<String>>(16, .75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+            return size() > MAX_NUM_CACHED_DICTIONARIES;
+        }
+    };
+
+    @Inject
+    public TraceDataDaoImpl(DB db) {
+        this.db = db;
+    }
+
+    private DBCollection getTraceCollection(String appId) {
+        final DBCollection result = db.getCollection(appId + MongoDbHelper.SEPARATOR + COLLECTION_SUFFIX_TRACES);
+        if(initializedCollections.add(result.getName())) {
+            initSchema(result);
+        }
+        return result;
+    }
+
+    private DBCollection getDictionaryCollection(String appId) {
+        return db.getCollection(appId + MongoDbHelper.SEPARATOR + COLLECTION_SUFFIX_DICTIONARIES);
+    }
+
+    /**
+     * This method creates indexes for trace collections that do not yet exist. It does <em>not</em> create indices for
+     *  pre-existing collections, see ScalarDataDaoImpl.initSchema() for the rationale.
+     */
+    private void initSchema(DBCollection coll) {
+        if(coll.count() == 0) {
+            final BasicDBObject timestampIdx = new BasicDBObject(TraceEncoder.FIELD_NAME_TIMESTAMP, 1);
+            timestampIdx.append(TraceEncoder.FIELD_NAME_DURATION, -1);
+            coll.ensureIndex(timestampIdx, INDEX_NAME_TIMESTAMP);
+
+            final BasicDBObject rootIdentifierIdx = new BasicDBObject(TraceEncoder.FIELD_NAME_ROOT_IDENTIFIER, 1);
+            rootIdentifierIdx.append(TraceEncoder.FIELD_NAME_TIMESTAMP, 1);
+            rootIdentifierIdx.append(TraceEncoder.FIELD_NAME_DURATION, -1);
+            coll.ensureIndex(rootIdentifierIdx, INDEX_NAME_ROOT_IDENTIFIER);
+        }
+        else {
+            warnAboutMissingIndexes(coll, INDEX_NAME_TIMESTAMP, INDEX_NAME_ROOT_IDENTIFIER);
+        }
+    }
+
+    private void warnAboutMissingIndexes(DBCollection coll, String... indexNames) {
+        final Set<String> existing = new HashSet<>();
+        for(DBObject indexInfo: coll.getIndexInfo()) {
+            existing.add((String) indexInfo.get("name"));
+        }
+
+        for(String indexName: indexNames) {
+            if(! existing.contains(indexName)) {
+                log.warn("index " + indexName + " does not exist on pre-existing collection " + coll.getName() + " - queries for traces will be slow. It must be created manually.");
+            }
+        }
+    }
+
+    @Override public void storeTraces(List<TraceRootNode> traces) {
+        log.debug("storing " + traces.size() + " traces");
+
+        // one dictionary per application and batch
+        final Map<String, List<TraceRootNode>> byApplication = new HashMap<>();
+        for(TraceRootNode trace: traces) {
+            byApplication.computeIfAbsent(trace.getInstanceIdentifier().getApplicationId(), a -> new ArrayList<>()).add(trace);
+        }
+
+        for(Map.Entry<String, List<TraceRootNode>> e: byApplication.entrySet()) {
+            final String appId = e.getKey();
+            final String dictionaryId = UUID.randomUUID().toString();
+
+            final TraceEncoder encoder = new TraceEncoder();
+            final List<DBObject> encoded = new ArrayList<>(e.getValue().size());
+            for(TraceRootNode trace: e.getValue()) {
+                encoded.add(encoder.encode(trace, dictionaryId));
+            }
+
+            // the dictionary is stored first so that every stored trace can be decoded
+            final BasicDBObject dictionary = new BasicDBObject("_id", dictionaryId);
+            dictionary.append(FIELD_NAME_SYMBOLS, encoder.getDictionary());
+            getDictionaryCollection(appId).insert(dictionary);
+
+            try {
+                getTraceCollection(appId).insert(encoded, BULK_INSERT_WRITE_CONCERN);
+            } catch (MongoException.DuplicateKey exc) {
+                log.warn("Attempted to insert traces for application " + appId + " twice, ignoring. This is probably due to a client sending the same data twice.");
+                removeUnusedDictionary(appId, dictionaryId, encoded);
+            } catch (MongoException exc) {
+                removeBatch(appId, dictionaryId, encoded);
+                throw exc;
+            }
+        }
+    }
+
+    /**
+     * If all traces of a batch had been stored before, none of them refers to the batch's dictionary.
+     */
+    private void removeUnusedDictionary(String appId, String dictionaryId, List<DBObject> encoded) {
+        try {
+            if(getTraceCollection(appId).count(createBatchQuery(dictionaryId, encoded)) == 0) {
+                getDictionaryCollection(appId).remove(new BasicDBObject("_id", dictionaryId));
+            }
+        }
+        catch (MongoException exc) {
+            log.error("failed to remove unused dictionary " + dictionaryId + " of application " + appId, exc);
+        }
+    }
+
+    /**
+     * Removes the traces of a batch that failed to be stored, and then the batch's dictionary, so that the failed
+     *  batch leaves neither an orphaned dictionary nor part of its traces behind. Traces that were stored before with
+     *  a different dictionary are kept.
+     */
+    private void removeBatch(String appId, String dictionaryId, List<DBObject> encoded) {
+        try {
+            getTraceCollection(appId).remove(createBatchQuery(dictionaryId, encoded));
+            getDictionaryCollection(appId).remove(new BasicDBObject("_id", dictionaryId));
+        }
+        catch (MongoException exc) {
+            log.error("failed to clean up dictionary " + dictionaryId + " of application " + appId + " after a failed batch", exc);
+        }
+    }
+
+    /**
+     * matches those traces of a batch that were stored with the batch's dictionary, using the _id index
+     */
+    private static DBObject createBatchQuery(String dictionaryId, List<DBObject> encoded) {
+        final List<Object> ids = new ArrayList<>(encoded.size());
+        for(DBObject o: encoded) {
+            ids.add(o.get("_id"));
+        }
+
+        final BasicDBObject result = new BasicDBObject("_id", new BasicDBObject("$in", ids));
+        result.append(TraceEncoder.FIELD_NAME_DICTIONARY, dictionaryId);
+        return result;
+    }
+
+    @Override public List<TraceSummary> findSlowest(String appId, long fromTimestamp, long toTimestamp, int maxNumResults) {
+        final BasicDBObject query = new BasicDBObject(TraceEncoder.FIELD_NAME_TIMESTAMP, MongoDbHelper.createQueryTimestampRange(fromTimestamp, toTimestamp));
+        return findSummaries(appId, query, maxNumResults);
+    }
+
+    @Override public List<TraceSummary> findSlowest(String appId, String rootIdentifier, long fromTimestamp, long toTimestamp, int maxNumResults) {
+        final BasicDBObject query = new BasicDBObject(TraceEncoder.FIELD_NAME_ROOT_IDENTIFIER, rootIdentifier);
+        query.append(TraceEncoder.FIELD_NAME_TIMESTAMP, MongoDbHelper.createQueryTimestampRange(fromTimestamp, toTimestamp));
+        return findSummaries(appId, query, maxNumResults);
+    }
+
+    /**
+     * The indexes lead with the time range so that only the index entries of the queried range are scanned. Durations
+     *  are part of the indexes so that the top <code>maxNumResults</code> can be selected before any documents are
+     *  fetched.
+     */
+    private List<TraceSummary> findSummaries(String appId, DBObject query, int maxNumResults) {
+        final List<TraceSummary> result = new ArrayList<>();
+        for(DBObject o: getTraceCollection(appId).find(query, SUMMARY_PROJECTION).sort(SORT_SLOWEST_FIRST).limit(maxNumResults)) {
+            result.add(new TraceSummary(
+                    (String) o.get("_id"),
+                    (String) o.get(TraceEncoder.FIELD_NAME_INSTANCE),
+                    (String) o.get(TraceEncoder.FIELD_NAME_ROOT_IDENTIFIER),
+                    MongoDbHelper.asLongExpected(o, TraceEncoder.FIELD_NAME_TIMESTAMP),
+                    MongoDbHelper.asLongExpected(o, TraceEncoder.FIELD_NAME_DURATION)));
+        }
+        return result;
+    }
+
+    @Override public AOption<TraceRootNode> get(String appId, String uuid) {
+        final DBObject o = getTraceCollection(appId).findOne(new BasicDBObject("_id", uuid));
+        if(o == null) {
+            return AOption.none();
+        }
+
+        final List<String> dictionary = getDictionary(appId, (String) o.get(TraceEncoder.FIELD_NAME_DICTIONARY));
+        if(dictionary == null) {
+            log.warn("no dictionary for trace " + uuid + " of application " + appId);
+            return AOption.none();
+        }
+
+        try {
+            return AOption.some(TraceEncoder.decode(appId, o, dictionary));
+        }
+        catch (IllegalArgumentException exc) {
+            log.warn("trace " + uuid + " of application " + appId + " can not be decoded: " + exc.getMessage());
+            return AOption.none();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> getDictionary(String appId, String dictionaryId) {
+        final String cacheKey = appId + MongoDbHelper.SEPARATOR + dictionaryId;
+        synchronized (dictionaryCache) {
+            final List<String> cached = dictionaryCache.get(cacheKey);
+            if(cached != null) {
+                return cached;
+            }
+        }
+
+        final DBObject o = getDictionaryCollection(appId).findOne(new BasicDBObject("_id", dictionaryId));
+        if(o == null) {
+            return null;
+        }
+
+        final List<String> result = new ArrayList<>((List<String>) o.get(FIELD_NAME_SYMBOLS));
+        synchronized (dictionaryCache) {
+            dictionaryCache.put(cacheKey, result);
+        }
+        return result;
+    }
+}
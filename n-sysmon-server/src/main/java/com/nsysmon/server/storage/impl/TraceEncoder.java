@@ -0,0 +1,265 @@
+package com.nsysmon.server.storage.impl;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.nsysmon.server.data.InstanceIdentifier;
+import com.nsysmon.server.data.json.CorrelationId;
+import com.nsysmon.server.data.json.TraceNode;
+import com.nsysmon.server.data.json.TraceRootNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * This class converts traces to and from a compact document representation. A trace's nodes are stored in pre-order
+ *  as parallel arrays rather than as nested documents, which saves the field names for every node:
+ *
+ * <ul>
+ *     <li>identifiers and parameter keys are stored as indexes into a dictionary that is shared by all traces of a
+ *         batch, so each distinct string is stored once per batch rather than once per node</li>
+ *     <li>start times are stored as offsets to the parent node's start time</li>
+ *     <li>durations are delta encoded, i.e. stored as difference to the previous node's duration</li>
+ * </ul>
+ *
+ * Numbers are stored as 32 bit integers if they fit. The root node's identifier, start time and duration are
+ *  additionally stored as regular fields so they can be indexed.<p>
+ *
+ * An instance of this class holds the dictionary for one batch of traces, it is not thread safe.
+ *
+ * @author arno
+ */
+class TraceEncoder {
+    public static final String FIELD_NAME_INSTANCE = "instance";
+    public static final String FIELD_NAME_ROOT_IDENTIFIER = "rootIdentifier";
+    public static final String FIELD_NAME_TIMESTAMP = "timestamp";
+    public static final String FIELD_NAME_SENDER_TIMESTAMP = "sender-timestamp";
+    public static final String FIELD_NAME_DURATION = "duration";
+    public static final String FIELD_NAME_DICTIONARY = "dict";
+    public static final String FIELD_NAME_STARTED_FLOWS = "startedFlows";
+    public static final String FIELD_NAME_JOINED_FLOWS = "joinedFlows";
+
+    static final String FIELD_NAME_IDENTIFIERS = "ident";
+    static final String FIELD_NAME_NUM_CHILDREN = "numChildren";
+    static final String FIELD_NAME_PARALLEL = "parallel";
+    static final String FIELD_NAME_START_OFFSETS = "start";
+    static final String FIELD_NAME_DURATION_DELTAS = "dur";
+    static final String FIELD_NAME_PARAMETERS = "params";
+
+    private static final String FIELD_NAME_FLOW_KIND = "kind";
+    private static final String FIELD_NAME_FLOW_IDENT = "ident";
+
+    private final Map<String, Integer> dictionaryIndexes = new HashMap<>();
+    private final List<String> dictionary = new ArrayList<>();
+
+    /**
+     * @return the symbols of all traces encoded so far, to be stored with the dictionary ID passed to {@link #encode}
+     */
+    List<String> getDictionary() {
+        return dictionary;
+    }
+
+    private int dictionaryIndex(String symbol) {
+        final Integer existing = dictionaryIndexes.get(symbol);
+        if(existing != null) {
+            return existing;
+        }
+        final int result = dictionary.size();
+        dictionary.add(symbol);
+        dictionaryIndexes.put(symbol, result);
+        return result;
+    }
+
+    DBObject encode(TraceRootNode traceRoot, String dictionaryId) {
+        final TraceNode root = traceRoot.getTrace();
+
+        final BasicDBObject result = new BasicDBObject("_id", traceRoot.getUuid());
+        result.append(FIELD_NAME_INSTANCE, traceRoot.getInstanceIdentifier().getInstanceId());
+        result.append(FIELD_NAME_ROOT_IDENTIFIER, root.getIdentifier());
+        result.append(FIELD_NAME_TIMESTAMP, root.getAdjustedStartTimeMillis());
+        result.append(FIELD_NAME_SENDER_TIMESTAMP, root.getSenderStartTimeMillis());
+        result.append(FIELD_NAME_DURATION, root.getDurationNanos());
+        result.append(FIELD_NAME_DICTIONARY, dictionaryId);
+
+        if(! traceRoot.getStartedFlows().isEmpty()) {
+            result.append(FIELD_NAME_STARTED_FLOWS, encodeFlows(traceRoot.getStartedFlows()));
+        }
+        if(! traceRoot.getJoinedFlows().isEmpty()) {
+            result.append(FIELD_NAME_JOINED_FLOWS, encodeFlows(traceRoot.getJoinedFlows()));
+        }
+
+        final EncodedNodes nodes = new EncodedNodes();
+        encodeRec(root, root.getAdjustedStartTimeMillis(), nodes);
+
+        result.append(FIELD_NAME_IDENTIFIERS, nodes.identifiers);
+        result.append(FIELD_NAME_NUM_CHILDREN, nodes.numChildren);
+        result.append(FIELD_NAME_START_OFFSETS, nodes.startOffsets);
+        result.append(FIELD_NAME_DURATION_DELTAS, nodes.durationDeltas);
+        if(! nodes.parallel.isEmpty()) {
+            result.append(FIELD_NAME_PARALLEL, nodes.parallel);
+        }
+        if(! nodes.parameters.isEmpty()) {
+            result.append(FIELD_NAME_PARAMETERS, nodes.parameters);
+        }
+        return result;
+    }
+
+    private void encodeRec(TraceNode node, long parentStartMillis, EncodedNodes nodes) {
+        final int nodeIdx = nodes.identifiers.size();
+
+        nodes.identifiers.add(dictionaryIndex(node.getIdentifier()));
+        nodes.numChildren.add(node.getChildren().size());
+        nodes.startOffsets.add(compact(node.getAdjustedStartTimeMillis() - parentStartMillis));
+        nodes.durationDeltas.add(compact(node.getDurationNanos() - nodes.prevDurationNanos));
+        nodes.prevDurationNanos = node.getDurationNanos();
+
+        if(! node.getIsSerial()) {
+            nodes.parallel.add(nodeIdx);
+        }
+        for(Map.Entry<String, String> param: node.getParameters().entrySet()) {
+            nodes.parameters.add(nodeIdx);
+            nodes.parameters.add(dictionaryIndex(param.getKey()));
+            nodes.parameters.add(param.getValue());
+        }
+
+        for(TraceNode child: node.getChildren()) {
+            encodeRec(child, node.getAdjustedStartTimeMillis(), nodes);
+        }
+    }
+
+    private static List<DBObject> encodeFlows(List<CorrelationId> flows) {
+        final List<DBObject> result = new ArrayList<>(flows.size());
+        for(CorrelationId flow: flows) {
+            final BasicDBObject o = new BasicDBObject(FIELD_NAME_FLOW_KIND, flow.getKind());
+            o.append(FIELD_NAME_FLOW_IDENT, flow.getIdent());
+            result.add(o);
+        }
+        return result;
+    }
+
+    /**
+     * BSON stores numbers that fit into 32 bits in half the space
+     */
+    static Object compact(long value) {
+        if(value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+        return value;
+    }
+
+    //-------------------------------------- decoding
+
+    /**
+     * @throws IllegalArgumentException if the document contains no nodes or refers to symbols that are not in the
+     *  dictionary
+     */
+    static TraceRootNode decode(String appId, DBObject o, List<String> dictionary) {
+        final TraceRootNode result = new TraceRootNode();
+        result.setUuid((String) o.get("_id"));
+        result.setInstanceIdentifier(new InstanceIdentifier(appId, (String) o.get(FIELD_NAME_INSTANCE)));
+        result.setStartedFlows(decodeFlows(o.get(FIELD_NAME_STARTED_FLOWS)));
+        result.setJoinedFlows(decodeFlows(o.get(FIELD_NAME_JOINED_FLOWS)));
+
+        final List<?> identifiers = (List<?>) o.get(FIELD_NAME_IDENTIFIERS);
+        final List<?> numChildren = (List<?>) o.get(FIELD_NAME_NUM_CHILDREN);
+        final List<?> startOffsets = (List<?>) o.get(FIELD_NAME_START_OFFSETS);
+        final List<?> durationDeltas = (List<?>) o.get(FIELD_NAME_DURATION_DELTAS);
+        if(identifiers == null || identifiers.isEmpty()) {
+            throw new IllegalArgumentException("trace contains no nodes");
+        }
+
+        final TraceNode[] nodes = new TraceNode[identifiers.size()];
+        long durationNanos = 0;
+        for(int i=0; i<nodes.length; i++) {
+            durationNanos += ((Number) durationDeltas.get(i)).longValue();
+
+            nodes[i] = new TraceNode();
+            nodes[i].setIsSerial(true);
+            nodes[i].setIdentifier(symbol(dictionary, identifiers.get(i)));
+            nodes[i].setDurationNanos(durationNanos);
+        }
+
+        final List<?> parallel = (List<?>) o.get(FIELD_NAME_PARALLEL);
+        if(parallel != null) {
+            for(Object idx: parallel) {
+                nodes[((Number) idx).intValue()].setIsSerial(false);
+            }
+        }
+
+        final List<?> parameters = (List<?>) o.get(FIELD_NAME_PARAMETERS);
+        if(parameters != null) {
+            for(int i=0; i<parameters.size(); i+=3) {
+                final TraceNode node = nodes[((Number) parameters.get(i)).intValue()];
+                node.getParameters().put(symbol(dictionary, parameters.get(i+1)), (String) parameters.get(i+2));
+            }
+        }
+
+        // the clock correction is the same for all nodes of a trace
+        final long rootTimestamp = MongoDbHelper.asLongExpected(o, FIELD_NAME_TIMESTAMP);
+        final long clockOffset = MongoDbHelper.asLongExpected(o, FIELD_NAME_SENDER_TIMESTAMP) - rootTimestamp;
+
+        // rebuild the tree from the pre-order representation
+        final int[] remainingChildren = new int[nodes.length];
+        final int[] stack = new int[nodes.length];
+        int stackSize = 0;
+        for(int i=0; i<nodes.length; i++) {
+            final long parentStart;
+            if(stackSize == 0) {
+                parentStart = rootTimestamp;
+            }
+            else {
+                final int parentIdx = stack[stackSize-1];
+                nodes[parentIdx].getChildren().add(nodes[i]);
+                parentStart = nodes[parentIdx].getAdjustedStartTimeMillis();
+                remainingChildren[parentIdx] -= 1;
+                if(remainingChildren[parentIdx] == 0) {
+                    stackSize -= 1;
+                }
+            }
+
+            nodes[i].setAdjustedStartTimeMillis(parentStart + ((Number) startOffsets.get(i)).longValue());
+            nodes[i].setSenderStartTimeMillis(nodes[i].getAdjustedStartTimeMillis() + clockOffset);
+
+            remainingChildren[i] = ((Number) numChildren.get(i)).intValue();
+            if(remainingChildren[i] > 0) {
+                stack[stackSize++] = i;
+            }
+        }
+
+        result.setTrace(nodes[0]);
+        return result;
+    }
+
+    private static String symbol(List<String> dictionary, Object index) {
+        final int idx = ((Number) index).intValue();
+        if(idx < 0 || idx >= dictionary.size()) {
+            throw new IllegalArgumentException("symbol " + idx + " is not in the dictionary of size " + dictionary.size());
+        }
+        return dictionary.get(idx);
+    }
+
+    private static List<CorrelationId> decodeFlows(Object raw) {
+        final List<CorrelationId> result = new ArrayList<>();
+        if(raw != null) {
+            for(Object o: (List<?>) raw) {
+                final CorrelationId flow = new CorrelationId();
+                flow.setKind((String) ((DBObject) o).get(FIELD_NAME_FLOW_KIND));
+                flow.setIdent((String) ((DBObject) o).get(FIELD_NAME_FLOW_IDENT));
+                result.add(flow);
+            }
+        }
+        return result;
+    }
+
+    private static class EncodedNodes {
+        final List<Integer> identifiers = new ArrayList<>();
+        final List<Integer> numChildren = new ArrayList<>();
+        final List<Object> startOffsets = new ArrayList<>();
+        final List<Object> durationDeltas = new ArrayList<>();
+        final List<Integer> parallel = new ArrayList<>();
+        final List<Object> parameters = new ArrayList<>();
+        long prevDurationNanos;
+    }
+}
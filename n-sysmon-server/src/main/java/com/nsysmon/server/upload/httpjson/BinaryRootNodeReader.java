@@ -0,0 +1,154 @@
+package com.nsysmon.server.upload.httpjson;
+
+import com.ajjpj.afoundation.util.AUUID;
+import com.nsysmon.server.data.json.CorrelationId;
+import com.nsysmon.server.data.json.EnvironmentNode;
+import com.nsysmon.server.data.json.RootNode;
+import com.nsysmon.server.data.json.ScalarNode;
+import com.nsysmon.server.data.json.TraceNode;
+import com.nsysmon.server.data.json.TraceRootNode;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static com.nsysmon.datasink.offloadhttpjson.AOffloadingBinaryFormat.*;
+
+
+/**
+ * This class reads data sent in the binary offloading format (see AOffloadingBinaryFormat) into the same object
+ *  graph that is created from JSON data. An instance holds the state of a single request and is not thread safe.
+ *
+ * @author arno
+ */
+class BinaryRootNodeReader {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final List<String> dictionary = new ArrayList<>();
+    private long prevDurationNanos;
+
+    /**
+     * @throws com.nsysmon.datasink.offloadhttpjson.AUnsupportedBinaryFormatException if the request uses a version or
+     *          flags this server does not know. The client can resend the data as JSON in that case.
+     */
+    static RootNode read(InputStream raw) throws IOException {
+        final InputStream buffered = new BufferedInputStream(raw, BUFFER_SIZE);
+        final int flags = readHeader(buffered);
+
+        if((flags & FLAG_DEFLATE) == 0) {
+            return new BinaryRootNodeReader().readRoot(buffered);
+        }
+
+        // The request's stream belongs to the servlet container, so the inflater is released explicitly instead of
+        //  closing the stream. Otherwise its native memory is held until it is garbage collected.
+        final Inflater inflater = new Inflater();
+        try {
+            return new BinaryRootNodeReader().readRoot(new InflaterInputStream(buffered, inflater, BUFFER_SIZE));
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    private RootNode readRoot(InputStream in) throws IOException {
+        final RootNode result = new RootNode();
+        result.setSender(readString(in, dictionary));
+        result.setSenderInstance(readString(in, dictionary));
+        result.setSenderTimestamp(readVarLong(in));
+
+        final int numTraces = readVarInt(in);
+        for(int i=0; i<numTraces; i++) {
+            result.getTraces().add(readTraceRoot(in, result.getSenderTimestamp()));
+        }
+
+        final int numScalars = readVarInt(in);
+        for(int i=0; i<numScalars; i++) {
+            result.getScalars().add(readScalar(in, result.getSenderTimestamp()));
+        }
+
+        final int numEnvironment = readVarInt(in);
+        for(int i=0; i<numEnvironment; i++) {
+            result.getEnvironment().add(readEnvironment(in, result.getSenderTimestamp()));
+        }
+        return result;
+    }
+
+    private TraceRootNode readTraceRoot(InputStream in, long senderTimestamp) throws IOException {
+        final TraceRootNode result = new TraceRootNode();
+        result.setUuid(readUuid(in));
+        result.setStartedFlows(readCorrelationIds(in));
+        result.setJoinedFlows(readCorrelationIds(in));
+
+        prevDurationNanos = 0;
+        result.setTrace(readTraceRec(in, senderTimestamp));
+        return result;
+    }
+
+    private List<CorrelationId> readCorrelationIds(InputStream in) throws IOException {
+        final int num = readLength(in, MAX_LIST_SIZE);
+        final List<CorrelationId> result = new ArrayList<>(num);
+        for(int i=0; i<num; i++) {
+            final CorrelationId flow = new CorrelationId();
+            flow.setKind(readString(in, dictionary));
+            flow.setIdent(readString(in, dictionary));
+            result.add(flow);
+        }
+        return result;
+    }
+
+    private TraceNode readTraceRec(InputStream in, long parentStartTimeMillis) throws IOException {
+        final TraceNode result = new TraceNode();
+        result.setIdentifier(readString(in, dictionary));
+
+        final long header = readVarLong(in);
+        result.setIsSerial((header & 1) != 0);
+        final long numChildren = header >>> 1;
+
+        result.setSenderStartTimeMillis(parentStartTimeMillis + readSignedVarLong(in));
+        prevDurationNanos += readSignedVarLong(in);
+        result.setDurationNanos(prevDurationNanos);
+
+        final int numParams = readLength(in, MAX_LIST_SIZE);
+        for(int i=0; i<numParams; i++) {
+            final String key = readString(in, dictionary);
+            result.getParameters().put(key, readString(in, dictionary));
+        }
+
+        for(long i=0; i<numChildren; i++) {
+            result.getChildren().add(readTraceRec(in, result.getSenderStartTimeMillis()));
+        }
+        return result;
+    }
+
+    private ScalarNode readScalar(InputStream in, long senderTimestamp) throws IOException {
+        final ScalarNode result = new ScalarNode();
+        result.setUuid(readUuid(in));
+        result.setName(readString(in, dictionary));
+        result.setSenderTimestamp(senderTimestamp + readSignedVarLong(in));
+
+        final long valueRaw = readSignedVarLong(in);
+        final int numFracDigits = readVarInt(in);
+        result.setValue(valueRaw / Math.pow(10, numFracDigits));
+        return result;
+    }
+
+    private EnvironmentNode readEnvironment(InputStream in, long senderTimestamp) throws IOException {
+        final EnvironmentNode result = new EnvironmentNode();
+        result.setUuid(readUuid(in));
+        result.setKey(readString(in, dictionary));
+        result.setValue(readString(in, dictionary));
+        result.setSenderTimestamp(senderTimestamp + readSignedVarLong(in));
+        return result;
+    }
+
+    /**
+     * UUIDs are sent in binary form and converted to the same string representation the JSON format uses
+     */
+    private static String readUuid(InputStream in) throws IOException {
+        return AUUID.fromBytes(readBytes(in)).toString();
+    }
+}
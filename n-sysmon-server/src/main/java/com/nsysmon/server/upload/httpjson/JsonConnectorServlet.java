@@ -1,5 +1,7 @@
 package com.nsysmon.server.upload.httpjson;
 
+import com.nsysmon.datasink.offloadhttpjson.AOffloadingBinaryFormat;
+import com.nsysmon.datasink.offloadhttpjson.AUnsupportedBinaryFormatException;
 import com.nsysmon.server.init.InitServletContextListener;
 import com.nsysmon.server.upload.preprocess.InputProcessor;
 import com.nsysmon.server.data.InstanceIdentifier;
@@ -7,6 +9,7 @@ import com.nsysmon.server.data.json.EnvironmentNode;
 import com.nsysmon.server.data.json.RootNode;
 import com.nsysmon.server.data.json.ScalarNode;
 import com.nsysmon.server.data.json.TraceRootNode;
+import org.apache.log4j.Logger;
 import org.codehaus.jackson.map.ObjectMapper;
 
 import javax.servlet.ServletException;
@@ -17,9 +20,19 @@ import java.io.IOException;
 
 
 /**
+ * This servlet receives data from monitored applications, either as JSON or in the binary format defined by
+ *  AOffloadingBinaryFormat. Every response announces support for the binary format so that clients can switch to it.
+ *
  * @author arno
  */
 public class JsonConnectorServlet extends HttpServlet {
+    private static final Logger log = Logger.getLogger(JsonConnectorServlet.class);
+
+    /**
+     * ObjectMapper is thread safe once it is configured, and creating it is expensive
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     @Override protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
 //        System.out.print("received: ");
 //        int ch;
@@ -28,9 +41,10 @@ public class JsonConnectorServlet extends HttpServlet {
 //        }
 //        System.out.println();
 
+        resp.setHeader(AOffloadingBinaryFormat.HEADER_ACCEPT_POST, AOffloadingBinaryFormat.CONTENT_TYPE + ", " + AOffloadingBinaryFormat.CONTENT_TYPE_JSON);
+
         try {
-            final ObjectMapper om = new ObjectMapper();
-            final RootNode root = om.readValue(req.getInputStream(), RootNode.class);
+            final RootNode root = isBinary(req) ? BinaryRootNodeReader.read(req.getInputStream()) : OBJECT_MAPPER.readValue(req.getInputStream(), RootNode.class);
 
 //            System.out.println("received " + root);
 
@@ -48,14 +62,21 @@ public class JsonConnectorServlet extends HttpServlet {
             for(TraceRootNode traceNode: root.getTraces()) {
                 processor.addTraceEntry(instanceIdentifier, traceNode);
             }
+        } catch (AUnsupportedBinaryFormatException e) {
+            // the client falls back to JSON on this status
+            resp.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, e.getMessage());
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("failed to process uploaded data", e);
             throw e;
         }
 
         //TODO error handling --> log unparsable request
     }
 
+    private static boolean isBinary(HttpServletRequest req) {
+        return req.getContentType() != null && req.getContentType().startsWith(AOffloadingBinaryFormat.CONTENT_TYPE);
+    }
+
     protected InputProcessor getProcessor() {
         return InitServletContextListener.getInjector().getInstance(InputProcessor.class);
     }
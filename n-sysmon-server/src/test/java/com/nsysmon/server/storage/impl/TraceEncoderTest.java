@@ -0,0 +1,131 @@
+package com.nsysmon.server.storage.impl;
+
+import com.mongodb.DBObject;
+import com.nsysmon.server.data.InstanceIdentifier;
+import com.nsysmon.server.data.json.CorrelationId;
+import com.nsysmon.server.data.json.TraceNode;
+import com.nsysmon.server.data.json.TraceRootNode;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class TraceEncoderTest {
+    private static final long CLOCK_OFFSET = 1234;
+
+    private static TraceNode node(String identifier, boolean isSerial, long adjustedStartTimeMillis, long durationNanos, TraceNode... children) {
+        final TraceNode result = new TraceNode();
+        result.setIdentifier(identifier);
+        result.setIsSerial(isSerial);
+        result.setAdjustedStartTimeMillis(adjustedStartTimeMillis);
+        result.setSenderStartTimeMillis(adjustedStartTimeMillis + CLOCK_OFFSET);
+        result.setDurationNanos(durationNanos);
+        Collections.addAll(result.getChildren(), children);
+        return result;
+    }
+
+    private static TraceRootNode root(String uuid, TraceNode trace) {
+        final TraceRootNode result = new TraceRootNode();
+        result.setUuid(uuid);
+        result.setInstanceIdentifier(new InstanceIdentifier("app", "instance-1"));
+        result.setTrace(trace);
+        return result;
+    }
+
+    private static CorrelationId flow(String kind, String ident) {
+        final CorrelationId result = new CorrelationId();
+        result.setKind(kind);
+        result.setIdent(ident);
+        return result;
+    }
+
+    private static void assertSameTree(TraceNode expected, TraceNode actual) {
+        assertEquals(expected.getIdentifier(), actual.getIdentifier());
+        assertEquals(expected.getIsSerial(), actual.getIsSerial());
+        assertEquals(expected.getAdjustedStartTimeMillis(), actual.getAdjustedStartTimeMillis());
+        assertEquals(expected.getSenderStartTimeMillis(), actual.getSenderStartTimeMillis());
+        assertEquals(expected.getDurationNanos(), actual.getDurationNanos());
+        assertEquals(expected.getParameters(), actual.getParameters());
+        assertEquals(expected.getChildren().size(), actual.getChildren().size());
+        for(int i=0; i<expected.getChildren().size(); i++) {
+            assertSameTree(expected.getChildren().get(i), actual.getChildren().get(i));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final TraceNode a2 = node("a2", true, 1_000_030, 3_000);
+        a2.getParameters().put("q", "x");
+        final TraceNode parallel = node("parallel", false, 1_000_005, 80_000_000_000L);
+        final TraceNode trace1 = node("root", true, 1_000_000, 100_000_000_000L,
+                node("a", true, 1_000_010, 50_000,
+                        node("a1", true, 1_000_011, 1_000),
+                        a2),
+                parallel,
+                node("a", true, 1_000_040, 20_000,
+                        node("a1", true, 1_000_041, 500)));
+        trace1.getParameters().put("q", "root");
+
+        final TraceNode trace2 = node("other-root", true, 2_000_000, 7_000,
+                node("a1", true, 2_000_001, 2_000));
+
+        final TraceRootNode root1 = root("uuid-1", trace1);
+        root1.getStartedFlows().add(flow("jms", "msg-1"));
+        root1.getJoinedFlows().add(flow("http", "req-1"));
+        final TraceRootNode root2 = root("uuid-2", trace2);
+
+        final TraceEncoder encoder = new TraceEncoder();
+        final DBObject encoded1 = encoder.encode(root1, "dict");
+        final DBObject encoded2 = encoder.encode(root2, "dict");
+
+        // both traces share a single dictionary of identifiers and parameter keys, with every symbol stored once
+        final List<String> dictionary = new ArrayList<>(encoder.getDictionary());
+        assertEquals(7, dictionary.size());
+        assertTrue(dictionary.containsAll(Arrays.asList("root", "a", "a1", "a2", "parallel", "other-root", "q")));
+
+        final TraceRootNode decoded1 = TraceEncoder.decode("app", encoded1, dictionary);
+        assertEquals("uuid-1", decoded1.getUuid());
+        assertEquals(root1.getInstanceIdentifier(), decoded1.getInstanceIdentifier());
+        assertEquals(1, decoded1.getStartedFlows().size());
+        assertEquals("jms", decoded1.getStartedFlows().get(0).getKind());
+        assertEquals("msg-1", decoded1.getStartedFlows().get(0).getIdent());
+        assertEquals(1, decoded1.getJoinedFlows().size());
+        assertEquals("req-1", decoded1.getJoinedFlows().get(0).getIdent());
+        assertSameTree(trace1, decoded1.getTrace());
+
+        final TraceRootNode decoded2 = TraceEncoder.decode("app", encoded2, dictionary);
+        assertEquals("uuid-2", decoded2.getUuid());
+        assertTrue(decoded2.getStartedFlows().isEmpty());
+        assertSameTree(trace2, decoded2.getTrace());
+    }
+
+    @Test
+    public void testDecodeWithMissingSymbols() {
+        final DBObject encoded = new TraceEncoder().encode(root("uuid-1", node("root", true, 1000, 50)), "dict");
+
+        try {
+            TraceEncoder.decode("app", encoded, Collections.<String>emptyList());
+            fail("exception expected");
+        }
+        catch (IllegalArgumentException exc) {
+            // expected
+        }
+
+        encoded.put(TraceEncoder.FIELD_NAME_IDENTIFIERS, Collections.emptyList());
+        try {
+            TraceEncoder.decode("app", encoded, Collections.singletonList("root"));
+            fail("exception expected");
+        }
+        catch (IllegalArgumentException exc) {
+            // expected
+        }
+    }
+}